@@ -0,0 +1,239 @@
+package cs555.system.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import cs555.system.node.Node;
+import cs555.system.transport.TCPConnection;
+import cs555.system.transport.TCPServerThread;
+import cs555.system.util.ConnectionUtilities;
+import cs555.system.util.Constants;
+import cs555.system.util.ExecutionUtilities;
+import cs555.system.util.Properties;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.Protocol;
+import cs555.system.wireformats.ReadChunkRequest;
+import cs555.system.wireformats.ReadChunkResponse;
+
+/**
+ * Time to open many client connections to a single node, that answers
+ * every chunk read, and to complete one read on each of them, along
+ * with the footprint of the open connections.
+ *
+ * Each combination of thread mode and transport runs in its own fork,
+ * with the modes set as system properties before the application
+ * properties are loaded, e.g.,
+ *
+ * <pre>
+ * gradle jmh -Pjmh.include=ConnectionScalabilityBenchmark
+ * </pre>
+ *
+ * Alongside the time, the secondary results report the peak number of
+ * live threads, and the heap and non-heap memory, sampled while every
+ * connection is open. The <code>virtual</code> result reports whether
+ * virtual threads were used, since on runtimes older than Java 21 the
+ * virtual mode falls back to platform threads.
+ *
+ * @author stock
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ConnectionScalabilityBenchmark {
+
+  /**
+   * Node answering every read request with an empty failure response.
+   */
+  private static class ResponderNode implements Node {
+
+    @Override
+    public void onEvent(Event event, TCPConnection connection) {
+      if ( event.getType() != Protocol.READ_CHUNK_REQUEST )
+      {
+        return;
+      }
+      ReadChunkRequest request = ( ReadChunkRequest ) event;
+      try
+      {
+        connection.getTCPSender().sendEvent(
+            new ReadChunkResponse( request.getRequestId(),
+                request.getHandle(), Constants.FAILURE ) );
+      } catch ( IOException e )
+      {
+        System.err.println( e.getMessage() );
+      }
+    }
+
+    @Override
+    public String getHost() {
+      return "localhost";
+    }
+
+    @Override
+    public int getPort() {
+      return 0;
+    }
+  }
+
+  /**
+   * Node for the client end of each connection, responses are matched
+   * through the request table of the connection.
+   */
+  private static class ClientNode implements Node {
+
+    @Override
+    public void onEvent(Event event, TCPConnection connection) {
+      ReadChunkResponse response = ( ReadChunkResponse ) event;
+      connection.getRequestTable().complete( response.getRequestId(),
+          response );
+    }
+
+    @Override
+    public String getHost() {
+      return "localhost";
+    }
+
+    @Override
+    public int getPort() {
+      return 0;
+    }
+  }
+
+  /**
+   * Footprint of the node while every connection is open, reported as
+   * secondary results of each iteration.
+   */
+  @State( Scope.Thread )
+  @AuxCounters( AuxCounters.Type.EVENTS )
+  public static class Footprint {
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public long peakThreads;
+
+    public double heapUsedMB;
+
+    public double heapCommittedMB;
+
+    public double nonHeapCommittedMB;
+
+    public int virtual;
+
+    @Setup( Level.Iteration )
+    public void reset() {
+      threads.resetPeakThreadCount();
+      peakThreads = 0;
+      heapUsedMB = 0;
+      heapCommittedMB = 0;
+      nonHeapCommittedMB = 0;
+      virtual = ExecutionUtilities.isVirtual() ? 1 : 0;
+    }
+
+    /**
+     * Sample the threads and memory of the node.
+     */
+    private void sample() {
+      peakThreads = threads.getPeakThreadCount();
+      heapUsedMB = megabytes( memory.getHeapMemoryUsage().getUsed() );
+      heapCommittedMB =
+          megabytes( memory.getHeapMemoryUsage().getCommitted() );
+      nonHeapCommittedMB =
+          megabytes( memory.getNonHeapMemoryUsage().getCommitted() );
+    }
+
+    private static double megabytes(long bytes) {
+      return bytes / 1024.0 / 1024.0;
+    }
+  }
+
+  @Param( { "1000" } )
+  public int connections;
+
+  @Param( { Constants.THREAD_TYPE_PLATFORM, Constants.THREAD_TYPE_VIRTUAL } )
+  public String threadMode;
+
+  @Param( { Constants.TRANSPORT_TYPE_BLOCKING,
+      Constants.TRANSPORT_TYPE_SELECTOR } )
+  public String transportMode;
+
+  private ServerSocket serverSocket;
+
+  private final Node client = new ClientNode();
+
+  @Setup
+  public void setup() throws IOException {
+    System.setProperty( "system.thread.mode", threadMode );
+    System.setProperty( "system.transport.mode", transportMode );
+    if ( !Properties.SYSTEM_THREAD_MODE.equals( threadMode )
+        || !Properties.SYSTEM_TRANSPORT_MODE.equals( transportMode ) )
+    {
+      throw new IllegalStateException(
+          "The properties were loaded before the modes were set." );
+    }
+    serverSocket = ConnectionUtilities.openServerSocket( 0 );
+    Thread server = new Thread(
+        new TCPServerThread( new ResponderNode(), serverSocket ),
+        "Server Thread" );
+    server.setDaemon( true );
+    server.start();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    serverSocket.close();
+  }
+
+  @Benchmark
+  public int openAndRead(Footprint footprint) throws Exception {
+    List<TCPConnection> open = new ArrayList<>( connections );
+    List<CompletableFuture<Event>> reads = new ArrayList<>( connections );
+    for ( int i = 0; i < connections; ++i )
+    {
+      TCPConnection connection = ConnectionUtilities.establishConnection(
+          client, "localhost", serverSocket.getLocalPort() );
+      connection.start();
+      open.add( connection );
+
+      int requestId = connection.getRequestTable().nextRequestId();
+      reads.add( connection.getRequestTable().register( requestId ) );
+      connection.getTCPSender()
+          .sendEvent( new ReadChunkRequest( requestId, 1, i ) );
+    }
+    for ( CompletableFuture<Event> read : reads )
+    {
+      read.get( 60, TimeUnit.SECONDS );
+    }
+    footprint.sample();
+    for ( TCPConnection connection : open )
+    {
+      connection.close();
+    }
+    return open.size();
+  }
+}
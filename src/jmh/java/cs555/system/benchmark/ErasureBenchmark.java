@@ -0,0 +1,54 @@
+package cs555.system.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import cs555.system.util.Constants;
+import cs555.system.util.ReedSolomonUtilities;
+
+/**
+ * Throughput of splitting a chunk into its data and parity shards when
+ * it is written, and of joining the shards back into the chunk when it
+ * is read.
+ *
+ * @author stock
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ErasureBenchmark {
+
+  private byte[] chunk;
+
+  private byte[][] shards;
+
+  @Setup
+  public void setup() {
+    chunk = new byte[ Constants.CHUNK_SIZE ];
+    new Random( 42 ).nextBytes( chunk );
+    shards = ReedSolomonUtilities.encode( chunk );
+  }
+
+  @Benchmark
+  public byte[][] encode() {
+    return ReedSolomonUtilities.encode( chunk );
+  }
+
+  @Benchmark
+  public byte[] shardsToArray() {
+    return ReedSolomonUtilities.shardsToArray( shards );
+  }
+}
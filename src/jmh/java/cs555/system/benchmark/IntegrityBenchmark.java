@@ -0,0 +1,70 @@
+package cs555.system.benchmark;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import cs555.system.util.Constants;
+import cs555.system.util.FileUtilities;
+
+/**
+ * Throughput of computing the SHA-1 integrity of a chunk when it is
+ * written, and of validating a chunk file against its integrity when
+ * it is read.
+ *
+ * @author stock
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class IntegrityBenchmark {
+
+  private byte[] chunk;
+
+  private Path path;
+
+  private FileChannel file;
+
+  @Setup
+  public void setup() throws IOException {
+    chunk = new byte[ Constants.CHUNK_SIZE ];
+    new Random( 42 ).nextBytes( chunk );
+    path = Files.createTempFile( "integrity", "_chunk0" );
+    Files.write( path, FileUtilities.addSHA1Integrity( chunk ) );
+    file = FileChannel.open( path );
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    file.close();
+    Files.deleteIfExists( path );
+  }
+
+  @Benchmark
+  public byte[] SHA1FromBytes() throws NoSuchAlgorithmException {
+    return FileUtilities.SHA1FromBytes( chunk );
+  }
+
+  @Benchmark
+  public boolean validateSHA1Integrity() throws IOException {
+    return FileUtilities.validateSHA1Integrity( file );
+  }
+}
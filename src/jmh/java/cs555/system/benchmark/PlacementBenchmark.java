@@ -0,0 +1,77 @@
+package cs555.system.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import cs555.system.metadata.ControllerMetadata;
+import cs555.system.util.Constants;
+
+/**
+ * Throughput of the controller placing the chunks of a 1 GB file on
+ * clusters of increasing size, either a chunk per request or the whole
+ * file in a single request.
+ *
+ * The metadata is created again for every iteration, so the servers do
+ * not accumulate chunks without bound.
+ *
+ * @author stock
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class PlacementBenchmark {
+
+  private final static int NUMBER_OF_CHUNKS =
+      ( int ) ( ( 1L << 30 ) / Constants.CHUNK_SIZE ) + 1;
+
+  @Param( { "8", "64", "512" } )
+  public int servers;
+
+  private ControllerMetadata metadata;
+
+  private long handle;
+
+  private int sequence;
+
+  @Setup( Level.Iteration )
+  public void setup() {
+    metadata = new ControllerMetadata();
+    for ( int i = 0; i < servers; ++i )
+    {
+      String connectionDetails = "chunkserver-" + i + ".cs.colostate.edu:5001";
+      metadata.addConnection( connectionDetails, null );
+      metadata.updateServerInformation( connectionDetails,
+          ( 1L << 40 ) - i * ( 1L << 20 ) );
+    }
+    handle = metadata.addFile( "/s/bach/j/under/stock/data/file.bin",
+        NUMBER_OF_CHUNKS * Constants.CHUNK_SIZE, NUMBER_OF_CHUNKS, 0 );
+    sequence = 0;
+  }
+
+  @Benchmark
+  public int[] placeChunk() {
+    int[] routes = metadata.getChunkServers( handle, sequence );
+    sequence = ( sequence + 1 ) % NUMBER_OF_CHUNKS;
+    return routes;
+  }
+
+  @Benchmark
+  @OutputTimeUnit( TimeUnit.MINUTES )
+  public int[][] placeFile() {
+    return metadata.getChunkServers( handle, 0, NUMBER_OF_CHUNKS );
+  }
+}
@@ -0,0 +1,199 @@
+package cs555.system.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import cs555.system.metadata.ServerMetadata.ChunkInformation;
+import cs555.system.util.Constants;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.Heartbeat;
+import cs555.system.wireformats.Protocol;
+import cs555.system.wireformats.WriteChunkRequest;
+
+/**
+ * Time and allocations to marshall the largest wireformats in three
+ * ways:
+ *
+ * <ul>
+ * <li>stream - through a <code>DataOutputStream</code> over a
+ * <code>ByteArrayOutputStream</code>, as the wireformats used to.</li>
+ * <li>getBytes - into an array of the exact length.</li>
+ * <li>write - into a reused direct buffer, as the sender does.</li>
+ * </ul>
+ *
+ * The bytes allocated for each operation are reported by the GC
+ * profiler as <code>gc.alloc.rate.norm</code>, e.g.,
+ *
+ * <pre>
+ * gradle jmh -Pjmh.include=WireformatAllocationBenchmark
+ * </pre>
+ *
+ * @author stock
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class WireformatAllocationBenchmark {
+
+  @Param( { "WRITE_CHUNK_REQUEST", "MAJOR_HEARTBEAT" } )
+  public String type;
+
+  private Event event;
+
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setup() {
+    if ( type.equals( "WRITE_CHUNK_REQUEST" ) )
+    {
+      int[] routes = new int[ Constants.ERASURE_TOTAL_SHARDS ];
+      byte[][] shards = new byte[ Constants.ERASURE_TOTAL_SHARDS ][];
+      for ( int i = 0; i < shards.length; ++i )
+      {
+        routes[ i ] = i;
+        shards[ i ] = new byte[ Constants.ERASURE_SHARD_SIZE ];
+      }
+      event = new WriteChunkRequest( 1, 7, shards, System.currentTimeMillis(),
+          1, routes );
+    } else
+    {
+      Map<Long, List<ChunkInformation>> files = new HashMap<>();
+      for ( int f = 0; f < 16; ++f )
+      {
+        List<ChunkInformation> chunks = new ArrayList<>();
+        for ( int s = 0; s < 64; ++s )
+        {
+          chunks.add(
+              new ChunkInformation( s, 0, System.currentTimeMillis(), 1 ) );
+        }
+        files.put( ( long ) f, chunks );
+      }
+      event = new Heartbeat( Protocol.MAJOR_HEARTBEAT,
+          "chunkserver-0.cs.colostate.edu:5001", 1024, 1L << 30, files );
+    }
+    buffer = ByteBuffer.allocateDirect( Integer.BYTES + event.getLength() );
+  }
+
+  @Benchmark
+  public byte[] stream() throws IOException {
+    return event instanceof Heartbeat ? stream( ( Heartbeat ) event )
+        : stream( ( WriteChunkRequest ) event );
+  }
+
+  @Benchmark
+  public byte[] getBytes() throws IOException {
+    return event.getBytes();
+  }
+
+  @Benchmark
+  public int write() {
+    buffer.clear();
+    buffer.putInt( event.getLength() );
+    event.write( buffer );
+    return buffer.position();
+  }
+
+  /**
+   * Marshall the event through streams, field by field, as the
+   * wireformats did before writing to buffers.
+   *
+   * @param event to marshall
+   * @return the marshalled bytes
+   * @throws IOException
+   */
+  private static byte[] stream(WriteChunkRequest event) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DataOutputStream dout =
+        new DataOutputStream( new BufferedOutputStream( outputStream ) );
+
+    dout.writeInt( event.getType() );
+    dout.writeLong( event.getHandle() );
+    dout.writeInt( event.getSequence() );
+    // one shard is sent to each server on the route
+    int numberOfShards = event.getRoutingPath().length;
+    dout.writeInt( numberOfShards );
+    for ( int i = 0; i < numberOfShards; ++i )
+    {
+      byte[] bytes = event.getMessage( i );
+      dout.writeInt( bytes.length );
+      dout.write( bytes );
+    }
+    dout.writeLong( event.getLastModifiedDate() );
+    dout.writeInt( event.getVersion() );
+    dout.writeInt( event.getRoutingPath().length );
+    for ( int item : event.getRoutingPath() )
+    {
+      dout.writeShort( item );
+    }
+    dout.writeInt( event.getReplicationPosition() );
+
+    dout.flush();
+    byte[] marshalledBytes = outputStream.toByteArray();
+    dout.close();
+    return marshalledBytes;
+  }
+
+  /**
+   * Marshall the event through streams, field by field, as the
+   * wireformats did before writing to buffers.
+   *
+   * @param event to marshall
+   * @return the marshalled bytes
+   * @throws IOException
+   */
+  private static byte[] stream(Heartbeat event) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DataOutputStream dout =
+        new DataOutputStream( new BufferedOutputStream( outputStream ) );
+
+    dout.writeInt( event.getType() );
+    byte[] connectionDetails = event.getConnectionDetails().getBytes();
+    dout.writeInt( connectionDetails.length );
+    dout.write( connectionDetails );
+    dout.writeInt( event.getTotalChunks() );
+    dout.writeLong( event.getFreeSpace() );
+    dout.writeBoolean( event.isEmpty() );
+    dout.writeInt( event.getFiles().size() );
+    for ( Entry<Long, List<ChunkInformation>> entry : event.getFiles()
+        .entrySet() )
+    {
+      dout.writeLong( entry.getKey() );
+      dout.writeInt( entry.getValue().size() );
+      for ( ChunkInformation info : entry.getValue() )
+      {
+        dout.writeInt( info.getSequence() );
+        dout.writeInt( info.getReplication() );
+        dout.writeLong( info.getLastModifiedTime() );
+        dout.writeInt( info.getVersion() );
+      }
+    }
+
+    dout.flush();
+    byte[] marshalledBytes = outputStream.toByteArray();
+    dout.close();
+    return marshalledBytes;
+  }
+}
@@ -0,0 +1,253 @@
+package cs555.system.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import cs555.system.metadata.ServerMetadata.ChunkInformation;
+import cs555.system.util.Constants;
+import cs555.system.util.Properties;
+import cs555.system.util.ReedSolomonUtilities;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.EventFactory;
+import cs555.system.wireformats.FailureChunkRead;
+import cs555.system.wireformats.FailureClientNotification;
+import cs555.system.wireformats.HealthRequest;
+import cs555.system.wireformats.Heartbeat;
+import cs555.system.wireformats.ListFileRequest;
+import cs555.system.wireformats.ListFileResponse;
+import cs555.system.wireformats.Protocol;
+import cs555.system.wireformats.ReadChunkRequest;
+import cs555.system.wireformats.ReadChunkResponse;
+import cs555.system.wireformats.ReadFileRequest;
+import cs555.system.wireformats.ReadFileResponse;
+import cs555.system.wireformats.RedirectChunkRequest;
+import cs555.system.wireformats.RegisterRequest;
+import cs555.system.wireformats.RegisterResponse;
+import cs555.system.wireformats.ServerTable;
+import cs555.system.wireformats.WriteChunkCredit;
+import cs555.system.wireformats.WriteChunkRequest;
+import cs555.system.wireformats.WriteFileRequest;
+import cs555.system.wireformats.WriteFileResponse;
+
+/**
+ * Throughput of marshalling and unmarshalling every wireformat, with
+ * contents sized as they are for a file of 16 chunks on a cluster of
+ * 64 chunk servers.
+ *
+ * <ul>
+ * <li>write - into a reused direct buffer, as the sender does.</li>
+ * <li>getBytes - into an array of the exact length.</li>
+ * <li>read - from the marshalled bytes through the
+ * {@link EventFactory}.</li>
+ * </ul>
+ *
+ * @author stock
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class WireformatBenchmark {
+
+  private final static int NUMBER_OF_SERVERS = 64;
+
+  private final static int NUMBER_OF_CHUNKS = 16;
+
+  @Param( { "REGISTER_REQUEST", "REGISTER_RESPONSE", "MINOR_HEARTBEAT",
+      "MAJOR_HEARTBEAT", "WRITE_FILE_REQUEST", "WRITE_FILE_RESPONSE",
+      "WRITE_CHUNK_REQUEST", "LIST_FILE_REQUEST", "LIST_FILE_RESPONSE",
+      "READ_FILE_REQUEST", "READ_FILE_RESPONSE", "READ_CHUNK_REQUEST",
+      "READ_CHUNK_RESPONSE", "HEALTH_REQUEST", "REDIRECT_CHUNK_REQUEST",
+      "FAILURE_CLIENT_NOTIFICATION", "FAILURE_CHUNK_READ",
+      "WRITE_CHUNK_CREDIT", "SERVER_TABLE" } )
+  public String type;
+
+  private Event event;
+
+  private byte[] bytes;
+
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setup() throws IOException {
+    event = create( type );
+    bytes = event.getBytes();
+    buffer = ByteBuffer.allocateDirect( Integer.BYTES + bytes.length );
+  }
+
+  @Benchmark
+  public int write() {
+    buffer.clear();
+    buffer.putInt( event.getLength() );
+    event.write( buffer );
+    return buffer.position();
+  }
+
+  @Benchmark
+  public byte[] getBytes() throws IOException {
+    return event.getBytes();
+  }
+
+  @Benchmark
+  public Event read() throws IOException {
+    return EventFactory.getInstance().createEvent( bytes );
+  }
+
+  /**
+   * Create an event of the given type.
+   *
+   * @param type name of the type in {@link Protocol}
+   * @return a new event
+   */
+  private static Event create(String type) {
+    long handle = 42;
+    String connectionDetails = "chunkserver-0.cs.colostate.edu:5001";
+    switch ( type )
+    {
+      case "REGISTER_REQUEST" :
+        return new RegisterRequest( Protocol.REGISTER_REQUEST,
+            Constants.SERVER_ID, "chunkserver-0.cs.colostate.edu", 5001 );
+
+      case "REGISTER_RESPONSE" :
+        return new RegisterResponse( Constants.SUCCESS,
+            "Registration request successful.  The number of chunk servers "
+                + "currently constituting the network are (64).\n" );
+
+      case "MINOR_HEARTBEAT" :
+        return new Heartbeat( Protocol.MINOR_HEARTBEAT, connectionDetails,
+            1024, 1L << 30, files( 1, NUMBER_OF_CHUNKS ) );
+
+      case "MAJOR_HEARTBEAT" :
+        return new Heartbeat( Protocol.MAJOR_HEARTBEAT, connectionDetails,
+            1024, 1L << 30, files( 64, NUMBER_OF_CHUNKS ) );
+
+      case "WRITE_FILE_REQUEST" :
+        return new WriteFileRequest( "/s/bach/j/under/stock/data/file.bin", 0,
+            NUMBER_OF_CHUNKS, NUMBER_OF_CHUNKS * Constants.CHUNK_SIZE,
+            NUMBER_OF_CHUNKS );
+
+      case "WRITE_FILE_RESPONSE" :
+        return new WriteFileResponse( handle, chunks(), 0 );
+
+      case "WRITE_CHUNK_REQUEST" :
+        byte[][] message = new byte[][] { new byte[ Constants.CHUNK_SIZE ] };
+        if ( Properties.SYSTEM_DESIGN_SCHEMA
+            .equals( Constants.SYSTEM_TYPE_ERASURE ) )
+        {
+          message = ReedSolomonUtilities.encode( message[ 0 ] );
+        }
+        return new WriteChunkRequest( handle, 0, message,
+            System.currentTimeMillis(), 1, chunks()[ 0 ] );
+
+      case "LIST_FILE_REQUEST" :
+        return new ListFileRequest();
+
+      case "LIST_FILE_RESPONSE" :
+        List<String> filenames = new ArrayList<>();
+        for ( int i = 0; i < 100; ++i )
+        {
+          filenames.add( "/s/bach/j/under/stock/data/file-" + i + ".bin" );
+        }
+        return new ListFileResponse( filenames );
+
+      case "READ_FILE_REQUEST" :
+        return new ReadFileRequest( "/s/bach/j/under/stock/data/file.bin" );
+
+      case "READ_FILE_RESPONSE" :
+        return new ReadFileResponse( "/s/bach/j/under/stock/data/file.bin",
+            handle, NUMBER_OF_CHUNKS * Constants.CHUNK_SIZE, chunks() );
+
+      case "READ_CHUNK_REQUEST" :
+        return new ReadChunkRequest( 1, handle, 0 );
+
+      case "READ_CHUNK_RESPONSE" :
+        return new ReadChunkResponse( 1, handle,
+            new byte[ Constants.CHUNK_SIZE ], Constants.SUCCESS );
+
+      case "HEALTH_REQUEST" :
+        return new HealthRequest();
+
+      case "REDIRECT_CHUNK_REQUEST" :
+        return new RedirectChunkRequest( handle, 0, 1, connectionDetails );
+
+      case "FAILURE_CLIENT_NOTIFICATION" :
+        return new FailureClientNotification();
+
+      case "FAILURE_CHUNK_READ" :
+        return new FailureChunkRead( connectionDetails, handle, 0 );
+
+      case "WRITE_CHUNK_CREDIT" :
+        return new WriteChunkCredit( 1 );
+
+      case "SERVER_TABLE" :
+        String[] table = new String[ NUMBER_OF_SERVERS ];
+        for ( int i = 0; i < table.length; ++i )
+        {
+          table[ i ] = "chunkserver-" + i + ".cs.colostate.edu:5001";
+        }
+        return new ServerTable( table );
+
+      default :
+        throw new IllegalArgumentException( "Unknown event type " + type );
+    }
+  }
+
+  /**
+   *
+   * @return the server identifiers for each chunk of a file
+   */
+  private static int[][] chunks() {
+    int[][] chunks =
+        new int[ NUMBER_OF_CHUNKS ][ Constants.NUMBER_OF_REPLICATIONS ];
+    for ( int sequence = 0; sequence < chunks.length; ++sequence )
+    {
+      for ( int replication =
+          0; replication < chunks[ sequence ].length; ++replication )
+      {
+        chunks[ sequence ][ replication ] =
+            ( sequence + replication ) % NUMBER_OF_SERVERS;
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   *
+   * @param numberOfFiles on the server
+   * @param numberOfChunks of each file on the server
+   * @return the chunks held by a server
+   */
+  private static Map<Long, List<ChunkInformation>> files(int numberOfFiles,
+      int numberOfChunks) {
+    Map<Long, List<ChunkInformation>> files = new HashMap<>();
+    long lastModified = System.currentTimeMillis();
+    for ( int f = 0; f < numberOfFiles; ++f )
+    {
+      List<ChunkInformation> chunks = new ArrayList<>();
+      for ( int s = 0; s < numberOfChunks; ++s )
+      {
+        chunks.add( new ChunkInformation( s, s % 3, lastModified, 1 ) );
+      }
+      files.put( ( long ) f + 1, chunks );
+    }
+    return files;
+  }
+}
@@ -117,26 +117,22 @@ public class ControllerHeartbeatManager extends TimerTask {
 
   /**
    * Set <b>all</b> the chunk location for the failed connection to
-   * null.
+   * {@link Constants#NO_SERVER}.
    * 
    * @param severInformation that failed
    */
   private void clearFileLocations(ServerInformation severInformation) {
-    Map<String, List<SequenceReplicationPair>> files =
+    Map<Long, List<SequenceReplicationPair>> files =
         severInformation.getFilesOnServer();
-    for ( Entry<String, List<SequenceReplicationPair>> file : files.entrySet() )
+    for ( Entry<Long, List<SequenceReplicationPair>> file : files.entrySet() )
     {
-      FileInformation info = metadata.getFiles().get( file.getKey() );
-      String[][] chunks = info.getChunks();
+      FileInformation info = metadata.getFile( file.getKey() );
+      int[][] chunks = info.getChunks();
 
       for ( SequenceReplicationPair pair : file.getValue() )
       {
-        String identifier =
-            chunks[ pair.getSequence() ][ pair.getReplication() ];
-        if ( identifier != null )
-        {
-          chunks[ pair.getSequence() ][ pair.getReplication() ] = null;
-        }
+        chunks[ pair.getSequence() ][ pair
+            .getReplication() ] = Constants.NO_SERVER;
       }
     }
   }
@@ -149,41 +145,43 @@ public class ControllerHeartbeatManager extends TimerTask {
    * @param severInformation that failed
    */
   private void processFailedConnection(ServerInformation serverInformation) {
-    Map<String, List<SequenceReplicationPair>> files =
+    Map<Long, List<SequenceReplicationPair>> files =
         serverInformation.getFilesOnServer();
-    for ( Entry<String, List<SequenceReplicationPair>> file : files.entrySet() )
+    for ( Entry<Long, List<SequenceReplicationPair>> file : files.entrySet() )
     {
-      String filename = file.getKey();
-      FileInformation info = metadata.getFiles().get( filename );
-      String[][] chunks = info.getChunks();
+      long handle = file.getKey();
+      FileInformation info = metadata.getFile( handle );
+      int[][] chunks = info.getChunks();
       for ( SequenceReplicationPair pair : file.getValue() )
       {
-        String source = null;
+        ServerInformation source = null;
         for ( int replication =
             0; replication < chunks[ 0 ].length; ++replication )
         {
-          String identifier = chunks[ pair.getSequence() ][ replication ];
-          // Get a non-null source identifier. At this point the previous chunk
-          // location was set to null.
-          if ( identifier != null )
+          int identifier = chunks[ pair.getSequence() ][ replication ];
+          // Get a connected source identifier. At this point the previous
+          // chunk location was cleared.
+          if ( identifier != Constants.NO_SERVER )
           {
-            source = identifier;
-            break;
+            source = metadata.getConnection( identifier );
+            if ( source != null )
+            {
+              break;
+            }
           }
         }
         String destination =
-            getDestination( chunks[ pair.getSequence() ], filename, pair );
+            getDestination( chunks[ pair.getSequence() ], handle, pair );
 
         if ( source != null && destination != null )
         {
-          TCPConnection connection =
-              metadata.getConnections().get( source ).getConnection();
+          TCPConnection connection = source.getConnection();
 
-          RedirectChunkRequest request = new RedirectChunkRequest( filename,
+          RedirectChunkRequest request = new RedirectChunkRequest( handle,
               pair.getSequence(), pair.getReplication(), destination );
           try
           {
-            connection.getTCPSender().sendData( request.getBytes() );
+            connection.getTCPSender().sendEvent( request );
           } catch ( IOException e )
           {
             LOG.error( "Unable to send redirect request to chunk server. "
@@ -201,13 +199,13 @@ public class ControllerHeartbeatManager extends TimerTask {
    * replicated file. This finds a server that does not already have the
    * replicated chunk.
    *
-   * @param chunk array containing the replicated locations for the
-   *        chunk
-   * @param filename
+   * @param chunk array containing the identifiers of the replicated
+   *        locations for the chunk
+   * @param handle of the file
    * @param pair sequence, replication location of the failed item.
    * @return a single destination host:port location
    */
-  private String getDestination(String[] chunk, String filename,
+  private String getDestination(int[] chunk, long handle,
       SequenceReplicationPair pair) {
 
     List<ServerInformation> availableConnections =
@@ -216,17 +214,17 @@ public class ControllerHeartbeatManager extends TimerTask {
     // see comparator for sort details
     Collections.sort( availableConnections, ControllerMetadata.COMPARATOR );
 
-    Set<String> chunkSet = new HashSet<>( Arrays.asList( chunk ) );
+    Set<Integer> chunkSet = new HashSet<>();
+    Arrays.stream( chunk ).forEach( chunkSet::add );
 
     for ( ServerInformation info : availableConnections )
     {
-      String connectionDetails = info.getConnectionDetails();
-      if ( !chunkSet.contains( connectionDetails ) )
+      if ( !chunkSet.contains( info.getIdentifier() ) )
       {
-        info.addFileOnServer( filename, pair.getSequence(),
+        info.addFileOnServer( handle, pair.getSequence(),
             pair.getReplication() );
         info.incrementNumberOfChunks();
-        return connectionDetails;
+        return info.getConnectionDetails();
       }
     }
     return null;
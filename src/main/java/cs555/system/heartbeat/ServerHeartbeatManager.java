@@ -64,6 +64,6 @@ public class ServerHeartbeatManager extends TimerTask {
           "Unable to send heartbeat message to controller. " + e.getMessage() );
       e.printStackTrace();
     }
-    cachedConnections.closeCachedConnections();
+    cachedConnections.releaseCachedConnections();
   }
 }
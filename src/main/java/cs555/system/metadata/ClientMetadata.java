@@ -17,12 +17,26 @@ public class ClientMetadata {
    */
   private List<String> readableFiles;
 
+  /**
+   * Addresses of the chunk servers as distributed by the controller
+   */
+  private final ServerRegistry registry;
+
   /**
    * Default constructor -
    * 
    */
   public ClientMetadata() {
     this.setReadableFiles( new ArrayList<>() );
+    this.registry = new ServerRegistry();
+  }
+
+  /**
+   * 
+   * @return the addresses of the chunk servers, by identifier
+   */
+  public ServerRegistry getRegistry() {
+    return registry;
   }
 
   /**
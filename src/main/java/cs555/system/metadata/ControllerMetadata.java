@@ -8,7 +8,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import cs555.system.metadata.ServerMetadata.ChunkInformation;
@@ -21,6 +21,14 @@ import cs555.system.util.Properties;
  * Maintains information about the files and chunk servers connected
  * to the controller.
  * 
+ * Every file is assigned a 64-bit handle when it is first added. The
+ * client is given the handle when writing or reading the file, and the
+ * chunk servers refer to the file only by its handle.
+ * 
+ * Every chunk server is assigned an identifier by the
+ * {@link ServerRegistry} when it registers, and the locations of the
+ * chunks are held as those identifiers.
+ * 
  * @author stock
  *
  */
@@ -43,6 +51,17 @@ public class ControllerMetadata {
    */
   private final Map<String, FileInformation> files;
 
+  /**
+   * The same files keyed by their handle <k: handle , v: file
+   * information>
+   */
+  private final Map<Long, FileInformation> handles;
+
+  /**
+   * The last handle that was assigned to a file.
+   */
+  private long lastHandle;
+
   /**
    * Connections to all the chunk servers. <k: host:port , v: chunk
    * server connection>
@@ -50,6 +69,11 @@ public class ControllerMetadata {
    */
   private final Map<String, ServerInformation> connections;
 
+  /**
+   * Identifiers assigned to the chunk servers.
+   */
+  private final ServerRegistry registry;
+
   /**
    * Connections to all the clients. Does not contain any identifier -
    * all clients are treated the same.
@@ -62,7 +86,10 @@ public class ControllerMetadata {
    */
   public ControllerMetadata() {
     this.files = new ConcurrentHashMap<>();
+    this.handles = new ConcurrentHashMap<>();
+    this.lastHandle = 0;
     this.connections = new ConcurrentHashMap<>();
+    this.registry = new ServerRegistry();
     this.clientConnections = new ArrayList<>();
   }
 
@@ -74,6 +101,16 @@ public class ControllerMetadata {
     return files;
   }
 
+  /**
+   * 
+   * @param handle of the file
+   * @return the information of the file, or null if there is no file
+   *         with the handle
+   */
+  public FileInformation getFile(long handle) {
+    return handles.get( handle );
+  }
+
   /**
    * 
    * @return the map of connections containing chunk server identifier
@@ -83,6 +120,26 @@ public class ControllerMetadata {
     return connections;
   }
 
+  /**
+   * 
+   * @param identifier assigned to the chunk server
+   * @return the information of the chunk server, or null if it is not
+   *         connected
+   */
+  public ServerInformation getConnection(int identifier) {
+    String connectionDetails = registry.getConnectionDetails( identifier );
+    return connectionDetails == null ? null
+        : connections.get( connectionDetails );
+  }
+
+  /**
+   * 
+   * @return the identifiers assigned to the chunk servers
+   */
+  public ServerRegistry getRegistry() {
+    return registry;
+  }
+
   /**
    * 
    * @return a list of all the clients that have registered with the
@@ -96,19 +153,25 @@ public class ControllerMetadata {
    * Add a file to the metadata if it does not already exist. Otherwise
    * return from method signaling the file is not original.
    * 
+   * A new file is assigned the next handle, and a file that is written
+   * again keeps its handle.
+   * 
    * @param filename of the file to maintain
    * @param filelength
    * @param numberOfChunks that make up the file
    * @param sequence
+   * @return the handle of the file
    */
-  public synchronized void addFile(String filename, int filelength,
+  public synchronized long addFile(String filename, int filelength,
       int numberOfChunks, int sequence) {
     FileInformation info = files.get( filename );
     if ( info == null )
     {
-      files.put( filename,
-          new FileInformation( filelength, numberOfChunks, true ) );
-      return;
+      info = new FileInformation( ++lastHandle, filename, filelength,
+          numberOfChunks, true );
+      files.put( filename, info );
+      handles.put( info.getHandle(), info );
+      return info.getHandle();
     } else if ( info != null && info.isOriginalFile() && sequence == 0 )
     {
       info.setIsOriginalFile( false );
@@ -116,11 +179,13 @@ public class ControllerMetadata {
     if ( !info.isOriginalFile() && filelength > info.getFilelength() )
     {
       FileInformation oldFileInformation = files.remove( filename );
-      String[][] oldChunkLocations = oldFileInformation.getChunks();
+      int[][] oldChunkLocations = oldFileInformation.getChunks();
 
-      files.put( filename,
-          new FileInformation( filelength, numberOfChunks, false ) );
-      String[][] newFileLocations = files.get( filename ).getChunks();
+      info = new FileInformation( oldFileInformation.getHandle(), filename,
+          filelength, numberOfChunks, false );
+      files.put( filename, info );
+      handles.put( info.getHandle(), info );
+      int[][] newFileLocations = info.getChunks();
 
       for ( int i = 0; i < oldChunkLocations.length; i++ )
       {
@@ -130,19 +195,29 @@ public class ControllerMetadata {
         }
       }
     }
+    return info.getHandle();
   }
 
   /**
-   * Add a new connection ( chunk server ) to the controllers metadata.
+   * Add a new connection ( chunk server ) to the controllers metadata,
+   * assigning it an identifier.
    * 
    * @param connectionDetails
    * @param connection with socket information to talk back with a
    *        server
+   * @return the identifier of the server, or
+   *         {@link Constants#NO_SERVER} if it could not be assigned one
+   *         and was not added
    */
-  public void addConnection(String connectionDetails,
+  public int addConnection(String connectionDetails,
       TCPConnection connection) {
-    connections.put( connectionDetails,
-        new ServerInformation( connection, connectionDetails ) );
+    int identifier = registry.register( connectionDetails );
+    if ( identifier != Constants.NO_SERVER )
+    {
+      connections.put( connectionDetails,
+          new ServerInformation( connection, connectionDetails, identifier ) );
+    }
+    return identifier;
   }
 
   /**
@@ -235,29 +310,36 @@ public class ControllerMetadata {
    * Iterate the map and update the files with their respective chunk
    * server locations.
    * 
-   * @param filesFromServer map of <k: file_name, v: List((sequence,
+   * @param filesFromServer map of <k: file handle, v: List((sequence,
    *        position))>
    * @param connectionDetails the host:port associated with the chunk
    *        server
    */
   public void updateFileInformation(
-      Map<String, List<ChunkInformation>> filesFromServer,
+      Map<Long, List<ChunkInformation>> filesFromServer,
       String connectionDetails) throws NullPointerException {
-    for ( Entry<String, List<ChunkInformation>> entry : filesFromServer
+    int identifier = registry.getIdentifier( connectionDetails );
+    if ( identifier == Constants.NO_SERVER )
+    {
+      throw new NullPointerException( "Chunk server connection: "
+          + connectionDetails + ", does not exist on controller." );
+    }
+    for ( Entry<Long, List<ChunkInformation>> entry : filesFromServer
         .entrySet() )
     {
-      FileInformation fileInformation = files.get( entry.getKey() );
+      FileInformation fileInformation = handles.get( entry.getKey() );
       if ( fileInformation == null )
       {
-        throw new NullPointerException( "Unable to update because the file: "
-            + entry.getKey() + ", does not exist on controller." );
+        throw new NullPointerException(
+            "Unable to update because the file handle: " + entry.getKey()
+                + ", does not exist on controller." );
       }
-      String[][] chunks = fileInformation.getChunks();
+      int[][] chunks = fileInformation.getChunks();
 
       for ( ChunkInformation chunkInformation : entry.getValue() )
       {
         chunks[ chunkInformation.getSequence() ][ chunkInformation
-            .getReplication() ] = connectionDetails;
+            .getReplication() ] = identifier;
       }
     }
   }
@@ -273,43 +355,93 @@ public class ControllerMetadata {
    * TODO: Check if there are any chunk servers, if not respond with
    * error.
    * 
-   * @param filename is the name of the file that will be added to the
-   *        server information for each chunk.
+   * @param handle of the file that will be added to the server
+   *        information for each chunk.
    * @param sequence
-   * @return a list of chunk servers for the client to send data too
+   * @return the identifiers of the chunk servers for the client to send
+   *         data too
    */
-  public synchronized String[] getChunkServers(String filename, int sequence) {
+  public synchronized int[] getChunkServers(long handle, int sequence) {
+    int[][] output = getChunkServers( handle, sequence, 1 );
+    return output == null || output.length == 0 ? null : output[ 0 ];
+  }
 
-    FileInformation info = files.get( filename );
+  /**
+   * Decide which chunk servers each chunk in a range of a file should
+   * be written too, in a single pass over the servers.
+   * 
+   * The servers are ordered once, and each chunk is given to the least
+   * loaded servers before their number of chunks is incremented and
+   * they are ordered again, so the placements are the same as deciding
+   * each chunk on its own.
+   * 
+   * @param handle of the file that will be added to the server
+   *        information for each chunk.
+   * @param sequence of the first chunk
+   * @param numberOfSequences number of chunks, from the sequence, to
+   *        place
+   * @return the identifiers of the chunk servers for each chunk, indexed
+   *         from the sequence, or null if the chunks can not be written
+   */
+  public synchronized int[][] getChunkServers(long handle, int sequence,
+      int numberOfSequences) {
+
+    FileInformation info = handles.get( handle );
     if ( info != null )
     {
-      String[] chunkLocations = info.getChunks()[ sequence ];
+      numberOfSequences = Math.min( numberOfSequences,
+          info.getChunks().length - sequence );
+    }
+    int[][] output = new int[ Math.max( 0, numberOfSequences ) ][];
+    PriorityQueue<ServerInformation> servers = null;
 
-      if ( !info.isOriginalFile() )
+    for ( int i = 0; i < output.length; ++i )
+    {
+      int current = sequence + i;
+      if ( info != null && !info.isOriginalFile() )
       {
-        boolean allLocationsNonNull =
-            Arrays.stream( chunkLocations ).allMatch( Objects::nonNull );
+        int[] chunkLocations = info.getChunks()[ current ];
+        boolean allLocationsNonNull = Arrays.stream( chunkLocations )
+            .allMatch( identifier -> identifier != Constants.NO_SERVER );
 
         if ( allLocationsNonNull )
         {
           LOG.debug( "Forwarding existing chunk information." );
-          return chunkLocations;
-        } else if ( sequence == 0 )
+          output[ i ] = chunkLocations;
+          continue;
+        } else if ( current == 0 )
         { // the case where the file is not original, but the chunk locations
           // have null entries since no heartbeats were received yet.
           return null;
         }
       }
+      if ( servers == null )
+      {
+        if ( connections.size() == 0 )
+        {
+          return null;
+        }
+        // see comparator for sort details
+        servers = new PriorityQueue<>( ControllerMetadata.COMPARATOR );
+        servers.addAll( connections.values() );
+      }
+      output[ i ] = placeChunk( servers, handle, current );
     }
-    List<ServerInformation> list = new ArrayList<>( connections.values() );
-    if ( list.size() == 0 )
-    {
-      return null;
-    }
-    // see comparator for sort details
-    Collections.sort( list, ControllerMetadata.COMPARATOR );
+    return output;
+  }
 
-    int numberOfConnections = list.size();
+  /**
+   * Place a single chunk on the least loaded servers, and update their
+   * position in the queue.
+   * 
+   * @param servers ordered by the {@link #COMPARATOR}
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @return the identifiers of the chunk servers for the chunk
+   */
+  private int[] placeChunk(PriorityQueue<ServerInformation> servers,
+      long handle, int sequence) {
+    int numberOfConnections = servers.size();
 
     int numberOfReplications = Constants.NUMBER_OF_REPLICATIONS;
 
@@ -322,19 +454,25 @@ public class ControllerMetadata {
       numberOfReplications = numberOfConnections;
     }
 
-    String[] output = new String[ numberOfReplications ];
+    List<ServerInformation> list = new ArrayList<>(
+        Math.min( numberOfReplications, numberOfConnections ) );
+    while ( list.size() < numberOfReplications && !servers.isEmpty() )
+    {
+      list.add( servers.poll() );
+    }
+
+    int[] output = new int[ numberOfReplications ];
 
     for ( int replication =
         0; replication < numberOfReplications; ++replication )
     {
-      String connectionDetails =
-          list.get( replication % numberOfConnections ).getConnectionDetails();
-      output[ replication ] = connectionDetails;
-      ServerInformation connection = connections.get( connectionDetails );
+      ServerInformation connection = list.get( replication % list.size() );
+      output[ replication ] = connection.getIdentifier();
 
-      connection.addFileOnServer( filename, sequence, replication );
+      connection.addFileOnServer( handle, sequence, replication );
       connection.incrementNumberOfChunks();
     }
+    servers.addAll( list );
 
     return output;
   }
@@ -351,10 +489,11 @@ public class ControllerMetadata {
     {
       boolean readable = true;
 
-      String[][] chunks = entry.getValue().getChunks();
+      int[][] chunks = entry.getValue().getChunks();
       for ( int i = 0; i < chunks.length; ++i )
       {
-        if ( !Arrays.stream( chunks[ i ] ).anyMatch( Objects::nonNull ) )
+        if ( !Arrays.stream( chunks[ i ] )
+            .anyMatch( identifier -> identifier != Constants.NO_SERVER ) )
         {
           LOG.debug( "File \'" + entry.getKey() + "\' is not readable." );
           readable = false;
@@ -383,8 +522,15 @@ public class ControllerMetadata {
 
     /**
      * chunk_1: chunk_server_a, chunk_server_b, ... chunk_2: ... ...
+     * 
+     * Each server is given by its identifier, or
+     * {@link Constants#NO_SERVER} until a heartbeat reports the chunk.
      */
-    private String[][] chunks;
+    private int[][] chunks;
+
+    private final long handle;
+
+    private final String filename;
 
     private int filelenth;
 
@@ -393,27 +539,51 @@ public class ControllerMetadata {
     /**
      * Default constructor -
      * 
+     * @param handle assigned to the file
+     * @param filename
      * @param filelength
      * @param numberOfChunks
      * @param isOriginalFile
      */
-    private FileInformation(int filelength, int numberOfChunks,
-        boolean isOriginalFile) {
+    private FileInformation(long handle, String filename, int filelength,
+        int numberOfChunks, boolean isOriginalFile) {
+      this.handle = handle;
+      this.filename = filename;
       this.chunks =
-          new String[ numberOfChunks ][ Constants.NUMBER_OF_REPLICATIONS ];
+          new int[ numberOfChunks ][ Constants.NUMBER_OF_REPLICATIONS ];
+      for ( int[] chunk : chunks )
+      {
+        Arrays.fill( chunk, Constants.NO_SERVER );
+      }
       this.filelenth = filelength;
       this.isOriginalFile = isOriginalFile;
     }
 
     /**
      * 
-     * @return the chunk server locations associated for each chunk within
-     *         the file
+     * @return the chunk server identifiers associated for each chunk
+     *         within the file
      */
-    public String[][] getChunks() {
+    public int[][] getChunks() {
       return chunks;
     }
 
+    /**
+     * 
+     * @return the handle assigned to the file
+     */
+    public long getHandle() {
+      return handle;
+    }
+
+    /**
+     * 
+     * @return the name of the file from the client
+     */
+    public String getFilename() {
+      return filename;
+    }
+
     /**
      * 
      * @return the length of the file being returned
@@ -447,10 +617,12 @@ public class ControllerMetadata {
 
     private String connectionDetails;
 
+    private final int identifier;
+
     /**
-     * Map < k: filename, v: list(sequence) >
+     * Map < k: file handle, v: list(sequence) >
      */
-    private Map<String, List<SequenceReplicationPair>> filesOnServer;
+    private Map<Long, List<SequenceReplicationPair>> filesOnServer;
 
     private long freeDiskSpace;
 
@@ -461,11 +633,13 @@ public class ControllerMetadata {
      * 
      * @param connection
      * @param connectionDetails
+     * @param identifier assigned to the server
      */
     private ServerInformation(TCPConnection connection,
-        String connectionDetails) {
+        String connectionDetails, int identifier) {
       this.connection = connection;
       this.connectionDetails = connectionDetails;
+      this.identifier = identifier;
       this.filesOnServer = new HashMap<>();
       this.freeDiskSpace = 0;
       this.numberOfChunks = new AtomicInteger( 0 );
@@ -487,7 +661,15 @@ public class ControllerMetadata {
       return connectionDetails;
     }
 
-    public Map<String, List<SequenceReplicationPair>> getFilesOnServer() {
+    /**
+     * 
+     * @return the identifier assigned to the server
+     */
+    public int getIdentifier() {
+      return identifier;
+    }
+
+    public Map<Long, List<SequenceReplicationPair>> getFilesOnServer() {
       return filesOnServer;
     }
 
@@ -509,17 +691,17 @@ public class ControllerMetadata {
     }
 
     /**
-     * Add a given filename to the server information.
+     * Add a given file to the server information.
      * 
-     * @param filename
+     * @param handle of the file
      * @param sequence
      * @param replication
      */
-    public void addFileOnServer(String filename, int sequence,
+    public void addFileOnServer(long handle, int sequence,
         int replication) {
-      filesOnServer.putIfAbsent( filename,
+      filesOnServer.putIfAbsent( handle,
           new ArrayList<SequenceReplicationPair>() );
-      filesOnServer.get( filename )
+      filesOnServer.get( handle )
           .add( new SequenceReplicationPair( sequence, replication ) );
     }
 
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import cs555.system.wireformats.Heartbeat;
 import cs555.system.wireformats.Protocol;
 
@@ -22,17 +23,36 @@ public class ServerMetadata {
   private final AtomicInteger numberOfChunks;
 
   /**
-   * map <k: filename, v: List<(sequence, replication)>>
+   * Progress of the background scrubber <passes completed, chunks
+   * scrubbed, bytes scrubbed, corrupt chunks found>
    */
-  private final Map<String, List<ChunkInformation>> newlyAddedFiles;
+  private final AtomicLong scrubPasses;
+
+  private final AtomicLong scrubbedChunks;
+
+  private final AtomicLong scrubbedBytes;
+
+  private final AtomicLong corruptChunks;
+
+  private volatile boolean scrubbing;
+
+  /**
+   * map <k: file handle, v: List<(sequence, replication)>>
+   */
+  private final Map<Long, List<ChunkInformation>> newlyAddedFiles;
 
   /**
-   * map <k: filename, v: List<(sequence, replication)>>
+   * map <k: file handle, v: List<(sequence, replication)>>
    */
-  private final Map<String, List<ChunkInformation>> files;
+  private final Map<Long, List<ChunkInformation>> files;
 
   private final String connectionDetails;
 
+  /**
+   * Addresses of the chunk servers as distributed by the controller
+   */
+  private final ServerRegistry registry;
+
   /**
    * Default constructor -
    * 
@@ -40,7 +60,12 @@ public class ServerMetadata {
    */
   public ServerMetadata(String connectionDetails) {
     this.connectionDetails = connectionDetails;
+    this.registry = new ServerRegistry();
     this.numberOfChunks = new AtomicInteger( 0 );
+    this.scrubPasses = new AtomicLong( 0 );
+    this.scrubbedChunks = new AtomicLong( 0 );
+    this.scrubbedBytes = new AtomicLong( 0 );
+    this.corruptChunks = new AtomicLong( 0 );
     this.newlyAddedFiles = new HashMap<>();
     this.files = new HashMap<>();
   }
@@ -53,6 +78,14 @@ public class ServerMetadata {
     return connectionDetails;
   }
 
+  /**
+   * 
+   * @return the addresses of the chunk servers, by identifier
+   */
+  public ServerRegistry getRegistry() {
+    return registry;
+  }
+
   /**
    * 
    * @return the current number of chunks maintained by the chunk server
@@ -86,11 +119,43 @@ public class ServerMetadata {
     numberOfChunks.getAndDecrement();
   }
 
+  /**
+   * Count a chunk that has been validated by the background scrubber.
+   * 
+   * @param bytes of the chunk that were read
+   * @param corrupt true if the chunk was found to be corrupt
+   */
+  public void scrubbed(long bytes, boolean corrupt) {
+    scrubbedChunks.incrementAndGet();
+    scrubbedBytes.addAndGet( bytes );
+    if ( corrupt )
+    {
+      corruptChunks.incrementAndGet();
+    }
+  }
+
+  /**
+   * Report the progress of the background scrubber in the heartbeats,
+   * which is otherwise left out of them.
+   * 
+   */
+  public void enableScrubProgress() {
+    scrubbing = true;
+  }
+
+  /**
+   * Count a pass of the background scrubber over every chunk.
+   * 
+   */
+  public void scrubPassCompleted() {
+    scrubPasses.incrementAndGet();
+  }
+
   /**
    * Update metadata associated with a file <b>only</b> when an
    * <b>original</b> chunk is written.
    * 
-   * @param filename
+   * @param handle of the file, as assigned by the controller
    * @param sequence of chunk in the file - this is the same as the
    *        chunk number
    * @param replication of the chunk returned to the client form the
@@ -99,15 +164,15 @@ public class ServerMetadata {
    *        milliseconds
    * @param version of the chunk as detected by the server
    */
-  public synchronized void update(String filename, int sequence,
+  public synchronized void update(long handle, int sequence,
       int replication, long lastModifiedDate, int version) {
 
-    newlyAddedFiles.putIfAbsent( filename, new ArrayList<ChunkInformation>() );
-    newlyAddedFiles.get( filename ).add( new ChunkInformation( sequence,
+    newlyAddedFiles.putIfAbsent( handle, new ArrayList<ChunkInformation>() );
+    newlyAddedFiles.get( handle ).add( new ChunkInformation( sequence,
         replication, lastModifiedDate, version ) );
 
-    files.putIfAbsent( filename, new ArrayList<ChunkInformation>() );
-    files.get( filename ).add( new ChunkInformation( sequence, replication,
+    files.putIfAbsent( handle, new ArrayList<ChunkInformation>() );
+    files.get( handle ).add( new ChunkInformation( sequence, replication,
         lastModifiedDate, version ) );
 
     incrementNumberOfChunks();
@@ -124,6 +189,7 @@ public class ServerMetadata {
     Heartbeat message =
         new Heartbeat( Protocol.MINOR_HEARTBEAT, getConnectionDetails(),
             getNumberOfChunks(), getFreeDiskSpace(), newlyAddedFiles );
+    setScrubProgress( message );
 
     byte[] bytes = message.getBytes();
     newlyAddedFiles.clear();
@@ -142,23 +208,53 @@ public class ServerMetadata {
     Heartbeat message =
         new Heartbeat( Protocol.MAJOR_HEARTBEAT, getConnectionDetails(),
             getNumberOfChunks(), getFreeDiskSpace(), files );
+    setScrubProgress( message );
     newlyAddedFiles.clear();
 
     return message.getBytes();
   }
 
+  /**
+   * 
+   * @param message to report the progress of the scrubber in, if it
+   *        is enabled
+   */
+  private void setScrubProgress(Heartbeat message) {
+    if ( scrubbing )
+    {
+      message.setScrubProgress( scrubPasses.get(), scrubbedChunks.get(),
+          scrubbedBytes.get(), corruptChunks.get() );
+    }
+  }
+
+  /**
+   * Copy the sequences of every chunk held by the server, so they may be
+   * visited while chunks continue to be added and removed.
+   * 
+   * @return map <k: file handle, v: sequences>
+   */
+  public synchronized Map<Long, int[]> getChunkSequences() {
+    Map<Long, int[]> sequences = new HashMap<>();
+    for ( Map.Entry<Long, List<ChunkInformation>> entry : files.entrySet() )
+    {
+      sequences.put( entry.getKey(), entry.getValue().stream()
+          .mapToInt( ChunkInformation::getSequence ).toArray() );
+    }
+    return sequences;
+  }
+
   /**
    * Check if the server has knowledge about a given chunk for a some
    * file.
    * 
-   * @param filename to search for
+   * @param handle of the file to search for
    * @param sequence number associated with the chunk
    * @return the chunk information if the chunk has been previously
    *         received, null otherwise
    */
-  public synchronized ChunkInformation getChunkInformation(String filename,
+  public synchronized ChunkInformation getChunkInformation(long handle,
       int sequence) {
-    List<ChunkInformation> info = files.get( filename );
+    List<ChunkInformation> info = files.get( handle );
     if ( info == null )
     {
       return null;
@@ -172,13 +268,13 @@ public class ServerMetadata {
    * 
    * This occurs when a read failure has invalid or corrupted data.
    * 
-   * @param filename to search for
+   * @param handle of the file to search for
    * @param sequence number associated with the chunk to remove
    * @return true if removed, false otherwise
    */
-  public synchronized boolean removeChunkInformation(String filename,
+  public synchronized boolean removeChunkInformation(long handle,
       int sequence) {
-    List<ChunkInformation> info = files.get( filename );
+    List<ChunkInformation> info = files.get( handle );
     if ( info == null )
     {
       return false;
@@ -0,0 +1,148 @@
+package cs555.system.metadata;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import cs555.system.util.Constants;
+
+/**
+ * Maps the chunk servers to small integer identifiers, so routing
+ * paths and chunk locations are held and sent as identifiers rather
+ * than <b>host:port</b> strings.
+ *
+ * The controller assigns the next identifier to each chunk server
+ * when it registers, and distributes the table of identifiers to the
+ * clients and chunk servers. An identifier is never reused, so a
+ * chunk server registering again with the same <b>host:port</b> keeps
+ * its identifier, and the table only ever grows.
+ *
+ * The addresses are kept split into their host and port, so they are
+ * not parsed again every time a connection is made.
+ *
+ * @author stock
+ *
+ */
+public class ServerRegistry {
+
+  /**
+   * The host and port of each server, indexed by identifier.
+   */
+  private volatile String[][] addresses;
+
+  /**
+   * Identifiers assigned by the controller <k: host:port , v:
+   * identifier>
+   */
+  private final Map<String, Integer> identifiers;
+
+  /**
+   * Default constructor -
+   *
+   */
+  public ServerRegistry() {
+    this.addresses = new String[ 0 ][];
+    this.identifiers = new HashMap<>();
+  }
+
+  /**
+   * Assign an identifier to a chunk server, or return the identifier it
+   * was previously assigned.
+   *
+   * @param connectionDetails the host:port of the chunk server
+   * @return the identifier of the server, or
+   *         {@link Constants#NO_SERVER} if no more identifiers can be
+   *         assigned
+   */
+  public synchronized int register(String connectionDetails) {
+    Integer identifier = identifiers.get( connectionDetails );
+    if ( identifier != null )
+    {
+      return identifier;
+    }
+    int next = addresses.length;
+    if ( next > Constants.MAX_SERVER_ID )
+    {
+      return Constants.NO_SERVER;
+    }
+    String[][] table = Arrays.copyOf( addresses, next + 1 );
+    table[ next ] = connectionDetails.split( ":" );
+    identifiers.put( connectionDetails, next );
+    addresses = table;
+    return next;
+  }
+
+  /**
+   *
+   * @param connectionDetails the host:port of the chunk server
+   * @return the identifier assigned to the server, or
+   *         {@link Constants#NO_SERVER} if it has not registered
+   */
+  public synchronized int getIdentifier(String connectionDetails) {
+    return identifiers.getOrDefault( connectionDetails, Constants.NO_SERVER );
+  }
+
+  /**
+   * Replace the table with the one distributed by the controller.
+   *
+   * @param table the host:port of each server, indexed by identifier
+   */
+  public synchronized void update(String[] table) {
+    String[][] updated = new String[ table.length ][];
+    identifiers.clear();
+    for ( int i = 0; i < table.length; ++i )
+    {
+      updated[ i ] = table[ i ].split( ":" );
+      identifiers.put( table[ i ], i );
+    }
+    addresses = updated;
+  }
+
+  /**
+   *
+   * @param identifier of the server
+   * @return the host and port of the server, or null if the identifier
+   *         is not known
+   */
+  public String[] getAddress(int identifier) {
+    String[][] table = addresses;
+    if ( identifier < 0 || identifier >= table.length )
+    {
+      return null;
+    }
+    return table[ identifier ];
+  }
+
+  /**
+   *
+   * @param identifier of the server
+   * @return the host:port of the server, or null if the identifier is
+   *         not known
+   */
+  public String getConnectionDetails(int identifier) {
+    String[] address = getAddress( identifier );
+    return address == null ? null : String.join( ":", address );
+  }
+
+  /**
+   *
+   * @return the host:port of each server, indexed by identifier
+   */
+  public String[] getTable() {
+    String[][] table = addresses;
+    String[] connectionDetails = new String[ table.length ];
+    for ( int i = 0; i < table.length; ++i )
+    {
+      connectionDetails[ i ] = String.join( ":", table[ i ] );
+    }
+    return connectionDetails;
+  }
+
+  /**
+   *
+   * @return the number of servers that have been assigned identifiers
+   */
+  public int size() {
+    return addresses.length;
+  }
+
+}
@@ -0,0 +1,221 @@
+package cs555.system.node;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
+import cs555.system.metadata.ServerMetadata;
+import cs555.system.metadata.ServerMetadata.ChunkInformation;
+import cs555.system.store.ChunkStore;
+import cs555.system.store.StoredChunk;
+import cs555.system.util.FileUtilities;
+import cs555.system.util.Logger;
+
+/**
+ * Validates the integrity of every chunk held by a chunk server in the
+ * background, so that corruption of chunks which are seldom read is
+ * found, and repaired from another replica, before a client reads them.
+ *
+ * The scrubber makes passes over the chunks known to the server
+ * metadata, hashing each chunk in full. Chunks are read no faster than
+ * the configured rate, and the scrubber waits while the server is busy
+ * with reads and writes, so it does not compete with them for the disk.
+ *
+ * @author stock
+ *
+ */
+class ChunkScrubber implements Runnable {
+
+  private static final Logger LOG = Logger.getInstance();
+
+  /**
+   * Time in milliseconds without reads or writes before the scrubber
+   * continues
+   */
+  private static final long IDLE_MILLIS = 100;
+
+  private final ServerMetadata metadata;
+
+  private final ChunkStore store;
+
+  private final CorruptChunkHandler handler;
+
+  private final long rate;
+
+  private final long interval;
+
+  /**
+   * Time in nanoseconds of the latest read or write
+   */
+  private volatile long lastForeground;
+
+  /**
+   * Time in nanoseconds before which the scrubber may not read again
+   */
+  private long next;
+
+  /**
+   * Default constructor -
+   *
+   * @param metadata of the chunks held by the server
+   * @param store to read the chunks from
+   * @param handler of chunks found to be corrupt
+   * @param rate in bytes per second that chunks may be read at
+   * @param interval in milliseconds between passes
+   */
+  ChunkScrubber(ServerMetadata metadata, ChunkStore store,
+      CorruptChunkHandler handler, long rate, long interval) {
+    this.metadata = metadata;
+    this.store = store;
+    this.handler = handler;
+    this.rate = rate;
+    this.interval = interval;
+    this.lastForeground = System.nanoTime() - IDLE_MILLIS * 1_000_000;
+    this.next = System.nanoTime();
+  }
+
+  /**
+   * Note that the server is serving a read or write, so the scrubber
+   * waits until it is idle again.
+   */
+  void foreground() {
+    lastForeground = System.nanoTime();
+  }
+
+  /**
+   * Scrub every chunk in passes, until interrupted.
+   */
+  @Override
+  public void run() {
+    try
+    {
+      while ( true )
+      {
+        Map<Long, int[]> chunks = metadata.getChunkSequences();
+        for ( Entry<Long, int[]> entry : chunks.entrySet() )
+        {
+          for ( int sequence : entry.getValue() )
+          {
+            scrub( entry.getKey(), sequence );
+          }
+        }
+        metadata.scrubPassCompleted();
+        LOG.debug( "Finished a scrubbing pass of the chunks of "
+            + chunks.size() + " file(s)." );
+        Thread.sleep( interval );
+      }
+    } catch ( InterruptedException e )
+    {
+      LOG.debug( "The scrubber has been interrupted." );
+    }
+  }
+
+  /**
+   * Validate the integrity of a single chunk once the server is idle,
+   * and report it if it is corrupt.
+   *
+   * The chunk is only reported when its hash does not match, and it is
+   * still held at the version it had before it was read. A chunk that
+   * could not be read, or was written while it was being read, is left
+   * for the next pass.
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void scrub(long handle, int sequence) throws InterruptedException {
+    awaitIdle();
+    ChunkInformation info = metadata.getChunkInformation( handle, sequence );
+    if ( info == null )
+    {
+      // removed since the pass began
+      return;
+    }
+    int version = info.getVersion();
+    long length;
+    boolean valid;
+    try ( StoredChunk chunk = store.open( handle, sequence ) )
+    {
+      length = chunk.getLength();
+      valid = FileUtilities.validateSHA1Integrity( chunk.map() );
+    } catch ( IOException e )
+    {
+      LOG.error( "Unable to scrub chunk file: \'" + handle + "_chunk"
+          + sequence + "\' " + e.getMessage() );
+      return;
+    }
+    if ( !valid && isChanged( handle, sequence, version ) )
+    {
+      LOG.debug( "Chunk " + sequence + " of file handle " + handle
+          + " was written while it was scrubbed, and is left for the next"
+          + " pass." );
+      throttle( length );
+      return;
+    }
+    metadata.scrubbed( length, !valid );
+    if ( !valid )
+    {
+      LOG.info( "The scrubber found chunk " + sequence + " of file handle "
+          + handle + " to be corrupt." );
+      handler.corrupt( handle, sequence );
+    }
+    throttle( length );
+  }
+
+  /**
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param version of the chunk before it was read
+   * @return true if the chunk has been removed, or written again, since
+   *         it was read
+   */
+  private boolean isChanged(long handle, int sequence, int version) {
+    ChunkInformation info = metadata.getChunkInformation( handle, sequence );
+    return info == null || info.getVersion() != version;
+  }
+
+  /**
+   * Wait until there have been no reads or writes for a while.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void awaitIdle() throws InterruptedException {
+    while ( System.nanoTime() - lastForeground < IDLE_MILLIS * 1_000_000 )
+    {
+      Thread.sleep( IDLE_MILLIS );
+    }
+  }
+
+  /**
+   * Wait long enough that reading the bytes keeps the scrubber within
+   * its rate. Time spent idle is not saved up for a burst later.
+   *
+   * @param bytes that have just been read
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void throttle(long bytes) throws InterruptedException {
+    long now = System.nanoTime();
+    next = Math.max( next, now ) + bytes * 1_000_000_000 / rate;
+    long wait = next - now;
+    if ( wait > 0 )
+    {
+      Thread.sleep( wait / 1_000_000, ( int ) ( wait % 1_000_000 ) );
+    }
+  }
+
+  /**
+   * Handles the chunks that the scrubber finds to be corrupt.
+   *
+   * @author stock
+   *
+   */
+  interface CorruptChunkHandler {
+
+    /**
+     *
+     * @param handle of the file
+     * @param sequence of the corrupt chunk
+     */
+    void corrupt(long handle, int sequence);
+  }
+}
@@ -3,20 +3,31 @@ package cs555.system.node;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Timer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import cs555.system.heartbeat.ServerHeartbeatManager;
 import cs555.system.metadata.ServerMetadata;
 import cs555.system.metadata.ServerMetadata.ChunkInformation;
+import cs555.system.store.ChunkCache;
+import cs555.system.store.ChunkStore;
+import cs555.system.store.FileChunkStore;
+import cs555.system.store.SegmentChunkStore;
+import cs555.system.store.StoredChunk;
+import cs555.system.store.VerificationCache;
 import cs555.system.transport.TCPConnection;
+import cs555.system.transport.TCPCreditWindow;
 import cs555.system.transport.TCPServerThread;
 import cs555.system.util.ConnectionUtilities;
 import cs555.system.util.Constants;
+import cs555.system.util.ExecutionUtilities;
 import cs555.system.util.FileUtilities;
-import cs555.system.util.FileUtilities.ChunkIntegrityInformation;
 import cs555.system.util.Logger;
 import cs555.system.util.Properties;
 import cs555.system.wireformats.Event;
@@ -26,6 +37,8 @@ import cs555.system.wireformats.ReadChunkRequest;
 import cs555.system.wireformats.ReadChunkResponse;
 import cs555.system.wireformats.RedirectChunkRequest;
 import cs555.system.wireformats.RegisterResponse;
+import cs555.system.wireformats.ServerTable;
+import cs555.system.wireformats.WriteChunkCredit;
 import cs555.system.wireformats.WriteChunkRequest;
 
 /**
@@ -46,12 +59,40 @@ public class ChunkServer implements Node, Protocol {
 
   private static final String HELP = "help";
 
+  private static final String CACHE = "cache";
+
+  private static final boolean CUT_THROUGH = Properties.SYSTEM_WRITE_FORWARDING
+      .equals( Constants.FORWARD_TYPE_CUT_THROUGH );
+
   private TCPConnection controllerConnection;
 
   private final ConnectionUtilities cachedConnections;
 
+  /**
+   * Queues that chunks are forwarded from, by identifier of the next
+   * server, when write credits are enabled
+   */
+  private final Map<Integer, Executor> forwarders;
+
   private final ServerMetadata metadata;
 
+  private final ChunkStore store;
+
+  /**
+   * Recently read chunks, or null if the cache is disabled
+   */
+  private final ChunkCache cache;
+
+  /**
+   * Recently validated chunks, or null if every read is validated
+   */
+  private final VerificationCache verifications;
+
+  /**
+   * Background validation of the chunks, or null if disabled
+   */
+  private final ChunkScrubber scrubber;
+
   private String host;
 
   private int port;
@@ -63,12 +104,55 @@ public class ChunkServer implements Node, Protocol {
    * 
    * @param host
    * @param port
+   * @throws IOException if the chunk store could not be opened
    */
-  private ChunkServer(String host, int port) {
+  private ChunkServer(String host, int port) throws IOException {
     this.metadata = new ServerMetadata( host + ":" + Integer.toString( port ) );
     this.cachedConnections = new ConnectionUtilities();
+    this.forwarders = new HashMap<>();
     this.host = host;
     this.port = port;
+    this.store = openStore();
+    long cacheSize = Long.parseLong( Properties.SYSTEM_STORE_CACHE_SIZE ) << 20;
+    this.cache = cacheSize > 0 ? new ChunkCache( cacheSize,
+        Properties.SYSTEM_STORE_CACHE_MEMORY
+            .equals( Constants.CACHE_MEMORY_DIRECT ) )
+        : null;
+    long window =
+        Long.parseLong( Properties.SYSTEM_STORE_VERIFICATION_WINDOW ) * 1000;
+    this.verifications = window > 0 ? new VerificationCache( window ) : null;
+    long scrubRate = Long.parseLong( Properties.SYSTEM_SCRUB_RATE ) << 10;
+    this.scrubber = scrubRate > 0 && Properties.SYSTEM_DESIGN_SCHEMA
+        .equals( Constants.SYSTEM_TYPE_REPLICATION )
+            ? new ChunkScrubber( metadata, store, this::reportCorruptChunk,
+                scrubRate,
+                Long.parseLong( Properties.SYSTEM_SCRUB_INTERVAL ) * 1000 )
+            : null;
+    if ( scrubber != null )
+    {
+      metadata.enableScrubProgress();
+    }
+  }
+
+  /**
+   * Open the chunk store configured with
+   * {@link Properties#SYSTEM_STORE_TYPE}.
+   * 
+   * @return the store to write and read chunks from
+   * @throws IOException if the store could not be opened
+   */
+  private ChunkStore openStore() throws IOException {
+    boolean mapped =
+        Properties.SYSTEM_STORE_TYPE.equals( Constants.STORE_TYPE_MAPPED );
+    if ( mapped
+        || Properties.SYSTEM_STORE_TYPE.equals( Constants.STORE_TYPE_SEGMENT ) )
+    {
+      return new SegmentChunkStore( FileUtilities.getStoreLocation( this ),
+          Long.parseLong( Properties.SYSTEM_STORE_SEGMENT_SIZE ) << 20,
+          Double.parseDouble( Properties.SYSTEM_STORE_COMPACTION_THRESHOLD ),
+          mapped );
+    }
+    return new FileChunkStore( this );
   }
 
   /**
@@ -95,7 +179,8 @@ public class ChunkServer implements Node, Protocol {
    */
   public static void main(String[] args) {
     LOG.info( "Chunk server starting up at: " + new Date() );
-    try ( ServerSocket serverSocket = new ServerSocket( 0 ) )
+    try ( ServerSocket serverSocket =
+        ConnectionUtilities.openServerSocket( 0 ) )
     {
       ChunkServer node =
           new ChunkServer( InetAddress.getLocalHost().getHostName(),
@@ -114,6 +199,11 @@ public class ChunkServer implements Node, Protocol {
       final int interval = 30 * 1000; // 30 seconds in milliseconds
       timer.schedule( serverHeartbeatManager, 1000, interval );
 
+      if ( node.scrubber != null )
+      {
+        ExecutionUtilities.startThread( node.scrubber, "Scrubber Thread" );
+      }
+
       node.interact();
     } catch ( IOException e )
     {
@@ -144,9 +234,16 @@ public class ChunkServer implements Node, Protocol {
           running = false;
           break;
 
+        case CACHE :
+          System.out.println( "\n" + ( cache == null
+              ? "The chunk cache is disabled." : cache.toString() ) + "\n" );
+          break;
+
         case HELP :
           System.out.println(
-              "\n\t" + EXIT + "\t: leave the system prior to starting.\n" );
+              "\n\t" + EXIT + "\t: leave the system prior to starting.\n\n\t"
+                  + CACHE + "\t: show the hits and misses of the chunk "
+                  + "cache.\n" );
           break;
 
         default :
@@ -172,7 +269,7 @@ public class ChunkServer implements Node, Protocol {
         break;
 
       case Protocol.WRITE_CHUNK_REQUEST :
-        writeChunkHandler( event );
+        writeChunkHandler( event, connection );
         break;
 
       case Protocol.READ_CHUNK_REQUEST :
@@ -181,6 +278,11 @@ public class ChunkServer implements Node, Protocol {
 
       case Protocol.REDIRECT_CHUNK_REQUEST :
         redirectChunkHandler( event );
+        break;
+
+      case Protocol.SERVER_TABLE :
+        metadata.getRegistry().update( ( ( ServerTable ) event ).getTable() );
+        break;
     }
   }
 
@@ -190,50 +292,44 @@ public class ChunkServer implements Node, Protocol {
    * another server.
    * 
    * The integrity information is not removed when redirecting chunks
-   * from failed server. Instead, the entire chunk is sent.
+   * from failed server. Instead, the entire chunk is sent directly from
+   * disk to the destination.
    * 
    * @param event
    */
-  private synchronized void redirectChunkHandler(Event event) {
+  private void redirectChunkHandler(Event event) {
     RedirectChunkRequest redirectRequest = ( RedirectChunkRequest ) event;
-    String filename = redirectRequest.getFilename();
+    long handle = redirectRequest.getHandle();
     int sequence = redirectRequest.getSequence();
 
-    Path path = FileUtilities.getPathLocation( this, filename, sequence );
-    byte[] message = FileUtilities.readChunkSequence( path );
-    if ( message != null )
+    try ( StoredChunk chunk = store.open( handle, sequence ) )
     {
-      try
-      {
-        String[] destination =
-            redirectRequest.getDestinationDetails().split( ":" );
+      String[] destination =
+          redirectRequest.getDestinationDetails().split( ":" );
 
-        TCPConnection connection =
-            cachedConnections.cacheConnection( this, destination, false );
+      TCPConnection connection = cacheConnection( destination );
 
-        ChunkInformation info =
-            metadata.getChunkInformation( filename, sequence );
+      ChunkInformation info =
+          metadata.getChunkInformation( handle, sequence );
 
-        WriteChunkRequest writeRequest = new WriteChunkRequest( filename,
-            sequence, new byte[][] { message }, info.getLastModifiedTime(),
-            info.getVersion(), new String[] { "" } );
+      WriteChunkRequest writeRequest = new WriteChunkRequest( handle,
+          sequence, null, info.getLastModifiedTime(), info.getVersion(),
+          new int[] { Constants.NO_SERVER } );
 
-        writeRequest
-            .setReplicationPosition( redirectRequest.getReplicationPosition() );
+      writeRequest
+          .setReplicationPosition( redirectRequest.getReplicationPosition() );
 
-        connection.getTCPSender().sendData( writeRequest.getBytes() );
-        cachedConnections.setAbleToClear( true );
-      } catch ( NumberFormatException | IOException e )
-      {
-        LOG.error( "Unable to forward the request for " + filename + ", "
-            + e.getMessage() );
-        e.printStackTrace();
-      }
-    } else
+      int length = ( int ) chunk.getLength();
+      connection.getCredits().acquire();
+      connection.getTCPSender().sendFile(
+          writeRequest.getBytesBeforeMessage( length ), chunk.getChannel(),
+          chunk.getPosition(), length, writeRequest.getBytesAfterMessage() );
+      setAbleToClear();
+    } catch ( NumberFormatException | IOException e )
     {
-      LOG.error(
-          "Chunk was not found on source node, and can not be forwarded to"
-              + " the destination." );
+      LOG.error( "Unable to forward the request for file handle " + handle
+          + ", " + e.getMessage() );
+      e.printStackTrace();
     }
   }
 
@@ -245,44 +341,74 @@ public class ChunkServer implements Node, Protocol {
    * computed in slices with SHA-1, and prepend to the beginning. This
    * only occurs on the first chunk server.
    * 
+   * With cut-through forwarding, the chunk is forwarded as soon as it
+   * is received, and every server on the path computes the integrity
+   * of the chunk itself. The next server then writes its replica while
+   * this one is hashing and writing, rather than after.
+   * 
+   * When write credits are enabled, a credit is granted back to the
+   * sender once the chunk has been written and forwarded, so it may
+   * send another chunk.
+   * 
+   * Requests decoded as views of their frame are released once they
+   * have been written and forwarded, whichever finishes last.
+   * 
    * @param event
+   * @param connection the chunk was received on
    */
-  private void writeChunkHandler(Event event) {
+  private void writeChunkHandler(Event event, TCPConnection connection) {
+    foreground();
     WriteChunkRequest request = ( WriteChunkRequest ) event;
-    String fileStringInfo = ( new StringBuilder() )
-        .append( request.getFilename() ).append( ", sequence: " )
+    // forwarding moves the request on to the next position
+    int position = request.getReplicationPosition();
+    String fileStringInfo = ( new StringBuilder() ).append( "file handle " )
+        .append( request.getHandle() ).append( ", sequence: " )
         .append( request.getSequence() ).append( ", replication: " )
-        .append( request.getReplicationPosition() ).append( " to disk. " )
-        .toString();
+        .append( position ).append( " to disk. " ).toString();
+    AtomicInteger pending = new AtomicInteger( 2 );
+    Runnable done = () -> {
+      if ( pending.decrementAndGet() == 0 )
+      {
+        request.release();
+        grantCredit( connection );
+      }
+    };
+    if ( CUT_THROUGH )
+    {
+      forwardIncomingChunk( request, done );
+    }
     try
     {
-      int messageIndex = Properties.SYSTEM_DESIGN_SCHEMA.equals(
-          Constants.SYSTEM_TYPE_ERASURE ) ? request.getReplicationPosition()
-              : 0;
+      // a request holding a single shard carries only this server's shard
+      int messageIndex = Properties.SYSTEM_DESIGN_SCHEMA
+          .equals( Constants.SYSTEM_TYPE_ERASURE )
+          && request.getNumberOfShards() > 1 ? position : 0;
       byte[] message = request.getMessage( messageIndex );
       if ( message.length == Constants.CHUNK_SIZE )
       {
         message = FileUtilities.addSHA1Integrity( message );
-        request.setMessage( new byte[][] { message } );
+        // with cut-through, the request may still be being forwarded
+        if ( !CUT_THROUGH )
+        {
+          request.setMessage( new byte[][] { message } );
+        }
       }
 
-      Path path = FileUtilities.getPathLocation( this, request.getFilename(),
-          request.getSequence() );
-
       long lastModifiedDate = request.getLastModifiedDate();
 
       ChunkInformation info = metadata
-          .getChunkInformation( request.getFilename(), request.getSequence() );
+          .getChunkInformation( request.getHandle(), request.getSequence() );
       if ( info != null )
       {
-        if ( !FileUtilities.messageIntegrityMatchesDisk( path, message )
+        if ( !integrityMatchesStore( request.getHandle(),
+            request.getSequence(), message )
             && message.length > Constants.CHUNK_SIZE )
         {
           info.incrementVersion();
           info.setLastModifiedDate( lastModifiedDate );
 
-          Files.createDirectories( path.getParent() );
-          Files.write( path, message );
+          store.write( request.getHandle(), request.getSequence(), message );
+          invalidate( request.getHandle(), request.getSequence() );
           LOG.info(
               "Finished writing an updated version of " + fileStringInfo );
         } else
@@ -292,13 +418,12 @@ public class ChunkServer implements Node, Protocol {
         }
       } else
       {
-        Files.createDirectories( path.getParent() );
-        Files.write( path, message );
+        store.write( request.getHandle(), request.getSequence(), message );
+        invalidate( request.getHandle(), request.getSequence() );
         LOG.info( "Finished writing " + fileStringInfo );
 
-        metadata.update( request.getFilename(), request.getSequence(),
-            request.getReplicationPosition(), lastModifiedDate,
-            request.getVersion() );
+        metadata.update( request.getHandle(), request.getSequence(),
+            position, lastModifiedDate, request.getVersion() );
       }
     } catch ( IOException e )
     {
@@ -306,37 +431,217 @@ public class ChunkServer implements Node, Protocol {
       e.printStackTrace();
     }
 
-    forwardIncomingChunk( request );
+    if ( !CUT_THROUGH )
+    {
+      forwardIncomingChunk( request, done );
+    }
+    done.run();
+  }
+
+  /**
+   * Grant a write credit back to the sender of a chunk, if enabled.
+   * 
+   * @param connection the chunk was received on
+   */
+  private void grantCredit(TCPConnection connection) {
+    if ( TCPCreditWindow.isEnabled() )
+    {
+      try
+      {
+        connection.getTCPSender().sendEvent( new WriteChunkCredit( 1 ) );
+      } catch ( IOException e )
+      {
+        LOG.debug( "Unable to grant a write credit. " + e.getMessage() );
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param message with integrity information
+   * @return true if the stored chunk has the same integrity information
+   *         as the message, false otherwise or if it could not be read
+   */
+  private boolean integrityMatchesStore(long handle, int sequence,
+      byte[] message) {
+    try ( StoredChunk original = store.open( handle, sequence ) )
+    {
+      return FileUtilities.messageIntegrityMatchesDisk( original, message );
+    } catch ( IOException e )
+    {
+      LOG.error( "Unable to read chunk file: \'" + handle + "_chunk"
+          + sequence + "\' " + e.getMessage() );
+      return false;
+    }
+  }
+
+  /**
+   * Remove the chunk from the cache and forget its validation, if
+   * enabled, once it has been written or found to be corrupt.
+   * 
+   * @param handle of the file
+   * @param sequence of the chunk
+   */
+  private void invalidate(long handle, int sequence) {
+    if ( cache != null )
+    {
+      cache.invalidate( handle, sequence );
+    }
+    if ( verifications != null )
+    {
+      verifications.invalidate( handle, sequence );
+    }
+  }
+
+  /**
+   * Validate the integrity of a chunk, unless it was validated recently
+   * and has not changed since.
+   * 
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param chunk opened from the store
+   * @param content of the chunk mapped into memory, which is left
+   *        unchanged
+   * @return true if the chunk is valid, false otherwise
+   * @throws IOException if the chunk could not be read
+   */
+  private boolean validate(long handle, int sequence, StoredChunk chunk,
+      ByteBuffer content) throws IOException {
+    if ( verifications == null )
+    {
+      return FileUtilities.validateSHA1Integrity( content.duplicate() );
+    }
+    long lastModified = chunk.getLastModified();
+    if ( verifications.isValid( handle, sequence, chunk, lastModified ) )
+    {
+      LOG.debug( "The chunk was validated recently, and is unchanged." );
+      return true;
+    }
+    if ( FileUtilities.validateSHA1Integrity( content.duplicate() ) )
+    {
+      verifications.validated( handle, sequence, chunk, lastModified );
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Lease a connection to another chunk server, or retrieve the one
+   * leased previously.
+   * 
+   * Only the cached connections are guarded by the server, so no lock
+   * is held while waiting for write credits on the connection. Two
+   * servers forwarding to each other would otherwise each wait for a
+   * credit the other is unable to grant.
+   * 
+   * @param address host and port of the chunk server
+   * @return the cached connection
+   * @throws IOException
+   */
+  private synchronized TCPConnection cacheConnection(String[] address)
+      throws IOException {
+    return cachedConnections.cacheConnection( this, address );
+  }
+
+  /**
+   * Allow the cached connections to be released once a chunk has been
+   * sent.
+   * 
+   */
+  private synchronized void setAbleToClear() {
+    cachedConnections.setAbleToClear( true );
+  }
+
+  /**
+   * Retrieve the queue that chunks are forwarded to a server from.
+   * 
+   * When write credits are enabled, each server is given a queue with
+   * its own thread, so the handler never waits for a credit from the
+   * next server. Two servers forwarding to each other would otherwise
+   * each hold the handler that grants the credit the other waits for.
+   * Otherwise, the chunk is sent by the handler.
+   * 
+   * @param identifier of the next server
+   * @return the executor to forward the chunk on
+   */
+  private synchronized Executor forwarder(int identifier) {
+    if ( !TCPCreditWindow.isEnabled() )
+    {
+      return Runnable::run;
+    }
+    return forwarders.computeIfAbsent( identifier,
+        i -> Executors.newSingleThreadExecutor( task -> ExecutionUtilities
+            .newThread( task, "Forward Thread " + i ) ) );
   }
 
   /**
    * Increment the position within the request and forward to the next
    * server if applicable.
    * 
+   * If the request is still a view of the frame it was received in, the
+   * frame is sent as it is, with the position updated in place.
+   * 
+   * If the request could not be forwarded, the controller is told that
+   * every server after this one is missing the chunk, so that a replica
+   * is redirected to each of them.
+   * 
    * @param request to forward
+   * @param done run once the request has been forwarded, or has failed
    */
-  private synchronized void forwardIncomingChunk(WriteChunkRequest request) {
+  private void forwardIncomingChunk(WriteChunkRequest request,
+      Runnable done) {
     request.incrementReplicationPosition();
-    if ( request.getReplicationPosition() < request.getRoutingPath().length )
+    int position = request.getReplicationPosition();
+    int[] routes = request.getRoutingPath();
+    if ( position >= routes.length )
     {
+      done.run();
+      return;
+    }
+    forwarder( routes[ position ] ).execute( () -> {
       try
       {
         String[] nextChunkServer =
-            request.getRoutingPath()[ request.getReplicationPosition() ]
-                .split( ":" );
+            metadata.getRegistry().getAddress( routes[ position ] );
+        if ( nextChunkServer == null )
+        {
+          throw new IOException(
+              "The chunk server " + routes[ position ] + " is not known." );
+        }
 
-        TCPConnection connection =
-            cachedConnections.cacheConnection( this, nextChunkServer, false );
+        TCPConnection connection = cacheConnection( nextChunkServer );
 
-        connection.getTCPSender().sendData( request.getBytes() );
-        cachedConnections.setAbleToClear( true );
+        connection.getCredits().acquire();
+        ByteBuffer frame = request.getFrame();
+        if ( frame != null )
+        {
+          connection.getTCPSender().sendFrame( frame );
+        } else
+        {
+          connection.getTCPSender().sendEvent( request );
+        }
+        setAbleToClear();
       } catch ( NumberFormatException | IOException e )
       {
-        LOG.error( "Unable to forward the request for " + request.getFilename()
-            + ", " + e.getMessage() );
-        e.printStackTrace();
+        LOG.error( "Unable to forward the request for file handle "
+            + request.getHandle() + ", " + e.getMessage() );
+        for ( int i = position; i < routes.length; ++i )
+        {
+          String destination =
+              metadata.getRegistry().getConnectionDetails( routes[ i ] );
+          if ( destination != null )
+          {
+            requestReplica( destination, request.getHandle(),
+                request.getSequence() );
+          }
+        }
+      } finally
+      {
+        done.run();
       }
-    }
+    } );
   }
 
   /**
@@ -345,61 +650,182 @@ public class ChunkServer implements Node, Protocol {
    * 
    * The integrity of a chunk is recomputing using SHA-1 has for the
    * original chunk slices and comparing the array of hashes to the
-   * persisted value on disk.
+   * persisted value on disk. The chunk is then transferred from disk to
+   * the client without being copied onto the heap.
    * 
    * If it is detected that a chunk is corrupt, then the controller will
    * be messaged.
    * 
+   * When the chunk cache is enabled, validated chunks are cached and
+   * later reads are sent from memory without reading the store or
+   * validating the chunk again. Otherwise, a chunk that was validated
+   * within the verification window, and is unchanged on disk, is not
+   * hashed again.
+   * 
    * @param event
    * @param connection
    */
   private void readChunkHandler(Event event, TCPConnection connection) {
+    foreground();
     ReadChunkRequest request = ( ReadChunkRequest ) event;
-    String filename = request.getFilename();
+    long handle = request.getHandle();
     int sequence = request.getSequence();
 
-    byte[] message = FileUtilities.readChunkSequence(
-        FileUtilities.getPathLocation( this, filename, sequence ) );
+    boolean isErasure = Properties.SYSTEM_DESIGN_SCHEMA
+        .equals( Constants.SYSTEM_TYPE_ERASURE );
 
-    ReadChunkResponse response;
-    if ( Properties.SYSTEM_DESIGN_SCHEMA
-        .equals( Constants.SYSTEM_TYPE_ERASURE ) )
+    ByteBuffer cached = cache == null ? null : cache.get( handle, sequence );
+    if ( cached != null )
     {
-      response = new ReadChunkResponse( filename, message, Constants.SUCCESS );
-    } else
-    {
-      ChunkIntegrityInformation content =
-          FileUtilities.validateSHA1Integrity( message );
-      if ( content.isValidChunk() )
+      LOG.debug( "The chunk read was served from the cache." );
+      try
       {
-        response = new ReadChunkResponse( filename, content.getMessage(),
-            Constants.SUCCESS );
-      } else
+        sendCachedChunk( connection, request.getRequestId(), handle,
+            cached );
+      } finally
       {
-        metadata.removeChunkInformation( filename, sequence );
-        response = new ReadChunkResponse( filename, Constants.FAILURE );
-        LOG.debug(
-            "Sending FailureChunkRead message to controller to fix failure." );
-        FailureChunkRead failureRequest = new FailureChunkRead(
-            this.getHost() + ":" + this.getPort(), filename, sequence );
-        try
-        {
-          controllerConnection.getTCPSender()
-              .sendData( failureRequest.getBytes() );
-        } catch ( IOException e )
+        cache.release( cached );
+      }
+      return;
+    }
+    long generation = cache == null ? 0 : cache.getGeneration();
+
+    try ( StoredChunk chunk = store.open( handle, sequence ) )
+    {
+      ByteBuffer content =
+          isErasure && cache == null ? null : chunk.map();
+      if ( isErasure || validate( handle, sequence, chunk, content ) )
+      {
+        LOG.debug( "The status of the chunk read is: successful." );
+        long position = isErasure ? 0 : FileUtilities.INTEGRITY_SIZE;
+        if ( cache != null )
         {
-          LOG.error( "Unable to send request message to controller. "
-              + e.getMessage() );
-          e.printStackTrace();
+          cache.put( handle, sequence,
+              content.position( ( int ) position ), generation );
         }
+        sendChunk( connection, request.getRequestId(), handle, chunk,
+            position );
+        return;
       }
-      LOG.debug( "The status of the chunk read is: "
-          + ( response.getStatus() == Constants.SUCCESS ? "successful."
-              : "failed." ) );
+    } catch ( IOException e )
+    {
+      LOG.error( "Unable to read chunk file: \'" + handle + "_chunk"
+          + sequence + "\' " + e.getMessage() );
+    }
+    LOG.debug( "The status of the chunk read is: failed." );
+
+    if ( !isErasure )
+    {
+      reportCorruptChunk( handle, sequence );
+    }
+    try
+    {
+      connection.getTCPSender().sendEvent( new ReadChunkResponse(
+          request.getRequestId(), handle, Constants.FAILURE ) );
+    } catch ( IOException e )
+    {
+      LOG.error(
+          "Unable to send response message to client. " + e.getMessage() );
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Forget a chunk that is corrupt, and message the controller so that
+   * a legitimate copy is redirected to this server.
+   * 
+   * @param handle of the file
+   * @param sequence of the chunk
+   */
+  private void reportCorruptChunk(long handle, int sequence) {
+    metadata.removeChunkInformation( handle, sequence );
+    invalidate( handle, sequence );
+    requestReplica( this.getHost() + ":" + this.getPort(), handle,
+        sequence );
+  }
+
+  /**
+   * Message the controller so that a legitimate copy of a chunk is
+   * redirected to the server that is missing it.
+   * 
+   * @param destination host:port of the server missing the chunk
+   * @param handle of the file
+   * @param sequence of the chunk
+   */
+  private void requestReplica(String destination, long handle,
+      int sequence) {
+    LOG.debug(
+        "Sending FailureChunkRead message to controller to fix failure." );
+    FailureChunkRead failureRequest =
+        new FailureChunkRead( destination, handle, sequence );
+    try
+    {
+      controllerConnection.getTCPSender().sendEvent( failureRequest );
+    } catch ( IOException e )
+    {
+      LOG.error( "Unable to send request message to controller. "
+          + e.getMessage() );
+      e.printStackTrace();
     }
+  }
+
+  /**
+   * Hold back the scrubber, if enabled, while reads and writes are
+   * being served.
+   */
+  private void foreground() {
+    if ( scrubber != null )
+    {
+      scrubber.foreground();
+    }
+  }
+
+  /**
+   * Send a successful response to the client with the chunk content
+   * from the <code>position</code> to the end of the chunk.
+   * 
+   * @param connection to the client
+   * @param requestId of the request being responded to
+   * @param handle of the file
+   * @param chunk opened from the store
+   * @param position of the message within the chunk
+   */
+  private void sendChunk(TCPConnection connection, int requestId,
+      long handle, StoredChunk chunk, long position) {
+    try
+    {
+      int length = ( int ) ( chunk.getLength() - position );
+      ReadChunkResponse response =
+          new ReadChunkResponse( requestId, handle, Constants.SUCCESS );
+      connection.getTCPSender().sendFile(
+          response.getBytesBeforeMessage( length ), chunk.getChannel(),
+          chunk.getPosition() + position, length, new byte[ 0 ] );
+      LOG.debug( "Sent ReadChunkRequest() message to client." );
+    } catch ( IOException e )
+    {
+      LOG.error(
+          "Unable to send response message to client. " + e.getMessage() );
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Send a successful response to the client with the chunk content
+   * held by the cache.
+   * 
+   * @param connection to the client
+   * @param requestId of the request being responded to
+   * @param handle of the file
+   * @param content of the chunk's message from the cache
+   */
+  private void sendCachedChunk(TCPConnection connection, int requestId,
+      long handle, ByteBuffer content) {
     try
     {
-      connection.getTCPSender().sendData( response.getBytes() );
+      ReadChunkResponse response =
+          new ReadChunkResponse( requestId, handle, Constants.SUCCESS );
+      connection.getTCPSender().sendBuffer(
+          response.getBytesBeforeMessage( content.remaining() ), content );
       LOG.debug( "Sent ReadChunkRequest() message to client." );
     } catch ( IOException e )
     {
@@ -8,9 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -18,6 +16,7 @@ import cs555.system.metadata.ClientMetadata;
 import cs555.system.transport.TCPConnection;
 import cs555.system.util.ConnectionUtilities;
 import cs555.system.util.Constants;
+import cs555.system.util.ExecutionUtilities;
 import cs555.system.util.Logger;
 import cs555.system.util.Properties;
 import cs555.system.wireformats.Event;
@@ -28,6 +27,7 @@ import cs555.system.wireformats.ReadChunkResponse;
 import cs555.system.wireformats.ReadFileRequest;
 import cs555.system.wireformats.ReadFileResponse;
 import cs555.system.wireformats.RegisterResponse;
+import cs555.system.wireformats.ServerTable;
 import cs555.system.wireformats.WriteFileResponse;
 
 /**
@@ -51,8 +51,6 @@ public class Client implements Node {
 
   private static final String READ = "read";
 
-  private final Map<String, ClientReaderThread> readers;
-
   private ClientSender sender;
 
   private TCPConnection controllerConnection;
@@ -72,7 +70,6 @@ public class Client implements Node {
    * @param port
    */
   private Client(String host, int port) {
-    this.readers = new HashMap<>();
     this.metadata = new ClientMetadata();
     this.host = host;
     this.port = port;
@@ -119,7 +116,7 @@ public class Client implements Node {
       node.controllerConnection = ConnectionUtilities.registerNode( node,
           Constants.CLIENT_ID, Properties.CONTROLLER_HOST,
           Integer.valueOf( Properties.CONTROLLER_PORT ) );
-      node.sender = new ClientSender( node );
+      node.sender = new ClientSender( node, node.metadata );
       
       node.interact();
     } catch ( IOException e )
@@ -222,7 +219,7 @@ public class Client implements Node {
       try
       {
         controllerConnection.getTCPSender()
-            .sendData( new ReadFileRequest( filename ).getBytes() );
+            .sendEvent( new ReadFileRequest( filename ) );
       } catch ( IOException e )
       {
         LOG.error(
@@ -266,7 +263,7 @@ public class Client implements Node {
     try
     {
       controllerConnection.getTCPSender()
-          .sendData( new ListFileRequest().getBytes() );
+          .sendEvent( new ListFileRequest() );
     } catch ( IOException e )
     {
       LOG.error(
@@ -302,30 +299,34 @@ public class Client implements Node {
         break;
 
       case Protocol.READ_CHUNK_RESPONSE :
-        readChunkResponseHandler( event );
+        readChunkResponseHandler( event, connection );
         break;
 
       case Protocol.FAILURE_CLIENT_NOTIFICATION :
         metadata.clearReadableFiles();
         break;
+
+      case Protocol.SERVER_TABLE :
+        metadata.getRegistry().update( ( ( ServerTable ) event ).getTable() );
+        break;
     }
   }
 
   /**
-   * Process an incoming chunk from a given chunk server.
+   * Process an incoming chunk from a given chunk server by completing
+   * the request that is waiting for it on the connection.
    * 
    * @param event the object containing message details
+   * @param connection the response was received on
    */
-  private void readChunkResponseHandler(Event event) {
+  private void readChunkResponseHandler(Event event,
+      TCPConnection connection) {
     ReadChunkResponse response = ( ReadChunkResponse ) event;
-    ClientReaderThread reader = readers.get( response.getFilename() );
-    if ( reader == null )
+    if ( !connection.getRequestTable().complete( response.getRequestId(),
+        response ) )
     {
-      LOG.error( "Unable to retrieve reader thread to obtain file." );
-      return;
+      LOG.error( "Unable to match the chunk response to a pending request." );
     }
-    reader.setReadChunkResponse( response );
-    reader.unlock();
   }
 
   /**
@@ -339,9 +340,8 @@ public class Client implements Node {
     ReadFileResponse response = ( ( ReadFileResponse ) event );
     ClientReaderThread reader =
         new ClientReaderThread( this, metadata, response );
-    readers.put( response.getFilename(), reader );
     LOG.debug( "Starting client reader thread." );
-    ( new Thread( reader, "Client Reader" ) ).start();
+    ExecutionUtilities.startThread( reader, "Client Reader" );
   }
 
   /**
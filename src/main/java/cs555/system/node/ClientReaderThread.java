@@ -8,16 +8,26 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import cs555.system.exception.ClientReadException;
 import cs555.system.metadata.ClientMetadata;
 import cs555.system.transport.TCPConnection;
+import cs555.system.transport.TCPRequestTable;
 import cs555.system.util.ConnectionUtilities;
 import cs555.system.util.Constants;
 import cs555.system.util.Logger;
 import cs555.system.util.ProgressBar;
 import cs555.system.util.Properties;
 import cs555.system.util.ReedSolomonUtilities;
+import cs555.system.wireformats.Event;
 import cs555.system.wireformats.ReadChunkRequest;
 import cs555.system.wireformats.ReadChunkResponse;
 import cs555.system.wireformats.ReadFileResponse;
@@ -27,6 +37,11 @@ import erasure.ReedSolomon;
  * Client reader responsible for sending requests to servers to obtain
  * chunks for a specified file.
  * 
+ * Requests for the chunks ahead of the one being assembled are kept in
+ * flight, so that many chunks are read from the chunk servers at once.
+ * Responses are matched to their request by the request table of the
+ * connection, and may arrive in any order.
+ * 
  * @author stock
  *
  */
@@ -34,10 +49,6 @@ public class ClientReaderThread implements Runnable {
 
   private static final Logger LOG = Logger.getInstance();
 
-  private final Object lock;
-
-  private ReadChunkResponse readChunkResponse;
-
   private ReadFileResponse readFileResponse;
 
   private final ClientMetadata metadata;
@@ -54,33 +65,11 @@ public class ClientReaderThread implements Runnable {
    */
   protected ClientReaderThread(Client node, ClientMetadata metadata,
       ReadFileResponse readFileResponse) {
-    this.lock = new Object();
     this.node = node;
     this.metadata = metadata;
     this.readFileResponse = readFileResponse;
   }
 
-  /**
-   * Set the ReadChunkResponse() from the chunk server
-   * 
-   * @param response
-   */
-  public void setReadChunkResponse(ReadChunkResponse response) {
-    this.readChunkResponse = response;
-  }
-
-  /**
-   * Wake the sender thread upon receiving routing information for a
-   * given chunk.
-   * 
-   */
-  protected void unlock() {
-    synchronized ( lock )
-    {
-      lock.notify();
-    }
-  }
-
   /**
    * Continuously send requests to the chunk servers for chunk data.
    * Writing to disk if all chunks are successfully returned.
@@ -91,7 +80,7 @@ public class ClientReaderThread implements Runnable {
     SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" );
     LOG.info(
         "Started reading file at " + sdf.format( System.currentTimeMillis() ) );
-    String[][] chunkServers = readFileResponse.getChunks();
+    int[][] chunkServers = readFileResponse.getChunks();
     ConnectionUtilities connections = new ConnectionUtilities();
 
     byte[][] bytes = processIncomingChunks( chunkServers, connections );
@@ -124,175 +113,290 @@ public class ClientReaderThread implements Runnable {
     LOG.info( "Finished reading file at "
         + sdf.format( System.currentTimeMillis() ) + "\n" );
     connections.setAbleToClear( true );
-    connections.closeCachedConnections();
+    connections.releaseCachedConnections();
   }
 
   /**
    * Iterate over the connection details from the controller, requesting
    * chunk data from each chunk server.
    * 
-   * @param chunkServers containing the chunk server connection details
-   *        for each chunk in the file
+   * Up to {@link Properties#CLIENT_READ_WINDOW} chunks are requested
+   * ahead of the chunk that is being waited on.
+   * 
+   * @param chunkServers containing the chunk server identifiers for
+   *        each chunk in the file
    * @param connections
    * @return a 2-dimensional array of chunk bytes for the given server
    */
-  private byte[][] processIncomingChunks(String[][] chunkServers,
+  private byte[][] processIncomingChunks(int[][] chunkServers,
       ConnectionUtilities connections) {
-    byte[][] fileBytes =
-        new byte[ chunkServers.length ][ Constants.CHUNK_SIZE ];
+    int numberOfChunks = chunkServers.length;
+    byte[][] fileBytes = new byte[ numberOfChunks ][];
     String filename = readFileResponse.getFilename();
     filename = filename.substring( filename.lastIndexOf( File.separator ) );
     ProgressBar progress = new ProgressBar( filename );
-    int replication = 0;
-    for ( int sequence = 0; sequence < chunkServers.length; ++sequence )
+
+    int window =
+        Math.max( 1, Integer.parseInt( Properties.CLIENT_READ_WINDOW ) );
+    Deque<ChunkRead> reads = new ArrayDeque<>( window );
+    int next = 0;
+    for ( int sequence = 0; sequence < numberOfChunks; ++sequence )
     {
-      progress.update( sequence, chunkServers.length );
-      try
+      progress.update( sequence, numberOfChunks );
+      while ( next < numberOfChunks && next < sequence + window )
       {
+        ChunkRead read = new ChunkRead( chunkServers, next++, connections );
+        read.start();
+        reads.add( read );
+      }
+      fileBytes[ sequence ] = reads.poll().await();
+      if ( fileBytes[ sequence ] == null )
+      {
+        progress.reset();
         if ( Properties.SYSTEM_DESIGN_SCHEMA
             .equals( Constants.SYSTEM_TYPE_ERASURE ) )
         {
-          fileBytes[ sequence ] =
-              decodeErasureCodes( chunkServers, sequence, connections );
-          if ( fileBytes[ sequence ] == null )
-          {
-            progress.reset();
-            LOG.error(
-                "The chunk could not be reconstructed since there are not"
-                    + " enough data shards." );
-            return null;
-          }
+          LOG.error( "The chunk could not be reconstructed since there are not"
+              + " enough data shards." );
         } else
         {
-          sendReadChunkRequest( chunkServers, sequence, replication,
-              connections );
-          if ( readChunkResponse.getStatus() == Constants.FAILURE )
-          {
-            throw new ClientReadException( "The chunk sequence \'" + sequence
-                + "\' was returned as invalid." );
-          }
-          fileBytes[ sequence ] = readChunkResponse.getMessage();
-        }
-      } catch ( IOException | InterruptedException | ClientReadException e )
-      {
-        LOG.debug( "Unable to retrieve message on chunk server \'"
-            + chunkServers[ sequence ][ replication ]
-            + "\' trying next replication if possible. " + e.getMessage() );
-
-        if ( ++replication >= chunkServers[ 0 ].length )
-        {
-          progress.reset();
           LOG.error(
               "File is not readable beacause a given chunk can not be returned"
                   + " by any servers." );
-          return null;
         }
-        // Attempt to use next replication location for the same chunk.
-        --sequence;
-        continue;
+        return null;
       }
-      replication = 0;
     }
     return fileBytes;
   }
 
   /**
-   * Convert all the shards into the original chunk content
+   * Save the file requested for read to disk.
    * 
-   * @param chunkServers
-   * @param sequence
-   * @param connections
-   * @return the bytes of the original chunk
+   * @param filename to write back to disk
+   * @param file contain the content of the file
+   * @throws IOException
    */
-  private byte[] decodeErasureCodes(String[][] chunkServers, int sequence,
-      ConnectionUtilities connections) {
-    byte[][] shards =
-        new byte[ Constants.ERASURE_TOTAL_SHARDS ][ Constants.ERASURE_SHARD_SIZE ];
-    boolean[] shardPresent = new boolean[ Constants.ERASURE_TOTAL_SHARDS ];
+  private void writeFileToDisk(String filename, byte[] file)
+      throws IOException {
+    Timestamp timestamp = new Timestamp( System.currentTimeMillis() );
+    String updatedFilename = filename + "_" + timestamp.toInstant();
+    Path path = Paths.get( updatedFilename );
+    Files.createDirectories( path.getParent() );
+    Files.write( path, file );
+  }
 
-    int shardCount = 0;
+  /**
+   * The requests for a single chunk. With replication a chunk is read
+   * from one server at a time, trying the next replica when a read
+   * fails. With erasure coding the data shards are read at once, and a
+   * parity shard is requested for each shard that fails.
+   * 
+   * @author stock
+   *
+   */
+  private class ChunkRead {
 
-    for ( int shard = 0; shard < Constants.ERASURE_TOTAL_SHARDS; shard++ )
-    {
-      // send request to chunk server if successful
-      try
+    private final int[][] chunkServers;
+
+    private final int sequence;
+
+    private final ConnectionUtilities connections;
+
+    private final boolean isErasure;
+
+    /**
+     * Map < k: position in the chunk servers, v: pending response >
+     */
+    private final Map<Integer, CompletableFuture<Event>> responses;
+
+    private int nextServer;
+
+    /**
+     * Default constructor -
+     * 
+     * @param chunkServers
+     * @param sequence
+     * @param connections
+     */
+    private ChunkRead(int[][] chunkServers, int sequence,
+        ConnectionUtilities connections) {
+      this.chunkServers = chunkServers;
+      this.sequence = sequence;
+      this.connections = connections;
+      this.isErasure = Properties.SYSTEM_DESIGN_SCHEMA
+          .equals( Constants.SYSTEM_TYPE_ERASURE );
+      this.responses = new LinkedHashMap<>();
+      this.nextServer = 0;
+    }
+
+    /**
+     * Send the initial requests for the chunk.
+     * 
+     */
+    private void start() {
+      int required = isErasure ? Constants.ERASURE_DATA_SHARDS : 1;
+      while ( responses.size() < required
+          && nextServer < chunkServers[ sequence ].length )
       {
-        sendReadChunkRequest( chunkServers, sequence, shard, connections );
-        shards[ shard ] = readChunkResponse.getMessage();
-        shardPresent[ shard ] = true;
-        if ( ++shardCount >= Constants.ERASURE_DATA_SHARDS )
+        sendReadChunkRequest( nextServer++ );
+      }
+    }
+
+    /**
+     * Wait for the responses of the chunk, requesting the chunk from
+     * other servers as reads fail.
+     * 
+     * @return the bytes of the original chunk, or null if not enough
+     *         servers returned valid content
+     */
+    private byte[] await() {
+      int required = isErasure ? Constants.ERASURE_DATA_SHARDS : 1;
+      byte[][] messages = new byte[ chunkServers[ sequence ].length ][];
+      int received = 0;
+      while ( received < required && !responses.isEmpty() )
+      {
+        Iterator<Entry<Integer, CompletableFuture<Event>>> iterator =
+            responses.entrySet().iterator();
+        Entry<Integer, CompletableFuture<Event>> entry = iterator.next();
+        iterator.remove();
+
+        int position = entry.getKey();
+        messages[ position ] = awaitMessage( position, entry.getValue() );
+        if ( messages[ position ] != null )
         {
-          break;
+          ++received;
+        } else if ( nextServer < chunkServers[ sequence ].length )
+        {
+          sendReadChunkRequest( nextServer++ );
         }
-      } catch ( ClientReadException | IOException | InterruptedException e )
+      }
+      if ( received < required )
       {
-        LOG.debug( "Unable to retrieve message on chunk server \'"
-            + chunkServers[ sequence ][ shard ]
-            + "\' trying next shard if possible. " + e.getMessage() );
+        return null;
+      }
+      if ( isErasure )
+      {
+        return decodeErasureCodes( messages );
+      }
+      for ( byte[] message : messages )
+      {
+        if ( message != null )
+        {
+          return message;
+        }
       }
-    }
-    if ( shardCount < Constants.ERASURE_DATA_SHARDS )
-    {
       return null;
     }
-    ReedSolomon codec = new ReedSolomon( Constants.ERASURE_DATA_SHARDS,
-        Constants.ERASURE_PARITY_SHARDS );
-    codec.decodeMissing( shards, shardPresent, 0,
-        Constants.ERASURE_SHARD_SIZE );
 
-    return ReedSolomonUtilities.shardsToArray( shards );
-  }
+    /**
+     * Convert all the shards into the original chunk content
+     * 
+     * @param messages the shards that were returned, or null for those
+     *        that are missing
+     * @return the bytes of the original chunk
+     */
+    private byte[] decodeErasureCodes(byte[][] messages) {
+      byte[][] shards = new byte[ Constants.ERASURE_TOTAL_SHARDS ][];
+      boolean[] shardPresent = new boolean[ Constants.ERASURE_TOTAL_SHARDS ];
+      for ( int shard = 0; shard < Constants.ERASURE_TOTAL_SHARDS; shard++ )
+      {
+        shardPresent[ shard ] = messages[ shard ] != null;
+        shards[ shard ] = shardPresent[ shard ] ? messages[ shard ]
+            : new byte[ Constants.ERASURE_SHARD_SIZE ];
+      }
+      ReedSolomon codec = new ReedSolomon( Constants.ERASURE_DATA_SHARDS,
+          Constants.ERASURE_PARITY_SHARDS );
+      codec.decodeMissing( shards, shardPresent, 0,
+          Constants.ERASURE_SHARD_SIZE );
 
-  /**
-   * Send a request to the chunk server for a given sequence
-   * 
-   * @param chunkServers to establish new connections
-   * @param sequence to index into the chunkServers
-   * @param replication to index into the chunkServers
-   * @param connections that maintain cached connections
-   * @throws IOException
-   * @throws ClientReadException
-   * @throws InterruptedException
-   */
-  private void sendReadChunkRequest(String[][] chunkServers, int sequence,
-      int replication, ConnectionUtilities connections)
-      throws IOException, ClientReadException, InterruptedException {
-    if ( chunkServers[ sequence ][ replication ] == null )
-    {
-      throw new ClientReadException(
-          "The server for the ( sequence, replication ) pair is null." );
+      return ReedSolomonUtilities.shardsToArray( shards );
     }
-    String[] initialConnection =
-        chunkServers[ sequence ][ replication ].split( ":" );
 
-    TCPConnection connection =
-        connections.cacheConnection( node, initialConnection, true );
+    /**
+     * Send a request to the chunk server at the position for the
+     * sequence. The response is added to the pending responses.
+     * 
+     * @param position to index into the chunkServers
+     */
+    private void sendReadChunkRequest(int position) {
+      String[] server = metadata.getRegistry()
+          .getAddress( chunkServers[ sequence ][ position ] );
+      if ( server == null )
+      {
+        responses.put( position, failed( new ClientReadException( "The server "
+            + "for the ( sequence, replication ) pair is not known." ) ) );
+        return;
+      }
+      TCPConnection connection;
+      try
+      {
+        connection = connections.cacheConnection( node, server );
+      } catch ( NumberFormatException | IOException e )
+      {
+        responses.put( position, failed( e ) );
+        return;
+      }
+      TCPRequestTable requestTable = connection.getRequestTable();
+      int requestId = requestTable.nextRequestId();
+      responses.put( position, requestTable.register( requestId ) );
+      try
+      {
+        byte[] request = new ReadChunkRequest( requestId,
+            readFileResponse.getHandle(), sequence ).getBytes();
+        connection.getTCPSender().sendData( request );
+      } catch ( IOException e )
+      {
+        requestTable.fail( requestId, e );
+      }
+    }
 
-    byte[] request =
-        new ReadChunkRequest( readFileResponse.getFilename(), sequence )
-            .getBytes();
-    connection.getTCPSender().sendData( request );
-    synchronized ( lock )
-    {
-      lock.wait();
+    /**
+     * 
+     * @param cause of the failure
+     * @return a response that has already failed
+     */
+    private CompletableFuture<Event> failed(Throwable cause) {
+      CompletableFuture<Event> response = new CompletableFuture<>();
+      response.completeExceptionally( cause );
+      return response;
     }
-    LOG.debug( "sequence: " + sequence + ", status: "
-        + readChunkResponse.getStatus() );
-  }
 
-  /**
-   * Save the file requested for read to disk.
-   * 
-   * @param filename to write back to disk
-   * @param file contain the content of the file
-   * @throws IOException
-   */
-  private void writeFileToDisk(String filename, byte[] file)
-      throws IOException {
-    Timestamp timestamp = new Timestamp( System.currentTimeMillis() );
-    String updatedFilename = filename + "_" + timestamp.toInstant();
-    Path path = Paths.get( updatedFilename );
-    Files.createDirectories( path.getParent() );
-    Files.write( path, file );
+    /**
+     * Wait for a single response.
+     * 
+     * @param position the response was requested from
+     * @param response that is pending
+     * @return the message of the response, or null if it could not be
+     *         read
+     */
+    private byte[] awaitMessage(int position,
+        CompletableFuture<Event> response) {
+      try
+      {
+        ReadChunkResponse readChunkResponse =
+            ( ReadChunkResponse ) response.get();
+        LOG.debug( "sequence: " + sequence + ", status: "
+            + readChunkResponse.getStatus() );
+        if ( readChunkResponse.getStatus() == Constants.FAILURE )
+        {
+          throw new ClientReadException( "The chunk sequence \'" + sequence
+              + "\' was returned as invalid." );
+        }
+        return readChunkResponse.getMessage();
+      } catch ( ExecutionException | ClientReadException e )
+      {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        LOG.debug( "Unable to retrieve message on chunk server \'"
+            + metadata.getRegistry()
+                .getConnectionDetails( chunkServers[ sequence ][ position ] )
+            + "\' trying next location if possible. " + cause.getMessage() );
+      } catch ( InterruptedException e )
+      {
+        LOG.error( e.getMessage() );
+        Thread.currentThread().interrupt();
+      }
+      return null;
+    }
   }
 }
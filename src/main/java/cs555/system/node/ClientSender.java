@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import cs555.system.exception.ClientWriteException;
+import cs555.system.metadata.ClientMetadata;
 import cs555.system.transport.TCPConnection;
 import cs555.system.util.ConnectionUtilities;
 import cs555.system.util.Constants;
@@ -36,9 +37,13 @@ public class ClientSender {
 
   private final Client node;
 
-  private String[][] routes;
+  private final ClientMetadata metadata;
 
-  private boolean ableToWrite;
+  private int[][] routes;
+
+  private volatile long handle;
+
+  private volatile boolean ableToWrite;
   
   private AtomicInteger totalReceived;
 
@@ -46,11 +51,13 @@ public class ClientSender {
    * Default constructor -
    * 
    * @param node
+   * @param metadata
    */
-  protected ClientSender(Client node) {
+  protected ClientSender(Client node, ClientMetadata metadata) {
     this.lock = new Object();
     this.totalReceived = new AtomicInteger( 0 );
     this.node = node;
+    this.metadata = metadata;
   }
 
   /**
@@ -66,13 +73,29 @@ public class ClientSender {
   }
 
   /**
-   * Calling method checked for validity of routes;
+   * Calling method checked for validity of routes; the handle of the
+   * file is the same for every response.
    * 
-   * @param response
+   * A response without routes means the controller is unable to place
+   * the chunks, so the sender is woken to fail the write even if the
+   * response was not flagged as such.
+   * 
+   * @param response containing the routes for a range of chunks
    */
   protected void setRoutes(WriteFileResponse response) {
-    routes[ response.getSequence() ] = response.getRoutingPath();
-    if ( ableToWrite && totalReceived.incrementAndGet() == routes.length )
+    handle = response.getHandle();
+    int[][] paths = response.getRoutingPaths();
+    if ( paths == null || paths.length == 0 )
+    {
+      setAbleToWrite( false );
+      return;
+    }
+    for ( int i = 0; i < paths.length; ++i )
+    {
+      routes[ response.getSequence() + i ] = paths[ i ];
+    }
+    if ( ableToWrite
+        && totalReceived.addAndGet( paths.length ) == routes.length )
     {
       unlock();
     }
@@ -109,8 +132,6 @@ public class ClientSender {
 
     for ( File file : files )
     {
-      ableToWrite = true;
-      totalReceived.set( 0 );
       try ( InputStream is = new FileInputStream( file ) )
       {
         processIndividualFile( file, is, connections );
@@ -135,7 +156,7 @@ public class ClientSender {
     LOG.info( "Finished uploading " + numberOfFiles + " file(s) at "
         + sdf.format( System.currentTimeMillis() ) + "\n" );
     connections.setAbleToClear( true );
-    connections.closeCachedConnections();
+    connections.releaseCachedConnections();
   }
 
   /**
@@ -144,8 +165,9 @@ public class ClientSender {
    * 
    * <ol>
    * <li>read the next chunk of the file</li>
-   * <li>send request to controller for details of where to write the
-   * chunk. wait for a reply from the controller - the client will
+   * <li>send requests to controller for details of where to write the
+   * chunks, {@link Properties#CLIENT_WRITE_PLACEMENT_BATCH} chunks at a
+   * time. wait for the replies from the controller - the client will
    * notify this thread</li>
    * <li>connect to the first item chunk server returned by the
    * controller, and send the data request</li>
@@ -169,22 +191,25 @@ public class ClientSender {
     int numberOfChunks =
         ( int ) Math.ceil( ( double ) filelength / Constants.CHUNK_SIZE );
 
-    routes = new String[ numberOfChunks ][];
+    expectRoutes( numberOfChunks );
 
+    int batch = Integer.parseInt( Properties.CLIENT_WRITE_PLACEMENT_BATCH );
+    if ( batch <= 0 )
+    {
+      batch = numberOfChunks;
+    }
     WriteFileRequest request = new WriteFileRequest( file.getAbsolutePath(), 0,
-        filelength, numberOfChunks );
-    for ( int sequence = 0; sequence < numberOfChunks; ++sequence )
+        batch, filelength, numberOfChunks );
+    for ( int sequence = 0; sequence < numberOfChunks; sequence += batch )
     {
       request.setSequence( sequence );
+      request.setNumberOfSequences(
+          Math.min( batch, numberOfChunks - sequence ) );
       this.node.getControllerConnection().getTCPSender()
-          .sendData( request.getBytes() );
+          .sendEvent( request );
     }
     // wait for response from controller containing routing information.
-    synchronized ( lock )
-    {
-      lock.wait();
-    }
-    if ( !ableToWrite )
+    if ( !awaitRoutes() )
     {
       throw new ClientWriteException( "The controller has not"
           + " received file chunk locations for the original file yet." );
@@ -192,10 +217,52 @@ public class ClientSender {
     sendWriteChunkRequest( file, is, connections, numberOfChunks );
   }
 
+  /**
+   * Prepare to receive the routes for every chunk of the next file.
+   * 
+   * @param numberOfChunks of the file
+   */
+  void expectRoutes(int numberOfChunks) {
+    routes = new int[ numberOfChunks ][];
+    totalReceived.set( 0 );
+    ableToWrite = true;
+  }
+
+  /**
+   * Block until the routes for every chunk of the file have been
+   * received, or the controller is unable to place them.
+   * 
+   * @return true if every route was received, false otherwise
+   * @throws InterruptedException
+   */
+  boolean awaitRoutes() throws InterruptedException {
+    synchronized ( lock )
+    {
+      // the responses may arrive before this thread starts waiting
+      while ( ableToWrite && totalReceived.get() < routes.length )
+      {
+        lock.wait();
+      }
+    }
+    return ableToWrite;
+  }
+
+  /**
+   * 
+   * @return the routes received for each chunk of the file
+   */
+  int[][] getRoutes() {
+    return routes;
+  }
+
   /**
    * Send the individual chunks to only the initial destination for each
    * chunk / fragment.
    * 
+   * When writing shards with {@link Constants#SHARD_WRITE_TYPE_FANOUT},
+   * each shard of an erasure coded chunk is instead sent directly to
+   * the server that stores it, see {@link #sendShards}.
+   * 
    * The metadata is set with temporary version number ( the server will
    * detect the difference and update if necessary )
    * 
@@ -213,32 +280,85 @@ public class ClientSender {
 
     ProgressBar progress = new ProgressBar( file.getName() );
 
-    WriteChunkRequest request = new WriteChunkRequest( file.getAbsolutePath(),
-        0, null, file.lastModified(), 1, null );
+    WriteChunkRequest request = new WriteChunkRequest( handle, 0, null,
+        file.lastModified(), 1, null );
+
+    boolean erasure = Properties.SYSTEM_DESIGN_SCHEMA
+        .equals( Constants.SYSTEM_TYPE_ERASURE );
+    boolean fanout = erasure && Properties.CLIENT_WRITE_SHARDS
+        .equals( Constants.SHARD_WRITE_TYPE_FANOUT );
 
     int sequence = 0, length = 0;
     while ( ( length = is.read( message ) ) != -1 )
     {
-      // Only send to the first connection, whom will forward the rest
-      String[] initialConnection = routes[ sequence ][ 0 ].split( ":" );
-      TCPConnection connection =
-          connections.cacheConnection( node, initialConnection, false );
       // Pad elements b[k] through b[b.length-1] with zeros
       Arrays.fill( message, length, Constants.CHUNK_SIZE, ( byte ) 0 );
       byte[][] messageToSend = new byte[][] { message };
-      if ( Properties.SYSTEM_DESIGN_SCHEMA
-          .equals( Constants.SYSTEM_TYPE_ERASURE ) )
+      if ( erasure )
       {
         messageToSend = ReedSolomonUtilities.encode( message );
       }
-      request.setMessage( messageToSend );
-      request.setRoutes( routes[ sequence ] );
       request.setSequence( sequence );
-      connection.getTCPSender().sendData( request.getBytes() );
+      if ( fanout )
+      {
+        sendShards( request, messageToSend, routes[ sequence ], connections );
+      } else
+      {
+        request.setMessage( messageToSend );
+        request.setRoutes( routes[ sequence ] );
+        // Only send to the first connection, whom will forward the rest
+        send( request, routes[ sequence ][ 0 ], connections );
+      }
 
       progress.update( sequence, numberOfChunks );
       ++sequence;
     }
   }
 
+  /**
+   * Send each shard of an erasure coded chunk only to the server that
+   * stores it. Each request holds the one shard, and routes to just
+   * that server at the position of the shard, so it is not forwarded.
+   * 
+   * @param request to reuse for every shard
+   * @param shards of the chunk, in the order of the routing path
+   * @param path identifiers of the servers storing each shard
+   * @param connections utilities to cache connections
+   * @throws IOException
+   */
+  private void sendShards(WriteChunkRequest request, byte[][] shards,
+      int[] path, ConnectionUtilities connections) throws IOException {
+    for ( int i = 0; i < path.length; ++i )
+    {
+      request.setMessage( new byte[][] { shards[ i ] } );
+      request.setRoutes( new int[] { path[ i ] } );
+      request.setReplicationPosition( i );
+      send( request, path[ i ], connections );
+    }
+    request.setReplicationPosition( 0 );
+  }
+
+  /**
+   * Send the request to a chunk server once a write credit is available
+   * on the connection.
+   * 
+   * @param request to send
+   * @param identifier of the chunk server
+   * @param connections utilities to cache connections
+   * @throws IOException if the server is not known, or the request
+   *         could not be sent
+   */
+  private void send(WriteChunkRequest request, int identifier,
+      ConnectionUtilities connections) throws IOException {
+    String[] address = metadata.getRegistry().getAddress( identifier );
+    if ( address == null )
+    {
+      throw new IOException(
+          "The chunk server " + identifier + " is not known." );
+    }
+    TCPConnection connection = connections.cacheConnection( node, address );
+    connection.getCredits().acquire();
+    connection.getTCPSender().sendEvent( request );
+  }
+
 }
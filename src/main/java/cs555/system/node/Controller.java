@@ -6,6 +6,7 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map.Entry;
@@ -14,9 +15,11 @@ import java.util.Timer;
 import cs555.system.heartbeat.ControllerHeartbeatManager;
 import cs555.system.metadata.ControllerMetadata;
 import cs555.system.metadata.ControllerMetadata.FileInformation;
+import cs555.system.metadata.ControllerMetadata.ServerInformation;
 import cs555.system.metadata.ServerMetadata.ChunkInformation;
 import cs555.system.transport.TCPConnection;
 import cs555.system.transport.TCPServerThread;
+import cs555.system.util.ConnectionUtilities;
 import cs555.system.util.Constants;
 import cs555.system.util.Logger;
 import cs555.system.util.Properties;
@@ -30,6 +33,7 @@ import cs555.system.wireformats.ReadFileResponse;
 import cs555.system.wireformats.RedirectChunkRequest;
 import cs555.system.wireformats.RegisterRequest;
 import cs555.system.wireformats.RegisterResponse;
+import cs555.system.wireformats.ServerTable;
 import cs555.system.wireformats.WriteFileRequest;
 import cs555.system.wireformats.WriteFileResponse;
 
@@ -95,8 +99,8 @@ public class Controller implements Node {
   public static void main(String[] args) {
     LOG.info( "Controller node starting up at: " + new Date() );
 
-    try ( ServerSocket serverSocket =
-        new ServerSocket( Integer.valueOf( Properties.CONTROLLER_PORT ) ) )
+    try ( ServerSocket serverSocket = ConnectionUtilities
+        .openServerSocket( Integer.valueOf( Properties.CONTROLLER_PORT ) ) )
     {
       Controller controller =
           new Controller( InetAddress.getLocalHost().getHostName(),
@@ -200,7 +204,8 @@ public class Controller implements Node {
 
   /**
    * This handler is triggered when the chunk server detects a failure
-   * for a given read request. A failure message is sent to the
+   * for a given read request, or is unable to forward a chunk to the
+   * servers after it on the path. A failure message is sent to the
    * controller to try and reconcile the server by sending a copy for
    * some chunk from a source to the destination server.
    * 
@@ -210,39 +215,54 @@ public class Controller implements Node {
     FailureChunkRead request = ( FailureChunkRead ) event;
     String destination = request.getConnectionDetails();
 
-    FileInformation info = metadata.getFiles().get( request.getFilename() );
-    String[][] chunks = info.getChunks();
+    FileInformation info = metadata.getFile( request.getHandle() );
+    if ( info == null )
+    {
+      LOG.error( "The file handle " + request.getHandle()
+          + " does not exist on controller." );
+      return;
+    }
+    int[][] chunks = info.getChunks();
+    int destinationIdentifier =
+        metadata.getRegistry().getIdentifier( destination );
 
     int sequence = request.getSequence();
     int replicationPosition = 0;
-    String source = null;
+    int sourceIdentifier = Constants.NO_SERVER;
     for ( int replication = 0; replication < chunks[ 0 ].length; ++replication )
     {
-      String identifier = chunks[ sequence ][ replication ];
-      if ( identifier != null && !identifier.equals( destination ) )
+      int identifier = chunks[ sequence ][ replication ];
+      // the first replica on the path holds the chunk even when
+      // forwarding it further along the path has failed
+      if ( sourceIdentifier == Constants.NO_SERVER
+          && identifier != Constants.NO_SERVER
+          && identifier != destinationIdentifier )
       {
-        source = identifier;
+        sourceIdentifier = identifier;
       }
-      if ( identifier != null && identifier.equals( destination ) )
+      if ( identifier != Constants.NO_SERVER
+          && identifier == destinationIdentifier )
       {
-        chunks[ sequence ][ replication ] = null;
+        chunks[ sequence ][ replication ] = Constants.NO_SERVER;
         replicationPosition = replication;
       }
     }
+    ServerInformation source = metadata.getConnection( sourceIdentifier );
     if ( source != null )
     {
       RedirectChunkRequest redirectRequest = new RedirectChunkRequest(
-          request.getFilename(), sequence, replicationPosition, destination );
+          request.getHandle(), sequence, replicationPosition, destination );
       try
       {
-        LOG.debug( "Sending RedirectChunkRequest from: " + source + " to "
-            + destination + " for sequence " + sequence + " & replication "
+        LOG.debug( "Sending RedirectChunkRequest from: "
+            + source.getConnectionDetails() + " to " + destination
+            + " for sequence " + sequence + " & replication "
             + replicationPosition );
-        metadata.getConnections().get( source ).getConnection().getTCPSender()
-            .sendData( redirectRequest.getBytes() );
+        source.getConnection().getTCPSender().sendEvent( redirectRequest );
       } catch ( IOException e )
       {
-        LOG.error( "Unable to send request to server \'" + source
+        LOG.error( "Unable to send request to server \'"
+            + source.getConnectionDetails()
             + "\' to update the destination \'" + destination + "\'. "
             + e.getMessage() );
         e.printStackTrace();
@@ -267,10 +287,11 @@ public class Controller implements Node {
     String filename = ( ( ReadFileRequest ) event ).getFilename();
     FileInformation fileInformation = metadata.getFiles().get( filename );
     ReadFileResponse response = new ReadFileResponse( filename,
-        fileInformation.getFilelength(), fileInformation.getChunks() );
+        fileInformation.getHandle(), fileInformation.getFilelength(),
+        fileInformation.getChunks() );
     try
     {
-      connection.getTCPSender().sendData( response.getBytes() );
+      connection.getTCPSender().sendEvent( response );
     } catch ( IOException e )
     {
       LOG.error(
@@ -290,7 +311,7 @@ public class Controller implements Node {
         new ListFileResponse( metadata.getReadableFiles() );
     try
     {
-      connection.getTCPSender().sendData( response.getBytes() );
+      connection.getTCPSender().sendEvent( response );
     } catch ( IOException e )
     {
       LOG.error(
@@ -301,7 +322,8 @@ public class Controller implements Node {
 
   /**
    * Construct a message to send back to the client containing
-   * information of where to send chuck data too.
+   * information of where to send chuck data too, for every chunk in the
+   * requested range.
    * 
    * @param event the object containing node details
    * @param connection the connection details, i.e., TCPSender
@@ -309,15 +331,16 @@ public class Controller implements Node {
   private synchronized void writeFileRequestHandler(Event event,
       TCPConnection connection) {
     WriteFileRequest request = ( WriteFileRequest ) event;
-    metadata.addFile( request.getFilename(), request.getFilelength(),
-        request.getNumberOfChunks(), request.getSequence() );
-    String[] serversToConnect = metadata.getChunkServers( request.getFilename(),
+    long handle = metadata.addFile( request.getFilename(),
+        request.getFilelength(), request.getNumberOfChunks(),
         request.getSequence() );
-    WriteFileResponse response =
-        new WriteFileResponse( serversToConnect, request.getSequence() );
+    int[][] serversToConnect = metadata.getChunkServers( handle,
+        request.getSequence(), request.getNumberOfSequences() );
+    WriteFileResponse response = new WriteFileResponse( handle,
+        serversToConnect, request.getSequence() );
     try
     {
-      connection.getTCPSender().sendData( response.getBytes() );
+      connection.getTCPSender().sendEvent( response );
     } catch ( IOException e )
     {
       LOG.error(
@@ -350,8 +373,15 @@ public class Controller implements Node {
         switch ( identifier )
         {
           case Constants.SERVER_ID :
-            metadata.addConnection( connectionDetails, connection );
-            status = Constants.SUCCESS;
+            if ( metadata.addConnection( connectionDetails,
+                connection ) == Constants.NO_SERVER )
+            {
+              message = "No more chunk servers can be assigned an identifier.";
+              status = Constants.FAILURE;
+            } else
+            {
+              status = Constants.SUCCESS;
+            }
             break;
           case Constants.CLIENT_ID :
             metadata.addClientConnection( connection );
@@ -385,11 +415,49 @@ public class Controller implements Node {
     RegisterResponse response = new RegisterResponse( status, message );
     try
     {
-      connection.getTCPSender().sendData( response.getBytes() );
+      connection.getTCPSender().sendEvent( response );
     } catch ( IOException e )
     {
       LOG.error( e.getMessage() );
       metadata.removeConnection( connectionDetails );
+      return;
+    }
+    if ( register && status == Constants.SUCCESS )
+    {
+      distributeServerTable( identifier == Constants.SERVER_ID ? null
+          : connection );
+    }
+  }
+
+  /**
+   * Send the identifiers assigned to the chunk servers to the nodes
+   * that refer to them. The table is sent to every node when a new
+   * chunk server registers, and to only a new client otherwise.
+   * 
+   * @param client the newly registered client, or null to send the
+   *        table to all nodes
+   */
+  private void distributeServerTable(TCPConnection client) {
+    ServerTable table = new ServerTable( metadata.getRegistry().getTable() );
+    List<TCPConnection> connections = new ArrayList<>();
+    if ( client != null )
+    {
+      connections.add( client );
+    } else
+    {
+      metadata.getConnections().values()
+          .forEach( server -> connections.add( server.getConnection() ) );
+      connections.addAll( metadata.getClientConnections() );
+    }
+    for ( TCPConnection connection : connections )
+    {
+      try
+      {
+        connection.getTCPSender().sendEvent( table );
+      } catch ( IOException e )
+      {
+        LOG.error( "Unable to send the server table. " + e.getMessage() );
+      }
     }
   }
 
@@ -476,6 +544,16 @@ public class Controller implements Node {
         new Object[] { request.getConnectionDetails(), serversize + " (GB)",
             request.getTotalChunks() + " chunk(s)" } );
 
+    if ( request.isScrubbing() )
+    {
+      String scrubbed = new DecimalFormat( "0.00" )
+          .format( request.getScrubbedBytes() / 1024.0 / 1024.0 );
+      System.out.format( "%30s%20s%15s\n",
+          new Object[] { "scrub pass " + request.getScrubPasses(),
+              scrubbed + " (MB)",
+              request.getCorruptChunks() + " corrupt" } );
+    }
+
     if ( request.isEmpty() )
     {
       System.out.println( "\nThere is no additional information to display." );
@@ -488,11 +566,16 @@ public class Controller implements Node {
 
     SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" );
 
-    for ( Entry<String, List<ChunkInformation>> entry : request.getFiles()
+    for ( Entry<Long, List<ChunkInformation>> entry : request.getFiles()
         .entrySet() )
     {
-      String title = entry.getKey();
-      title = title.substring( title.lastIndexOf( File.separator ) );
+      FileInformation file = metadata.getFile( entry.getKey() );
+      String title = Long.toString( entry.getKey() );
+      if ( file != null )
+      {
+        title = file.getFilename();
+        title = title.substring( title.lastIndexOf( File.separator ) );
+      }
       int i = 0;
       for ( ChunkInformation info : entry.getValue() )
       {
@@ -0,0 +1,308 @@
+package cs555.system.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Holds the content of recently read chunks in memory, so chunks that
+ * are read again are served without reading the store, or validating
+ * their integrity again.
+ *
+ * The cache is bounded by the bytes of the buffers it has allocated,
+ * and evicts the least recently read chunk first. Content is copied
+ * into buffers owned by the cache, which may be allocated outside of
+ * the heap. Chunks are mostly of the same size, so the buffer of an
+ * evicted chunk is reused for the next chunk that fits, rather than
+ * allocating another. The buffer is only reused once every view of it
+ * that was read from the cache has been released, see
+ * {@link #release(ByteBuffer)}.
+ *
+ * A chunk must be invalidated whenever it is written or found to be
+ * corrupt. Content that was read before the chunk was invalidated is
+ * not cached once it is put, see {@link #getGeneration()}.
+ *
+ * @author stock
+ *
+ */
+public class ChunkCache {
+
+  private final long capacity;
+
+  private final boolean direct;
+
+  /**
+   * Cached content in order of access, least recent first
+   */
+  private final LinkedHashMap<Key, Entry> entries;
+
+  /**
+   * Buffers of evicted content that may be reused
+   */
+  private final ArrayDeque<ByteBuffer> free;
+
+  /**
+   * Entries of the views that have not been released
+   */
+  private final IdentityHashMap<ByteBuffer, Entry> lent;
+
+  private long size;
+
+  private long generation;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  /**
+   * Default constructor -
+   *
+   * @param capacity in bytes of content the cache may hold
+   * @param direct true to allocate the content outside of the heap
+   */
+  public ChunkCache(long capacity, boolean direct) {
+    this.capacity = capacity;
+    this.direct = direct;
+    this.entries = new LinkedHashMap<>( 16, 0.75f, true );
+    this.free = new ArrayDeque<>();
+    this.lent = new IdentityHashMap<>();
+  }
+
+  /**
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @return a read-only view of the cached content, which must be
+   *         released once it is no longer used, or null if the chunk is
+   *         not cached
+   */
+  public synchronized ByteBuffer get(long handle, int sequence) {
+    Entry entry = entries.get( new Key( handle, sequence ) );
+    if ( entry == null )
+    {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    ++entry.readers;
+    ByteBuffer view = entry.content.asReadOnlyBuffer();
+    lent.put( view, entry );
+    return view;
+  }
+
+  /**
+   * Release a view returned by {@link #get(long, int)}, so that its
+   * buffer may be reused once the chunk has been evicted.
+   *
+   * @param view of the cached content
+   */
+  public synchronized void release(ByteBuffer view) {
+    Entry entry = lent.remove( view );
+    if ( entry != null && --entry.readers == 0 && entry.removed )
+    {
+      free.push( entry.content );
+    }
+  }
+
+  /**
+   * Copy the remaining content into the cache, evicting the least
+   * recently read chunks until it fits. Content larger than the cache,
+   * or that does not fit while evicted buffers are still being read,
+   * is not cached.
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param content to cache, which is left unchanged
+   * @param generation of the cache before the content was read
+   */
+  public synchronized void put(long handle, int sequence, ByteBuffer content,
+      long generation) {
+    int length = content.remaining();
+    if ( generation != this.generation || length > capacity )
+    {
+      return;
+    }
+    Key key = new Key( handle, sequence );
+    Entry previous = entries.remove( key );
+    if ( previous != null )
+    {
+      discard( previous );
+    }
+    ByteBuffer copy = allocate( length );
+    if ( copy == null )
+    {
+      return;
+    }
+    copy.clear();
+    copy.put( content.duplicate() ).flip();
+    entries.put( key, new Entry( copy ) );
+  }
+
+  /**
+   * Take a buffer that can hold the content, reusing the buffer of
+   * evicted content where one fits. Otherwise, unused buffers are
+   * dropped and the least recently read chunks are evicted until a new
+   * buffer fits in the capacity. Chunks that are being read are not
+   * evicted.
+   *
+   * @param length of the content in bytes
+   * @return a buffer of at least <code>length</code> bytes, or null if
+   *         the remaining buffers are all being read
+   */
+  private ByteBuffer allocate(int length) {
+    Iterator<Entry> eldest = entries.values().iterator();
+    while ( true )
+    {
+      for ( Iterator<ByteBuffer> buffers = free.iterator(); buffers
+          .hasNext(); )
+      {
+        ByteBuffer buffer = buffers.next();
+        if ( buffer.capacity() >= length )
+        {
+          buffers.remove();
+          return buffer;
+        }
+      }
+      if ( size + length <= capacity )
+      {
+        size += length;
+        return direct ? ByteBuffer.allocateDirect( length )
+            : ByteBuffer.allocate( length );
+      }
+      if ( !free.isEmpty() )
+      {
+        size -= free.poll().capacity();
+      } else if ( eldest.hasNext() )
+      {
+        Entry entry = eldest.next();
+        // evicting content that is being read would free nothing
+        if ( entry.readers == 0 )
+        {
+          eldest.remove();
+          discard( entry );
+          ++evictions;
+        }
+      } else
+      {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Mark the entry as removed from the cache, and reuse its buffer once
+   * it is no longer being read.
+   *
+   * @param entry removed from the cache
+   */
+  private void discard(Entry entry) {
+    entry.removed = true;
+    if ( entry.readers == 0 )
+    {
+      free.push( entry.content );
+    }
+  }
+
+  /**
+   * Remove the chunk from the cache, and discard any content of it that
+   * is being read to be put.
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   */
+  public synchronized void invalidate(long handle, int sequence) {
+    ++generation;
+    Entry entry = entries.remove( new Key( handle, sequence ) );
+    if ( entry != null )
+    {
+      discard( entry );
+    }
+  }
+
+  /**
+   * The generation must be read before reading content that is put
+   * into the cache, so the content is discarded if the chunk has been
+   * invalidated in the meantime.
+   *
+   * @return the number of invalidations so far
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    long requests = hits + misses;
+    return String.format(
+        "chunk cache: %d chunk(s), %d of %d bytes, %d hit(s), %d miss(es) "
+            + "(%.1f%% hit rate), %d eviction(s)",
+        entries.size(), size, capacity, hits, misses,
+        requests == 0 ? 0.0 : 100.0 * hits / requests, evictions );
+  }
+
+  /**
+   * Identity of a chunk, by the handle of its file and its sequence.
+   *
+   * @author stock
+   *
+   */
+  private static class Key {
+
+    private final long handle;
+
+    private final int sequence;
+
+    private Key(long handle, int sequence) {
+      this.handle = handle;
+      this.sequence = sequence;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+      if ( !( o instanceof Key ) )
+      {
+        return false;
+      }
+      Key other = ( Key ) o;
+      return handle == other.handle && sequence == other.sequence;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode( handle ) + sequence;
+    }
+  }
+
+  /**
+   * Content of a cached chunk, the number of views of it that have not
+   * been released, and whether it has been removed from the cache.
+   *
+   * @author stock
+   *
+   */
+  private static class Entry {
+
+    private final ByteBuffer content;
+
+    private int readers;
+
+    private boolean removed;
+
+    private Entry(ByteBuffer content) {
+      this.content = content;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package cs555.system.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Storage engine for the chunks held by a chunk server.
+ *
+ * A chunk is identified by the handle of its file and its sequence in
+ * the file, and is stored as the bytes it was written with, i.e., the
+ * integrity information followed by the message in replication mode,
+ * or a single shard in erasure mode. Writing a chunk that is already
+ * stored replaces it.
+ *
+ * Implementations are used concurrently by the handlers of a chunk
+ * server, and so must be thread safe.
+ *
+ * @author stock
+ *
+ */
+public interface ChunkStore extends Closeable {
+
+  /**
+   * Store the chunk, replacing any previous version of it.
+   *
+   * @param handle of the file, as assigned by the controller
+   * @param sequence of the chunk in the file
+   * @param chunk the bytes to store
+   * @throws IOException if the chunk could not be stored
+   */
+  public void write(long handle, int sequence, byte[] chunk)
+      throws IOException;
+
+  /**
+   * Open the stored chunk to be read. The chunk must be closed once it
+   * has been read, and is unchanged by later writes until then.
+   *
+   * @param handle of the file, as assigned by the controller
+   * @param sequence of the chunk in the file
+   * @return the region of storage holding the chunk
+   * @throws IOException if the chunk is not stored, or could not be
+   *         opened
+   */
+  public StoredChunk open(long handle, int sequence) throws IOException;
+
+}
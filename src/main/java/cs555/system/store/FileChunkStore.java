@@ -0,0 +1,82 @@
+package cs555.system.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import cs555.system.node.Node;
+import cs555.system.util.FileUtilities;
+
+/**
+ * Stores every chunk as a file of its own, at
+ * {@link FileUtilities#getPathLocation(Node, long, int)}.
+ *
+ * @author stock
+ *
+ */
+public class FileChunkStore implements ChunkStore {
+
+  private final Node node;
+
+  /**
+   * Default constructor -
+   *
+   * @param node whose connection details name the directory of chunks
+   */
+  public FileChunkStore(Node node) {
+    this.node = node;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The chunk is written to a temporary file beside it, then moved into
+   * place, so a chunk that is open, or mapped, keeps the file it was
+   * opened with rather than seeing it truncated.
+   */
+  @Override
+  public void write(long handle, int sequence, byte[] chunk)
+      throws IOException {
+    Path path = FileUtilities.getPathLocation( node, handle, sequence );
+    Files.createDirectories( path.getParent() );
+    Path temp = Files.createTempFile( path.getParent(),
+        path.getFileName().toString(), ".tmp" );
+    try
+    {
+      Files.write( temp, chunk );
+      Files.move( temp, path, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING );
+    } catch ( IOException e )
+    {
+      Files.deleteIfExists( temp );
+      throw e;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The file of the chunk is opened, and closed with the chunk.
+   */
+  @Override
+  public StoredChunk open(long handle, int sequence) throws IOException {
+    Path path = FileUtilities.getPathLocation( node, handle, sequence );
+    FileChannel file = FileChannel.open( path );
+    try
+    {
+      return new StoredChunk( path, file, 0, file.size(), file );
+    } catch ( IOException e )
+    {
+      file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {}
+
+}
@@ -0,0 +1,565 @@
+package cs555.system.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import cs555.system.util.Logger;
+
+/**
+ * Log-structured store that appends chunks to large segment files,
+ * rather than creating a file for every chunk.
+ *
+ * Each record in a segment is the handle, sequence and length of the
+ * chunk, followed by the chunk itself. Records are only ever appended
+ * to the active segment, which is sealed and replaced by a new segment
+ * once it reaches the segment size. The location of the latest record
+ * of every chunk is held in an in-memory index, that is rebuilt by
+ * scanning the record headers of the segments when the store is
+ * opened.
+ *
+ * Writing a chunk again leaves its previous record as garbage. Once
+ * the garbage in a sealed segment reaches the compaction threshold,
+ * the records that are still live are copied forward to the active
+ * segment, and the sealed segment is deleted as soon as no opened
+ * chunk refers to it.
+ *
+ * When the segments are mapped, each segment file is preallocated to
+ * the segment size and mapped into memory once. Chunks are copied into
+ * the mapping, and are read from slices of it, so reads are served
+ * from the page cache without a system call or a copy onto the heap.
+ * A record is never empty, so a zero length marks the end of the
+ * records in a preallocated segment.
+ *
+ * @author stock
+ *
+ */
+public class SegmentChunkStore implements ChunkStore {
+
+  private final static Logger LOG = Logger.getInstance();
+
+  private final static String PREFIX = "segment_";
+
+  private final static String SUFFIX = ".log";
+
+  /**
+   * The handle, sequence and length preceding each chunk.
+   */
+  private final static int RECORD_HEADER_SIZE =
+      Long.BYTES + 2 * Integer.BYTES;
+
+  private final Path directory;
+
+  private final long segmentSize;
+
+  private final double compactionThreshold;
+
+  private final boolean mapped;
+
+  /**
+   * Latest record of each chunk <k: file handle, v: <k: sequence, v:
+   * location>>
+   */
+  private final Map<Long, Map<Integer, Location>> index;
+
+  /**
+   * Segments that have not been compacted, by identifier
+   */
+  private final TreeMap<Integer, Segment> segments;
+
+  private final ByteBuffer header;
+
+  private Segment active;
+
+  /**
+   * Default constructor - Open the segments in the directory and
+   * rebuild the index from them.
+   *
+   * @param directory to hold the segment files
+   * @param segmentSize in bytes at which a segment is sealed
+   * @param compactionThreshold fraction of a sealed segment that must
+   *        be garbage before it is compacted
+   * @param mapped true to preallocate the segments and map them into
+   *        memory
+   * @throws IOException if the segments could not be opened
+   * @throws IllegalArgumentException if mapped segments are larger than
+   *         can be mapped at once
+   */
+  public SegmentChunkStore(Path directory, long segmentSize,
+      double compactionThreshold, boolean mapped) throws IOException {
+    if ( mapped && segmentSize > Integer.MAX_VALUE )
+    {
+      throw new IllegalArgumentException( "Mapped segments of " + segmentSize
+          + " bytes are larger than can be mapped." );
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.compactionThreshold = compactionThreshold;
+    this.mapped = mapped;
+    this.index = new HashMap<>();
+    this.segments = new TreeMap<>();
+    this.header = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+    Files.createDirectories( directory );
+    recover();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The chunk is appended to the active segment.
+   */
+  @Override
+  public synchronized void write(long handle, int sequence, byte[] chunk)
+      throws IOException {
+    Location location = append( handle, sequence, ByteBuffer.wrap( chunk ) );
+    Location previous = index
+        .computeIfAbsent( handle, k -> new HashMap<>() )
+        .put( sequence, location );
+    if ( previous != null )
+    {
+      discard( previous );
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The segment holding the chunk is kept until the chunk is closed,
+   * even if the segment is compacted in the meantime.
+   */
+  @Override
+  public synchronized StoredChunk open(long handle, int sequence)
+      throws IOException {
+    Location location = get( handle, sequence );
+    if ( location == null )
+    {
+      throw new NoSuchFileException( handle + "_chunk" + sequence );
+    }
+    Segment segment = location.segment;
+    ++segment.references;
+    ByteBuffer mapping = segment.mapping == null ? null
+        : segment.mapping.slice( ( int ) location.offset, location.length )
+            .asReadOnlyBuffer();
+    return new StoredChunk( segment.path, segment.channel, location.offset,
+        location.length, mapping, () -> release( segment ) );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    for ( Segment segment : segments.values() )
+    {
+      segment.channel.close();
+    }
+  }
+
+  /**
+   * Append a record for the chunk to the active segment, starting a new
+   * segment if the record does not fit.
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param chunk the bytes of the chunk
+   * @return the location of the chunk
+   * @throws IOException
+   */
+  private Location append(long handle, int sequence, ByteBuffer chunk)
+      throws IOException {
+    int length = chunk.remaining();
+    long recordSize = RECORD_HEADER_SIZE + length;
+    if ( active == null
+        || active.size > 0 && active.size + recordSize > segmentSize
+        || active.mapping != null
+            && active.size + recordSize > active.mapping.capacity() )
+    {
+      roll( recordSize );
+    }
+    if ( active.mapping != null )
+    {
+      // the header is written last, so a record is only found once its
+      // chunk is in place
+      int position = ( int ) active.size;
+      active.mapping.put( position + RECORD_HEADER_SIZE, chunk,
+          chunk.position(), length );
+      active.mapping.putLong( position, handle )
+          .putInt( position + Long.BYTES, sequence )
+          .putInt( position + Long.BYTES + Integer.BYTES, length );
+    } else
+    {
+      header.clear();
+      header.putLong( handle ).putInt( sequence ).putInt( length ).flip();
+      ByteBuffer[] record = new ByteBuffer[] { header, chunk };
+      long remaining = recordSize;
+      while ( remaining > 0 )
+      {
+        remaining -= active.channel.write( record );
+      }
+    }
+    Location location =
+        new Location( active, active.size + RECORD_HEADER_SIZE, length );
+    active.size += RECORD_HEADER_SIZE + length;
+    active.live += RECORD_HEADER_SIZE + length;
+    return location;
+  }
+
+  /**
+   * Mark the record at the location as garbage, and compact its
+   * segment if it has reached the threshold.
+   *
+   * @param location of the record that has been replaced
+   * @throws IOException
+   */
+  private void discard(Location location) throws IOException {
+    Segment segment = location.segment;
+    segment.live -= RECORD_HEADER_SIZE + location.length;
+    if ( segment != active && segment.size > 0
+        && 1 - ( double ) segment.live / segment.size >= compactionThreshold )
+    {
+      compact( segment );
+    }
+  }
+
+  /**
+   * Copy the live records of a sealed segment forward to the active
+   * segment, and retire the sealed segment.
+   *
+   * The records are found by scanning the headers of the segment, and a
+   * record is live if the index still refers to it.
+   *
+   * @param segment to compact
+   * @throws IOException
+   */
+  private void compact(Segment segment) throws IOException {
+    int copied = 0;
+    long position = 0;
+    while ( position < segment.size )
+    {
+      readFully( segment.channel, header.clear(), position );
+      header.flip();
+      long handle = header.getLong();
+      int sequence = header.getInt();
+      int length = header.getInt();
+      long offset = position + RECORD_HEADER_SIZE;
+
+      Location location = get( handle, sequence );
+      if ( location != null && location.segment == segment
+          && location.offset == offset )
+      {
+        ByteBuffer chunk = ByteBuffer.allocate( length );
+        readFully( segment.channel, chunk, offset );
+        chunk.flip();
+        index.get( handle ).put( sequence,
+            append( handle, sequence, chunk ) );
+        ++copied;
+      }
+      position = offset + length;
+    }
+    segments.remove( segment.identifier );
+    segment.retired = true;
+    if ( segment.references == 0 )
+    {
+      delete( segment );
+    }
+    LOG.debug( "Compacted " + segment.path.getFileName() + ", copying "
+        + copied + " live chunk(s) forward." );
+  }
+
+  /**
+   * Seal the active segment, and start appending to a new one. A
+   * mapped segment is preallocated to the segment size, or to the size
+   * of the record if it is larger.
+   *
+   * @param recordSize of the record that will be appended first
+   * @throws IOException
+   */
+  private void roll(long recordSize) throws IOException {
+    int identifier = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    Path path = directory.resolve( PREFIX + identifier + SUFFIX );
+    FileChannel channel = FileChannel.open( path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING );
+    MappedByteBuffer mapping = null;
+    if ( mapped )
+    {
+      mapping = channel.map( MapMode.READ_WRITE, 0,
+          Math.max( segmentSize, recordSize ) );
+    }
+    active = new Segment( identifier, path, channel, mapping );
+    segments.put( identifier, active );
+  }
+
+  /**
+   * Open every segment in the directory in the order they were
+   * written, and index the records they hold. A record that was only
+   * partially written is truncated from the end of its segment.
+   *
+   * @throws IOException
+   */
+  private void recover() throws IOException {
+    TreeMap<Integer, Path> paths = new TreeMap<>();
+    try ( DirectoryStream<Path> stream =
+        Files.newDirectoryStream( directory, PREFIX + "*" + SUFFIX ) )
+    {
+      for ( Path path : stream )
+      {
+        String name = path.getFileName().toString();
+        try
+        {
+          paths.put( Integer.valueOf( name.substring( PREFIX.length(),
+              name.length() - SUFFIX.length() ) ), path );
+        } catch ( NumberFormatException e )
+        {
+          LOG.error( "Ignoring the unknown segment " + name );
+        }
+      }
+    }
+    for ( Map.Entry<Integer, Path> entry : paths.entrySet() )
+    {
+      FileChannel channel = FileChannel.open( entry.getValue(),
+          StandardOpenOption.READ, StandardOpenOption.WRITE );
+      MappedByteBuffer mapping = null;
+      if ( mapped && channel.size() <= Integer.MAX_VALUE )
+      {
+        mapping = channel.map( MapMode.READ_WRITE, 0, channel.size() );
+      }
+      Segment segment =
+          new Segment( entry.getKey(), entry.getValue(), channel, mapping );
+      segments.put( segment.identifier, segment );
+      scan( segment );
+      active = segment;
+    }
+    List<Segment> sealed = new ArrayList<>( segments.values() );
+    for ( Segment segment : sealed )
+    {
+      if ( segment != active && segment.size > 0 && 1
+          - ( double ) segment.live / segment.size >= compactionThreshold )
+      {
+        compact( segment );
+      }
+    }
+  }
+
+  /**
+   * Index the records of a segment that is being recovered.
+   *
+   * A record that was only partially written is truncated from the end
+   * of an unmapped segment, and cleared from a mapped segment so that
+   * it is not found again once the segment is appended to.
+   *
+   * @param segment to scan
+   * @throws IOException
+   */
+  private void scan(Segment segment) throws IOException {
+    long size = segment.channel.size();
+    long position = 0;
+    while ( position + RECORD_HEADER_SIZE <= size )
+    {
+      readFully( segment.channel, header.clear(), position );
+      header.flip();
+      long handle = header.getLong();
+      int sequence = header.getInt();
+      int length = header.getInt();
+      long offset = position + RECORD_HEADER_SIZE;
+      if ( length <= 0 || offset + length > size )
+      {
+        break;
+      }
+      segment.size = offset + length;
+      segment.live += RECORD_HEADER_SIZE + length;
+      Location previous = index.computeIfAbsent( handle, k -> new HashMap<>() )
+          .put( sequence, new Location( segment, offset, length ) );
+      if ( previous != null )
+      {
+        previous.segment.live -= RECORD_HEADER_SIZE + previous.length;
+      }
+      position = segment.size;
+    }
+    boolean partial;
+    if ( segment.mapping != null )
+    {
+      partial = clear( segment.mapping, ( int ) segment.size );
+    } else
+    {
+      partial = segment.size < size;
+      segment.channel.truncate( segment.size );
+    }
+    if ( partial )
+    {
+      LOG.info( "Removed a partially written record from "
+          + segment.path.getFileName() );
+    }
+    segment.channel.position( segment.size );
+  }
+
+  /**
+   * Zero the mapping from the position to its end, so nothing past the
+   * last complete record is taken for a record once the segment is
+   * appended to again.
+   *
+   * @param mapping of a segment
+   * @param position following the last complete record
+   * @return true if anything had been written past the position
+   */
+  private static boolean clear(MappedByteBuffer mapping, int position) {
+    boolean cleared = false;
+    for ( int i = position; i < mapping.capacity(); ++i )
+    {
+      if ( mapping.get( i ) != 0 )
+      {
+        mapping.put( i, ( byte ) 0 );
+        cleared = true;
+      }
+    }
+    return cleared;
+  }
+
+  /**
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @return the location of the latest record of the chunk, or null if
+   *         the chunk is not stored
+   */
+  private Location get(long handle, int sequence) {
+    Map<Integer, Location> chunks = index.get( handle );
+    return chunks == null ? null : chunks.get( sequence );
+  }
+
+  /**
+   * Release a reference to a segment from an opened chunk, deleting
+   * the segment if it has been compacted.
+   *
+   * @param segment referred to by the chunk
+   * @throws IOException
+   */
+  private synchronized void release(Segment segment) throws IOException {
+    if ( --segment.references == 0 && segment.retired )
+    {
+      delete( segment );
+    }
+  }
+
+  /**
+   *
+   * @param segment that has been compacted
+   * @throws IOException
+   */
+  private void delete(Segment segment) throws IOException {
+    segment.channel.close();
+    Files.deleteIfExists( segment.path );
+  }
+
+  /**
+   * Fill the buffer from the channel, starting at the position.
+   *
+   * @param channel to read from
+   * @param buffer to fill
+   * @param position in the channel to begin at
+   * @throws IOException if the channel ends before the buffer is full
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer,
+      long position) throws IOException {
+    while ( buffer.hasRemaining() )
+    {
+      if ( channel.read( buffer, position + buffer.position() ) < 0 )
+      {
+        throw new EOFException( "The segment ended before it was read." );
+      }
+    }
+  }
+
+  /**
+   * A segment file, and the accounting of the bytes it holds.
+   *
+   * @author stock
+   *
+   */
+  private static class Segment {
+
+    private final int identifier;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    /**
+     * The whole segment, if it is mapped, otherwise null
+     */
+    private final MappedByteBuffer mapping;
+
+    /**
+     * Bytes of complete records in the segment
+     */
+    private long size;
+
+    /**
+     * Bytes of records that are still referred to by the index
+     */
+    private long live;
+
+    /**
+     * Number of opened chunks reading from the segment
+     */
+    private int references;
+
+    private boolean retired;
+
+    /**
+     * Default constructor -
+     *
+     * @param identifier of the segment, in the order it was created
+     * @param path of the segment file
+     * @param channel opened for reading and appending
+     * @param mapping of the whole segment, or null if not mapped
+     */
+    private Segment(int identifier, Path path, FileChannel channel,
+        MappedByteBuffer mapping) {
+      this.identifier = identifier;
+      this.path = path;
+      this.channel = channel;
+      this.mapping = mapping;
+    }
+  }
+
+  /**
+   * The location of a chunk within a segment.
+   *
+   * @author stock
+   *
+   */
+  private static class Location {
+
+    private final Segment segment;
+
+    private final long offset;
+
+    private final int length;
+
+    /**
+     * Default constructor -
+     *
+     * @param segment holding the chunk
+     * @param offset of the chunk, after its record header
+     * @param length of the chunk in bytes
+     */
+    private Location(Segment segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package cs555.system.store;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A chunk that has been opened from a {@link ChunkStore}, as a region
+ * of a file.
+ *
+ * The region is only read with positional operations, so the channel
+ * may be shared with other chunks and other threads. The content can
+ * be sent straight from the channel, see
+ * {@link cs555.system.transport.TCPSender#sendFile}. If the store has
+ * already mapped the region into memory, it is read from the mapping.
+ *
+ * @author stock
+ *
+ */
+public class StoredChunk implements Closeable {
+
+  private final Path path;
+
+  private final FileChannel channel;
+
+  private final long position;
+
+  private final long length;
+
+  private final ByteBuffer mapping;
+
+  private final Closeable release;
+
+  /**
+   * Default constructor -
+   *
+   * @param path of the file holding the chunk
+   * @param channel of the file holding the chunk
+   * @param position of the chunk within the file
+   * @param length of the chunk in bytes
+   * @param release called once the chunk has been read
+   */
+  public StoredChunk(Path path, FileChannel channel, long position,
+      long length, Closeable release) {
+    this( path, channel, position, length, null, release );
+  }
+
+  /**
+   * Constructor - for a chunk that is already mapped into memory.
+   *
+   * @param path of the file holding the chunk
+   * @param channel of the file holding the chunk
+   * @param position of the chunk within the file
+   * @param length of the chunk in bytes
+   * @param mapping read-only mapping of the chunk, or null
+   * @param release called once the chunk has been read
+   */
+  public StoredChunk(Path path, FileChannel channel, long position,
+      long length, ByteBuffer mapping, Closeable release) {
+    this.path = path;
+    this.channel = channel;
+    this.position = position;
+    this.length = length;
+    this.mapping = mapping;
+    this.release = release;
+  }
+
+  /**
+   *
+   * @return the path of the file holding the chunk
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   *
+   * @return the channel of the file holding the chunk
+   */
+  public FileChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * The file may hold other chunks, so it may have been modified
+   * without this chunk having changed, but not the other way around.
+   * The time is read from the file system on every call.
+   *
+   * @return the time in milliseconds the file holding the chunk was
+   *         last modified
+   * @throws IOException if the time could not be read
+   */
+  public long getLastModified() throws IOException {
+    return Files.getLastModifiedTime( path ).toMillis();
+  }
+
+  /**
+   *
+   * @return the position of the chunk within the file
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   *
+   * @return the length of the chunk in bytes
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Map the chunk into memory, so it may be read without copying it
+   * onto the heap.
+   *
+   * @return a read-only mapping of the chunk
+   * @throws IOException if the chunk could not be mapped
+   */
+  public ByteBuffer map() throws IOException {
+    if ( mapping != null )
+    {
+      return mapping.duplicate();
+    }
+    return channel.map( MapMode.READ_ONLY, position, length );
+  }
+
+  /**
+   * Read part of the chunk onto the heap.
+   *
+   * @param offset within the chunk to begin at
+   * @param count number of bytes to read
+   * @return the bytes that were read
+   * @throws IOException if the chunk ends before <code>count</code>
+   *         bytes are read
+   */
+  public byte[] read(long offset, int count) throws IOException {
+    if ( offset + count > length )
+    {
+      throw new EOFException( "The chunk ended before it was read." );
+    }
+    ByteBuffer buffer = ByteBuffer.allocate( count );
+    if ( mapping != null )
+    {
+      mapping.get( ( int ) offset, buffer.array() );
+      return buffer.array();
+    }
+    while ( buffer.hasRemaining() )
+    {
+      if ( channel.read( buffer,
+          position + offset + buffer.position() ) < 0 )
+      {
+        throw new EOFException( "The chunk ended before it was read." );
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Release the chunk back to the store.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    release.close();
+  }
+}
@@ -0,0 +1,153 @@
+package cs555.system.store;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers when the integrity of each stored chunk was last validated,
+ * so a chunk that is read again soon after need not be hashed again.
+ *
+ * A validation is identified by where the chunk is stored, its length,
+ * and when the file holding it was last modified, as read before the
+ * chunk was hashed, see {@link StoredChunk#getLastModified()}. It
+ * is trusted until the freshness window has passed, or the chunk no
+ * longer matches, so a chunk that is rewritten, moved, or modified on
+ * disk is validated again on its next read.
+ *
+ * Only reads rely on the cache, so a periodic full validation of every
+ * chunk is still needed to find corruption of chunks that are read
+ * often.
+ *
+ * @author stock
+ *
+ */
+public class VerificationCache {
+
+  private final long window;
+
+  /**
+   * Latest validation of each chunk <k: file handle, v: <k: sequence, v:
+   * validation>>
+   */
+  private final Map<Long, Map<Integer, Validation>> validations;
+
+  /**
+   * Default constructor -
+   *
+   * @param window in milliseconds that a validation is trusted for
+   */
+  public VerificationCache(long window) {
+    this.window = window;
+    this.validations = new HashMap<>();
+  }
+
+  /**
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param chunk opened from the store
+   * @param lastModified time of the chunk's file in milliseconds, read
+   *        before the chunk is validated
+   * @return true if the chunk, as it is stored now, was validated
+   *         within the freshness window
+   */
+  public boolean isValid(long handle, int sequence, StoredChunk chunk,
+      long lastModified) {
+    Validation validation;
+    synchronized ( this )
+    {
+      validation = validations.getOrDefault( handle, Map.of() )
+          .get( sequence );
+    }
+    return validation != null
+        && System.currentTimeMillis() - validation.time < window
+        && validation.matches( chunk, lastModified );
+  }
+
+  /**
+   * Record that the integrity of the chunk, as it is stored now, has
+   * been validated.
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @param chunk opened from the store
+   * @param lastModified time of the chunk's file in milliseconds, as
+   *        read before the chunk was hashed, so a write while hashing
+   *        leaves the validation stale
+   */
+  public void validated(long handle, int sequence, StoredChunk chunk,
+      long lastModified) {
+    Validation validation = new Validation( chunk.getPath(),
+        chunk.getPosition(), chunk.getLength(), lastModified );
+    synchronized ( this )
+    {
+      validations.computeIfAbsent( handle, k -> new HashMap<>() )
+          .put( sequence, validation );
+    }
+  }
+
+  /**
+   * Forget the validation of the chunk, once it has been written or
+   * found to be corrupt.
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   */
+  public synchronized void invalidate(long handle, int sequence) {
+    Map<Integer, Validation> chunks = validations.get( handle );
+    if ( chunks != null && chunks.remove( sequence ) != null
+        && chunks.isEmpty() )
+    {
+      validations.remove( handle );
+    }
+  }
+
+  /**
+   * The stored chunk that was validated, and when.
+   *
+   * @author stock
+   *
+   */
+  private static class Validation {
+
+    private final Path path;
+
+    private final long position;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private final long time;
+
+    /**
+     * Default constructor -
+     *
+     * @param path of the file holding the chunk
+     * @param position of the chunk within its file
+     * @param length of the chunk in bytes
+     * @param lastModified time of the file in milliseconds
+     */
+    private Validation(Path path, long position, long length,
+        long lastModified) {
+      this.path = path;
+      this.position = position;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.time = System.currentTimeMillis();
+    }
+
+    /**
+     *
+     * @param chunk opened from the store
+     * @param lastModified time of the chunk's file in milliseconds
+     * @return true if the chunk is stored as it was when validated
+     */
+    private boolean matches(StoredChunk chunk, long lastModified) {
+      return path.equals( chunk.getPath() )
+          && position == chunk.getPosition() && length == chunk.getLength()
+          && this.lastModified == lastModified;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package cs555.system.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import cs555.system.util.Properties;
+
+/**
+ * Singleton class holding direct buffers that incoming frames are read
+ * into, so that a new array is not allocated for every message.
+ *
+ * Buffers are grouped into size classes of powers of two. A request
+ * is served from the smallest class that fits the frame, and frames
+ * larger than the biggest class are given a heap buffer that is not
+ * pooled.
+ *
+ * @author stock
+ *
+ */
+public class BufferPool {
+
+  /**
+   * The smallest pooled buffer is 2^10 = 1KB.
+   */
+  private final static int MIN_CLASS = 10;
+
+  /**
+   * The largest pooled buffer is 2^20 = 1MB.
+   */
+  private final static int MAX_CLASS = 20;
+
+  private final static BufferPool instance = new BufferPool(
+      Integer.parseInt( Properties.SYSTEM_TRANSPORT_POOL_BUFFERS ) );
+
+  private final BlockingQueue<ByteBuffer>[] classes;
+
+  /**
+   * Default constructor - create an empty queue for each size class.
+   *
+   * @param buffersPerClass maximum number of buffers retained for each
+   *        size class
+   */
+  @SuppressWarnings( { "unchecked", "rawtypes" } )
+  private BufferPool(int buffersPerClass) {
+    this.classes = new BlockingQueue[ MAX_CLASS - MIN_CLASS + 1 ];
+    for ( int i = 0; i < classes.length; ++i )
+    {
+      classes[ i ] = new ArrayBlockingQueue<>( Math.max( 1, buffersPerClass ) );
+    }
+  }
+
+  /**
+   *
+   * @return the instance for the class
+   */
+  public static BufferPool getInstance() {
+    return instance;
+  }
+
+  /**
+   * Retrieve a buffer with a position of zero, and a limit of
+   * <code>length</code>.
+   *
+   * @param length of the frame that will be read into the buffer
+   * @return a cleared buffer that can hold the frame
+   */
+  public ByteBuffer acquire(int length) {
+    int index = indexOf( length );
+    if ( index < 0 )
+    {
+      return ByteBuffer.allocate( length );
+    }
+    ByteBuffer buffer = classes[ index ].poll();
+    if ( buffer == null )
+    {
+      buffer = ByteBuffer.allocateDirect( 1 << ( index + MIN_CLASS ) );
+    }
+    buffer.clear().limit( length );
+    return buffer;
+  }
+
+  /**
+   * Return a buffer to the pool once nothing references its content.
+   * Buffers that were not pooled, or that do not fit in a full size
+   * class, are left for the garbage collector.
+   *
+   * @param buffer previously acquired from the pool
+   */
+  public void release(ByteBuffer buffer) {
+    if ( buffer == null || !buffer.isDirect() )
+    {
+      return;
+    }
+    int index = indexOf( buffer.capacity() );
+    if ( index >= 0 && buffer.capacity() == 1 << ( index + MIN_CLASS ) )
+    {
+      classes[ index ].offer( buffer );
+    }
+  }
+
+  /**
+   *
+   * @param length in bytes
+   * @return the index of the smallest size class that can hold the
+   *         length, or -1 if the length is too large to be pooled
+   */
+  private static int indexOf(int length) {
+    int bits = 32 - Integer.numberOfLeadingZeros( Math.max( 1, length ) - 1 );
+    bits = Math.max( bits, MIN_CLASS );
+    return bits > MAX_CLASS ? -1 : bits - MIN_CLASS;
+  }
+}
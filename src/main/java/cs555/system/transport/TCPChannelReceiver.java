@@ -0,0 +1,364 @@
+package cs555.system.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import cs555.system.node.Node;
+import cs555.system.util.Logger;
+import cs555.system.util.Properties;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.EventDecoder;
+import cs555.system.wireformats.EventFactory;
+import cs555.system.wireformats.Protocol;
+
+/**
+ * The non-blocking counterpart to the {@link TCPReceiverThread}.
+ * 
+ * Rather than owning a thread, the receiver holds the partially read
+ * frame for a connection between calls from a
+ * {@link TCPSelectorThread}. Each frame is the length of the message
+ * followed by the message itself, and is read into a buffer from the
+ * {@link BufferPool} that is returned once the event has been
+ * dispatched, unless the event has retained it. Compressed and control
+ * frames are interpreted by the {@link TCPCompression} of the
+ * connection.
+ * 
+ * Streamed frames are read a segment at a time with an
+ * {@link EventDecoder}, which holds the partially read frame instead.
+ * 
+ * Events are never handled on the selector thread, since a handler
+ * that blocks, e.g., sending a message, would stall every other
+ * connection of that thread. Instead, events are queued per connection
+ * and drained in the order they were received by the small, fixed pool
+ * of handler threads shared by the {@link TCPSelectorGroup}, so no
+ * thread is created for a connection. Write chunk credits are granted
+ * right away, as they never block.
+ * 
+ * When the pooled dispatcher is configured, an event is offered
+ * straight to its worker instead. Only if the worker queue is full is
+ * the event left for a handler thread to wait on, and the connection
+ * is not read again until it has been handed on. Otherwise, the
+ * connection is not read again while
+ * {@link Properties#SYSTEM_DISPATCH_QUEUE_SIZE} events are waiting.
+ * 
+ * @author stock
+ *
+ */
+public class TCPChannelReceiver {
+
+  private final static Logger LOG = Logger.getInstance();
+
+  private final static int MAX_PENDING_EVENTS = Math.max( 1,
+      Integer.parseInt( Properties.SYSTEM_DISPATCH_QUEUE_SIZE ) );
+
+  /**
+   * Events dispatched by a handler thread before it yields to other
+   * connections
+   */
+  private final static int MAX_DRAINED_EVENTS = 64;
+
+  private final Node node;
+
+  private final SocketChannel channel;
+
+  private final TCPConnection connection;
+
+  private final ByteBuffer header;
+
+  private ByteBuffer payload;
+
+  private final EventDecoder decoder;
+
+  private ByteBuffer segment;
+
+  private int flags;
+
+  private SelectionKey key;
+
+  private Executor handlers;
+
+  private final Queue<Event> events;
+
+  private boolean handling;
+
+  private boolean paused;
+
+  /**
+   * Default constructor - Initialize the receiver with the channel of
+   * the connection to read from.
+   * 
+   * @param node
+   * @param channel
+   * @param connection
+   */
+  public TCPChannelReceiver(Node node, SocketChannel channel,
+      TCPConnection connection) {
+    this.node = node;
+    this.channel = channel;
+    this.connection = connection;
+    this.header = ByteBuffer.allocate( Integer.BYTES );
+    this.decoder = new EventDecoder();
+    this.events = new ArrayDeque<>();
+  }
+
+  /**
+   * 
+   * @return the channel associated with the receiver
+   */
+  protected SocketChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * 
+   * @return the connection associated with the receiver
+   */
+  protected TCPConnection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Set the key the channel was registered with, so reads may be paused
+   * while the handlers catch up, and the handlers to drain events on.
+   * 
+   * @param key of the channel with the selector
+   * @param handlers shared by the connections of the selector
+   */
+  protected void setKey(SelectionKey key, Executor handlers) {
+    this.key = key;
+    this.handlers = handlers;
+  }
+
+  /**
+   * Read as much as is available from the channel. Create an event for
+   * every completed frame and handle it appropriately.
+   * 
+   * @return false if the end of the stream has been reached, true
+   *         otherwise. Reading may have been paused, see
+   *         {@link #handle(Event)}.
+   * @throws IOException
+   */
+  protected boolean read() throws IOException {
+    while ( true )
+    {
+      if ( payload == null && segment == null )
+      {
+        if ( channel.read( header ) < 0 )
+        {
+          return false;
+        }
+        if ( header.hasRemaining() )
+        {
+          return true;
+        }
+        header.flip();
+        flags = header.getInt();
+        header.clear();
+        if ( ( flags & TCPCompression.STREAMED_FLAG ) != 0 )
+        {
+          decoder.reset( flags & TCPCompression.LENGTH_MASK );
+          segment = decoder.next();
+        } else
+        {
+          payload = BufferPool.getInstance()
+              .acquire( flags & TCPCompression.LENGTH_MASK );
+        }
+      }
+      if ( segment != null )
+      {
+        if ( channel.read( segment ) < 0 )
+        {
+          return false;
+        }
+        if ( segment.hasRemaining() )
+        {
+          return true;
+        }
+        segment = decoder.next();
+        if ( segment == null && decoder.getEvent() != null
+            && !handle( decoder.getEvent() ) )
+        {
+          return true;
+        }
+        continue;
+      }
+      if ( channel.read( payload ) < 0 )
+      {
+        return false;
+      }
+      if ( payload.hasRemaining() )
+      {
+        return true;
+      }
+      ByteBuffer frame = payload;
+      ByteBuffer data = null;
+      ByteBuffer retained = null;
+      boolean reading = true;
+      payload = null;
+      try
+      {
+        frame.flip();
+
+        data = connection.getCompression().receive( flags, frame );
+        if ( data != null )
+        {
+          EventFactory eventFactory = EventFactory.getInstance();
+          Event event = eventFactory.createRetainedEvent( data );
+          if ( eventFactory.isRetained( event ) )
+          {
+            retained = data;
+          }
+          reading = handle( event );
+        }
+      } finally
+      {
+        if ( frame != retained )
+        {
+          BufferPool.getInstance().release( frame );
+        }
+        if ( data != frame && data != retained )
+        {
+          BufferPool.getInstance().release( data );
+        }
+      }
+      if ( !reading )
+      {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Hand a received event on without blocking. The event is offered to
+   * the pooled dispatcher if nothing is waiting before it, and is
+   * otherwise queued for the handlers. Write chunk credits are granted
+   * immediately instead.
+   * 
+   * @param event that was received
+   * @return true if more events may be read, false if the handlers have
+   *         fallen behind and reading the channel has been paused
+   * @throws IOException if the event could not be dispatched
+   */
+  private boolean handle(Event event) throws IOException {
+    TCPDispatcher dispatcher = TCPDispatcher.getInstance();
+    if ( event.getType() == Protocol.WRITE_CHUNK_CREDIT )
+    {
+      dispatcher.dispatch( node, event, connection );
+      return true;
+    }
+    synchronized ( events )
+    {
+      if ( !handling && dispatcher.offer( node, event, connection ) )
+      {
+        return true;
+      }
+      events.add( event );
+      if ( !handling )
+      {
+        handling = true;
+        handlers.execute( this::drain );
+      }
+      if ( events.size() >= ( dispatcher.isPooled() ? 1
+          : MAX_PENDING_EVENTS ) )
+      {
+        paused = true;
+        key.interestOps( 0 );
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Run by a handler thread - dispatch the queued events in order,
+   * waiting for room in the worker queue if the pooled dispatcher is
+   * configured. Reading is resumed once there is room for more events.
+   * After {@link #MAX_DRAINED_EVENTS} the handler yields to other
+   * connections, and the rest are drained by a later task. If an event
+   * fails to be handled, the connection is closed as it would be had
+   * the receiving thread failed.
+   *
+   */
+  private void drain() {
+    for ( int drained = 0;; ++drained )
+    {
+      Event event;
+      synchronized ( events )
+      {
+        if ( events.isEmpty() )
+        {
+          handling = false;
+          return;
+        }
+        if ( drained == MAX_DRAINED_EVENTS )
+        {
+          handlers.execute( this::drain );
+          return;
+        }
+        event = events.poll();
+        if ( paused )
+        {
+          paused = false;
+          resume();
+        }
+      }
+      try
+      {
+        TCPDispatcher.getInstance().dispatch( node, event, connection );
+      } catch ( IOException | RuntimeException e )
+      {
+        LOG.error( "Unable to handle the event, closing connection... " + e );
+        close( e );
+        synchronized ( events )
+        {
+          events.clear();
+          handling = false;
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Register interest in reading the channel again, and wake the
+   * selector so the change is seen.
+   *
+   */
+  private void resume() {
+    try
+    {
+      key.interestOps( SelectionKey.OP_READ );
+      key.selector().wakeup();
+    } catch ( CancelledKeyException e )
+    {
+      LOG.debug( "Connection closed while paused... " + e );
+    }
+  }
+
+  /**
+   * Stop selecting and close the channel, then fail every request and
+   * credit waiting on the connection.
+   * 
+   * @param cause of the connection closing
+   */
+  protected void close(Exception cause) {
+    if ( key != null )
+    {
+      key.cancel();
+    }
+    try
+    {
+      channel.close();
+    } catch ( IOException e )
+    {
+      LOG.debug( "Unable to close connection... " + e );
+    }
+    connection.failAll( cause instanceof IOException ? ( IOException ) cause
+        : new IOException( cause ) );
+  }
+}
@@ -0,0 +1,308 @@
+package cs555.system.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import cs555.system.util.Constants;
+import cs555.system.util.Properties;
+
+/**
+ * Frame compression that is negotiated for each connection.
+ *
+ * The high bits of the length that precedes every frame are used as
+ * flags. A control frame carries the capabilities of the sender, and
+ * is sent by both ends when a connection is started with compression
+ * enabled. Once the capabilities of the peer are known, each message
+ * is compressed with {@link Deflater#BEST_SPEED}. A compressed frame
+ * is the length of the original message followed by the deflated
+ * bytes, and messages that do not become smaller are sent as they
+ * are.
+ *
+ * Nodes that have not enabled compression never send a control frame,
+ * and so are never sent compressed frames.
+ *
+ * The flag for streamed frames is also held here, so every flag is
+ * masked out of the length in one place. Streamed frames are never
+ * compressed, and are read with an
+ * {@link cs555.system.wireformats.EventDecoder}.
+ *
+ * @author stock
+ *
+ */
+public class TCPCompression {
+
+  /**
+   * Set on the frame length when the frame is compressed.
+   */
+  protected final static int COMPRESSED_FLAG = 0x80000000;
+
+  /**
+   * Set on the frame length when the frame carries capabilities.
+   */
+  protected final static int CONTROL_FLAG = 0x40000000;
+
+  /**
+   * Set on the frame length when the frame is written as segments that
+   * may be read incrementally.
+   */
+  protected final static int STREAMED_FLAG = 0x20000000;
+
+  /**
+   * Masks the flags out of the frame length.
+   */
+  protected final static int LENGTH_MASK =
+      ~( COMPRESSED_FLAG | CONTROL_FLAG | STREAMED_FLAG );
+
+  /**
+   * Capability bit for deflate compressed frames.
+   */
+  protected final static int CAPABILITY_DEFLATE = 1;
+
+  /**
+   * Messages smaller than this are not worth compressing.
+   */
+  private final static int MIN_COMPRESSED_SIZE = 256;
+
+  /**
+   * The largest output buffer that is kept between messages, 1MB.
+   */
+  private final static int MAX_OUTPUT_BUFFER_SIZE = 1 << 20;
+
+  protected final static boolean ENABLED =
+      Properties.SYSTEM_TRANSPORT_COMPRESSION
+          .equals( Constants.COMPRESSION_TYPE_DEFLATE );
+
+  private final boolean enabled;
+
+  private final Deflater deflater;
+
+  private final Inflater inflater;
+
+  private volatile boolean negotiated;
+
+  private byte[] output;
+
+  private boolean ended;
+
+  /**
+   * Default constructor -
+   *
+   */
+  public TCPCompression() {
+    this( ENABLED );
+  }
+
+  /**
+   * Constructor - create the compression for a connection regardless
+   * of the configured compression.
+   *
+   * @param enabled true if this end of the connection may compress
+   */
+  protected TCPCompression(boolean enabled) {
+    this.enabled = enabled;
+    this.deflater = enabled ? new Deflater( Deflater.BEST_SPEED ) : null;
+    this.inflater = new Inflater();
+    this.negotiated = false;
+  }
+
+  /**
+   *
+   * @return the capabilities of this node to send to the peer
+   */
+  protected static int capabilities() {
+    return ENABLED ? CAPABILITY_DEFLATE : 0;
+  }
+
+  /**
+   * Record the capabilities the peer has sent.
+   *
+   * @param capabilities of the peer
+   */
+  protected void setPeerCapabilities(int capabilities) {
+    negotiated = enabled && ( capabilities & CAPABILITY_DEFLATE ) != 0;
+  }
+
+  /**
+   *
+   * @return true if both ends of the connection have enabled
+   *         compression, false otherwise
+   */
+  public boolean isNegotiated() {
+    return negotiated;
+  }
+
+  /**
+   * Compress the message if compression has been negotiated, and the
+   * message becomes smaller.
+   *
+   * @param data the marshalled message
+   * @return the deflated message, or null if the message should be
+   *         sent as it is
+   */
+  protected byte[] compress(byte[] data) {
+    if ( !negotiated || data.length < MIN_COMPRESSED_SIZE )
+    {
+      return null;
+    }
+    synchronized ( deflater )
+    {
+      if ( ended )
+      {
+        return null;
+      }
+      byte[] buffer = outputBuffer( data.length - Integer.BYTES );
+      deflater.reset();
+      deflater.setInput( data );
+      deflater.finish();
+      int length = deflater.deflate( buffer, 0, data.length - Integer.BYTES );
+      if ( !deflater.finished() )
+      {
+        return null;
+      }
+      byte[] compressed = new byte[ length ];
+      System.arraycopy( buffer, 0, compressed, 0, length );
+      return compressed;
+    }
+  }
+
+  /**
+   * Retrieve the buffer to deflate into. The buffer is kept for the
+   * next message unless it is larger than
+   * {@link #MAX_OUTPUT_BUFFER_SIZE}.
+   *
+   * @param capacity in bytes
+   * @return a buffer of at least <code>capacity</code> bytes
+   */
+  private byte[] outputBuffer(int capacity) {
+    if ( capacity > MAX_OUTPUT_BUFFER_SIZE )
+    {
+      return new byte[ capacity ];
+    }
+    if ( output == null || output.length < capacity )
+    {
+      output = new byte[ Math.max( MIN_COMPRESSED_SIZE,
+          Integer.highestOneBit( capacity - 1 ) << 1 ) ];
+    }
+    return output;
+  }
+
+  /**
+   * Release the native memory held by the deflater and inflater once
+   * the connection has closed. Messages are no longer compressed, and
+   * compressed frames are no longer inflated.
+   *
+   */
+  protected void end() {
+    if ( deflater != null )
+    {
+      synchronized ( deflater )
+      {
+        ended = true;
+        deflater.end();
+        output = null;
+      }
+    }
+    synchronized ( inflater )
+    {
+      ended = true;
+      inflater.end();
+    }
+  }
+
+  /**
+   * Interpret a frame that has been read in full. Control frames
+   * update the capabilities of the peer, and compressed frames are
+   * inflated.
+   *
+   * @param header the length and flags that preceded the frame
+   * @param frame the payload of the frame, flipped for reading
+   * @return the message to decode, which is a new buffer from the
+   *         {@link BufferPool} that the caller must also release if
+   *         it differs from <code>frame</code>, or null if the frame
+   *         was a control frame
+   * @throws IOException if the frame is malformed
+   */
+  protected ByteBuffer receive(int header, ByteBuffer frame)
+      throws IOException {
+    if ( ( header & CONTROL_FLAG ) != 0 )
+    {
+      if ( frame.remaining() < Integer.BYTES )
+      {
+        throw new IOException( "The control frame is malformed. " );
+      }
+      setPeerCapabilities( frame.getInt() );
+      return null;
+    }
+    if ( ( header & COMPRESSED_FLAG ) != 0 )
+    {
+      return decompress( frame );
+    }
+    return frame;
+  }
+
+  /**
+   * Inflate the payload of a compressed frame into a buffer from the
+   * {@link BufferPool}, which the caller must release.
+   *
+   * @param frame positioned at the original length of the message
+   * @return the original message, flipped for reading
+   * @throws IOException if the frame could not be inflated
+   */
+  private ByteBuffer decompress(ByteBuffer frame) throws IOException {
+    if ( frame.remaining() < Integer.BYTES )
+    {
+      throw new IOException( "The compressed frame is malformed. " );
+    }
+    int length = frame.getInt();
+    if ( length < 0 )
+    {
+      throw new IOException( "The compressed frame is malformed. " );
+    }
+    ByteBuffer data = BufferPool.getInstance().acquire( length );
+    synchronized ( inflater )
+    {
+      if ( ended )
+      {
+        BufferPool.getInstance().release( data );
+        throw new IOException( "The connection has closed. " );
+      }
+      inflate( frame, data );
+    }
+    data.flip();
+    return data;
+  }
+
+  /**
+   * Inflate the frame into the buffer, releasing the buffer if it
+   * could not be filled.
+   *
+   * @param frame positioned after the original length of the message
+   * @param data to fill with the original message
+   * @throws IOException if the frame could not be inflated
+   */
+  private void inflate(ByteBuffer frame, ByteBuffer data) throws IOException {
+    try
+    {
+      inflater.reset();
+      inflater.setInput( frame );
+      while ( data.hasRemaining() && !inflater.finished() )
+      {
+        if ( inflater.inflate( data ) == 0 )
+        {
+          break;
+        }
+      }
+      if ( data.hasRemaining() )
+      {
+        throw new IOException( "The compressed frame is truncated. " );
+      }
+    } catch ( DataFormatException | IOException e )
+    {
+      BufferPool.getInstance().release( data );
+      throw e instanceof IOException ? ( IOException ) e
+          : new IOException( "The compressed frame is malformed. ", e );
+    }
+  }
+}
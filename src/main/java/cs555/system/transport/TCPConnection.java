@@ -3,11 +3,18 @@ package cs555.system.transport;
 import java.io.IOException;
 import java.net.Socket;
 import cs555.system.node.Node;
+import cs555.system.util.Constants;
+import cs555.system.util.ExecutionUtilities;
+import cs555.system.util.Properties;
 
 /**
  * This class is used to establish a connection by starting a new
  * TCPReceiverThread and associating the TCPSender with the socket.
  * 
+ * When the selector transport is configured, the connection is
+ * instead registered with the shared {@link TCPSelectorGroup} so that
+ * no thread is dedicated to the connection.
+ * 
  * @author stock
  *
  */
@@ -19,6 +26,14 @@ public class TCPConnection {
 
   private TCPReceiverThread receiver;
 
+  private TCPChannelReceiver channelReceiver;
+
+  private final TCPRequestTable requestTable;
+
+  private final TCPCompression compression;
+
+  private final TCPCreditWindow credits;
+
   /**
    * Default constructor - create a new TCPConnection given a Node,
    * i.e., chunk server or controller, and the socket for the
@@ -30,8 +45,19 @@ public class TCPConnection {
    */
   public TCPConnection(Node node, Socket socket) throws IOException {
     this.socket = socket;
-    this.sender = new TCPSender( this.socket );
-    this.receiver = new TCPReceiverThread( node, this.socket, this );
+    this.compression = new TCPCompression();
+    this.sender = new TCPSender( this.socket, this.compression );
+    this.requestTable = new TCPRequestTable();
+    this.credits = new TCPCreditWindow();
+    if ( Properties.SYSTEM_TRANSPORT_MODE
+        .equals( Constants.TRANSPORT_TYPE_SELECTOR ) )
+    {
+      this.channelReceiver =
+          new TCPChannelReceiver( node, this.socket.getChannel(), this );
+    } else
+    {
+      this.receiver = new TCPReceiverThread( node, this.socket, this );
+    }
   }
 
   /**
@@ -55,22 +81,92 @@ public class TCPConnection {
   }
 
   /**
-   * Allow the TCPConnection to start receiving messages.
+   * Get the table of requests that are waiting for a response on this
+   * connection.
+   * 
+   * @return the request table for the connection
+   */
+  public TCPRequestTable getRequestTable() {
+    return this.requestTable;
+  }
+
+  /**
+   * Get the credits for sending chunks on this connection.
+   * 
+   * @return the credit window for the connection
+   */
+  public TCPCreditWindow getCredits() {
+    return this.credits;
+  }
+
+  /**
+   * Fail every request and credit waiting on the connection, since no
+   * more messages will be received.
+   * 
+   * @param cause of the connection closing
+   */
+  protected void failAll(IOException cause) {
+    this.requestTable.failAll( cause );
+    this.credits.fail( cause );
+  }
+
+  /**
+   * Get the compression negotiated for this connection.
+   * 
+   * @return the compression for the connection
+   */
+  public TCPCompression getCompression() {
+    return this.compression;
+  }
+
+  /**
+   * Allow the TCPConnection to start receiving messages. If
+   * compression is enabled, the capabilities of this node are sent to
+   * the peer.
+   * 
+   * @throws IOException if the selector threads could not be started,
+   *         or the capabilities could not be sent
+   */
+  public void start() throws IOException {
+    if ( this.channelReceiver != null )
+    {
+      TCPSelectorGroup.getInstance().register( this.channelReceiver );
+    } else
+    {
+      ExecutionUtilities.startThread( this.receiver, "Receiver Thread" );
+    }
+    if ( TCPCompression.ENABLED )
+    {
+      this.sender.sendCapabilities();
+    }
+  }
+
+  /**
+   * Check whether the connection may still be used to send and receive
+   * messages.
    * 
+   * @return true if the socket is open and the receiver has not seen
+   *         the connection close, false otherwise
    */
-  public void start() {
-    ( new Thread( this.receiver ) ).start();
+  public boolean isOpen() {
+    return !this.socket.isClosed() && !this.requestTable.isFailed();
   }
 
   /**
-   * Close the socket sender and receiver.
+   * Close the socket sender and receiver. Queued messages are written
+   * before the socket is closed, and the native memory held for
+   * compression is released afterwards.
    * 
    * @throws IOException
-   * @throws InterruptedException
    */
   public void close() throws IOException {
-    this.socket.close();
-    this.sender.dout.close();
-    this.receiver.din.close();
+    try
+    {
+      this.sender.close();
+      this.socket.close();
+    } finally
+    {
+      this.compression.end();
+    }
   }
 }
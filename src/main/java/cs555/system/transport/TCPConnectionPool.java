@@ -0,0 +1,237 @@
+package cs555.system.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import cs555.system.node.Node;
+import cs555.system.util.Logger;
+import cs555.system.util.Properties;
+
+/**
+ * Singleton class holding the outgoing connections of the process,
+ * so that consecutive uploads, reads and forwarded chunks reuse warm
+ * connections to a peer instead of reconnecting.
+ *
+ * Connections are leased with {@link #acquire(Node, String, int)} and
+ * returned with {@link #release(TCPConnection)}. A connection may be
+ * leased by many callers at once. New connections are only opened
+ * while every connection to the peer is in use, up to the configured
+ * maximum per peer. Connections that are no longer leased are closed
+ * once they have been idle for the configured timeout, and closed
+ * connections are discarded when they are next leased.
+ *
+ * @author stock
+ *
+ */
+public class TCPConnectionPool {
+
+  private final static Logger LOG = Logger.getInstance();
+
+  private final static TCPConnectionPool instance = new TCPConnectionPool(
+      Integer.parseInt( Properties.SYSTEM_CONNECTION_MAX_PER_PEER ),
+      TimeUnit.SECONDS.toMillis(
+          Long.parseLong( Properties.SYSTEM_CONNECTION_IDLE_TIMEOUT ) ) );
+
+  private final Map<String, List<PooledConnection>> peers;
+
+  private final Map<TCPConnection, PooledConnection> leased;
+
+  private final int maxPerPeer;
+
+  private final long idleTimeout;
+
+  /**
+   * Default constructor - schedule the eviction of idle connections.
+   *
+   * @param maxPerPeer maximum number of connections opened to a peer
+   * @param idleTimeout in milliseconds before an unused connection is
+   *        closed
+   */
+  TCPConnectionPool(int maxPerPeer, long idleTimeout) {
+    this.peers = new ConcurrentHashMap<>();
+    this.leased = new ConcurrentHashMap<>();
+    this.maxPerPeer = Math.max( 1, maxPerPeer );
+    this.idleTimeout = Math.max( 1, idleTimeout );
+
+    Timer timer = new Timer( "Connection Pool", true );
+    long interval = Math.max( 1000, this.idleTimeout / 2 );
+    timer.schedule( new TimerTask() {
+      @Override
+      public void run() {
+        evictIdleConnections();
+      }
+    }, interval, interval );
+  }
+
+  /**
+   *
+   * @return the instance for the class
+   */
+  public static TCPConnectionPool getInstance() {
+    return instance;
+  }
+
+  /**
+   * Lease a started connection to the peer. The least used open
+   * connection is returned, unless all are in use and another may be
+   * opened.
+   *
+   * @param node that will receive messages from the connection
+   * @param host of the peer
+   * @param port of the peer
+   * @return the leased connection
+   * @throws IOException if a new connection could not be established
+   */
+  public TCPConnection acquire(Node node, String host, int port)
+      throws IOException {
+    String key = host + ":" + port;
+    List<PooledConnection> connections =
+        peers.computeIfAbsent( key, k -> new ArrayList<>() );
+    synchronized ( connections )
+    {
+      PooledConnection best = null;
+      Iterator<PooledConnection> iterator = connections.iterator();
+      while ( iterator.hasNext() )
+      {
+        PooledConnection pooled = iterator.next();
+        if ( !pooled.connection.isOpen() )
+        {
+          iterator.remove();
+          if ( pooled.references == 0 )
+          {
+            close( key, pooled );
+          }
+          continue;
+        }
+        if ( best == null || pooled.references < best.references )
+        {
+          best = pooled;
+        }
+      }
+      if ( best == null
+          || ( best.references > 0 && connections.size() < maxPerPeer ) )
+      {
+        TCPConnection connection = new TCPConnection( node,
+            SocketChannel.open( new InetSocketAddress( host, port ) ).socket() );
+        connection.start();
+        best = new PooledConnection( key, connection );
+        connections.add( best );
+        LOG.debug( "Opened pooled connection " + connections.size() + " to "
+            + key );
+      }
+      ++best.references;
+      best.lastUsed = System.currentTimeMillis();
+      leased.put( best.connection, best );
+      return best.connection;
+    }
+  }
+
+  /**
+   * Return a leased connection to the pool. The connection stays open
+   * for future leases until it has been idle for the timeout.
+   *
+   * @param connection previously leased from the pool
+   */
+  public void release(TCPConnection connection) {
+    PooledConnection pooled = leased.get( connection );
+    if ( pooled == null )
+    {
+      return;
+    }
+    List<PooledConnection> connections = peers.get( pooled.key );
+    synchronized ( connections )
+    {
+      if ( pooled.references > 0 && --pooled.references == 0 )
+      {
+        leased.remove( connection );
+        if ( !connections.contains( pooled ) )
+        {
+          close( pooled.key, pooled );
+        }
+      }
+      pooled.lastUsed = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Close the connections that are not leased, and have either been
+   * idle for the timeout or been closed by the peer.
+   *
+   */
+  void evictIdleConnections() {
+    long now = System.currentTimeMillis();
+    peers.forEach( (key, connections) ->
+    {
+      synchronized ( connections )
+      {
+        Iterator<PooledConnection> iterator = connections.iterator();
+        while ( iterator.hasNext() )
+        {
+          PooledConnection pooled = iterator.next();
+          if ( pooled.references == 0 && ( now - pooled.lastUsed > idleTimeout
+              || !pooled.connection.isOpen() ) )
+          {
+            iterator.remove();
+            close( key, pooled );
+          }
+        }
+      }
+    } );
+  }
+
+  /**
+   *
+   * @param key of the peer
+   * @param pooled connection to close
+   */
+  private void close(String key, PooledConnection pooled) {
+    LOG.debug( "Closing pooled connection to " + key );
+    try
+    {
+      pooled.connection.close();
+    } catch ( IOException e )
+    {
+      LOG.error(
+          "Unable to close the connection for " + key + ", " + e.getMessage() );
+    }
+  }
+
+  /**
+   * A connection held by the pool, and the number of callers currently
+   * leasing it.
+   *
+   * @author stock
+   *
+   */
+  private static class PooledConnection {
+
+    private final String key;
+
+    private final TCPConnection connection;
+
+    private int references;
+
+    private long lastUsed;
+
+    /**
+     * Default constructor -
+     *
+     * @param key of the peer
+     * @param connection
+     */
+    private PooledConnection(String key, TCPConnection connection) {
+      this.key = key;
+      this.connection = connection;
+      this.references = 0;
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package cs555.system.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import cs555.system.util.Properties;
+
+/**
+ * Credits bounding the number of chunks that may be sent on a
+ * connection before the receiver has written and forwarded them.
+ *
+ * The sender starts with {@link Properties#SYSTEM_WRITE_CREDITS}
+ * credits, and takes one for every chunk it sends. The receiver grants
+ * a credit back for each chunk once it has been handled, so a slow
+ * replica further down the pipeline slows every sender before it.
+ *
+ * Credits are granted by the thread receiving from the connection, so
+ * that thread may never wait for them. If the peer does not grant a
+ * credit within the timeout, e.g., it is blocked forwarding to this
+ * node, the chunk is not sent and the write fails, so the window
+ * always bounds the chunks in flight.
+ *
+ * @author stock
+ *
+ */
+public class TCPCreditWindow {
+
+  private final static int INITIAL_CREDITS =
+      Integer.parseInt( Properties.SYSTEM_WRITE_CREDITS );
+
+  private final static long TIMEOUT = TimeUnit.SECONDS
+      .toNanos( Long.parseLong( Properties.SYSTEM_WRITE_CREDIT_TIMEOUT ) );
+
+  private final boolean limited;
+
+  private final long timeout;
+
+  private int credits;
+
+  private IOException failure;
+
+  private volatile Thread receiver;
+
+  /**
+   * Default constructor -
+   *
+   */
+  public TCPCreditWindow() {
+    this( INITIAL_CREDITS, TIMEOUT );
+  }
+
+  /**
+   * Constructor - create a window regardless of the configured
+   * credits.
+   *
+   * @param credits initially available, 0 for no limit
+   * @param timeout in nanoseconds to wait for a credit
+   */
+  protected TCPCreditWindow(int credits, long timeout) {
+    this.limited = credits > 0;
+    this.timeout = timeout;
+    this.credits = credits;
+  }
+
+  /**
+   *
+   * @return true if chunks are limited by credits, false otherwise
+   */
+  public static boolean isEnabled() {
+    return INITIAL_CREDITS > 0;
+  }
+
+  /**
+   * Set the thread that receives from the connection, and so grants its
+   * credits.
+   *
+   * @param receiver thread of the connection
+   */
+  protected void setReceiver(Thread receiver) {
+    this.receiver = receiver;
+  }
+
+  /**
+   * Take a credit to send a chunk, blocking until one is granted.
+   *
+   * @throws IOException if the connection has closed, no credit was
+   *         granted within the timeout, the thread was interrupted
+   *         while waiting, or the thread is the one that would grant
+   *         the credit
+   */
+  public synchronized void acquire() throws IOException {
+    if ( !limited )
+    {
+      return;
+    }
+    if ( Thread.currentThread() == receiver )
+    {
+      throw new IOException( "Write credits may not be awaited on the thread "
+          + "that receives them." );
+    }
+    long remaining = timeout;
+    long deadline = System.nanoTime() + remaining;
+    while ( credits <= 0 && failure == null && remaining > 0 )
+    {
+      try
+      {
+        TimeUnit.NANOSECONDS.timedWait( this, remaining );
+      } catch ( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting for write credits." );
+      }
+      remaining = deadline - System.nanoTime();
+    }
+    if ( failure != null )
+    {
+      throw failure;
+    }
+    if ( credits <= 0 )
+    {
+      throw new IOException( "Timed out waiting for write credits." );
+    }
+    --credits;
+  }
+
+  /**
+   * Add credits granted by the peer and wake any waiting sender.
+   *
+   * @param granted number of credits
+   */
+  public synchronized void grant(int granted) {
+    credits += granted;
+    notifyAll();
+  }
+
+  /**
+   * Wake waiting senders so they fail, since no more credits will
+   * arrive on the connection.
+   *
+   * @param cause of the connection closing
+   */
+  protected synchronized void fail(IOException cause) {
+    failure = cause;
+    notifyAll();
+  }
+}
@@ -0,0 +1,323 @@
+package cs555.system.transport;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import cs555.system.node.Node;
+import cs555.system.util.Constants;
+import cs555.system.util.ExecutionUtilities;
+import cs555.system.util.Logger;
+import cs555.system.util.Properties;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.FailureChunkRead;
+import cs555.system.wireformats.Protocol;
+import cs555.system.wireformats.ReadChunkRequest;
+import cs555.system.wireformats.RedirectChunkRequest;
+import cs555.system.wireformats.WriteChunkCredit;
+import cs555.system.wireformats.WriteChunkRequest;
+
+/**
+ * Singleton class handing received events to the node.
+ *
+ * By default, events are handled inline on the thread that received
+ * them, which for the selector transport is the handler thread of the
+ * connection rather than the selector thread. When the pooled
+ * dispatcher is configured, events are instead queued to a pool of
+ * workers for their class of message, so that slow chunk transfers do
+ * not hold up registration and heartbeats:
+ *
+ * <ul>
+ * <li>control - registration, heartbeats and file metadata, ordered
+ * per connection.</li>
+ * <li>data - chunk reads and writes, ordered per chunk.</li>
+ * <li>repair - redirected chunks and failed reads, ordered per
+ * chunk.</li>
+ * </ul>
+ *
+ * Each worker owns a bounded queue, and events with the same key are
+ * always given to the same worker so they are handled in the order
+ * they were received. A receiver blocks when the queue is full, or
+ * offers the event and pauses reading if it must not block.
+ *
+ * Write chunk credits are granted to the connection as soon as they
+ * are received, and are never handed to the node.
+ *
+ * @author stock
+ *
+ */
+public class TCPDispatcher {
+
+  private final static Logger LOG = Logger.getInstance();
+
+  private final static TCPDispatcher instance = new TCPDispatcher();
+
+  private final Worker[] control;
+
+  private final Worker[] data;
+
+  private final Worker[] repair;
+
+  /**
+   * Default constructor - start the workers if the pooled dispatcher
+   * is configured.
+   *
+   */
+  private TCPDispatcher() {
+    if ( Properties.SYSTEM_DISPATCH_MODE
+        .equals( Constants.DISPATCH_TYPE_POOLED ) )
+    {
+      int capacity = Integer.parseInt( Properties.SYSTEM_DISPATCH_QUEUE_SIZE );
+      this.control = start( "Control",
+          Integer.parseInt( Properties.SYSTEM_DISPATCH_THREADS_CONTROL ),
+          capacity );
+      this.data = start( "Data",
+          Integer.parseInt( Properties.SYSTEM_DISPATCH_THREADS_DATA ),
+          capacity );
+      this.repair = start( "Repair",
+          Integer.parseInt( Properties.SYSTEM_DISPATCH_THREADS_REPAIR ),
+          capacity );
+    } else
+    {
+      this.control = null;
+      this.data = null;
+      this.repair = null;
+    }
+  }
+
+  /**
+   * Constructor - start a pool of workers for each class of message.
+   *
+   * @param controlThreads number of control workers
+   * @param dataThreads number of data workers
+   * @param repairThreads number of repair workers
+   * @param capacity of each worker queue
+   */
+  TCPDispatcher(int controlThreads, int dataThreads, int repairThreads,
+      int capacity) {
+    this.control = start( "Control", controlThreads, capacity );
+    this.data = start( "Data", dataThreads, capacity );
+    this.repair = start( "Repair", repairThreads, capacity );
+  }
+
+  /**
+   *
+   * @return the instance for the class
+   */
+  public static TCPDispatcher getInstance() {
+    return instance;
+  }
+
+  /**
+   * Hand the event to the node, either directly or through the worker
+   * for its class and key.
+   *
+   * @param node to handle the event
+   * @param event that was received
+   * @param connection the event was received on
+   * @throws InterruptedIOException if interrupted while waiting for
+   *         space in a worker queue
+   */
+  public void dispatch(Node node, Event event, TCPConnection connection)
+      throws InterruptedIOException {
+    if ( event.getType() == Protocol.WRITE_CHUNK_CREDIT )
+    {
+      connection.getCredits()
+          .grant( ( ( WriteChunkCredit ) event ).getCredits() );
+      return;
+    }
+    if ( control == null )
+    {
+      node.onEvent( event, connection );
+      return;
+    }
+    worker( event, connection )
+        .submit( () -> node.onEvent( event, connection ) );
+  }
+
+  /**
+   * Queue the event to the worker for its class and key without
+   * waiting, so a receiver that must not block can hand it on.
+   *
+   * @param node to handle the event
+   * @param event that was received
+   * @param connection the event was received on
+   * @return true if the event was queued, or was a write chunk credit
+   *         that has been granted, false if the worker queue is full or
+   *         the pooled dispatcher is not configured
+   */
+  public boolean offer(Node node, Event event, TCPConnection connection) {
+    if ( event.getType() == Protocol.WRITE_CHUNK_CREDIT )
+    {
+      connection.getCredits()
+          .grant( ( ( WriteChunkCredit ) event ).getCredits() );
+      return true;
+    }
+    return control != null && worker( event, connection )
+        .offer( () -> node.onEvent( event, connection ) );
+  }
+
+  /**
+   *
+   * @return true if events are queued to pools of workers, false if
+   *         they are handled on the thread that dispatches them
+   */
+  public boolean isPooled() {
+    return control != null;
+  }
+
+  /**
+   *
+   * @param event that was received
+   * @param connection the event was received on
+   * @return the worker that handles events of the same class and key
+   */
+  private Worker worker(Event event, TCPConnection connection) {
+    Worker[] workers;
+    int key;
+    switch ( event.getType() )
+    {
+      case Protocol.WRITE_CHUNK_REQUEST :
+        WriteChunkRequest write = ( WriteChunkRequest ) event;
+        workers = data;
+        key = chunkKey( write.getHandle(), write.getSequence() );
+        break;
+
+      case Protocol.READ_CHUNK_REQUEST :
+        ReadChunkRequest read = ( ReadChunkRequest ) event;
+        workers = data;
+        key = chunkKey( read.getHandle(), read.getSequence() );
+        break;
+
+      case Protocol.READ_CHUNK_RESPONSE :
+        workers = data;
+        key = System.identityHashCode( connection );
+        break;
+
+      case Protocol.REDIRECT_CHUNK_REQUEST :
+        RedirectChunkRequest redirect = ( RedirectChunkRequest ) event;
+        workers = repair;
+        key = chunkKey( redirect.getHandle(), redirect.getSequence() );
+        break;
+
+      case Protocol.FAILURE_CHUNK_READ :
+        FailureChunkRead failure = ( FailureChunkRead ) event;
+        workers = repair;
+        key = chunkKey( failure.getHandle(), failure.getSequence() );
+        break;
+
+      default :
+        workers = control;
+        key = System.identityHashCode( connection );
+    }
+    return workers[ ( key & Integer.MAX_VALUE ) % workers.length ];
+  }
+
+  /**
+   *
+   * @param handle of the file
+   * @param sequence of the chunk
+   * @return the key ordering events for the chunk
+   */
+  private static int chunkKey(long handle, int sequence) {
+    return 31 * Long.hashCode( handle ) + sequence;
+  }
+
+  /**
+   * Create and start the workers for a class of message.
+   *
+   * @param name of the class of message
+   * @param threads number of workers
+   * @param capacity of each worker queue
+   * @return the started workers
+   */
+  private static Worker[] start(String name, int threads, int capacity) {
+    Worker[] workers = new Worker[ Math.max( 1, threads ) ];
+    for ( int i = 0; i < workers.length; ++i )
+    {
+      workers[ i ] = new Worker( capacity );
+      Thread thread = ExecutionUtilities.newThread( workers[ i ],
+          name + " Dispatch Thread " + i );
+      thread.setDaemon( true );
+      thread.start();
+    }
+    return workers;
+  }
+
+  /**
+   * A single thread handling the events queued to it in order.
+   *
+   * @author stock
+   *
+   */
+  private static class Worker implements Runnable {
+
+    private final BlockingQueue<Runnable> queue;
+
+    /**
+     * Default constructor -
+     *
+     * @param capacity of the queue
+     */
+    private Worker(int capacity) {
+      this.queue = new ArrayBlockingQueue<>( Math.max( 1, capacity ) );
+    }
+
+    /**
+     * Queue the task, blocking while the queue is full.
+     *
+     * @param task to run
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private void submit(Runnable task) throws InterruptedIOException {
+      try
+      {
+        queue.put( task );
+      } catch ( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting to dispatch the event." );
+      }
+    }
+
+    /**
+     * Queue the task if there is room, without waiting.
+     *
+     * @param task to run
+     * @return true if the task was queued, false if the queue is full
+     */
+    private boolean offer(Runnable task) {
+      return queue.offer( task );
+    }
+
+    /**
+     * Run each task as it is queued. A task that fails is logged so the
+     * worker continues with the next.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      while ( true )
+      {
+        Runnable task;
+        try
+        {
+          task = queue.take();
+        } catch ( InterruptedException e )
+        {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        try
+        {
+          task.run();
+        } catch ( RuntimeException e )
+        {
+          LOG.error( "Unable to handle the event. " + e.getMessage() );
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+}
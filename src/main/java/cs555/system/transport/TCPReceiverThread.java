@@ -1,11 +1,14 @@
 package cs555.system.transport;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import cs555.system.node.Node;
 import cs555.system.util.Logger;
 import cs555.system.wireformats.Event;
+import cs555.system.wireformats.EventDecoder;
 import cs555.system.wireformats.EventFactory;
 
 /**
@@ -16,6 +19,14 @@ import cs555.system.wireformats.EventFactory;
  * each message). This ensures the thread is not running unless there
  * is something to be read.
  * 
+ * Each message is read into a buffer from the {@link BufferPool}, and
+ * the buffer is returned once the event has been dispatched, unless
+ * the event has retained it. Compressed and control frames are
+ * interpreted by the {@link TCPCompression} of the connection.
+ * 
+ * Streamed frames are not read into a buffer from the pool, but a
+ * segment at a time with the {@link EventDecoder} of the connection.
+ * 
  * @author stock
  *
  */
@@ -25,7 +36,11 @@ public class TCPReceiverThread implements Runnable {
 
   private Socket socket;
 
-  protected DataInputStream din;
+  private SocketChannel channel;
+
+  private final ByteBuffer header;
+
+  private final EventDecoder decoder;
 
   private Node node;
 
@@ -33,7 +48,7 @@ public class TCPReceiverThread implements Runnable {
 
   /**
    * Default constructor - Initialize the TCPReceiverThread with the
-   * socket and data input stream information
+   * socket and the channel backing it
    * 
    * @param node
    * @param socket
@@ -45,35 +60,111 @@ public class TCPReceiverThread implements Runnable {
     this.node = node;
     this.socket = socket;
     this.connection = connection;
-    this.din = new DataInputStream( socket.getInputStream() );
+    this.channel = socket.getChannel();
+    if ( this.channel == null )
+    {
+      throw new IOException( "The socket is not backed by a channel." );
+    }
+    this.header = ByteBuffer.allocate( Integer.BYTES );
+    this.decoder = new EventDecoder();
   }
 
   /**
-   * Start running the thread to read from the data input stream. Create
-   * an event from the data and handle it appropriately.
+   * Start running the thread to read from the channel. Create an event
+   * from the data and handle it appropriately.
    * 
    * {@inheritDoc}
    */
   @Override
   public void run() {
+    connection.getCredits().setReceiver( Thread.currentThread() );
     while ( socket != null )
     {
       try
       {
-        int len = din.readInt();
-
-        byte[] data = new byte[ len ];
-        din.readFully( data, 0, len );
+        header.clear();
+        readFully( header );
+        int flags = header.getInt( 0 );
+        if ( ( flags & TCPCompression.STREAMED_FLAG ) != 0 )
+        {
+          readStreamed( flags & TCPCompression.LENGTH_MASK );
+          continue;
+        }
 
-        EventFactory eventFactory = EventFactory.getInstance();
-        Event event = eventFactory.createEvent( data );
-        node.onEvent( event, connection );
+        ByteBuffer frame = BufferPool.getInstance()
+            .acquire( flags & TCPCompression.LENGTH_MASK );
+        ByteBuffer data = null;
+        ByteBuffer retained = null;
+        try
+        {
+          readFully( frame );
+          frame.flip();
 
+          data = connection.getCompression().receive( flags, frame );
+          if ( data != null )
+          {
+            EventFactory eventFactory = EventFactory.getInstance();
+            Event event = eventFactory.createRetainedEvent( data );
+            if ( eventFactory.isRetained( event ) )
+            {
+              retained = data;
+            }
+            TCPDispatcher.getInstance().dispatch( node, event, connection );
+          }
+        } finally
+        {
+          if ( frame != retained )
+          {
+            BufferPool.getInstance().release( frame );
+          }
+          if ( data != frame && data != retained )
+          {
+            BufferPool.getInstance().release( data );
+          }
+        }
       } catch ( IOException e )
       {
         LOG.debug( "Closing connection... " + e );
+        connection.failAll( e );
         break;
       }
     }
   }
+
+  /**
+   * Read a streamed frame one segment at a time, and then handle the
+   * event.
+   * 
+   * @param length of the frame in bytes
+   * @throws IOException if the frame could not be read
+   */
+  private void readStreamed(int length) throws IOException {
+    decoder.reset( length );
+    for ( ByteBuffer segment = decoder.next(); segment != null;
+        segment = decoder.next() )
+    {
+      readFully( segment );
+    }
+    Event event = decoder.getEvent();
+    if ( event != null )
+    {
+      TCPDispatcher.getInstance().dispatch( node, event, connection );
+    }
+  }
+
+  /**
+   * Block until the remaining bytes of the buffer have been read.
+   * 
+   * @param buffer to fill
+   * @throws IOException if the stream ends before the buffer is full
+   */
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while ( buffer.hasRemaining() )
+    {
+      if ( channel.read( buffer ) < 0 )
+      {
+        throw new EOFException();
+      }
+    }
+  }
 }
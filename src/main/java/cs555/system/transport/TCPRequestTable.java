@@ -0,0 +1,113 @@
+package cs555.system.transport;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import cs555.system.wireformats.Event;
+
+/**
+ * Correlates responses with the requests that were sent over a single
+ * connection.
+ *
+ * Each request is given an identifier that the receiving node echoes
+ * in its response. This allows many requests to be in flight on the
+ * same connection, and to complete in any order.
+ *
+ * @author stock
+ *
+ */
+public class TCPRequestTable {
+
+  private final AtomicInteger nextRequestId;
+
+  private final Map<Integer, CompletableFuture<Event>> pending;
+
+  private volatile IOException failure;
+
+  /**
+   * Default constructor -
+   *
+   */
+  public TCPRequestTable() {
+    this.nextRequestId = new AtomicInteger( 0 );
+    this.pending = new ConcurrentHashMap<>();
+  }
+
+  /**
+   *
+   * @return a new identifier to send with a request
+   */
+  public int nextRequestId() {
+    return nextRequestId.incrementAndGet();
+  }
+
+  /**
+   * Create the future that will be completed with the response
+   * carrying the identifier. This should be called before the request
+   * is sent, so that the response is not missed.
+   *
+   * @param requestId from {@link #nextRequestId()}
+   * @return the future for the response
+   */
+  public CompletableFuture<Event> register(int requestId) {
+    CompletableFuture<Event> future = new CompletableFuture<>();
+    pending.put( requestId, future );
+    IOException e = failure;
+    if ( e != null )
+    {
+      fail( requestId, e );
+    }
+    return future;
+  }
+
+  /**
+   * Complete the request with the response that has arrived.
+   *
+   * @param requestId carried by the response
+   * @param response
+   * @return true if a pending request was completed, false otherwise
+   */
+  public boolean complete(int requestId, Event response) {
+    CompletableFuture<Event> future = pending.remove( requestId );
+    return future != null && future.complete( response );
+  }
+
+  /**
+   * Fail a single request, e.g., when it could not be sent.
+   *
+   * @param requestId
+   * @param cause
+   */
+  public void fail(int requestId, IOException cause) {
+    CompletableFuture<Event> future = pending.remove( requestId );
+    if ( future != null )
+    {
+      future.completeExceptionally( cause );
+    }
+  }
+
+  /**
+   *
+   * @return true if the connection has closed and no more responses
+   *         will arrive, false otherwise
+   */
+  public boolean isFailed() {
+    return failure != null;
+  }
+
+  /**
+   * Fail every outstanding request, and any registered afterwards,
+   * since no more responses will arrive on the connection.
+   *
+   * @param cause of the connection closing
+   */
+  public void failAll(IOException cause) {
+    failure = cause;
+    for ( Integer requestId : pending.keySet() )
+    {
+      fail( requestId, cause );
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package cs555.system.transport;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import cs555.system.util.ExecutionUtilities;
+import cs555.system.util.Properties;
+
+/**
+ * Singleton class holding the small, fixed number of selector threads
+ * that service every non-blocking connection on a node, and the fixed
+ * pool of handler threads the received events are drained on.
+ * 
+ * New connections are spread across the threads in a round-robin
+ * fashion.
+ * 
+ * @author stock
+ *
+ */
+public class TCPSelectorGroup {
+
+  private static TCPSelectorGroup instance;
+
+  private final TCPSelectorThread[] threads;
+
+  private final AtomicInteger next;
+
+  /**
+   * Default constructor - start the selector threads.
+   * 
+   * @param numberOfThreads
+   * @param numberOfHandlers threads that handle the received events
+   * @throws IOException
+   */
+  private TCPSelectorGroup(int numberOfThreads, int numberOfHandlers)
+      throws IOException {
+    this.threads = new TCPSelectorThread[ Math.max( 1, numberOfThreads ) ];
+    this.next = new AtomicInteger( 0 );
+    AtomicInteger handler = new AtomicInteger( 0 );
+    ExecutorService handlers = Executors.newFixedThreadPool(
+        Math.max( 1, numberOfHandlers ),
+        task -> ExecutionUtilities.newThread( task,
+            "Handler Thread " + handler.getAndIncrement() ) );
+    for ( int i = 0; i < threads.length; ++i )
+    {
+      threads[ i ] = new TCPSelectorThread( handlers );
+      ( new Thread( threads[ i ], "Selector Thread " + i ) ).start();
+    }
+  }
+
+  /**
+   * Single instance ensures the selector threads are only started when
+   * the first connection needs them.
+   * 
+   * @return Returns the instance for the class
+   * @throws IOException if a selector could not be opened
+   */
+  public static synchronized TCPSelectorGroup getInstance()
+      throws IOException {
+    if ( instance == null )
+    {
+      instance = new TCPSelectorGroup(
+          Integer.parseInt( Properties.SYSTEM_TRANSPORT_THREADS ),
+          Integer.parseInt( Properties.SYSTEM_TRANSPORT_HANDLERS ) );
+    }
+    return instance;
+  }
+
+  /**
+   * Hand the receiver to the next selector thread.
+   * 
+   * @param receiver
+   */
+  public void register(TCPChannelReceiver receiver) {
+    int index = Math.floorMod( next.getAndIncrement(), threads.length );
+    threads[ index ].register( receiver );
+  }
+}
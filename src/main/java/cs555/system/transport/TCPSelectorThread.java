@@ -0,0 +1,152 @@
+package cs555.system.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import cs555.system.util.Logger;
+
+/**
+ * A single I/O thread that multiplexes the reads for many connections
+ * over one selector.
+ * 
+ * Connections are handed to the thread from other threads, and are
+ * registered with the selector the next time it wakes up. The thread
+ * is blocked on the select statement until there is something to be
+ * read.
+ * 
+ * A connection whose read, or decoding, fails is closed without
+ * affecting the other connections of the thread. Events are handled
+ * off the thread by the given handlers, see {@link TCPChannelReceiver}.
+ * 
+ * @author stock
+ *
+ */
+public class TCPSelectorThread implements Runnable {
+
+  private final static Logger LOG = Logger.getInstance();
+
+  private final Selector selector;
+
+  private final Queue<TCPChannelReceiver> pendingReceivers;
+
+  private final Executor handlers;
+
+  /**
+   * Default constructor - open a new selector for the thread.
+   * 
+   * @param handlers to drain the received events of each connection on
+   * @throws IOException
+   */
+  public TCPSelectorThread(Executor handlers) throws IOException {
+    this.selector = Selector.open();
+    this.pendingReceivers = new ConcurrentLinkedQueue<>();
+    this.handlers = handlers;
+  }
+
+  /**
+   * Queue a receiver to be registered with the selector, and wake the
+   * selector so the registration happens promptly.
+   * 
+   * @param receiver
+   */
+  protected void register(TCPChannelReceiver receiver) {
+    pendingReceivers.add( receiver );
+    selector.wakeup();
+  }
+
+  /**
+   * Select the channels that are ready to be read, and let their
+   * receivers read what is available.
+   * 
+   * {@inheritDoc}
+   */
+  @Override
+  public void run() {
+    while ( selector.isOpen() )
+    {
+      try
+      {
+        selector.select();
+        registerPendingReceivers();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while ( keys.hasNext() )
+        {
+          SelectionKey key = keys.next();
+          keys.remove();
+          read( key );
+        }
+      } catch ( IOException e )
+      {
+        LOG.error( e.getMessage() );
+        break;
+      }
+    }
+  }
+
+  /**
+   * Register the channels that have been queued since the last select.
+   *
+   */
+  private void registerPendingReceivers() {
+    TCPChannelReceiver receiver;
+    while ( ( receiver = pendingReceivers.poll() ) != null )
+    {
+      SocketChannel channel = receiver.getChannel();
+      try
+      {
+        channel.configureBlocking( false );
+        receiver.getConnection().getCredits()
+            .setReceiver( Thread.currentThread() );
+        receiver.setKey(
+            channel.register( selector, SelectionKey.OP_READ, receiver ),
+            handlers );
+      } catch ( IOException | RuntimeException e )
+      {
+        LOG.debug( "Unable to register connection... " + e );
+        receiver.close( e );
+      }
+    }
+  }
+
+  /**
+   * Read from the channel associated with the key, closing the channel
+   * when the stream ends or fails.
+   * 
+   * @param key
+   */
+  private void read(SelectionKey key) {
+    TCPChannelReceiver receiver = ( TCPChannelReceiver ) key.attachment();
+    try
+    {
+      if ( !key.isValid() || !key.isReadable() )
+      {
+        return;
+      }
+      if ( !receiver.read() )
+      {
+        LOG.debug( "Closing connection... end of stream." );
+        receiver.close( new EOFException() );
+      }
+    } catch ( CancelledKeyException e )
+    {
+      LOG.debug( "Connection closed while reading... " + e );
+    } catch ( IOException e )
+    {
+      LOG.debug( "Closing connection... " + e );
+      receiver.close( e );
+    } catch ( RuntimeException e )
+    {
+      LOG.error( "Unable to read from connection, closing it... " + e );
+      e.printStackTrace();
+      receiver.close( e );
+    }
+  }
+}
@@ -1,45 +1,637 @@
 package cs555.system.transport;
 
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import cs555.system.util.Constants;
+import cs555.system.util.ExecutionUtilities;
+import cs555.system.util.Logger;
+import cs555.system.util.Properties;
+import cs555.system.wireformats.Event;
 
 /**
  * Class used to send data, via <code>byte[]</code> to the receiver.
  * 
  * Running as a thread, the TCPConnection holds an instance to the
- * sender for new messages. This makes use of a linked blocking queue
- * to buffer the rate at which messages are being sent.
+ * sender for new messages. When the queued sender is configured, this
+ * makes use of a linked blocking queue to buffer the rate at which
+ * messages are being sent. A writer thread drains every pending
+ * message and writes them with a single gathering write, while the
+ * bounded queue blocks callers that get too far ahead of the socket.
+ * 
+ * Messages are written through the socket's channel so the same
+ * sender works whether the channel is blocking, or has been handed
+ * to a selector for non-blocking reads.
+ * 
+ * Once compression has been negotiated with the peer, messages are
+ * compressed as they are framed, see {@link TCPCompression}.
+ * 
+ * With streaming framing, events that are marshalled as segments are
+ * written with a single gathering write of their segments, so large
+ * content is never copied into the marshalling buffer.
  * 
  * @author stock
  *
  */
 public class TCPSender {
 
-  protected DataOutputStream dout;
+  private final static Logger LOG = Logger.getInstance();
+
+  /**
+   * The most messages that are coalesced into a single write.
+   */
+  private final static int MAX_BATCH_SIZE = 64;
+
+  /**
+   * The largest marshalling buffer that is kept between messages, 1MB.
+   */
+  private final static int MAX_ENCODE_BUFFER_SIZE = 1 << 20;
 
   /**
-   * Default constructor - Initialize the TCPSender data output
-   * stream information from the <code>socket</code>.
+   * Time in milliseconds between checks that the writer thread has not
+   * failed, while waiting for space in the queue.
+   */
+  private final static long FAILURE_CHECK_MILLIS = 100;
+
+  private final static boolean STREAMING = Properties.SYSTEM_TRANSPORT_FRAMING
+      .equals( Constants.FRAMING_TYPE_STREAMING );
+
+  private final SocketChannel channel;
+
+  private final ByteBuffer[] headers;
+
+  private final ByteBuffer[] buffers;
+
+  private volatile Selector writeSelector;
+
+  private final BlockingQueue<byte[]> queue;
+
+  /**
+   * Number of messages accepted, but not yet written.
+   */
+  private int pending;
+
+  private volatile IOException failure;
+
+  private Thread writer;
+
+  private final TCPCompression compression;
+
+  private ByteBuffer encodeBuffer;
+
+  /**
+   * Default constructor - Initialize the TCPSender with the channel
+   * backing the <code>socket</code>.
    * 
-   * @param socket
+   * @param socket opened from a <code>SocketChannel</code>
+   * @param compression negotiated for the connection
    * @throws IOException
    */
-  public TCPSender(Socket socket) throws IOException {
-    this.dout = new DataOutputStream( socket.getOutputStream() );
+  public TCPSender(Socket socket, TCPCompression compression)
+      throws IOException {
+    this( socket, compression,
+        Properties.SYSTEM_TRANSPORT_SENDER
+            .equals( Constants.SENDER_TYPE_QUEUED )
+                ? Integer.parseInt( Properties.SYSTEM_TRANSPORT_QUEUE_SIZE )
+                : 0 );
   }
 
   /**
-   * Send the data through the socket connection using the data output
-   * stream. Write the length first, and then the actual data - that way
-   * the receiver knows when to stop reading.
+   * Constructor - Initialize the TCPSender regardless of the configured
+   * sender.
+   * 
+   * @param socket opened from a <code>SocketChannel</code>
+   * @param compression negotiated for the connection
+   * @param queueSize maximum number of messages waiting to be sent by
+   *        the writer thread, 0 to send directly from the caller
+   * @throws IOException
+   */
+  TCPSender(Socket socket, TCPCompression compression, int queueSize)
+      throws IOException {
+    this.compression = compression;
+    this.channel = socket.getChannel();
+    if ( this.channel == null )
+    {
+      throw new IOException( "The socket is not backed by a channel." );
+    }
+    this.headers = new ByteBuffer[ MAX_BATCH_SIZE ];
+    for ( int i = 0; i < MAX_BATCH_SIZE; ++i )
+    {
+      headers[ i ] = ByteBuffer.allocate( 2 * Integer.BYTES );
+    }
+    this.buffers = new ByteBuffer[ 2 * MAX_BATCH_SIZE ];
+
+    if ( queueSize > 0 )
+    {
+      this.queue = new LinkedBlockingQueue<>( queueSize );
+      this.writer =
+          ExecutionUtilities.startThread( this::drain, "Sender Thread" );
+    } else
+    {
+      this.queue = null;
+    }
+  }
+
+  /**
+   * Send the data through the socket connection using the channel.
+   * Write the length first, and then the actual data - that way the
+   * receiver knows when to stop reading.
+   * 
+   * With the queued sender, the data is handed to the writer thread,
+   * and this call only blocks while the queue is full. A caller that is
+   * waiting for space fails once the writer thread has failed, since
+   * the queue will not be drained again.
+   * 
+   * @throws IOException if the message could not be sent, or a
+   *         previously queued message failed to send
+   */
+  public void sendData(final byte[] data) throws IOException {
+    if ( queue == null )
+    {
+      synchronized ( this )
+      {
+        write( prepare( Collections.singletonList( data ) ) );
+      }
+      return;
+    }
+    checkFailure();
+    synchronized ( queue )
+    {
+      ++pending;
+    }
+    try
+    {
+      while ( !queue.offer( data, FAILURE_CHECK_MILLIS,
+          TimeUnit.MILLISECONDS ) )
+      {
+        checkFailure();
+      }
+    } catch ( InterruptedException e )
+    {
+      Thread.currentThread().interrupt();
+      completed( 1 );
+      throw new InterruptedIOException(
+          "Interrupted while waiting to queue the message." );
+    }
+    // the queue is discarded if the writer failed while this was waiting
+    checkFailure();
+  }
+
+  /**
+   * Send the event by marshalling it directly into a reusable direct
+   * buffer that is preceded by its length, so no intermediate array is
+   * created.
+   * 
+   * With streaming framing, an event that has segments is sent as a
+   * streamed frame of its segments instead, see
+   * {@link Event#getSegments()}.
+   * 
+   * With the queued sender, or once compression has been negotiated,
+   * the event is marshalled into an array of its exact length and sent
+   * with {@link #sendData(byte[])}.
+   * 
+   * @param event to send
+   * @throws IOException if the message could not be sent
+   */
+  public void sendEvent(Event event) throws IOException {
+    if ( queue != null || compression.isNegotiated() )
+    {
+      sendData( event.getBytes() );
+      return;
+    }
+    ByteBuffer[] segments = STREAMING ? event.getSegments() : null;
+    if ( segments != null && segments.length < buffers.length )
+    {
+      sendSegments( segments );
+      return;
+    }
+    synchronized ( this )
+    {
+      int length = event.getLength();
+      ByteBuffer buffer = encodeBuffer( Integer.BYTES + length );
+      buffer.putInt( length );
+      event.write( buffer );
+      buffer.flip();
+      buffers[ 0 ] = buffer;
+      write( 1 );
+    }
+  }
+
+  /**
+   * Send a message that is already marshalled, e.g., a received frame
+   * that is being forwarded. The length is written first, and then the
+   * remaining bytes of the buffer directly, without copying them.
+   * 
+   * With the queued sender, or once compression has been negotiated,
+   * the message is copied to an array and sent with
+   * {@link #sendData(byte[])}, since the buffer may be reused once this
+   * call returns.
+   * 
+   * @param message the marshalled message, which is left unchanged
+   * @throws IOException if the message could not be sent
+   */
+  public void sendFrame(ByteBuffer message) throws IOException {
+    if ( queue != null || compression.isNegotiated() )
+    {
+      byte[] data = new byte[ message.remaining() ];
+      message.duplicate().get( data );
+      sendData( data );
+      return;
+    }
+    synchronized ( this )
+    {
+      headers[ 0 ].clear();
+      headers[ 0 ].putInt( message.remaining() ).flip();
+      buffers[ 0 ] = headers[ 0 ];
+      buffers[ 1 ] = message.duplicate();
+      write( 2 );
+    }
+  }
+
+  /**
+   * Block until every message queued so far has been written to the
+   * channel.
+   * 
+   * @throws IOException if a queued message failed to send
+   */
+  public void flush() throws IOException {
+    if ( queue == null )
+    {
+      return;
+    }
+    synchronized ( queue )
+    {
+      while ( pending > 0 && failure == null )
+      {
+        try
+        {
+          queue.wait();
+        } catch ( InterruptedException e )
+        {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted while flushing the queued messages." );
+        }
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * Send a single message whose content is read from a file. The
+   * length of the message is written first, then the
+   * <code>prefix</code>, the region of the file, and lastly the
+   * <code>suffix</code>.
+   * 
+   * The file region is moved from disk to the socket with
+   * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+   * so that the content is never copied onto the heap.
+   * 
+   * Any queued messages are written before the file.
+   * 
+   * @param prefix the marshalled bytes preceding the file content
+   * @param file to read from
+   * @param position in the file to begin at
+   * @param count number of bytes of the file to send
+   * @param suffix the marshalled bytes succeeding the file content
+   * @throws IOException
+   */
+  public void sendFile(byte[] prefix, FileChannel file, long position,
+      long count, byte[] suffix) throws IOException {
+    flush();
+    synchronized ( this )
+    {
+      headers[ 0 ].clear();
+      headers[ 0 ].putInt( ( int ) ( prefix.length + count + suffix.length ) )
+          .flip();
+      buffers[ 0 ] = headers[ 0 ];
+      buffers[ 1 ] = ByteBuffer.wrap( prefix );
+      write( 2 );
+      transfer( file, position, count );
+      buffers[ 0 ] = ByteBuffer.wrap( suffix );
+      write( 1 );
+    }
+  }
+
+  /**
+   * Send a single message whose content is held in a buffer, e.g., a
+   * cached chunk. The length of the message is written first, then the
+   * <code>prefix</code>, and lastly the remaining bytes of the
+   * <code>content</code> directly, without copying them.
+   * 
+   * Any queued messages are written before the content.
    * 
-   * @throws IOException 
+   * @param prefix the marshalled bytes preceding the content
+   * @param content of the message, which is left unchanged
+   * @throws IOException
+   */
+  public void sendBuffer(byte[] prefix, ByteBuffer content)
+      throws IOException {
+    flush();
+    synchronized ( this )
+    {
+      headers[ 0 ].clear();
+      headers[ 0 ].putInt( prefix.length + content.remaining() ).flip();
+      buffers[ 0 ] = headers[ 0 ];
+      buffers[ 1 ] = ByteBuffer.wrap( prefix );
+      buffers[ 2 ] = content.duplicate();
+      write( 3 );
+    }
+  }
+
+  /**
+   * Send the capabilities of this node to the peer in a control frame,
+   * so the peer knows which frames it may send.
+   * 
+   * @throws IOException
+   */
+  protected void sendCapabilities() throws IOException {
+    flush();
+    synchronized ( this )
+    {
+      headers[ 0 ].clear();
+      headers[ 0 ].putInt( Integer.BYTES | TCPCompression.CONTROL_FLAG )
+          .putInt( TCPCompression.capabilities() ).flip();
+      buffers[ 0 ] = headers[ 0 ];
+      write( 1 );
+    }
+  }
+
+  /**
+   * Send the segments of a message as a streamed frame. The length is
+   * written first, flagged so the receiver may read the segments
+   * incrementally, and then every segment with one gathering write.
+   * 
+   * @param segments of the message in order
+   * @throws IOException if the message could not be sent
+   */
+  private void sendSegments(ByteBuffer[] segments) throws IOException {
+    long length = 0;
+    for ( ByteBuffer segment : segments )
+    {
+      length += segment.remaining();
+    }
+    if ( length > TCPCompression.LENGTH_MASK )
+    {
+      throw new IOException(
+          "The message of " + length + " bytes is too large to send." );
+    }
+    synchronized ( this )
+    {
+      headers[ 0 ].clear();
+      headers[ 0 ].putInt( ( int ) length | TCPCompression.STREAMED_FLAG )
+          .flip();
+      buffers[ 0 ] = headers[ 0 ];
+      System.arraycopy( segments, 0, buffers, 1, segments.length );
+      write( segments.length + 1 );
+    }
+  }
+
+  /**
+   * Run by the writer thread - take all of the messages that are
+   * waiting and write them together.
+   *
+   */
+  private void drain() {
+    List<byte[]> batch = new ArrayList<>( MAX_BATCH_SIZE );
+    while ( failure == null )
+    {
+      try
+      {
+        batch.add( queue.take() );
+        queue.drainTo( batch, MAX_BATCH_SIZE - 1 );
+        synchronized ( this )
+        {
+          write( prepare( batch ) );
+        }
+        completed( batch.size() );
+      } catch ( InterruptedException e )
+      {
+        LOG.debug( "Sender thread interrupted... " + e );
+        fail( new ClosedChannelException() );
+      } catch ( IOException e )
+      {
+        LOG.debug( "Unable to send queued messages... " + e );
+        fail( e );
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Fill the reusable buffers with the length and content of each
+   * message. Messages that compress are framed with the compressed
+   * flag and their original length.
+   * 
+   * @param messages to frame
+   * @return the number of buffers that are ready to be written
+   */
+  private int prepare(List<byte[]> messages) {
+    int count = 0;
+    for ( int i = 0; i < messages.size(); ++i )
+    {
+      byte[] data = messages.get( i );
+      byte[] compressed = compression.compress( data );
+      headers[ i ].clear();
+      if ( compressed == null )
+      {
+        headers[ i ].putInt( data.length );
+      } else
+      {
+        headers[ i ]
+            .putInt( ( Integer.BYTES + compressed.length )
+                | TCPCompression.COMPRESSED_FLAG )
+            .putInt( data.length );
+        data = compressed;
+      }
+      headers[ i ].flip();
+      buffers[ count++ ] = headers[ i ];
+      buffers[ count++ ] = ByteBuffer.wrap( data );
+    }
+    return count;
+  }
+
+  /**
+   * Retrieve a cleared buffer that can hold <code>capacity</code>
+   * bytes. The buffer is kept for the next message unless it is larger
+   * than {@link #MAX_ENCODE_BUFFER_SIZE}.
+   * 
+   * @param capacity in bytes
+   * @return the buffer to marshall into
+   */
+  private ByteBuffer encodeBuffer(int capacity) {
+    if ( capacity > MAX_ENCODE_BUFFER_SIZE )
+    {
+      return ByteBuffer.allocateDirect( capacity );
+    }
+    if ( encodeBuffer == null || encodeBuffer.capacity() < capacity )
+    {
+      // round up to the next power of two, so the buffer is rarely grown
+      encodeBuffer = ByteBuffer.allocateDirect(
+          Math.max( 1024, Integer.highestOneBit( capacity - 1 ) << 1 ) );
+    }
+    encodeBuffer.clear();
+    return encodeBuffer;
+  }
+
+  /**
+   * Write the first <code>count</code> prepared buffers to the
+   * channel. If the channel is non-blocking and the socket buffer is
+   * full, wait until the channel is writable again.
+   * 
+   * @param count of buffers to write in order
+   * @throws IOException
+   */
+  private void write(int count) throws IOException {
+    long remaining = 0;
+    for ( int i = 0; i < count; ++i )
+    {
+      remaining += buffers[ i ].remaining();
+    }
+    int offset = 0;
+    while ( remaining > 0 )
+    {
+      long written = channel.write( buffers, offset, count - offset );
+      if ( written == 0 )
+      {
+        awaitWritable();
+      }
+      remaining -= written;
+      while ( offset < count && !buffers[ offset ].hasRemaining() )
+      {
+        ++offset;
+      }
+    }
+    Arrays.fill( buffers, 0, count, null );
+  }
+
+  /**
+   * Transfer a region of the file directly to the channel.
+   * 
+   * @param file to read from
+   * @param position in the file to begin at
+   * @param count number of bytes to transfer
+   * @throws IOException if the file ends before the region does
+   */
+  private void transfer(FileChannel file, long position, long count)
+      throws IOException {
+    while ( count > 0 )
+    {
+      long written = file.transferTo( position, count, channel );
+      if ( written == 0 )
+      {
+        if ( position >= file.size() )
+        {
+          throw new EOFException( "The file ended before it was sent." );
+        }
+        awaitWritable();
+      }
+      position += written;
+      count -= written;
+    }
+  }
+
+  /**
+   * Block until the non-blocking channel is able to accept more bytes.
+   * A private selector is used so the receiving selector is left
+   * untouched.
+   * 
+   * @throws IOException
+   */
+  private void awaitWritable() throws IOException {
+    if ( writeSelector == null )
+    {
+      writeSelector = Selector.open();
+      channel.register( writeSelector, SelectionKey.OP_WRITE );
+    }
+    writeSelector.select();
+    writeSelector.selectedKeys().clear();
+    if ( !channel.isOpen() )
+    {
+      writeSelector.close();
+      throw new ClosedChannelException();
+    }
+  }
+
+  /**
+   * Mark messages as written and wake any thread that is flushing.
+   * 
+   * @param count of messages that were written
+   */
+  private void completed(int count) {
+    synchronized ( queue )
+    {
+      pending -= count;
+      queue.notifyAll();
+    }
+  }
+
+  /**
+   * Record the failure so that callers of the sender learn about it,
+   * and discard the messages that can no longer be sent.
+   * 
+   * @param e the cause of the failure
+   */
+  private void fail(IOException e) {
+    synchronized ( queue )
+    {
+      failure = e;
+      queue.clear();
+      pending = 0;
+      queue.notifyAll();
+    }
+  }
+
+  /**
+   * 
+   * @throws IOException if the writer thread failed to send a message
+   */
+  private void checkFailure() throws IOException {
+    IOException e = failure;
+    if ( e != null )
+    {
+      throw new IOException( "Unable to send queued message. " + e, e );
+    }
+  }
+
+  /**
+   * Write any queued messages, then close the channel and wake any
+   * thread waiting for the channel to become writable so it may fail
+   * fast.
+   * 
+   * @throws IOException
    */
-  public synchronized void sendData(final byte[] data) throws IOException {
-    int len = data.length;
-    dout.writeInt( len );
-    dout.write( data, 0, len );
-    dout.flush();
+  protected void close() throws IOException {
+    if ( writer != null )
+    {
+      try
+      {
+        flush();
+      } catch ( IOException e )
+      {
+        LOG.debug( "Closing with unsent messages... " + e );
+      }
+      writer.interrupt();
+    }
+    channel.close();
+    Selector selector = writeSelector;
+    if ( selector != null )
+    {
+      selector.wakeup();
+    }
   }
 }
@@ -48,15 +48,23 @@ public class TCPServerThread implements Runnable {
   public void run() {
     while ( serverSocket != null )
     {
+      Socket incomingConnectionSocket;
       try
       {
-        Socket incomingConnectionSocket = serverSocket.accept();
-        ( new TCPConnection( node, incomingConnectionSocket ) ).start();
+        incomingConnectionSocket = serverSocket.accept();
       } catch ( IOException e )
       {
         LOG.error( e.getMessage() );
         break;
       }
+      try
+      {
+        ( new TCPConnection( node, incomingConnectionSocket ) ).start();
+      } catch ( IOException e )
+      {
+        LOG.error( "Unable to start the incoming connection. "
+            + e.getMessage() );
+      }
     }
   }
 }
@@ -5,6 +5,10 @@ import java.util.Properties;
 /**
  * Singleton class to load properties file for configuration.
  *
+ * A system property of the same name, e.g.,
+ * <code>-Dsystem.thread.mode=virtual</code>, takes precedence over the
+ * properties file.
+ *
  * 
  * @author stock
  *
@@ -59,7 +63,7 @@ public final class Configurations {
     String result = null;
     if ( key != null && !key.trim().isEmpty() )
     {
-      result = this.properties.getProperty( key );
+      result = System.getProperty( key, this.properties.getProperty( key ) );
     }
     return result;
   }
@@ -74,7 +78,8 @@ public final class Configurations {
     String result = null;
     if ( key != null && !key.trim().isEmpty() )
     {
-      result = this.properties.getProperty( key, defaultValue );
+      result = System.getProperty( key,
+          this.properties.getProperty( key, defaultValue ) );
     }
     return result;
   }
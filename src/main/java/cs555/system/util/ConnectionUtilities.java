@@ -1,12 +1,16 @@
 package cs555.system.util;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 import cs555.system.node.Node;
 import cs555.system.transport.TCPConnection;
+import cs555.system.transport.TCPConnectionPool;
 import cs555.system.wireformats.Protocol;
 import cs555.system.wireformats.RegisterRequest;
 
@@ -35,7 +39,7 @@ public class ConnectionUtilities {
   }
 
   /**
-   * Allow the connections to be closed
+   * Allow the connections to be released
    * 
    * @param ableToClear
    */
@@ -44,18 +48,18 @@ public class ConnectionUtilities {
   }
 
   /**
-   * Either establish a new or retrieve a cached connection made
-   * previously.
+   * Either lease a connection from the shared {@link TCPConnectionPool}
+   * or retrieve one leased previously. The connection is started so
+   * that the pool can tell when the peer has closed it.
    * 
-   * @param startConnection true to start the TCP Receiver Thread, false
-   *        otherwise
-   * @param connectionDetails to connect to
+   * @param node receiving messages from the connection
+   * @param initialConnection host and port to connect to
    * @return the cached TCP connection
    * @throws IOException
    * @throws NumberFormatException
    */
-  public TCPConnection cacheConnection(Node node, String[] initialConnection,
-      boolean startConnection) throws NumberFormatException, IOException {
+  public TCPConnection cacheConnection(Node node, String[] initialConnection)
+      throws NumberFormatException, IOException {
     ableToClear = false;
     String connectionDetails =
         ( new StringBuilder() ).append( initialConnection[ 0 ] ).append( ":" )
@@ -64,61 +68,44 @@ public class ConnectionUtilities {
     TCPConnection connection;
     synchronized ( temporaryConnections )
     {
-      if ( temporaryConnections.containsKey( connectionDetails ) )
+      connection = temporaryConnections.get( connectionDetails );
+      if ( connection != null && !connection.isOpen() )
       {
-        connection = temporaryConnections.get( connectionDetails );
-      } else
+        TCPConnectionPool.getInstance().release( connection );
+        connection = null;
+      }
+      if ( connection == null )
       {
-        connection = ConnectionUtilities.establishConnection( node,
+        connection = TCPConnectionPool.getInstance().acquire( node,
             initialConnection[ 0 ],
             Integer.parseInt( initialConnection[ 1 ] ) );
         temporaryConnections.put( connectionDetails, connection );
-        if ( startConnection )
-        {
-          connection.start();
-        }
       }
     }
     return connection;
   }
 
   /**
-   * Close and remove all temporary connections. Sleep 1 second to make
-   * sure all messages have been delivered.
+   * Release all cached connections back to the shared pool, where they
+   * remain open for reuse until they have been idle for
+   * {@link Properties#SYSTEM_CONNECTION_IDLE_TIMEOUT} seconds.
    * 
    */
-  public void closeCachedConnections() {
+  public void releaseCachedConnections() {
     if ( ableToClear )
     {
       synchronized ( temporaryConnections )
       {
-        try
-        {
-          TimeUnit.SECONDS.sleep( 1 );
-        } catch ( InterruptedException e1 )
-        {
-          LOG.error(
-              "Unable to sleep before closing connections " + e1.getMessage() );
-          e1.printStackTrace();
-        }
-        temporaryConnections.forEach( (k, v) ->
-        {
-          try
-          {
-            v.close();
-          } catch ( IOException e )
-          {
-            LOG.error( "Unable to close the connection for " + k + ", "
-                + e.getMessage() );
-          }
-        } );
+        temporaryConnections.values()
+            .forEach( TCPConnectionPool.getInstance()::release );
         temporaryConnections.clear();
       }
     }
   }
 
   /**
-   * Establish generic connection with a given node.
+   * Establish generic connection with a given node. The socket is
+   * opened from a channel so it may be used by either transport.
    * 
    * @param node used to controller receiving thread
    * @param host name associated with outgoing node
@@ -128,10 +115,25 @@ public class ConnectionUtilities {
    */
   public static TCPConnection establishConnection(Node node, String host,
       Integer port) throws IOException {
-    Socket socketToTheServer = new Socket( host, port );
+    Socket socketToTheServer =
+        SocketChannel.open( new InetSocketAddress( host, port ) ).socket();
     return new TCPConnection( node, socketToTheServer );
   }
 
+  /**
+   * Open a server socket bound to the given port. The socket is opened
+   * from a channel so accepted sockets may be used by either transport.
+   * 
+   * @param port to listen on, or 0 for any free port
+   * @return the bound server socket
+   * @throws IOException
+   */
+  public static ServerSocket openServerSocket(int port) throws IOException {
+    ServerSocket serverSocket = ServerSocketChannel.open().socket();
+    serverSocket.bind( new InetSocketAddress( port ) );
+    return serverSocket;
+  }
+
   /**
    * Registers a node with the controller.
    *
@@ -155,7 +157,7 @@ public class ConnectionUtilities {
               node.getHost(), node.getPort() );
 
       LOG.info( "Client Identifier: " + node.getHost() + ":" + node.getPort() );
-      connection.getTCPSender().sendData( registerRequest.getBytes() );
+      connection.getTCPSender().sendEvent( registerRequest );
       connection.start();
 
       return connection;
@@ -184,7 +186,7 @@ public class ConnectionUtilities {
     try
     {
       controllerConnection.getTCPSender()
-          .sendData( registerRequest.getBytes() );
+          .sendEvent( registerRequest );
       controllerConnection.close();
     } catch ( IOException e )
     {
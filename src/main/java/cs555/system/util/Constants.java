@@ -13,10 +13,64 @@ public interface Constants {
 
   final String SYSTEM_TYPE_ERASURE = "erasure";
 
+  final String TRANSPORT_TYPE_BLOCKING = "blocking";
+
+  final String TRANSPORT_TYPE_SELECTOR = "selector";
+
+  final String SENDER_TYPE_DIRECT = "direct";
+
+  final String SENDER_TYPE_QUEUED = "queued";
+
+  final String COMPRESSION_TYPE_NONE = "none";
+
+  final String COMPRESSION_TYPE_DEFLATE = "deflate";
+
+  final String DECODE_TYPE_EAGER = "eager";
+
+  final String DECODE_TYPE_LAZY = "lazy";
+
+  final String FRAMING_TYPE_BUFFERED = "buffered";
+
+  final String FRAMING_TYPE_STREAMING = "streaming";
+
+  final String SHARD_WRITE_TYPE_CHAIN = "chain";
+
+  final String SHARD_WRITE_TYPE_FANOUT = "fanout";
+
+  final String FORWARD_TYPE_STORE = "store";
+
+  final String FORWARD_TYPE_CUT_THROUGH = "cut-through";
+
+  final String STORE_TYPE_FILE = "file";
+
+  final String STORE_TYPE_SEGMENT = "segment";
+
+  final String STORE_TYPE_MAPPED = "mapped";
+
+  final String CACHE_MEMORY_HEAP = "heap";
+
+  final String CACHE_MEMORY_DIRECT = "direct";
+
+  final String DISPATCH_TYPE_INLINE = "inline";
+
+  final String DISPATCH_TYPE_POOLED = "pooled";
+
+  final String HEARTBEAT_ENCODING_FIXED = "fixed";
+
+  final String HEARTBEAT_ENCODING_COMPACT = "compact";
+
+  final String THREAD_TYPE_PLATFORM = "platform";
+
+  final String THREAD_TYPE_VIRTUAL = "virtual";
+
   final int CLIENT_ID = 0;
 
   final int SERVER_ID = 1;
 
+  final int NO_SERVER = -1;
+
+  final int MAX_SERVER_ID = Short.MAX_VALUE;
+
   final byte SUCCESS = ( byte ) 200;
 
   final byte FAILURE = ( byte ) 500;
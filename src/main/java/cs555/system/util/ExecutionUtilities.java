@@ -0,0 +1,143 @@
+package cs555.system.util;
+
+import java.lang.reflect.Method;
+
+/**
+ * Shared utilities for creating the threads that receive messages,
+ * send queued messages, and read files on behalf of the client.
+ *
+ * When configured for virtual threads, and the runtime supports them,
+ * each task is given a virtual thread so that many thousands of
+ * connections or reads do not each reserve a platform thread stack.
+ * Otherwise, platform threads are used.
+ *
+ * @author stock
+ *
+ */
+public class ExecutionUtilities {
+
+  private static final Logger LOG = Logger.getInstance();
+
+  private static final VirtualThreadBuilder VIRTUAL =
+      Properties.SYSTEM_THREAD_MODE.equals( Constants.THREAD_TYPE_VIRTUAL )
+          ? VirtualThreadBuilder.create()
+          : null;
+
+  /**
+   * Create, but do not start, a thread for the task using the
+   * configured execution mode.
+   *
+   * @param task to run on the thread
+   * @param name of the thread
+   * @return the unstarted thread
+   */
+  public static Thread newThread(Runnable task, String name) {
+    if ( VIRTUAL != null )
+    {
+      Thread thread = VIRTUAL.unstarted( task, name );
+      if ( thread != null )
+      {
+        return thread;
+      }
+    }
+    return new Thread( task, name );
+  }
+
+  /**
+   * Create and start a thread for the task using the configured
+   * execution mode.
+   *
+   * @param task to run on the thread
+   * @param name of the thread
+   * @return the started thread
+   */
+  public static Thread startThread(Runnable task, String name) {
+    Thread thread = newThread( task, name );
+    thread.start();
+    return thread;
+  }
+
+  /**
+   *
+   * @return true if tasks are being given virtual threads, false
+   *         otherwise
+   */
+  public static boolean isVirtual() {
+    return VIRTUAL != null;
+  }
+
+  /**
+   * Access to <code>Thread.ofVirtual()</code> through reflection, so
+   * the application continues to build and run on runtimes that
+   * predate virtual threads.
+   *
+   * @author stock
+   *
+   */
+  private static class VirtualThreadBuilder {
+
+    private final Method ofVirtual;
+
+    private final Method name;
+
+    private final Method unstarted;
+
+    /**
+     * Default constructor -
+     *
+     * @param ofVirtual
+     * @param name
+     * @param unstarted
+     */
+    private VirtualThreadBuilder(Method ofVirtual, Method name,
+        Method unstarted) {
+      this.ofVirtual = ofVirtual;
+      this.name = name;
+      this.unstarted = unstarted;
+    }
+
+    /**
+     * Look up the builder methods, and make sure a virtual thread can be
+     * created on this runtime.
+     *
+     * @return the builder, or null if virtual threads are not supported
+     */
+    private static VirtualThreadBuilder create() {
+      try
+      {
+        Class<?> builder = Class.forName( "java.lang.Thread$Builder" );
+        VirtualThreadBuilder instance = new VirtualThreadBuilder(
+            Thread.class.getMethod( "ofVirtual" ),
+            builder.getMethod( "name", String.class ),
+            builder.getMethod( "unstarted", Runnable.class ) );
+        instance.ofVirtual.invoke( null );
+        return instance;
+      } catch ( ReflectiveOperationException | RuntimeException e )
+      {
+        LOG.error( "system.thread.mode=virtual is not supported by Java "
+            + System.getProperty( "java.version" )
+            + " ( requires Java 21 ), falling back to platform threads for"
+            + " every receiver, sender and client read. " + e );
+        return null;
+      }
+    }
+
+    /**
+     *
+     * @param task to run on the thread
+     * @param threadName of the thread
+     * @return a new virtual thread, or null if it could not be created
+     */
+    private Thread unstarted(Runnable task, String threadName) {
+      try
+      {
+        Object builder = name.invoke( ofVirtual.invoke( null ), threadName );
+        return ( Thread ) unstarted.invoke( builder, task );
+      } catch ( ReflectiveOperationException e )
+      {
+        LOG.error( "Unable to create a virtual thread. " + e.getMessage() );
+        return null;
+      }
+    }
+  }
+}
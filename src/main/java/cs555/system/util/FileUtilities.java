@@ -3,13 +3,15 @@ package cs555.system.util;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import cs555.system.node.Node;
+import cs555.system.store.StoredChunk;
 
 /**
  * Utility class for all file related activities.
@@ -75,85 +77,117 @@ public class FileUtilities {
     {
       throw e;
     }
+    return SHA1FromBuffer( digest, ByteBuffer.wrap( message ) );
+  }
+
+  /**
+   * Computes the SHA-1 hash for each slice of the remaining bytes in the
+   * buffer, advancing the position of the buffer.
+   * 
+   * @param digest to compute the hash with
+   * @param message as a buffer positioned at the first slice
+   * @return the hash digest from the data
+   * @throws IllegalArgumentException if there are too few bytes
+   */
+  private static byte[] SHA1FromBuffer(MessageDigest digest,
+      ByteBuffer message) throws IllegalArgumentException {
     ByteBuffer buffer = ByteBuffer.allocate( INTEGRITY_SIZE );
+    int limit = message.limit();
     for ( int i = 0; i < NUMBER_OF_SLICES; ++i )
     {
-      digest.update( message, i * Constants.REPLICATION_CHUNK_SLICE_SIZE,
-          Constants.REPLICATION_CHUNK_SLICE_SIZE );
+      message.limit( message.position()
+          + Constants.REPLICATION_CHUNK_SLICE_SIZE );
+      digest.update( message );
       buffer.put( digest.digest() );
     }
+    message.limit( limit );
     return buffer.array();
   }
 
   /**
-   * Validate the integrity of a chunk file written to disk.
+   * Validate the integrity of a chunk file without reading it onto the
+   * heap. The file is mapped into memory, and the slices are hashed
+   * directly from the mapping.
    * 
-   * @param message of with integrity information
-   * @return a tuple with the ( message, validity ); where the validity
-   *         is true when the original SHA1 matches the computed SHA1
-   *         hash.
+   * @param file of the chunk with integrity information
+   * @return true when the original SHA1 matches the computed SHA1 hash
+   *         of the message, false otherwise.
+   * @throws IOException if the file could not be mapped
    */
-  public static ChunkIntegrityInformation validateSHA1Integrity(
-      byte[] message) {
-    byte[] originalSHA1 = Arrays.copyOfRange( message, 0, INTEGRITY_SIZE );
-    byte[] writtenMessage =
-        Arrays.copyOfRange( message, INTEGRITY_SIZE, message.length );
+  public static boolean validateSHA1Integrity(FileChannel file)
+      throws IOException {
+    return validateSHA1Integrity(
+        file.map( MapMode.READ_ONLY, 0, file.size() ) );
+  }
 
-    byte[] newSHA1;
+  /**
+   * Validate the integrity of a chunk that has been mapped into memory,
+   * hashing the slices directly from the mapping.
+   * 
+   * @param chunk the chunk with integrity information, e.g., from
+   *        {@link StoredChunk#map()}
+   * @return true when the original SHA1 matches the computed SHA1 hash
+   *         of the message, false otherwise.
+   */
+  public static boolean validateSHA1Integrity(ByteBuffer chunk) {
+    if ( chunk.remaining() < INTEGRITY_SIZE + Constants.CHUNK_SIZE )
+    {
+      return false;
+    }
+    byte[] originalSHA1 = new byte[ INTEGRITY_SIZE ];
+    chunk.get( originalSHA1 );
     try
     {
-      newSHA1 = SHA1FromBytes( writtenMessage );
+      byte[] newSHA1 =
+          SHA1FromBuffer( MessageDigest.getInstance( ALGORITHM ), chunk );
+      return Arrays.equals( originalSHA1, newSHA1 );
     } catch ( NoSuchAlgorithmException | IllegalArgumentException e )
     {
       LOG.error( "Unable to compute SHA-1 integrity for the written message. "
           + e.getMessage() );
-      return new ChunkIntegrityInformation( null, false );
+      return false;
     }
-    return new ChunkIntegrityInformation( writtenMessage,
-        Arrays.equals( originalSHA1, newSHA1 ) );
   }
 
   /**
    * Compare the integrity information from a chunk on disk to that from
    * the incoming message.
    * 
-   * @param path of the original chunk segment
+   * @param original the stored chunk
    * @param newMessage that is to be compared
    * @return true if the two chunks have the same content, false
    *         otherwise.
    */
-  public static boolean messageIntegrityMatchesDisk(Path path,
+  public static boolean messageIntegrityMatchesDisk(StoredChunk original,
       byte[] newMessage) {
-    byte[] originalMessage = FileUtilities.readChunkSequence( path );
-    if ( originalMessage != null )
+    try
     {
-      byte[] originalSHA1 =
-          Arrays.copyOfRange( originalMessage, 0, INTEGRITY_SIZE );
+      byte[] originalSHA1 = Arrays.copyOf( original.read( 0,
+          ( int ) Math.min( INTEGRITY_SIZE, original.getLength() ) ),
+          INTEGRITY_SIZE );
       byte[] newSHA1 = Arrays.copyOfRange( newMessage, 0, INTEGRITY_SIZE );
       return Arrays.equals( originalSHA1, newSHA1 );
+    } catch ( IOException e )
+    {
+      LOG.error( "Unable to read the stored chunk. " + e.getMessage() );
+      return false;
     }
-    return false;
   }
 
   /**
-   * Read a chunk of a file denoted by the <tt>filename</tt> and
-   * <tt>sequence</tt> number into a <tt>byte[]</tt>.
+   * Get the directory the chunks of a chunk server are stored in.
    * 
-   * @return a <tt>byte[]</tt> of the original bytes written to disk.
-   *         This includes the message and the integrity information.
+   * <p>
+   * <tt>/tmp/host_port</tt> </br>
+   * </br>
+   * </p>
+   * 
+   * @param node added to write file name with connection details
+   * @return the resulting <tt>Path</tt>
    */
-  public static byte[] readChunkSequence(Path path) {
-    byte[] message;
-    try
-    {
-      message = Files.readAllBytes( path );
-    } catch ( IOException e )
-    {
-      LOG.error( "Unable to read chunk file: \'" + path.getFileName() );
-      e.printStackTrace();
-      return null;
-    }
-    return message;
+  public static Path getStoreLocation(Node node) {
+    String directory = node.getHost() + "_" + node.getPort();
+    return Paths.get( File.separator, "tmp", directory );
   }
 
   /**
@@ -161,47 +195,17 @@ public class FileUtilities {
    * disk.
    * 
    * <p>
-   * <tt>/tmp/host_port/filename_chunksequence</tt> </br>
+   * <tt>/tmp/host_port/handle_chunksequence</tt> </br>
    * </br>
-   * TODO: use StringBuilder instead for performance?
    * </p>
    * 
    * @param node added to write file name with connection details
-   * @param filename
+   * @param handle of the file, as assigned by the controller
    * @param sequence
    * @return the resulting <tt>Path</tt>
    */
-  public static Path getPathLocation(Node node, String filename, int sequence) {
-    StringBuilder sb = new StringBuilder().append( filename ).append( "_chunk" )
-        .append( sequence ).append( "_" ).append( node.getHost() ).append( "_" )
-        .append( node.getPort() );
-    return Paths.get( File.separator, "tmp", sb.toString() );
-  }
-
-  /**
-   * 
-   * @author stock
-   *
-   */
-  public static class ChunkIntegrityInformation {
-
-    private byte[] message;
-
-    private boolean isValidChunk;
-
-    private ChunkIntegrityInformation(byte[] message, boolean isValidChunk) {
-      this.message = message;
-      this.isValidChunk = isValidChunk;
-    }
-
-    public byte[] getMessage() {
-      return message;
-    }
-
-    public boolean isValidChunk() {
-      return isValidChunk;
-    }
-
+  public static Path getPathLocation(Node node, long handle, int sequence) {
+    return getStoreLocation( node ).resolve( handle + "_chunk" + sequence );
   }
 
 }
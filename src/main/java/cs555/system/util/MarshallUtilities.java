@@ -0,0 +1,254 @@
+package cs555.system.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared utilities to marshall and unmarshall the fields of a
+ * wireformat directly to and from a <code>ByteBuffer</code>.
+ *
+ * Strings are written as their UTF-8 length followed by their UTF-8
+ * bytes. Strings that are only ASCII, e.g., file names and host
+ * details, are encoded without allocating an intermediate array.
+ *
+ * Server identifiers, as assigned by the
+ * {@link cs555.system.metadata.ServerRegistry}, are written as shorts,
+ * with {@link Constants#NO_SERVER} for a missing server.
+ *
+ * Non-negative numbers may also be written as variable length
+ * integers, seven bits to a byte with the high bit set on every byte
+ * but the last.
+ *
+ * @author stock
+ *
+ */
+public class MarshallUtilities {
+
+  /**
+   * Compute the number of bytes a string will be marshalled to,
+   * including the preceding length.
+   *
+   * @param string to marshall
+   * @return the marshalled length in bytes
+   */
+  public static int sizeOf(String string) {
+    return Integer.BYTES + encodedLength( string );
+  }
+
+  /**
+   * Compute the number of bytes a byte array will be marshalled to,
+   * including the preceding length.
+   *
+   * @param bytes to marshall
+   * @return the marshalled length in bytes
+   */
+  public static int sizeOf(byte[] bytes) {
+    return Integer.BYTES + bytes.length;
+  }
+
+  /**
+   * Compute the number of bytes an array of server identifiers will be
+   * marshalled to, including the preceding length.
+   *
+   * @param identifiers to marshall
+   * @return the marshalled length in bytes
+   */
+  public static int sizeOf(int[] identifiers) {
+    return Integer.BYTES + identifiers.length * Short.BYTES;
+  }
+
+  /**
+   * Compute the number of bytes a non-negative number will be
+   * marshalled to as a variable length integer.
+   *
+   * @param value to marshall
+   * @return the marshalled length in bytes
+   */
+  public static int sizeOfVarLong(long value) {
+    int length = 1;
+    while ( ( value >>>= 7 ) != 0 )
+    {
+      ++length;
+    }
+    return length;
+  }
+
+  /**
+   * Write a non-negative number as a variable length integer.
+   *
+   * @param buffer to write to
+   * @param value to write
+   */
+  public static void putVarLong(ByteBuffer buffer, long value) {
+    while ( ( value & ~0x7FL ) != 0 )
+    {
+      buffer.put( ( byte ) ( ( value & 0x7F ) | 0x80 ) );
+      value >>>= 7;
+    }
+    buffer.put( ( byte ) value );
+  }
+
+  /**
+   * Read a number written by {@link #putVarLong(ByteBuffer, long)}.
+   *
+   * @param buffer positioned at the number
+   * @return the number
+   */
+  public static long getVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for ( int shift = 0; shift < Long.SIZE; shift += 7 )
+    {
+      byte b = buffer.get();
+      value |= ( long ) ( b & 0x7F ) << shift;
+      if ( b >= 0 )
+      {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException(
+        "The variable length integer is too long." );
+  }
+
+  /**
+   * Read a number written by {@link #putVarLong(ByteBuffer, long)}
+   * that fits in an int.
+   *
+   * @param buffer positioned at the number
+   * @return the number
+   */
+  public static int getVarInt(ByteBuffer buffer) {
+    long value = getVarLong( buffer );
+    if ( value > Integer.MAX_VALUE )
+    {
+      throw new IllegalArgumentException( "The variable length integer "
+          + value + " does not fit in an int." );
+    }
+    return ( int ) value;
+  }
+
+  /**
+   * Write the length of the string, and then the string as UTF-8.
+   *
+   * @param buffer to write to
+   * @param string to write
+   */
+  public static void putString(ByteBuffer buffer, String string) {
+    int length = encodedLength( string );
+    buffer.putInt( length );
+    if ( length == string.length() )
+    {
+      for ( int i = 0; i < length; ++i )
+      {
+        buffer.put( ( byte ) string.charAt( i ) );
+      }
+    } else
+    {
+      buffer.put( string.getBytes( StandardCharsets.UTF_8 ) );
+    }
+  }
+
+  /**
+   * Read a string written by {@link #putString(ByteBuffer, String)}.
+   *
+   * @param buffer positioned at the length of the string
+   * @return the string
+   */
+  public static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if ( buffer.hasArray() )
+    {
+      String string = new String( buffer.array(),
+          buffer.arrayOffset() + buffer.position(), length,
+          StandardCharsets.UTF_8 );
+      buffer.position( buffer.position() + length );
+      return string;
+    }
+    byte[] bytes = new byte[ length ];
+    buffer.get( bytes );
+    return new String( bytes, StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * Write the length of the array, and then the array.
+   *
+   * @param buffer to write to
+   * @param bytes to write
+   */
+  public static void putBytes(ByteBuffer buffer, byte[] bytes) {
+    buffer.putInt( bytes.length );
+    buffer.put( bytes );
+  }
+
+  /**
+   * Read an array written by {@link #putBytes(ByteBuffer, byte[])}.
+   *
+   * @param buffer positioned at the length of the array
+   * @return a copy of the array
+   */
+  public static byte[] getBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[ buffer.getInt() ];
+    buffer.get( bytes );
+    return bytes;
+  }
+
+  /**
+   * Write the length of the array, and then each server identifier as
+   * a short.
+   *
+   * @param buffer to write to
+   * @param identifiers to write
+   */
+  public static void putIdentifiers(ByteBuffer buffer, int[] identifiers) {
+    buffer.putInt( identifiers.length );
+    for ( int identifier : identifiers )
+    {
+      buffer.putShort( ( short ) identifier );
+    }
+  }
+
+  /**
+   * Read an array written by
+   * {@link #putIdentifiers(ByteBuffer, int[])}.
+   *
+   * @param buffer positioned at the length of the array
+   * @return the server identifiers
+   */
+  public static int[] getIdentifiers(ByteBuffer buffer) {
+    int[] identifiers = new int[ buffer.getInt() ];
+    for ( int i = 0; i < identifiers.length; ++i )
+    {
+      identifiers[ i ] = buffer.getShort();
+    }
+    return identifiers;
+  }
+
+  /**
+   *
+   * @param string to measure
+   * @return the number of bytes in the UTF-8 encoding of the string
+   */
+  private static int encodedLength(String string) {
+    int length = string.length();
+    int bytes = length;
+    for ( int i = 0; i < length; ++i )
+    {
+      char c = string.charAt( i );
+      if ( c >= 0x80 )
+      {
+        if ( c < 0x800 )
+        {
+          bytes += 1;
+        } else if ( Character.isHighSurrogate( c ) && i + 1 < length
+            && Character.isLowSurrogate( string.charAt( i + 1 ) ) )
+        {
+          bytes += 2;
+          ++i;
+        } else if ( !Character.isSurrogate( c ) )
+        {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+}
@@ -19,9 +19,117 @@ public interface Properties {
   final String CLIENT_OUTBOUND_DIRECTORY =
       Configurations.getInstance().getProperty( "client.outbound.directory" );
 
+  final String CLIENT_READ_WINDOW = Configurations.getInstance()
+      .getProperty( "client.read.window", "16" );
+
+  final String CLIENT_WRITE_PLACEMENT_BATCH = Configurations.getInstance()
+      .getProperty( "client.write.placement.batch", "0" );
+
+  final String CLIENT_WRITE_SHARDS =
+      Configurations.getInstance().getProperty( "client.write.shards",
+          Constants.SHARD_WRITE_TYPE_CHAIN );
+
   final String SYSTEM_DESIGN_SCHEMA = Configurations.getInstance()
       .getProperty( "system.design.schema", Constants.SYSTEM_TYPE_REPLICATION );
 
   final String SYSTEM_LOG_LEVEL =
       Configurations.getInstance().getProperty( "system.log.level", "INFO" );
+
+  final String SYSTEM_CONNECTION_MAX_PER_PEER = Configurations.getInstance()
+      .getProperty( "system.connection.max.per.peer", "2" );
+
+  final String SYSTEM_CONNECTION_IDLE_TIMEOUT = Configurations.getInstance()
+      .getProperty( "system.connection.idle.timeout", "60" );
+
+  final String SYSTEM_WRITE_CREDITS = Configurations.getInstance()
+      .getProperty( "system.write.credits", "0" );
+
+  final String SYSTEM_WRITE_CREDIT_TIMEOUT = Configurations.getInstance()
+      .getProperty( "system.write.credit.timeout", "10" );
+
+  final String SYSTEM_WRITE_FORWARDING =
+      Configurations.getInstance().getProperty( "system.write.forwarding",
+          Constants.FORWARD_TYPE_STORE );
+
+  final String SYSTEM_DISPATCH_MODE =
+      Configurations.getInstance().getProperty( "system.dispatch.mode",
+          Constants.DISPATCH_TYPE_INLINE );
+
+  final String SYSTEM_DISPATCH_THREADS_CONTROL = Configurations.getInstance()
+      .getProperty( "system.dispatch.threads.control", "2" );
+
+  final String SYSTEM_DISPATCH_THREADS_DATA = Configurations.getInstance()
+      .getProperty( "system.dispatch.threads.data", "4" );
+
+  final String SYSTEM_DISPATCH_THREADS_REPAIR = Configurations.getInstance()
+      .getProperty( "system.dispatch.threads.repair", "1" );
+
+  final String SYSTEM_DISPATCH_QUEUE_SIZE = Configurations.getInstance()
+      .getProperty( "system.dispatch.queue.size", "1024" );
+
+  final String SYSTEM_HEARTBEAT_ENCODING =
+      Configurations.getInstance().getProperty( "system.heartbeat.encoding",
+          Constants.HEARTBEAT_ENCODING_FIXED );
+
+  final String SYSTEM_STORE_TYPE =
+      Configurations.getInstance().getProperty( "system.store.type",
+          Constants.STORE_TYPE_FILE );
+
+  final String SYSTEM_STORE_SEGMENT_SIZE = Configurations.getInstance()
+      .getProperty( "system.store.segment.size", "64" );
+
+  final String SYSTEM_STORE_COMPACTION_THRESHOLD = Configurations
+      .getInstance().getProperty( "system.store.compaction.threshold", "0.5" );
+
+  final String SYSTEM_STORE_CACHE_SIZE = Configurations.getInstance()
+      .getProperty( "system.store.cache.size", "0" );
+
+  final String SYSTEM_STORE_CACHE_MEMORY =
+      Configurations.getInstance().getProperty( "system.store.cache.memory",
+          Constants.CACHE_MEMORY_HEAP );
+
+  final String SYSTEM_STORE_VERIFICATION_WINDOW = Configurations
+      .getInstance().getProperty( "system.store.verification.window", "0" );
+
+  final String SYSTEM_SCRUB_RATE = Configurations.getInstance()
+      .getProperty( "system.scrub.rate", "0" );
+
+  final String SYSTEM_SCRUB_INTERVAL = Configurations.getInstance()
+      .getProperty( "system.scrub.interval", "3600" );
+
+  final String SYSTEM_THREAD_MODE =
+      Configurations.getInstance().getProperty( "system.thread.mode",
+          Constants.THREAD_TYPE_PLATFORM );
+
+  final String SYSTEM_TRANSPORT_MODE =
+      Configurations.getInstance().getProperty( "system.transport.mode",
+          Constants.TRANSPORT_TYPE_BLOCKING );
+
+  final String SYSTEM_TRANSPORT_THREADS = Configurations.getInstance()
+      .getProperty( "system.transport.threads", "2" );
+
+  final String SYSTEM_TRANSPORT_HANDLERS = Configurations.getInstance()
+      .getProperty( "system.transport.handlers", "8" );
+
+  final String SYSTEM_TRANSPORT_SENDER =
+      Configurations.getInstance().getProperty( "system.transport.sender",
+          Constants.SENDER_TYPE_DIRECT );
+
+  final String SYSTEM_TRANSPORT_QUEUE_SIZE = Configurations.getInstance()
+      .getProperty( "system.transport.queue.size", "256" );
+
+  final String SYSTEM_TRANSPORT_COMPRESSION =
+      Configurations.getInstance().getProperty( "system.transport.compression",
+          Constants.COMPRESSION_TYPE_NONE );
+
+  final String SYSTEM_TRANSPORT_DECODE =
+      Configurations.getInstance().getProperty( "system.transport.decode",
+          Constants.DECODE_TYPE_EAGER );
+
+  final String SYSTEM_TRANSPORT_FRAMING =
+      Configurations.getInstance().getProperty( "system.transport.framing",
+          Constants.FRAMING_TYPE_BUFFERED );
+
+  final String SYSTEM_TRANSPORT_POOL_BUFFERS = Configurations.getInstance()
+      .getProperty( "system.transport.pool.buffers", "16" );
 }
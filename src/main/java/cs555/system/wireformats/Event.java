@@ -1,6 +1,7 @@
 package cs555.system.wireformats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Public interface that each message will implement.
@@ -19,6 +20,35 @@ public interface Event {
    */
   public int getType();
 
+  /**
+   * Compute the number of bytes the message is marshalled to, so the
+   * message can be written into a buffer of exactly that size.
+   * 
+   * @return the marshalled length of the message in bytes
+   */
+  public int getLength();
+
+  /**
+   * Translates from in-memory to network-bound byte sequence, i.e.,
+   * pack fields directly into the buffer.
+   * 
+   * @param buffer with at least {@link #getLength()} bytes remaining
+   */
+  public void write(ByteBuffer buffer);
+
+  /**
+   * Marshall the message as a sequence of segments that together hold
+   * the same bytes as {@link #write(ByteBuffer)}. Large content is
+   * referenced where it is already held, rather than copied into a
+   * single buffer, so the segments can be sent with a gathering write.
+   * 
+   * @return the segments of the message in order, or null if the
+   *         message is only marshalled with {@link #write(ByteBuffer)}
+   */
+  public default ByteBuffer[] getSegments() {
+    return null;
+  }
+
   /**
    * Translates from in-memory to network-bound byte sequence, i.e.,
    * pack fields into a byte array.
@@ -26,6 +56,10 @@ public interface Event {
    * @return Returns an array of bytes of the object.
    * @throws IOException
    */
-  public byte[] getBytes() throws IOException;
+  public default byte[] getBytes() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate( getLength() );
+    write( buffer );
+    return buffer.array();
+  }
 
 }
@@ -0,0 +1,242 @@
+package cs555.system.wireformats;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import cs555.system.transport.BufferPool;
+
+/**
+ * Reads a streamed frame incrementally, rather than reading the whole
+ * frame into one buffer before it is decoded.
+ *
+ * The receiver asks for the next segment of the frame, fills it from
+ * the connection, and then asks for the following segment until there
+ * are none left. Every segment is a slice of one buffer from the
+ * {@link BufferPool}, acquired for the frame length. Write chunk
+ * requests are handed out a field at a time, so the number and length
+ * of the shards are checked against the frame before the shards are
+ * read, and each shard is read straight into its place in the buffer.
+ * Any other event is read in one segment after its header.
+ *
+ * A write chunk request is decoded as a view of the buffer, which it
+ * owns and returns with {@link WriteChunkRequest#release()}, so the
+ * shards are not copied onto the heap, and the request can be
+ * forwarded by sending its frame as it is. Other events are decoded
+ * as normal, and the buffer is returned to the pool at once.
+ *
+ * A decoder is kept for each connection and reset for every streamed
+ * frame, so it must not be shared between connections.
+ *
+ * @author stock
+ *
+ */
+public class EventDecoder {
+
+  /**
+   * Stages of the frame, named by the segment that has just been filled.
+   */
+  private final static int BEGIN = 0;
+
+  private final static int HEADER = 1;
+
+  private final static int LENGTH = 2;
+
+  private final static int SHARD = 3;
+
+  private final static int TRAILER = 4;
+
+  private final static int FRAME = 5;
+
+  private final static int DONE = 6;
+
+  private ByteBuffer frame;
+
+  private ByteBuffer segment;
+
+  private int stage;
+
+  /**
+   * Bytes of the frame that have not yet been handed out as segments.
+   */
+  private int remaining;
+
+  private int frameLength;
+
+  private int numberOfShards;
+
+  private int index;
+
+  private Event event;
+
+  /**
+   * Default constructor -
+   *
+   */
+  public EventDecoder() {
+    this.stage = DONE;
+  }
+
+  /**
+   * Prepare to read a new frame, returning the buffer of a frame that
+   * was not read in full to the pool.
+   *
+   * @param frameLength the length of the frame in bytes
+   */
+  public void reset(int frameLength) {
+    discard();
+    this.frameLength = frameLength;
+    this.remaining = frameLength;
+    this.segment = null;
+    this.event = null;
+    this.stage = BEGIN;
+  }
+
+  /**
+   * Interpret the previous segment, which must have been filled, and
+   * hand out the next segment of the frame.
+   *
+   * @return the buffer to fill with the next bytes of the frame, or
+   *         null once the frame has been read and the event is ready
+   * @throws IOException if the frame is malformed
+   */
+  public ByteBuffer next() throws IOException {
+    try
+    {
+      segment = advance();
+      return segment;
+    } catch ( BufferUnderflowException | NegativeArraySizeException
+        | IllegalArgumentException | IndexOutOfBoundsException e )
+    {
+      discard();
+      throw new IOException( "The message is malformed. " + e );
+    } catch ( IOException e )
+    {
+      discard();
+      throw e;
+    }
+  }
+
+  /**
+   *
+   * @return the event read from the frame, or null if the frame has not
+   *         been read or the event is not known
+   */
+  public Event getEvent() {
+    return event;
+  }
+
+  /**
+   *
+   * @return the next segment to fill, or null once the event is ready
+   * @throws IOException if the frame is malformed
+   */
+  private ByteBuffer advance() throws IOException {
+    switch ( stage )
+    {
+      case BEGIN :
+        stage = HEADER;
+        frame = BufferPool.getInstance().acquire( frameLength );
+        return take( Math.min( WriteChunkRequest.HEADER_LENGTH, frameLength ) );
+
+      case HEADER :
+        if ( frameLength < WriteChunkRequest.HEADER_LENGTH
+            || frame.getInt( 0 ) != Protocol.WRITE_CHUNK_REQUEST )
+        {
+          stage = FRAME;
+          return take( remaining );
+        }
+        numberOfShards = frame.getInt( WriteChunkRequest.HEADER_LENGTH
+            - Integer.BYTES );
+        if ( numberOfShards < 0
+            || numberOfShards > remaining / Integer.BYTES )
+        {
+          throw new IOException( "The message is malformed. "
+              + numberOfShards + " shards do not fit in the frame." );
+        }
+        index = 0;
+        return nextShard();
+
+      case LENGTH :
+        stage = SHARD;
+        int shardLength = frame.getInt( segment.position() - Integer.BYTES );
+        if ( shardLength < 0 || shardLength > remaining )
+        {
+          throw new IOException( "The message is malformed. A shard of "
+              + shardLength + " bytes does not fit in the frame." );
+        }
+        return take( shardLength );
+
+      case SHARD :
+        ++index;
+        return nextShard();
+
+      case TRAILER :
+        stage = DONE;
+        frame.clear().limit( frameLength );
+        event = new WriteChunkRequest( frame, true );
+        frame = null;
+        return null;
+
+      case FRAME :
+        stage = DONE;
+        frame.clear().limit( frameLength );
+        try
+        {
+          event = EventFactory.getInstance().createEvent( frame );
+        } finally
+        {
+          discard();
+        }
+        return null;
+
+      default :
+        throw new IllegalStateException( "The decoder has not been reset." );
+    }
+  }
+
+  /**
+   *
+   * @return the length of the next shard, or the fields following the
+   *         shards if every shard has been read
+   * @throws IOException if the frame is malformed
+   */
+  private ByteBuffer nextShard() throws IOException {
+    if ( index < numberOfShards )
+    {
+      stage = LENGTH;
+      return take( Integer.BYTES );
+    }
+    stage = TRAILER;
+    return take( remaining );
+  }
+
+  /**
+   * Hand out the next <code>length</code> bytes of the frame buffer as
+   * a segment.
+   *
+   * @param length of the segment in bytes
+   * @return a slice of the frame buffer to be filled
+   * @throws IOException if the segment extends beyond the frame
+   */
+  private ByteBuffer take(int length) throws IOException {
+    if ( length > remaining )
+    {
+      throw new IOException( "The message is malformed. " + length
+          + " bytes do not fit in the frame." );
+    }
+    int offset = frameLength - remaining;
+    remaining -= length;
+    return frame.duplicate().limit( offset + length ).position( offset );
+  }
+
+  /**
+   * Return the buffer of a frame that has not been handed to a request
+   * to the pool.
+   *
+   */
+  private void discard() {
+    stage = DONE;
+    BufferPool.getInstance().release( frame );
+    frame = null;
+  }
+}
@@ -1,8 +1,11 @@
 package cs555.system.wireformats;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import cs555.system.util.Constants;
 import cs555.system.util.Logger;
+import cs555.system.util.Properties;
 
 /**
  * Singleton class in charge of creating objects, i.e., messaging
@@ -17,6 +20,9 @@ public class EventFactory {
 
   private static final EventFactory instance = new EventFactory();
 
+  private static final boolean LAZY = Properties.SYSTEM_TRANSPORT_DECODE
+      .equals( Constants.DECODE_TYPE_LAZY );
+
   /**
    * Default constructor - Exists only to defeat instantiation.
    */
@@ -36,71 +42,150 @@ public class EventFactory {
    * Create a new event, i.e., wireformat object from the marshalled
    * bytes of said object.
    * 
-   * @param message
+   * @param marshalledBytes
    * @return the event object from the <code>byte[]</code>.
    * @throws IOException
    */
   public Event createEvent(byte[] marshalledBytes) throws IOException {
+    return createEvent( ByteBuffer.wrap( marshalledBytes ) );
+  }
+
+  /**
+   * Create a new event from a view of the marshalled bytes. The event
+   * is decoded from the position to the limit of the buffer, and does
+   * not hold a reference to the buffer once created - so the buffer
+   * may be reused by the caller.
+   * 
+   * @param buffer positioned at the start of the marshalled event
+   * @return the event object from the <code>ByteBuffer</code>.
+   * @throws IOException if the message is malformed
+   */
+  public Event createEvent(ByteBuffer buffer) throws IOException {
+    return createEvent( buffer, false );
+  }
+
+  /**
+   * Create a new event from a buffer that the caller is able to hand
+   * over. When lazy decoding is configured, write chunk requests are
+   * decoded as views of the buffer and take ownership of it, see
+   * {@link #isRetained(Event)}. Every other event is decoded as with
+   * {@link #createEvent(ByteBuffer)}.
+   * 
+   * @param buffer acquired from the pool, positioned at the start of
+   *        the marshalled event
+   * @return the event object from the <code>ByteBuffer</code>.
+   * @throws IOException if the message is malformed
+   */
+  public Event createRetainedEvent(ByteBuffer buffer) throws IOException {
+    return createEvent( buffer, LAZY );
+  }
 
-    switch ( ByteBuffer.wrap( marshalledBytes ).getInt() )
+  /**
+   * 
+   * @param event created by {@link #createRetainedEvent(ByteBuffer)}
+   * @return true if the event now owns the buffer it was decoded from,
+   *         so the caller must neither reuse nor release it, false
+   *         otherwise
+   */
+  public boolean isRetained(Event event) {
+    return event instanceof WriteChunkRequest
+        && ( ( WriteChunkRequest ) event ).getFrame() != null;
+  }
+
+  /**
+   * 
+   * @param buffer positioned at the start of the marshalled event
+   * @param view true to decode write chunk requests as views of the
+   *        buffer
+   * @return the event object from the <code>ByteBuffer</code>.
+   * @throws IOException if the message is malformed
+   */
+  private Event createEvent(ByteBuffer buffer, boolean view)
+      throws IOException {
+    try
+    {
+      return decode( buffer, view );
+    } catch ( BufferUnderflowException | NegativeArraySizeException
+        | IllegalArgumentException e )
+    {
+      throw new IOException( "The message is malformed. " + e );
+    }
+  }
+
+  /**
+   * 
+   * @param buffer positioned at the start of the marshalled event
+   * @param view true to decode write chunk requests as views of the
+   *        buffer
+   * @return the event object from the <code>ByteBuffer</code>.
+   */
+  private Event decode(ByteBuffer buffer, boolean view) {
+
+    switch ( buffer.getInt( buffer.position() ) )
     {
       case Protocol.REGISTER_REQUEST :
-        return new RegisterRequest( marshalledBytes );
+        return new RegisterRequest( buffer );
 
       case Protocol.REGISTER_RESPONSE :
-        return new RegisterResponse( marshalledBytes );
+        return new RegisterResponse( buffer );
 
       case Protocol.UNREGISTER_REQUEST :
-        return new RegisterRequest( marshalledBytes );
+        return new RegisterRequest( buffer );
 
       case Protocol.MINOR_HEARTBEAT :
-        return new Heartbeat( marshalledBytes );
+        return new Heartbeat( buffer );
 
       case Protocol.MAJOR_HEARTBEAT :
-        return new Heartbeat( marshalledBytes );
+        return new Heartbeat( buffer );
         
       case Protocol.WRITE_FILE_REQUEST :
-        return new WriteFileRequest( marshalledBytes );
+        return new WriteFileRequest( buffer );
 
       case Protocol.WRITE_FILE_RESPONSE :
-        return new WriteFileResponse( marshalledBytes );
+        return new WriteFileResponse( buffer );
 
       case Protocol.WRITE_CHUNK_REQUEST :
-        return new WriteChunkRequest( marshalledBytes );
+        return new WriteChunkRequest( buffer, view );
 
       case Protocol.LIST_FILE_REQUEST :
-        return new ListFileRequest( marshalledBytes );
+        return new ListFileRequest( buffer );
 
       case Protocol.LIST_FILE_RESPONSE :
-        return new ListFileResponse( marshalledBytes );
+        return new ListFileResponse( buffer );
 
       case Protocol.READ_FILE_REQUEST :
-        return new ReadFileRequest( marshalledBytes );
+        return new ReadFileRequest( buffer );
 
       case Protocol.READ_FILE_RESPONSE :
-        return new ReadFileResponse( marshalledBytes );
+        return new ReadFileResponse( buffer );
 
       case Protocol.READ_CHUNK_REQUEST :
-        return new ReadChunkRequest( marshalledBytes );
+        return new ReadChunkRequest( buffer );
 
       case Protocol.READ_CHUNK_RESPONSE :
-        return new ReadChunkResponse( marshalledBytes );
+        return new ReadChunkResponse( buffer );
 
       case Protocol.HEALTH_REQUEST :
-        return new HealthRequest( marshalledBytes );
+        return new HealthRequest( buffer );
 
       case Protocol.REDIRECT_CHUNK_REQUEST :
-        return new RedirectChunkRequest( marshalledBytes );
+        return new RedirectChunkRequest( buffer );
+
+      case Protocol.SERVER_TABLE :
+        return new ServerTable( buffer );
 
       case Protocol.FAILURE_CLIENT_NOTIFICATION :
-        return new FailureClientNotification( marshalledBytes );
+        return new FailureClientNotification( buffer );
 
       case Protocol.FAILURE_CHUNK_READ :
-        return new FailureChunkRead( marshalledBytes );
+        return new FailureChunkRead( buffer );
+
+      case Protocol.WRITE_CHUNK_CREDIT :
+        return new WriteChunkCredit( buffer );
 
       default :
         LOG.error( "Event could not be created. "
-            + ByteBuffer.wrap( marshalledBytes ).getInt() );
+            + buffer.getInt( buffer.position() ) );
         return null;
     }
   }
@@ -1,12 +1,7 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Message sent to the controller to retrieve a new slice from some
@@ -21,7 +16,7 @@ public class FailureChunkRead implements Event {
 
   private String connectionDetails;
 
-  private String filename;
+  private long handle;
 
   private int sequence;
 
@@ -30,46 +25,31 @@ public class FailureChunkRead implements Event {
    * 
    * @param connectionDetails destination that contains the failed
    *        chunk.
-   * @param filename
+   * @param handle of the file, as assigned by the controller
    * @param sequence chunk number that failed
    */
-  public FailureChunkRead(String connectionDetails, String filename,
+  public FailureChunkRead(String connectionDetails, long handle,
       int sequence) {
     this.type = Protocol.FAILURE_CHUNK_READ;
     this.connectionDetails = connectionDetails;
-    this.filename = filename;
+    this.handle = handle;
     this.sequence = sequence;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public FailureChunkRead(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public FailureChunkRead(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.connectionDetails = MarshallUtilities.getString( buffer );
 
-    int len = din.readInt();
-    byte[] bytes = new byte[ len ];
-    din.readFully( bytes );
-    this.connectionDetails = new String( bytes );
+    this.handle = buffer.getLong();
 
-    len = din.readInt();
-    bytes = new byte[ len ];
-    din.readFully( bytes );
-    this.filename = new String( bytes );
-
-    this.sequence = din.readInt();
-
-    inputStream.close();
-    din.close();
+    this.sequence = buffer.getInt();
   }
 
   /**
@@ -90,10 +70,10 @@ public class FailureChunkRead implements Event {
 
   /**
    * 
-   * @return the chunk name from the client
+   * @return the handle of the file, as assigned by the controller
    */
-  public String getFilename() {
-    return filename;
+  public long getHandle() {
+    return handle;
   }
 
   /**
@@ -108,36 +88,29 @@ public class FailureChunkRead implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    byte[] bytes = connectionDetails.getBytes();
-    dout.writeInt( bytes.length );
-    dout.write( bytes );
+  public int getLength() {
+    return Integer.BYTES + MarshallUtilities.sizeOf( connectionDetails )
+        + Long.BYTES + Integer.BYTES;
+  }
 
-    bytes = filename.getBytes();
-    dout.writeInt( bytes.length );
-    dout.write( bytes );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( sequence );
+    MarshallUtilities.putString( buffer, connectionDetails );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    buffer.putLong( handle );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.putInt( sequence );
   }
 
   @Override
   public String toString() {
     return "\n" + type + ", connection details: " + connectionDetails
-        + ", filename: " + filename + ", sequence: " + sequence;
+        + ", file handle: " + handle + ", sequence: " + sequence;
   }
 
 }
@@ -1,12 +1,6 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Message sent to a client to clear metadata for readable files.
@@ -23,22 +17,13 @@ public class FailureClientNotification implements Event {
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public FailureClientNotification(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
-
-    this.type = din.readInt();
-
-    inputStream.close();
-    din.close();
+  public FailureClientNotification(ByteBuffer buffer) {
+    this.type = buffer.getInt();
   }
 
   /**
@@ -53,20 +38,16 @@ public class FailureClientNotification implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+  public int getLength() {
+    return Integer.BYTES;
+  }
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
   }
 
   @Override
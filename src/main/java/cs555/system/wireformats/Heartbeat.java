@@ -1,18 +1,17 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import cs555.system.metadata.ServerMetadata.ChunkInformation;
+import cs555.system.util.Constants;
+import cs555.system.util.MarshallUtilities;
+import cs555.system.util.Properties;
 
 /**
  * Message from the chunk server to the controller containing
@@ -20,11 +19,45 @@ import cs555.system.metadata.ServerMetadata.ChunkInformation;
  * 
  * This message is used for both the minor and major heartbeats.
  * 
+ * Both carry the progress of the background scrubber of the chunk
+ * server, as counts since the server started, but only when the
+ * scrubber is enabled. A flag in the byte that marks an empty heartbeat
+ * tells whether the progress follows it.
+ * 
+ * The chunks are encoded in one of two ways, as chosen by the sender
+ * with {@link Properties#SYSTEM_HEARTBEAT_ENCODING}:
+ * 
+ * <ul>
+ * <li>fixed - the sequence, replication, last modified time and version
+ * of every chunk as fixed width fields.</li>
+ * <li>compact - a dictionary of the distinct last modified times,
+ * followed by the chunks of each file sorted into runs of consecutive
+ * sequences that share a last modified time and version. Each run is
+ * written as variable length integers, with its start relative to the
+ * end of the previous run, and a single replication when every chunk
+ * in the run has the same one. The files are sorted and their handles
+ * are written relative to the previous file.</li>
+ * </ul>
+ * 
  * @author stock
  *
  */
 public class Heartbeat implements Event {
 
+  /**
+   * Marshalled size of the sequence, replication, last modified time
+   * and version of a chunk.
+   */
+  private final static int CHUNK_INFORMATION_BYTES =
+      3 * Integer.BYTES + Long.BYTES;
+
+  /**
+   * Flags of the byte following the free space.
+   */
+  private final static byte EMPTY = 1;
+
+  private final static byte SCRUBBING = 2;
+
   private int type;
 
   private String connectionDetails;
@@ -33,10 +66,36 @@ public class Heartbeat implements Event {
 
   private long freeSpace;
 
-  private Map<String, List<ChunkInformation>> files;
+  private long scrubPasses;
+
+  private long scrubbedChunks;
+
+  private long scrubbedBytes;
+
+  private long corruptChunks;
+
+  private boolean scrubbing;
+
+  private Map<Long, List<ChunkInformation>> files;
 
   private boolean isEmpty;
 
+  private boolean compact;
+
+  /**
+   * Distinct last modified times of the chunks, when compact.
+   */
+  private long[] timestamps;
+
+  /**
+   * Sorted file handles, and their chunks sorted by sequence, when
+   * compact.
+   */
+  private long[] handles;
+
+  private ChunkInformation[][] chunks;
+
+  private int compactLength = -1;
 
   /**
    * Default constructor - create a new task initiation
@@ -48,74 +107,100 @@ public class Heartbeat implements Event {
    * @param files
    */
   public Heartbeat(int type, String connectionDetails, int totalChunks,
-      long freeSpace, Map<String, List<ChunkInformation>> files) {
+      long freeSpace, Map<Long, List<ChunkInformation>> files) {
+    this( type, connectionDetails, totalChunks, freeSpace, files,
+        Properties.SYSTEM_HEARTBEAT_ENCODING
+            .equals( Constants.HEARTBEAT_ENCODING_COMPACT ) );
+  }
+
+  /**
+   * Constructor - with the encoding of the chunks chosen by the caller.
+   * 
+   * @param type either minor or major heartbeat
+   * @param connectionDetails
+   * @param totalChunks
+   * @param freeSpace
+   * @param files
+   * @param compact true to use the compact encoding, false for fixed
+   */
+  Heartbeat(int type, String connectionDetails, int totalChunks,
+      long freeSpace, Map<Long, List<ChunkInformation>> files,
+      boolean compact) {
     this.type = type;
     this.connectionDetails = connectionDetails;
     this.totalChunks = totalChunks;
     this.freeSpace = freeSpace;
     this.files = files;
     this.isEmpty = files.size() > 0 ? false : true;
+    this.compact = compact;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public Heartbeat(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public Heartbeat(ByteBuffer buffer) {
+    this.type = buffer.getInt();
+
+    this.connectionDetails = MarshallUtilities.getString( buffer );
+
+    this.totalChunks = buffer.getInt();
 
-    this.type = din.readInt();
+    this.freeSpace = buffer.getLong();
 
-    int len = din.readInt();
-    byte[] connectionDetailBytes = new byte[ len ];
-    din.readFully( connectionDetailBytes );
-    this.connectionDetails = new String( connectionDetailBytes );
+    byte flags = buffer.get();
 
-    this.totalChunks = din.readInt();
+    this.isEmpty = ( flags & EMPTY ) != 0;
 
-    this.freeSpace = din.readLong();
+    this.scrubbing = ( flags & SCRUBBING ) != 0;
 
-    this.isEmpty = din.readBoolean();
+    if ( this.scrubbing )
+    {
+      this.scrubPasses = buffer.getLong();
+
+      this.scrubbedChunks = buffer.getLong();
+
+      this.scrubbedBytes = buffer.getLong();
+
+      this.corruptChunks = buffer.getLong();
+    }
 
     if ( !this.isEmpty )
     {
+      this.compact = buffer.get() != 0;
+      if ( this.compact )
+      {
+        readCompact( buffer );
+        return;
+      }
       // 1. read files length
-      int numberOfFiles = din.readInt();
+      int numberOfFiles = buffer.getInt();
       this.files = new HashMap<>();
 
       for ( int i = 0; i < numberOfFiles; ++i )
       {
         // 2. read key
-        len = din.readInt();
-        byte[] bytes = new byte[ len ];
-        din.readFully( bytes );
-        String key = new String( bytes );
+        long key = buffer.getLong();
 
         // 3. read list length
-        int numberOfChunks = din.readInt();
+        int numberOfChunks = buffer.getInt();
         List<ChunkInformation> value = new ArrayList<>( numberOfChunks );
 
         // 4. read each list item
         for ( int chunkNumber = 0; chunkNumber < numberOfChunks; ++chunkNumber )
         {
-          int sequence = din.readInt();
-          int position = din.readInt();
-          long lastModifiedDate = din.readLong();
-          int version = din.readInt();
+          int sequence = buffer.getInt();
+          int position = buffer.getInt();
+          long lastModifiedDate = buffer.getLong();
+          int version = buffer.getInt();
           value.add( new ChunkInformation( sequence, position, lastModifiedDate,
               version ) );
         }
         this.files.put( key, value );
       }
     }
-    inputStream.close();
-    din.close();
   }
 
   /**
@@ -150,11 +235,71 @@ public class Heartbeat implements Event {
     return freeSpace;
   }
 
+  /**
+   * Set the progress of the background scrubber of the chunk server,
+   * which is only sent once it has been set.
+   * 
+   * @param scrubPasses over every chunk that have completed
+   * @param scrubbedChunks number of chunks validated
+   * @param scrubbedBytes number of bytes validated
+   * @param corruptChunks number of chunks found to be corrupt
+   */
+  public void setScrubProgress(long scrubPasses, long scrubbedChunks,
+      long scrubbedBytes, long corruptChunks) {
+    this.scrubPasses = scrubPasses;
+    this.scrubbedChunks = scrubbedChunks;
+    this.scrubbedBytes = scrubbedBytes;
+    this.corruptChunks = corruptChunks;
+    this.scrubbing = true;
+  }
+
+  /**
+   * 
+   * @return true if the heartbeat carries the progress of the scrubber,
+   *         i.e., the scrubber of the chunk server is enabled
+   */
+  public boolean isScrubbing() {
+    return scrubbing;
+  }
+
+  /**
+   * 
+   * @return the number of passes the scrubber has completed over every
+   *         chunk
+   */
+  public long getScrubPasses() {
+    return scrubPasses;
+  }
+
+  /**
+   * 
+   * @return the number of chunks validated by the scrubber
+   */
+  public long getScrubbedChunks() {
+    return scrubbedChunks;
+  }
+
+  /**
+   * 
+   * @return the number of bytes validated by the scrubber
+   */
+  public long getScrubbedBytes() {
+    return scrubbedBytes;
+  }
+
+  /**
+   * 
+   * @return the number of chunks the scrubber found to be corrupt
+   */
+  public long getCorruptChunks() {
+    return corruptChunks;
+  }
+
   /**
    * 
    * @return the files that were newly added to the chunk server
    */
-  public Map<String, List<ChunkInformation>> getFiles() {
+  public Map<Long, List<ChunkInformation>> getFiles() {
     return files;
   }
 
@@ -171,56 +316,280 @@ public class Heartbeat implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
+  public int getLength() {
+    int length = Integer.BYTES + MarshallUtilities.sizeOf( connectionDetails )
+        + Integer.BYTES + Long.BYTES + 1;
+    if ( scrubbing )
+    {
+      length += 4 * Long.BYTES;
+    }
+    if ( !isEmpty && compact )
+    {
+      return length + 1 + writeCompact( null );
+    } else if ( !isEmpty )
+    {
+      length += 1 + Integer.BYTES;
+      for ( Entry<Long, List<ChunkInformation>> entry : files.entrySet() )
+      {
+        length += Long.BYTES + Integer.BYTES
+            + entry.getValue().size() * CHUNK_INFORMATION_BYTES;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( type );
+    MarshallUtilities.putString( buffer, connectionDetails );
 
-    byte[] connectionDetailBytes = connectionDetails.getBytes();
-    dout.writeInt( connectionDetailBytes.length );
-    dout.write( connectionDetailBytes );
+    buffer.putInt( totalChunks );
 
-    dout.writeInt( totalChunks );
+    buffer.putLong( freeSpace );
 
-    dout.writeLong( freeSpace );
+    buffer.put( ( byte ) ( ( isEmpty ? EMPTY : 0 )
+        | ( scrubbing ? SCRUBBING : 0 ) ) );
 
-    dout.writeBoolean( isEmpty );
+    if ( scrubbing )
+    {
+      buffer.putLong( scrubPasses );
+
+      buffer.putLong( scrubbedChunks );
+
+      buffer.putLong( scrubbedBytes );
+
+      buffer.putLong( corruptChunks );
+    }
 
     if ( !isEmpty )
+    {
+      buffer.put( ( byte ) ( compact ? 1 : 0 ) );
+    }
+    if ( !isEmpty && compact )
+    {
+      writeCompact( buffer );
+    } else if ( !isEmpty )
     {
       // 1. write files length
-      dout.writeInt( files.size() );
+      buffer.putInt( files.size() );
 
-      for ( Entry<String, List<ChunkInformation>> entry : files.entrySet() )
+      for ( Entry<Long, List<ChunkInformation>> entry : files.entrySet() )
       {
         // 2. write key
-        byte[] bytes = entry.getKey().getBytes();
-        dout.writeInt( bytes.length );
-        dout.write( bytes );
+        buffer.putLong( entry.getKey() );
 
         // 3. write list length
         List<ChunkInformation> value = entry.getValue();
-        dout.writeInt( value.size() );
+        buffer.putInt( value.size() );
 
         // 4. write each list item
         for ( ChunkInformation info : value )
         {
-          dout.writeInt( info.getSequence() );
-          dout.writeInt( info.getReplication() );
-          dout.writeLong( info.getLastModifiedTime() );
-          dout.writeInt( info.getVersion() );
+          buffer.putInt( info.getSequence() );
+          buffer.putInt( info.getReplication() );
+          buffer.putLong( info.getLastModifiedTime() );
+          buffer.putInt( info.getVersion() );
+        }
+      }
+    }
+  }
+
+  /**
+   * Sort the files and their chunks, and collect the distinct last
+   * modified times, for the compact encoding.
+   * 
+   */
+  private void prepareCompact() {
+    handles = new long[ files.size() ];
+    chunks = new ChunkInformation[ handles.length ][];
+    int numberOfChunks = 0;
+    int index = 0;
+    for ( Long handle : files.keySet() )
+    {
+      handles[ index++ ] = handle;
+    }
+    Arrays.sort( handles );
+    for ( int i = 0; i < handles.length; ++i )
+    {
+      chunks[ i ] =
+          files.get( handles[ i ] ).toArray( new ChunkInformation[ 0 ] );
+      Arrays.sort( chunks[ i ],
+          Comparator.comparingInt( ChunkInformation::getSequence ) );
+      numberOfChunks += chunks[ i ].length;
+    }
+    long[] times = new long[ numberOfChunks ];
+    index = 0;
+    for ( ChunkInformation[] file : chunks )
+    {
+      for ( ChunkInformation info : file )
+      {
+        times[ index++ ] = info.getLastModifiedTime();
+      }
+    }
+    Arrays.sort( times );
+    int distinct = 0;
+    for ( int i = 0; i < times.length; ++i )
+    {
+      if ( i == 0 || times[ i ] != times[ distinct - 1 ] )
+      {
+        times[ distinct++ ] = times[ i ];
+      }
+    }
+    timestamps = Arrays.copyOf( times, distinct );
+  }
+
+  /**
+   * Write the chunks with the compact encoding, or only compute their
+   * length.
+   * 
+   * @param buffer to write to, or null to only compute the length
+   * @return the number of bytes the chunks are encoded to
+   */
+  private int writeCompact(ByteBuffer buffer) {
+    if ( buffer == null && compactLength >= 0 )
+    {
+      return compactLength;
+    }
+    if ( timestamps == null )
+    {
+      prepareCompact();
+    }
+    int length = putVarLong( buffer, timestamps.length );
+    long previous = 0;
+    for ( long timestamp : timestamps )
+    {
+      length += putVarLong( buffer, timestamp - previous );
+      previous = timestamp;
+    }
+    length += putVarLong( buffer, handles.length );
+    previous = 0;
+    for ( int i = 0; i < handles.length; ++i )
+    {
+      length += putVarLong( buffer, handles[ i ] - previous );
+      previous = handles[ i ];
+
+      ChunkInformation[] file = chunks[ i ];
+      length += putVarLong( buffer, file.length );
+      int last = -1;
+      for ( int start = 0, end; start < file.length; start = end )
+      {
+        ChunkInformation first = file[ start ];
+        boolean uniform = true;
+        for ( end = start + 1; end < file.length; ++end )
+        {
+          ChunkInformation info = file[ end ];
+          if ( info.getSequence() != file[ end - 1 ].getSequence() + 1
+              || info.getLastModifiedTime() != first.getLastModifiedTime()
+              || info.getVersion() != first.getVersion() )
+          {
+            break;
+          }
+          uniform &= info.getReplication() == first.getReplication();
+        }
+        int runLength = end - start;
+        length += putVarLong( buffer, first.getSequence() - last );
+        length +=
+            putVarLong( buffer, ( runLength << 1 ) | ( uniform ? 1 : 0 ) );
+        length += putVarLong( buffer,
+            Arrays.binarySearch( timestamps, first.getLastModifiedTime() ) );
+        length += putVarLong( buffer, first.getVersion() );
+        for ( int j = start; j < ( uniform ? start + 1 : end ); ++j )
+        {
+          length += putVarLong( buffer, file[ j ].getReplication() );
+        }
+        last = file[ end - 1 ].getSequence();
+      }
+    }
+    compactLength = length;
+    return length;
+  }
+
+  /**
+   * Read the chunks written by {@link #writeCompact(ByteBuffer)}.
+   * 
+   * @param buffer positioned at the chunks
+   */
+  private void readCompact(ByteBuffer buffer) {
+    long[] times = new long[ limit( buffer,
+        MarshallUtilities.getVarInt( buffer ) ) ];
+    long previous = 0;
+    for ( int i = 0; i < times.length; ++i )
+    {
+      previous += MarshallUtilities.getVarLong( buffer );
+      times[ i ] = previous;
+    }
+    int numberOfFiles = MarshallUtilities.getVarInt( buffer );
+    this.files = new HashMap<>();
+
+    long handle = 0;
+    for ( int i = 0; i < numberOfFiles; ++i )
+    {
+      handle += MarshallUtilities.getVarLong( buffer );
+
+      int numberOfChunks = MarshallUtilities.getVarInt( buffer );
+      List<ChunkInformation> value =
+          new ArrayList<>( limit( buffer, numberOfChunks ) );
+      int last = -1;
+      while ( value.size() < numberOfChunks )
+      {
+        int sequence = last + MarshallUtilities.getVarInt( buffer );
+        int header = MarshallUtilities.getVarInt( buffer );
+        int runLength = header >>> 1;
+        if ( runLength == 0 || value.size() + runLength > numberOfChunks )
+        {
+          throw new IllegalArgumentException(
+              "The run of chunks has an invalid length." );
         }
+        long lastModifiedDate = times[ MarshallUtilities.getVarInt( buffer ) ];
+        int version = MarshallUtilities.getVarInt( buffer );
+        int replication = 0;
+        for ( int j = 0; j < runLength; ++j )
+        {
+          if ( j == 0 || ( header & 1 ) == 0 )
+          {
+            replication = MarshallUtilities.getVarInt( buffer );
+          }
+          value.add( new ChunkInformation( sequence + j, replication,
+              lastModifiedDate, version ) );
+        }
+        last = sequence + runLength - 1;
       }
+      this.files.put( handle, value );
+    }
+  }
+
+  /**
+   * 
+   * @param buffer being read
+   * @param length read from the buffer
+   * @return the length, if there are at least as many bytes remaining
+   *         in the buffer, since every item takes at least one byte
+   */
+  private static int limit(ByteBuffer buffer, int length) {
+    if ( length > buffer.remaining() )
+    {
+      throw new IllegalArgumentException(
+          "The length " + length + " exceeds the message." );
     }
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    return length;
+  }
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+  /**
+   * 
+   * @param buffer to write to, or null to only compute the length
+   * @param value to write
+   * @return the number of bytes the value is encoded to
+   */
+  private static int putVarLong(ByteBuffer buffer, long value) {
+    if ( buffer != null )
+    {
+      MarshallUtilities.putVarLong( buffer, value );
+    }
+    return MarshallUtilities.sizeOfVarLong( value );
   }
 
   @Override
@@ -231,6 +600,8 @@ public class Heartbeat implements Event {
     return Integer.toString( this.type ) + ", connection details: "
         + this.connectionDetails + ", total chunks: "
         + Integer.toString( this.totalChunks ) + " " + ", free space: "
-        + Long.toString( this.freeSpace ) + extra;
+        + Long.toString( this.freeSpace ) + ", scrubbed chunks: "
+        + Long.toString( this.scrubbedChunks ) + ", corrupt chunks: "
+        + Long.toString( this.corruptChunks ) + extra;
   }
 }
@@ -1,12 +1,6 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Request from the client to the controller to get a list of all
@@ -28,22 +22,13 @@ public class ListFileRequest implements Event {
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public ListFileRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
-
-    this.type = din.readInt();
-
-    inputStream.close();
-    din.close();
+  public ListFileRequest(ByteBuffer buffer) {
+    this.type = buffer.getInt();
   }
 
   /**
@@ -58,20 +43,16 @@ public class ListFileRequest implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+  public int getLength() {
+    return Integer.BYTES;
+  }
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
   }
 
   @Override
@@ -1,14 +1,9 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Response from the controller to the client containing a list of all
@@ -34,33 +29,21 @@ public class ListFileResponse implements Event {
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public ListFileResponse(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public ListFileResponse(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
-
-    int arrayLength = din.readInt();
+    int arrayLength = buffer.getInt();
     this.filenames = new ArrayList<>( arrayLength );
 
     for ( int i = 0; i < arrayLength; ++i )
     {
-      int len = din.readInt();
-      byte[] bytes = new byte[ len ];
-      din.readFully( bytes );
-      this.filenames.add( ( new String( bytes ) ) );
+      this.filenames.add( MarshallUtilities.getString( buffer ) );
     }
-
-    inputStream.close();
-    din.close();
   }
 
   /**
@@ -84,29 +67,27 @@ public class ListFileResponse implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    dout.writeInt( filenames.size() );
-
+  public int getLength() {
+    int length = 2 * Integer.BYTES;
     for ( String item : filenames )
     {
-      byte[] bytes = item.getBytes();
-      dout.writeInt( bytes.length );
-      dout.write( bytes );
+      length += MarshallUtilities.sizeOf( item );
     }
+    return length;
+  }
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.putInt( filenames.size() );
+    for ( String item : filenames )
+    {
+      MarshallUtilities.putString( buffer, item );
+    }
   }
 
   @Override
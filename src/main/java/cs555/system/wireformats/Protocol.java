@@ -45,4 +45,8 @@ public interface Protocol {
 
   final int FAILURE_CHUNK_READ = 17;
 
+  final int WRITE_CHUNK_CREDIT = 18;
+
+  final int SERVER_TABLE = 19;
+
 }
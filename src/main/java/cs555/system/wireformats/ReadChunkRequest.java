@@ -1,12 +1,6 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Message from the client to the chunk server requesting a specific
@@ -19,45 +13,41 @@ public class ReadChunkRequest implements Event {
 
   private int type;
 
-  private String filename;
+  private int requestId;
+
+  private long handle;
 
   private int sequence;
 
   /**
    * Default constructor -
    * 
-   * @param fileName
+   * @param requestId echoed by the response so it can be matched to
+   *        this request
+   * @param handle of the file, as assigned by the controller
+   * @param sequence
    */
-  public ReadChunkRequest(String fileName, int sequence) {
+  public ReadChunkRequest(int requestId, long handle, int sequence) {
     this.type = Protocol.READ_CHUNK_REQUEST;
-    this.filename = fileName;
+    this.requestId = requestId;
+    this.handle = handle;
     this.sequence = sequence;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public ReadChunkRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
-
-    this.type = din.readInt();
+  public ReadChunkRequest(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    int len = din.readInt();
-    byte[] filenameBytes = new byte[ len ];
-    din.readFully( filenameBytes );
-    this.filename = new String( filenameBytes );
+    this.requestId = buffer.getInt();
 
-    this.sequence = din.readInt();
+    this.handle = buffer.getLong();
 
-    inputStream.close();
-    din.close();
+    this.sequence = buffer.getInt();
   }
 
   /**
@@ -70,10 +60,18 @@ public class ReadChunkRequest implements Event {
 
   /**
    * 
-   * @return the filename associated with a read request
+   * @return the identifier used to correlate the response
+   */
+  public int getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * 
+   * @return the handle of the file, as assigned by the controller
    */
-  public String getFilename() {
-    return filename;
+  public long getHandle() {
+    return handle;
   }
 
   /**
@@ -88,26 +86,22 @@ public class ReadChunkRequest implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
+  public int getLength() {
+    return 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+  }
 
-    byte[] filenameBytes = filename.getBytes();
-    dout.writeInt( filenameBytes.length );
-    dout.write( filenameBytes );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( sequence );
+    buffer.putInt( requestId );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    buffer.putLong( handle );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.putInt( sequence );
   }
 
   @Override
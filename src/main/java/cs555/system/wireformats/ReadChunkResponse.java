@@ -1,13 +1,8 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import cs555.system.util.Constants;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Message from the chunk server to the client responding with the
@@ -20,7 +15,9 @@ public class ReadChunkResponse implements Event {
 
   private int type;
 
-  private String filename;
+  private int requestId;
+
+  private long handle;
 
   private byte[] message;
 
@@ -29,13 +26,16 @@ public class ReadChunkResponse implements Event {
   /**
    * Constructor - for successful message
    * 
-   * @param name
+   * @param requestId of the request being responded to
+   * @param handle of the file, as assigned by the controller
    * @param message
    * @param status
    */
-  public ReadChunkResponse(String filename, byte[] message, byte status) {
+  public ReadChunkResponse(int requestId, long handle, byte[] message,
+      byte status) {
     this.type = Protocol.READ_CHUNK_RESPONSE;
-    this.filename = filename;
+    this.requestId = requestId;
+    this.handle = handle;
     this.message = message;
     this.status = status;
   }
@@ -43,47 +43,40 @@ public class ReadChunkResponse implements Event {
   /**
    * Constructor - when a message contains tampered data.
    * 
-   * @param filename
+   * @param requestId of the request being responded to
+   * @param handle of the file, as assigned by the controller
    * 
    * @param status
    */
-  public ReadChunkResponse(String filename, byte status) {
+  public ReadChunkResponse(int requestId, long handle, byte status) {
     this.type = Protocol.READ_CHUNK_RESPONSE;
-    this.filename = filename;
+    this.requestId = requestId;
+    this.handle = handle;
     this.status = status;
   }
 
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public ReadChunkResponse(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public ReadChunkResponse(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.requestId = buffer.getInt();
 
-    this.status = din.readByte();
+    this.status = buffer.get();
 
-    int len = din.readInt();
-    byte[] nameBytes = new byte[ len ];
-    din.readFully( nameBytes );
-    this.filename = new String( nameBytes );
+    this.handle = buffer.getLong();
 
     if ( status == Constants.SUCCESS )
     {
-      int messageLength = din.readInt();
+      int messageLength = buffer.getInt();
       this.message = new byte[ messageLength ];
-      din.readFully( this.message );
+      buffer.get( this.message );
     }
-    inputStream.close();
-    din.close();
   }
 
   /**
@@ -96,10 +89,18 @@ public class ReadChunkResponse implements Event {
 
   /**
    * 
-   * @return the chunk name from the client
+   * @return the identifier of the request being responded to
+   */
+  public int getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * 
+   * @return the handle of the file, as assigned by the controller
    */
-  public String getFilename() {
-    return filename;
+  public long getHandle() {
+    return handle;
   }
 
   /**
@@ -122,32 +123,65 @@ public class ReadChunkResponse implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
+  public int getLength() {
+    int length = headerLength() - Integer.BYTES;
+    if ( status == Constants.SUCCESS )
+    {
+      length += MarshallUtilities.sizeOf( message );
+    }
+    return length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( type );
+    buffer.putInt( requestId );
 
-    dout.writeByte( status );
+    buffer.put( status );
 
-    byte[] nameBytes = filename.getBytes();
-    dout.writeInt( nameBytes.length );
-    dout.write( nameBytes );
+    buffer.putLong( handle );
 
     if ( status == Constants.SUCCESS )
     {
-      dout.writeInt( message.length );
-      dout.write( message );
+      MarshallUtilities.putBytes( buffer, message );
     }
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+  }
+
+  /**
+   * Marshall every field of a successful response up to, and
+   * including, the length of the message. The message itself is
+   * expected to directly follow, e.g., when transferred from disk.
+   * 
+   * @param messageLength the number of bytes in the message
+   * @return the marshalled bytes preceding the message
+   */
+  public byte[] getBytesBeforeMessage(int messageLength) {
+    ByteBuffer buffer = ByteBuffer.allocate( headerLength() );
+
+    buffer.putInt( type );
+
+    buffer.putInt( requestId );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.put( status );
 
+    buffer.putLong( handle );
+
+    buffer.putInt( messageLength );
+
+    return buffer.array();
+  }
+
+  /**
+   * 
+   * @return the marshalled length of the fields up to, and including,
+   *         the length of the message
+   */
+  private int headerLength() {
+    return 2 * Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
   }
 
   /**
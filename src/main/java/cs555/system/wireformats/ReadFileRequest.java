@@ -1,12 +1,7 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * 
@@ -33,27 +28,15 @@ public class ReadFileRequest implements Event {
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public ReadFileRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public ReadFileRequest(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
-
-    int len = din.readInt();
-    byte[] filenameBytes = new byte[ len ];
-    din.readFully( filenameBytes );
-    this.filename = new String( filenameBytes );
-
-    inputStream.close();
-    din.close();
+    this.filename = MarshallUtilities.getString( buffer );
   }
 
   /**
@@ -76,24 +59,18 @@ public class ReadFileRequest implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    byte[] filenameBytes = filename.getBytes();
-    dout.writeInt( filenameBytes.length );
-    dout.write( filenameBytes );
+  public int getLength() {
+    return Integer.BYTES + MarshallUtilities.sizeOf( filename );
+  }
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    MarshallUtilities.putString( buffer, filename );
   }
 
   @Override
@@ -1,12 +1,7 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Message from the controller to the client with a list of chunk
@@ -21,70 +16,57 @@ public class ReadFileResponse implements Event {
 
   private String filename;
 
+  private long handle;
+
   private int filelength;
 
-  private String[][] chunks;
+  private int[][] chunks;
 
   /**
    * Default constructor -
    * 
    * @param filename
+   * @param handle of the file, as assigned by the controller
    * @param filelength
-   * @param chunks sequence and chunk server information for a file
+   * @param chunks identifiers of the chunk servers holding each
+   *        replication of each chunk in the file
    */
-  public ReadFileResponse(String filename, int filelength, String[][] chunks) {
+  public ReadFileResponse(String filename, long handle, int filelength,
+      int[][] chunks) {
     this.type = Protocol.READ_FILE_RESPONSE;
     this.filename = filename;
+    this.handle = handle;
     this.filelength = filelength;
     this.chunks = chunks;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public ReadFileResponse(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public ReadFileResponse(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.filename = MarshallUtilities.getString( buffer );
 
-    int len = din.readInt();
-    byte[] filenameBytes = new byte[ len ];
-    din.readFully( filenameBytes );
-    this.filename = new String( filenameBytes );
+    this.handle = buffer.getLong();
 
-    this.filelength = din.readInt();
+    this.filelength = buffer.getInt();
 
-    int numChunks = din.readInt();
-    int numReplications = din.readInt();
+    int numChunks = buffer.getInt();
+    int numReplications = buffer.getInt();
 
-    this.chunks = new String[ numChunks ][ numReplications ];
+    this.chunks = new int[ numChunks ][ numReplications ];
 
     for ( int sequence = 0; sequence < numChunks; ++sequence )
     {
       for ( int replication = 0; replication < numReplications; ++replication )
       {
-        len = din.readInt();
-        if ( len == 0 )
-        {
-          chunks[ sequence ][ replication ] = null;
-        } else
-        {
-          byte[] replicationIdentifier = new byte[ len ];
-          din.readFully( replicationIdentifier );
-          chunks[ sequence ][ replication ] =
-              new String( replicationIdentifier );
-        }
+        chunks[ sequence ][ replication ] = buffer.getShort();
       }
     }
-    inputStream.close();
-    din.close();
   }
 
   /**
@@ -103,6 +85,14 @@ public class ReadFileResponse implements Event {
     return filename;
   }
 
+  /**
+   * 
+   * @return the handle of the file, as assigned by the controller
+   */
+  public long getHandle() {
+    return handle;
+  }
+
   /**
    * 
    * @return the file length associated with a file
@@ -113,9 +103,11 @@ public class ReadFileResponse implements Event {
 
   /**
    * 
-   * @return the chunks associated with a read response
+   * @return the server identifiers for each chunk, or
+   *         {@link cs555.system.util.Constants#NO_SERVER} for
+   *         replications without a server
    */
-  public String[][] getChunks() {
+  public int[][] getChunks() {
     return chunks;
   }
 
@@ -123,46 +115,34 @@ public class ReadFileResponse implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
+  public int getLength() {
+    int length = Integer.BYTES + MarshallUtilities.sizeOf( filename )
+        + Long.BYTES + 3 * Integer.BYTES;
+    return length + chunks.length * chunks[ 0 ].length * Short.BYTES;
+  }
 
-    dout.writeInt( type );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    byte[] bytes = filename.getBytes();
-    dout.writeInt( bytes.length );
-    dout.write( bytes );
+    MarshallUtilities.putString( buffer, filename );
 
-    dout.writeInt( filelength );
+    buffer.putLong( handle );
 
-    dout.writeInt( chunks.length );
-    dout.writeInt( chunks[ 0 ].length );
+    buffer.putInt( filelength );
 
-    for ( String[] chunkReplication : chunks )
+    buffer.putInt( chunks.length );
+    buffer.putInt( chunks[ 0 ].length );
+    for ( int[] chunkReplication : chunks )
     {
-      for ( String replication : chunkReplication )
+      for ( int replication : chunkReplication )
       {
-        if ( replication == null )
-        {
-          dout.writeInt( 0 );
-        } else
-        {
-          bytes = replication.getBytes();
-          dout.writeInt( bytes.length );
-          dout.write( bytes );
-        }
+        buffer.putShort( ( short ) replication );
       }
     }
-
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
-
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
-
   }
 
   @Override
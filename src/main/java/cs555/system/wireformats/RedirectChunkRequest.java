@@ -1,12 +1,7 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Message request to chunk server to take an existing chunk and
@@ -23,7 +18,7 @@ public class RedirectChunkRequest implements Event {
 
   private int type;
 
-  private String filename;
+  private long handle;
 
   private int sequence;
 
@@ -37,52 +32,37 @@ public class RedirectChunkRequest implements Event {
   /**
    * Default constructor -
    * 
-   * @param filename
+   * @param handle of the file, as assigned by the controller
    * @param sequence chunk number that is being updated
    * @param replicationPosition position of the replication for the
    *        failed chunk at the destination as seen by the controller.
    * @param destinationDetails
    */
-  public RedirectChunkRequest(String filename, int sequence,
+  public RedirectChunkRequest(long handle, int sequence,
       int replicationPosition, String destinationDetails) {
     this.type = Protocol.REDIRECT_CHUNK_REQUEST;
-    this.filename = filename;
+    this.handle = handle;
     this.sequence = sequence;
     this.replicationPosition = replicationPosition;
     this.destinationDetails = destinationDetails;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public RedirectChunkRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public RedirectChunkRequest(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.handle = buffer.getLong();
 
-    int len = din.readInt();
-    byte[] bytes = new byte[ len ];
-    din.readFully( bytes );
-    this.filename = new String( bytes );
+    this.sequence = buffer.getInt();
 
-    this.sequence = din.readInt();
+    this.replicationPosition = buffer.getInt();
 
-    this.replicationPosition = din.readInt();
-
-    len = din.readInt();
-    bytes = new byte[ len ];
-    din.readFully( bytes );
-    this.destinationDetails = new String( bytes );
-
-    inputStream.close();
-    din.close();
+    this.destinationDetails = MarshallUtilities.getString( buffer );
   }
 
   /**
@@ -93,8 +73,8 @@ public class RedirectChunkRequest implements Event {
     return type;
   }
 
-  public String getFilename() {
-    return filename;
+  public long getHandle() {
+    return handle;
   }
 
   public int getSequence() {
@@ -113,32 +93,25 @@ public class RedirectChunkRequest implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    byte[] bytes = filename.getBytes();
-    dout.writeInt( bytes.length );
-    dout.write( bytes );
+  public int getLength() {
+    return Integer.BYTES + Long.BYTES + 2 * Integer.BYTES
+        + MarshallUtilities.sizeOf( destinationDetails );
+  }
 
-    dout.writeInt( sequence );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( replicationPosition );
+    buffer.putLong( handle );
 
-    bytes = destinationDetails.getBytes();
-    dout.writeInt( bytes.length );
-    dout.write( bytes );
+    buffer.putInt( sequence );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    buffer.putInt( replicationPosition );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    MarshallUtilities.putString( buffer, destinationDetails );
   }
 
   @Override
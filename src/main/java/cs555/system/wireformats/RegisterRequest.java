@@ -1,12 +1,7 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Register message type to initialize itself with another node.
@@ -44,32 +39,19 @@ public class RegisterRequest implements Event {
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public RegisterRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public RegisterRequest(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.identifier = buffer.getInt();
 
-    this.identifier = din.readInt();
+    this.ipAddress = MarshallUtilities.getString( buffer );
 
-    int len = din.readInt();
-    byte[] ipBytes = new byte[ len ];
-    din.readFully( ipBytes );
-
-    this.ipAddress = new String( ipBytes );
-
-    this.port = din.readInt();
-
-    inputStream.close();
-    din.close();
+    this.port = buffer.getInt();
   }
 
   /**
@@ -84,28 +66,22 @@ public class RegisterRequest implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    dout.writeInt( identifier );
+  public int getLength() {
+    return 2 * Integer.BYTES + MarshallUtilities.sizeOf( ipAddress ) + Integer.BYTES;
+  }
 
-    byte[] ipBytes = ipAddress.getBytes();
-    dout.writeInt( ipBytes.length );
-    dout.write( ipBytes );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( port );
+    buffer.putInt( identifier );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    MarshallUtilities.putString( buffer, ipAddress );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.putInt( port );
   }
 
   /**
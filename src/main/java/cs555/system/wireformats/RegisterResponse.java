@@ -1,12 +1,7 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Register Response message type to respond to chunk server with the
@@ -36,30 +31,17 @@ public class RegisterResponse implements Event {
   }
   
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public RegisterResponse(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public RegisterResponse(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.status = buffer.get();
 
-    this.status = din.readByte();
-
-    int len = din.readInt();
-    byte[] infoBytes = new byte[ len ];
-    din.readFully( infoBytes, 0, len );
-
-    this.info = new String( infoBytes );
-
-    inputStream.close();
-    din.close();
+    this.info = MarshallUtilities.getString( buffer );
   }
 
   /**
@@ -74,26 +56,20 @@ public class RegisterResponse implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    dout.writeByte( status );
+  public int getLength() {
+    return Integer.BYTES + 1 + MarshallUtilities.sizeOf( info );
+  }
 
-    byte[] infoBytes = info.getBytes();
-    dout.writeInt( infoBytes.length );
-    dout.write( infoBytes );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    buffer.put( status );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    MarshallUtilities.putString( buffer, info );
   }
 
   /**
@@ -0,0 +1,96 @@
+package cs555.system.wireformats;
+
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
+
+/**
+ * Message from the controller to the clients and chunk servers
+ * containing the <b>host:port</b> of every chunk server, indexed by
+ * the identifier the controller assigned it.
+ *
+ * @author stock
+ *
+ */
+public class ServerTable implements Event {
+
+  private int type;
+
+  private String[] table;
+
+  /**
+   * Default constructor -
+   *
+   * @param table the host:port of each server, indexed by identifier
+   */
+  public ServerTable(String[] table) {
+    this.type = Protocol.SERVER_TABLE;
+    this.table = table;
+  }
+
+  /**
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
+   * class elements.
+   *
+   * @param buffer positioned at the start of the marshalled class.
+   */
+  public ServerTable(ByteBuffer buffer) {
+    this.type = buffer.getInt();
+
+    int arrayLength = buffer.getInt();
+    this.table = new String[ arrayLength ];
+
+    for ( int i = 0; i < arrayLength; ++i )
+    {
+      this.table[ i ] = MarshallUtilities.getString( buffer );
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getType() {
+    return type;
+  }
+
+  /**
+   *
+   * @return the host:port of each server, indexed by identifier
+   */
+  public String[] getTable() {
+    return table;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getLength() {
+    int length = 2 * Integer.BYTES;
+    for ( String item : table )
+    {
+      length += MarshallUtilities.sizeOf( item );
+    }
+    return length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
+
+    buffer.putInt( table.length );
+    for ( String item : table )
+    {
+      MarshallUtilities.putString( buffer, item );
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "\n" + type + ", servers: " + table.length;
+  }
+
+}
@@ -0,0 +1,80 @@
+package cs555.system.wireformats;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Message sent back to the sender of write chunk requests, granting
+ * credits to send more chunks once the received chunks have been
+ * written and forwarded.
+ * 
+ * @author stock
+ *
+ */
+public class WriteChunkCredit implements Event {
+
+  private int type;
+
+  private int credits;
+
+  /**
+   * Default constructor -
+   * 
+   * @param credits number of chunks that may be sent
+   */
+  public WriteChunkCredit(int credits) {
+    this.type = Protocol.WRITE_CHUNK_CREDIT;
+    this.credits = credits;
+  }
+
+  /**
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
+   * class elements.
+   * 
+   * @param buffer positioned at the start of the marshalled class.
+   */
+  public WriteChunkCredit(ByteBuffer buffer) {
+    this.type = buffer.getInt();
+    this.credits = buffer.getInt();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getType() {
+    return type;
+  }
+
+  /**
+   * 
+   * @return the number of chunks that may be sent
+   */
+  public int getCredits() {
+    return credits;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getLength() {
+    return 2 * Integer.BYTES;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
+
+    buffer.putInt( credits );
+  }
+
+  @Override
+  public String toString() {
+    return "\n" + Integer.toString( type ) + ", credits: "
+        + Integer.toString( credits );
+  }
+
+}
@@ -1,13 +1,9 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import cs555.system.transport.BufferPool;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Forward data to the chunk servers.
@@ -17,14 +13,33 @@ import java.util.Arrays;
  * nodes to forward the message. The chunk servers will reuse this
  * message to forward messages to other chunk servers.
  * 
+ * A request may also be decoded as a view of the frame it was received
+ * in. Only the fixed fields are decoded, and the shards are left in the
+ * frame. The replication position is updated within the frame, so the
+ * request can be forwarded by sending the frame as it is, see
+ * {@link #getFrame()}. Changing any other field copies the shards out
+ * of the frame, and the request is encoded as normal from then on.
+ * 
+ * With streaming framing, the request is sent as segments, see
+ * {@link #getSegments()}, so the shards are written from the arrays
+ * they are held in. The receiver reads the segments into one pooled
+ * buffer with an {@link EventDecoder}, and decodes the request as a
+ * view of it.
+ * 
  * @author stock
  *
  */
 public class WriteChunkRequest implements Event {
 
+  /**
+   * The marshalled length of the fields preceding the shards.
+   */
+  static final int HEADER_LENGTH =
+      Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
   private int type;
 
-  private String filename;
+  private long handle;
 
   private int sequence;
 
@@ -34,26 +49,33 @@ public class WriteChunkRequest implements Event {
 
   private int version;
 
-  private String[] routes;
+  private int[] routes;
 
   private int replicationPosition;
 
+  private ByteBuffer frame;
+
+  private ByteBuffer pooled;
+
+  private int[] shardOffsets;
+
+  private int positionOffset;
 
   /**
    * Default constructor -
    * 
-   * @param filename
+   * @param handle of the file, as assigned by the controller
    * @param sequence chunk number associated with the write
    * @param message
    * @param lastModifiedDate time the <b>file</b> was last modified
    * @param version assigned to a given chunk, as detected by the chunk
    *        server
-   * @param routes where to send the message to
+   * @param routes identifiers of the servers to send the message to
    */
-  public WriteChunkRequest(String filename, int sequence, byte[][] message,
-      long lastModifiedDate, int version, String[] routes) {
+  public WriteChunkRequest(long handle, int sequence, byte[][] message,
+      long lastModifiedDate, int version, int[] routes) {
     this.type = Protocol.WRITE_CHUNK_REQUEST;
-    this.filename = filename;
+    this.handle = handle;
     this.sequence = sequence;
     this.message = message;
     this.lastModifiedDate = lastModifiedDate;
@@ -63,55 +85,76 @@ public class WriteChunkRequest implements Event {
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public WriteChunkRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public WriteChunkRequest(ByteBuffer buffer) {
+    this( buffer, false );
+  }
 
-    this.type = din.readInt();
+  /**
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
+   * class elements, leaving the shards in the buffer when decoding a
+   * view.
+   * 
+   * A view takes ownership of the buffer, which must have been acquired
+   * from the {@link BufferPool}, and returns it with
+   * {@link #release()}.
+   * 
+   * @param buffer positioned at the start of the marshalled class.
+   * @param view true to keep the shards as views of the buffer, false
+   *        to copy them
+   */
+  public WriteChunkRequest(ByteBuffer buffer, boolean view) {
+    int start = buffer.position();
+
+    this.type = buffer.getInt();
 
-    int len = din.readInt();
-    byte[] nameBytes = new byte[ len ];
-    din.readFully( nameBytes );
-    this.filename = new String( nameBytes );
+    this.handle = buffer.getLong();
 
-    this.sequence = din.readInt();
+    this.sequence = buffer.getInt();
 
-    int numberOfShards = din.readInt();
-    this.message = new byte[ numberOfShards ][];
-    for ( int i = 0; i < numberOfShards; ++i )
+    int numberOfShards = buffer.getInt();
+    if ( view )
+    {
+      this.shardOffsets = new int[ numberOfShards ];
+      for ( int i = 0; i < numberOfShards; ++i )
+      {
+        int messageLength = buffer.getInt();
+        if ( messageLength < 0 )
+        {
+          throw new NegativeArraySizeException();
+        }
+        this.shardOffsets[ i ] = buffer.position() - start;
+        buffer.position( buffer.position() + messageLength );
+      }
+    } else
     {
-      int messageLength = din.readInt();
-      this.message[ i ] = new byte[ messageLength ];
-      din.readFully( this.message[ i ] );
+      this.message = new byte[ numberOfShards ][];
+      for ( int i = 0; i < numberOfShards; ++i )
+      {
+        this.message[ i ] = MarshallUtilities.getBytes( buffer );
+      }
     }
 
-    this.lastModifiedDate = din.readLong();
+    this.lastModifiedDate = buffer.getLong();
 
-    this.version = din.readInt();
+    this.version = buffer.getInt();
 
-    int arrayLength = din.readInt();
-    this.routes = new String[ arrayLength ];
+    this.routes = MarshallUtilities.getIdentifiers( buffer );
 
-    for ( int i = 0; i < arrayLength; ++i )
+    this.positionOffset = buffer.position() - start;
+    this.replicationPosition = buffer.getInt();
+
+    if ( view )
     {
-      len = din.readInt();
-      byte[] bytes = new byte[ len ];
-      din.readFully( bytes );
-      this.routes[ i ] = ( new String( bytes ) );
+      this.pooled = buffer;
+      this.frame = buffer.duplicate();
+      this.frame.position( start ).limit( buffer.position() );
+      this.frame = this.frame.slice();
     }
-
-    this.replicationPosition = din.readInt();
-
-    inputStream.close();
-    din.close();
   }
 
   /**
@@ -124,10 +167,10 @@ public class WriteChunkRequest implements Event {
 
   /**
    * 
-   * @return the file name from the client
+   * @return the handle of the file, as assigned by the controller
    */
-  public String getFilename() {
-    return filename;
+  public long getHandle() {
+    return handle;
   }
 
   /**
@@ -141,10 +184,70 @@ public class WriteChunkRequest implements Event {
 
   /**
    * 
-   * @return the chunk content from the client
+   * @param index of the shard
+   * @return the chunk content from the client, copied out of the frame
+   *         if this request is a view
    */
   public byte[] getMessage(int index) {
-    return message[ index ];
+    if ( frame == null )
+    {
+      return message[ index ];
+    }
+    ByteBuffer shard = getShard( index );
+    byte[] bytes = new byte[ shard.remaining() ];
+    shard.get( bytes );
+    return bytes;
+  }
+
+  /**
+   * 
+   * @param index of the shard
+   * @return a read-only view of the chunk content, which is only valid
+   *         until the request is released
+   */
+  public ByteBuffer getShard(int index) {
+    if ( frame == null )
+    {
+      return ByteBuffer.wrap( message[ index ] ).asReadOnlyBuffer();
+    }
+    int offset = shardOffsets[ index ];
+    ByteBuffer shard = frame.asReadOnlyBuffer();
+    int length = frame.getInt( offset - Integer.BYTES );
+    shard.position( offset ).limit( offset + length );
+    return shard.slice();
+  }
+
+  /**
+   * 
+   * @return the number of shards in the request
+   */
+  public int getNumberOfShards() {
+    return frame == null ? message.length : shardOffsets.length;
+  }
+
+  /**
+   * 
+   * @return a view of the marshalled request, including the current
+   *         replication position, if this request is a view of the
+   *         frame it was received in, otherwise null
+   */
+  public ByteBuffer getFrame() {
+    return frame == null ? null : frame.duplicate();
+  }
+
+  /**
+   * Return the frame to the {@link BufferPool} once the request, and
+   * any views of its shards, are no longer used. The request must not
+   * be used after it has been released, unless it was not a view.
+   * 
+   */
+  public void release() {
+    if ( pooled != null )
+    {
+      BufferPool.getInstance().release( pooled );
+      pooled = null;
+      frame = null;
+    }
   }
 
   /**
@@ -166,9 +269,10 @@ public class WriteChunkRequest implements Event {
 
   /**
    * 
-   * @return the routing path decided from the controller
+   * @return the identifiers of the servers on the routing path
+   *         decided from the controller
    */
-  public String[] getRoutingPath() {
+  public int[] getRoutingPath() {
     return routes;
   }
 
@@ -187,6 +291,7 @@ public class WriteChunkRequest implements Event {
    */
   public void setMessage(byte[][] message) {
     this.message = message;
+    this.frame = null;
   }
 
   /**
@@ -194,7 +299,8 @@ public class WriteChunkRequest implements Event {
    * 
    * @param routes
    */
-  public void setRoutes(String[] routes) {
+  public void setRoutes(int[] routes) {
+    copyShards();
     this.routes = routes;
   }
 
@@ -204,6 +310,10 @@ public class WriteChunkRequest implements Event {
    */
   public void setReplicationPosition(int replicationPosition) {
     this.replicationPosition = replicationPosition;
+    if ( frame != null )
+    {
+      frame.putInt( positionOffset, replicationPosition );
+    }
   }
 
   /**
@@ -211,6 +321,7 @@ public class WriteChunkRequest implements Event {
    * @param sequence
    */
   public void setSequence(int sequence) {
+    copyShards();
     this.sequence = sequence;
   }
 
@@ -218,55 +329,165 @@ public class WriteChunkRequest implements Event {
    * Increment the position for the next connection
    */
   public void incrementReplicationPosition() {
-    ++replicationPosition;
+    setReplicationPosition( replicationPosition + 1 );
+  }
+
+  /**
+   * Copy the shards out of the frame, so the request no longer depends
+   * on it and is encoded from its fields.
+   * 
+   */
+  private void copyShards() {
+    if ( frame == null )
+    {
+      return;
+    }
+    byte[][] shards = new byte[ shardOffsets.length ][];
+    for ( int i = 0; i < shards.length; ++i )
+    {
+      shards[ i ] = getMessage( i );
+    }
+    setMessage( shards );
   }
 
   /**
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
-
-    byte[] nameBytes = filename.getBytes();
-    dout.writeInt( nameBytes.length );
-    dout.write( nameBytes );
-
-    dout.writeInt( sequence );
+  public int getLength() {
+    if ( frame != null )
+    {
+      return frame.limit();
+    }
+    int length = headerLength();
+    for ( byte[] bytes : message )
+    {
+      length += MarshallUtilities.sizeOf( bytes );
+    }
+    return length + trailerLength();
+  }
 
-    dout.writeInt( message.length );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    if ( frame != null )
+    {
+      buffer.put( frame.duplicate() );
+      return;
+    }
+    marshallHeader( buffer, message.length );
     for ( byte[] bytes : message )
     {
-      dout.writeInt( bytes.length );
-      dout.write( bytes );
+      MarshallUtilities.putBytes( buffer, bytes );
+    }
+    marshallTrailer( buffer );
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * The fields and shard lengths are marshalled into one small buffer,
+   * which is sliced around the shards.
+   */
+  @Override
+  public ByteBuffer[] getSegments() {
+    if ( frame != null )
+    {
+      return new ByteBuffer[] { frame.duplicate() };
+    }
+    ByteBuffer fields = ByteBuffer.allocate( headerLength()
+        + message.length * Integer.BYTES + trailerLength() );
+    ByteBuffer[] segments = new ByteBuffer[ 2 * message.length + 1 ];
+    marshallHeader( fields, message.length );
+    int start = 0;
+    for ( int i = 0; i < message.length; ++i )
+    {
+      fields.putInt( message[ i ].length );
+      segments[ 2 * i ] = fields.slice( start, fields.position() - start );
+      segments[ 2 * i + 1 ] = ByteBuffer.wrap( message[ i ] );
+      start = fields.position();
     }
+    marshallTrailer( fields );
+    segments[ 2 * message.length ] =
+        fields.slice( start, fields.position() - start );
+    return segments;
+  }
+
+  /**
+   * Marshall the fields that come before a single message of
+   * <code>messageLength</code> bytes, including the length itself.
+   * 
+   * This allows the message to be sent directly from disk, between the
+   * bytes from this method and {@link #getBytesAfterMessage()}.
+   * 
+   * @param messageLength the number of bytes in the message
+   * @return the marshalled bytes preceding the message
+   */
+  public byte[] getBytesBeforeMessage(int messageLength) {
+    ByteBuffer buffer =
+        ByteBuffer.allocate( headerLength() + Integer.BYTES );
+    marshallHeader( buffer, 1 );
+    buffer.putInt( messageLength );
+    return buffer.array();
+  }
+
+  /**
+   * Marshall the fields that follow the message.
+   * 
+   * @return the marshalled bytes succeeding the message
+   */
+  public byte[] getBytesAfterMessage() {
+    ByteBuffer buffer = ByteBuffer.allocate( trailerLength() );
+    marshallTrailer( buffer );
+    return buffer.array();
+  }
+
+  /**
+   * 
+   * @return the marshalled length of the fields preceding the shards
+   */
+  private int headerLength() {
+    return HEADER_LENGTH;
+  }
+
+  /**
+   * 
+   * @return the marshalled length of the fields following the shards
+   */
+  private int trailerLength() {
+    return Long.BYTES + Integer.BYTES + MarshallUtilities.sizeOf( routes )
+        + Integer.BYTES;
+  }
+
+  /**
+   * 
+   * @param buffer to write to
+   * @param numberOfShards that will follow
+   */
+  private void marshallHeader(ByteBuffer buffer, int numberOfShards) {
+    buffer.putInt( type );
 
-    dout.writeLong( lastModifiedDate );
+    buffer.putLong( handle );
 
-    dout.writeInt( version );
+    buffer.putInt( sequence );
 
-    dout.writeInt( routes.length );
+    buffer.putInt( numberOfShards );
+  }
 
-    for ( String item : routes )
-    {
-      byte[] bytes = item.getBytes();
-      dout.writeInt( bytes.length );
-      dout.write( bytes );
-    }
+  /**
+   * 
+   * @param buffer to write to
+   */
+  private void marshallTrailer(ByteBuffer buffer) {
+    buffer.putLong( lastModifiedDate );
 
-    dout.writeInt( replicationPosition );
+    buffer.putInt( version );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    MarshallUtilities.putIdentifiers( buffer, routes );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.putInt( replicationPosition );
   }
 
   /**
@@ -274,8 +495,8 @@ public class WriteChunkRequest implements Event {
    */
   @Override
   public String toString() {
-    return "\n" + type + ", chunk name: " + filename + ", sequence: " + sequence
+    return "\n" + type + ", file handle: " + handle + ", sequence: " + sequence
         + ", routes: " + Arrays.toString( routes ) + ", msg len: "
-        + message.length + ", last modified: " + lastModifiedDate;
+        + getNumberOfShards() + ", last modified: " + lastModifiedDate;
   }
 }
@@ -1,17 +1,15 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Request from the client to the controller requesting a list of
  * chunk servers to write chunks of a file too.
  * 
+ * Placements are requested for a range of chunks at once, starting at
+ * the sequence.
+ * 
  * @author stock
  *
  */
@@ -23,6 +21,8 @@ public class WriteFileRequest implements Event {
 
   private int sequence;
 
+  private int numberOfSequences;
+
   private int numberOfChunks;
 
   private int filelength;
@@ -31,47 +31,40 @@ public class WriteFileRequest implements Event {
    * Default Constructor -
    * 
    * @param filename
-   * @param sequence chunk number associated with the write
+   * @param sequence first chunk number associated with the write
+   * @param numberOfSequences number of chunks, from the sequence, to
+   *        place
    * @param filelength length of the original file
    * @param numberOfChunks of total chunks that make up the file
    */
-  public WriteFileRequest(String filename, int sequence, int filelength,
-      int numberOfChunks) {
+  public WriteFileRequest(String filename, int sequence,
+      int numberOfSequences, int filelength, int numberOfChunks) {
     this.type = Protocol.WRITE_FILE_REQUEST;
     this.filename = filename;
     this.sequence = sequence;
+    this.numberOfSequences = numberOfSequences;
     this.filelength = filelength;
     this.numberOfChunks = numberOfChunks;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public WriteFileRequest(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
-
-    this.type = din.readInt();
+  public WriteFileRequest(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    int len = din.readInt();
-    byte[] bytes = new byte[ len ];
-    din.readFully( bytes );
-    this.filename = new String( bytes );
+    this.filename = MarshallUtilities.getString( buffer );
 
-    this.sequence = din.readInt();
+    this.sequence = buffer.getInt();
 
-    this.numberOfChunks = din.readInt();
+    this.numberOfSequences = buffer.getInt();
 
-    this.filelength = din.readInt();
+    this.numberOfChunks = buffer.getInt();
 
-    inputStream.close();
-    din.close();
+    this.filelength = buffer.getInt();
   }
 
   /**
@@ -92,12 +85,20 @@ public class WriteFileRequest implements Event {
 
   /**
    * 
-   * @return the sequence number associated with a chunk.
+   * @return the sequence number associated with the first chunk.
    */
   public int getSequence() {
     return sequence;
   }
 
+  /**
+   * 
+   * @return the number of chunks, from the sequence, to place
+   */
+  public int getNumberOfSequences() {
+    return numberOfSequences;
+  }
+
   /**
    * 
    * @return the number of chunks associated with a file
@@ -123,39 +124,46 @@ public class WriteFileRequest implements Event {
     this.sequence = sequence;
   }
 
+  /**
+   * Set the number of chunks, from the sequence, to place
+   * 
+   * @param numberOfSequences
+   */
+  public void setNumberOfSequences(int numberOfSequences) {
+    this.numberOfSequences = numberOfSequences;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
-
-    dout.writeInt( type );
+  public int getLength() {
+    return Integer.BYTES + MarshallUtilities.sizeOf( filename )
+        + 4 * Integer.BYTES;
+  }
 
-    byte[] nameBytes = filename.getBytes();
-    dout.writeInt( nameBytes.length );
-    dout.write( nameBytes );
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( sequence );
+    MarshallUtilities.putString( buffer, filename );
 
-    dout.writeInt( numberOfChunks );
+    buffer.putInt( sequence );
 
-    dout.writeInt( filelength );
+    buffer.putInt( numberOfSequences );
 
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
+    buffer.putInt( numberOfChunks );
 
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
+    buffer.putInt( filelength );
   }
 
   @Override
   public String toString() {
     return "\n" + type + ", file name: " + filename + ", sequence: " + sequence
+        + ", number of sequences: " + numberOfSequences
         + ", number of chunks: " + numberOfChunks + ", file length: "
         + filelength;
   }
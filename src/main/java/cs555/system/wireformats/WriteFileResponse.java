@@ -1,17 +1,16 @@
 package cs555.system.wireformats;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import cs555.system.util.MarshallUtilities;
 
 /**
  * Response message from the controller to the client containing chunk
- * server details upon a write query being received.
+ * server details upon a write query being received, along with the
+ * handle the chunks of the file are written with.
+ * 
+ * The routes are given for the range of chunks that was requested,
+ * starting at the sequence.
  * 
  * @author stock
  *
@@ -20,63 +19,60 @@ public class WriteFileResponse implements Event {
 
   private int type;
 
+  private long handle;
+
   private int sequence;
 
-  private String[] routes;
+  private int[][] routes;
 
   private boolean ableToWrite;
 
   /**
    * Default constructor -
    * 
-   * @param routes
-   * @param sequence
+   * @param handle of the file, as assigned by the controller
+   * @param routes identifiers of the servers to write each chunk to
+   * @param sequence of the first chunk in the routes
    */
-  public WriteFileResponse(String[] routes, int sequence) {
+  public WriteFileResponse(long handle, int[][] routes, int sequence) {
     this.type = Protocol.WRITE_FILE_RESPONSE;
+    this.handle = handle;
     this.sequence = sequence;
     this.routes = routes;
     this.ableToWrite = routes == null ? false : true;
   }
 
   /**
-   * Constructor - Unmarshall the <code>byte[]</code> to the respective
+   * Constructor - Unmarshall the <code>ByteBuffer</code> to the respective
    * class elements.
    * 
-   * @param marshalledBytes is the byte array of the class.
-   * @throws IOException
+   * @param buffer positioned at the start of the marshalled class.
    */
-  public WriteFileResponse(byte[] marshalledBytes) throws IOException {
-    ByteArrayInputStream inputStream =
-        new ByteArrayInputStream( marshalledBytes );
-    DataInputStream din =
-        new DataInputStream( new BufferedInputStream( inputStream ) );
+  public WriteFileResponse(ByteBuffer buffer) {
+    this.type = buffer.getInt();
 
-    this.type = din.readInt();
+    this.handle = buffer.getLong();
 
-    this.sequence = din.readInt();
+    this.sequence = buffer.getInt();
 
-    this.ableToWrite = din.readBoolean();
+    this.ableToWrite = buffer.get() != 0;
 
     if ( this.ableToWrite )
     {
-      int arrayLength = din.readInt();
-
-      this.routes = new String[ arrayLength ];
-
-      for ( int i = 0; i < arrayLength; ++i )
+      this.routes = new int[ buffer.getInt() ][];
+      for ( int i = 0; i < routes.length; ++i )
       {
-        int len = din.readInt();
-        byte[] bytes = new byte[ len ];
-        din.readFully( bytes );
-        this.routes[ i ] = ( new String( bytes ) );
+        this.routes[ i ] = MarshallUtilities.getIdentifiers( buffer );
       }
     }
-    inputStream.close();
-    din.close();
   }
 
-  public String[] getRoutingPath() {
+  /**
+   * 
+   * @return the identifiers of the servers to write each chunk to,
+   *         indexed from the sequence
+   */
+  public int[][] getRoutingPaths() {
     return routes;
   }
 
@@ -98,7 +94,15 @@ public class WriteFileResponse implements Event {
 
   /**
    * 
-   * @return the sequence associated with a file
+   * @return the handle of the file, as assigned by the controller
+   */
+  public long getHandle() {
+    return handle;
+  }
+
+  /**
+   * 
+   * @return the sequence of the first chunk in the routes
    */
   public int getSequence() {
     return sequence;
@@ -108,41 +112,46 @@ public class WriteFileResponse implements Event {
    * {@inheritDoc}
    */
   @Override
-  public byte[] getBytes() throws IOException {
-    byte[] marshalledBytes = null;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DataOutputStream dout =
-        new DataOutputStream( new BufferedOutputStream( outputStream ) );
+  public int getLength() {
+    int length = Integer.BYTES + Long.BYTES + Integer.BYTES + 1;
+    if ( ableToWrite )
+    {
+      length += Integer.BYTES;
+      for ( int[] route : routes )
+      {
+        length += MarshallUtilities.sizeOf( route );
+      }
+    }
+    return length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(ByteBuffer buffer) {
+    buffer.putInt( type );
 
-    dout.writeInt( type );
+    buffer.putLong( handle );
 
-    dout.writeInt( sequence );
+    buffer.putInt( sequence );
 
-    dout.writeBoolean( ableToWrite );
+    buffer.put( ( byte ) ( ableToWrite ? 1 : 0 ) );
 
     if ( ableToWrite )
     {
-      dout.writeInt( routes.length );
-
-      for ( String item : routes )
+      buffer.putInt( routes.length );
+      for ( int[] route : routes )
       {
-        byte[] bytes = item.getBytes();
-        dout.writeInt( bytes.length );
-        dout.write( bytes );
+        MarshallUtilities.putIdentifiers( buffer, route );
       }
     }
-    dout.flush();
-    marshalledBytes = outputStream.toByteArray();
-
-    outputStream.close();
-    dout.close();
-    return marshalledBytes;
   }
 
   @Override
   public String toString() {
-    return "\n" + type + ", routes: "
-        + ( ableToWrite ? Arrays.toString( routes ) : "no routes." );
+    return "\n" + type + ", file handle: " + handle + ", routes: "
+        + ( ableToWrite ? Arrays.deepToString( routes ) : "no routes." );
   }
 
 }
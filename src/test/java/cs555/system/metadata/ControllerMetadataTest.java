@@ -1,6 +1,10 @@
 package cs555.system.metadata;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
+import java.util.Arrays;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,7 +32,10 @@ public class ControllerMetadataTest {
     metadata.getConnections().get( "c" ).setFreeDiskSpace( 2 );
     metadata.updateServerInformation( "c", 102 );
 
-    String[] servers = metadata.getChunkServers( "fake-file-name", 0 );
+    long handle = metadata.addFile( "fake-file-name", 0, 1, 0 );
+    String[] servers = Arrays.stream( metadata.getChunkServers( handle, 0 ) )
+        .mapToObj( metadata.getRegistry()::getConnectionDetails )
+        .toArray( String[]::new );
     
     if ( Constants.NUMBER_OF_REPLICATIONS == 3 )
     {
@@ -43,4 +50,46 @@ public class ControllerMetadataTest {
     }
   }
 
+  @Test
+  public void testBatchedPlacementMatchesPerChunk() {
+    ControllerMetadata batched = withServers( 5 );
+    ControllerMetadata single = withServers( 5 );
+    long handle = batched.addFile( "fake-file-name", 0, 6, 0 );
+    single.addFile( "fake-file-name", 0, 6, 0 );
+
+    int[][] servers = batched.getChunkServers( handle, 0, 6 );
+    assertEquals( 6, servers.length );
+    for ( int sequence = 0; sequence < servers.length; ++sequence )
+    {
+      assertArrayEquals( single.getChunkServers( handle, sequence ),
+          servers[ sequence ] );
+    }
+  }
+
+  @Test
+  public void testBatchedPlacementEndsWithFile() {
+    metadata = withServers( 3 );
+    long handle = metadata.addFile( "fake-file-name", 0, 6, 0 );
+    assertEquals( 2, metadata.getChunkServers( handle, 4, 10 ).length );
+  }
+
+  @Test
+  public void testBatchedPlacementWithoutServers() {
+    long handle = metadata.addFile( "fake-file-name", 0, 6, 0 );
+    assertNull( metadata.getChunkServers( handle, 0, 6 ) );
+  }
+
+  private static ControllerMetadata withServers(int numberOfServers) {
+    ControllerMetadata metadata = new ControllerMetadata();
+    for ( int i = 0; i < numberOfServers; ++i )
+    {
+      String connectionDetails = "server-" + i + ":5001";
+      metadata.addConnection( connectionDetails, null );
+      metadata.getConnections().get( connectionDetails )
+          .setFreeDiskSpace( i + 1 );
+      metadata.updateServerInformation( connectionDetails, 100 + i );
+    }
+    return metadata;
+  }
+
 }
@@ -0,0 +1,59 @@
+package cs555.system.metadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import cs555.system.util.Constants;
+
+public class ServerRegistryTest {
+
+  private final ServerRegistry registry = new ServerRegistry();
+
+  @Test
+  public void testRegister() {
+    assertEquals( 0, registry.register( "alpha:5001" ) );
+    assertEquals( 1, registry.register( "beta:5002" ) );
+    assertEquals( 0, registry.register( "alpha:5001" ) );
+    assertEquals( 2, registry.size() );
+
+    assertEquals( 1, registry.getIdentifier( "beta:5002" ) );
+    assertArrayEquals( new String[] { "beta", "5002" },
+        registry.getAddress( 1 ) );
+    assertEquals( "alpha:5001", registry.getConnectionDetails( 0 ) );
+    assertArrayEquals( new String[] { "alpha:5001", "beta:5002" },
+        registry.getTable() );
+  }
+
+  @Test
+  public void testUnknownServer() {
+    registry.register( "alpha:5001" );
+    assertEquals( Constants.NO_SERVER, registry.getIdentifier( "beta:5002" ) );
+    assertNull( registry.getAddress( 1 ) );
+    assertNull( registry.getAddress( Constants.NO_SERVER ) );
+    assertNull( registry.getConnectionDetails( 1 ) );
+  }
+
+  @Test
+  public void testUpdate() {
+    registry.register( "stale:5000" );
+    registry.update( new String[] { "alpha:5001", "beta:5002" } );
+    assertEquals( 2, registry.size() );
+    assertArrayEquals( new String[] { "beta", "5002" },
+        registry.getAddress( 1 ) );
+    assertEquals( 1, registry.getIdentifier( "beta:5002" ) );
+    assertEquals( Constants.NO_SERVER, registry.getIdentifier( "stale:5000" ) );
+    assertArrayEquals( new String[] { "alpha:5001", "beta:5002" },
+        registry.getTable() );
+  }
+
+  @Test
+  public void testIdentifiersExhausted() {
+    for ( int i = 0; i <= Constants.MAX_SERVER_ID; ++i )
+    {
+      assertEquals( i, registry.register( "host" + i + ":5000" ) );
+    }
+    assertEquals( Constants.NO_SERVER, registry.register( "late:5000" ) );
+    assertEquals( 0, registry.register( "host0:5000" ) );
+  }
+}
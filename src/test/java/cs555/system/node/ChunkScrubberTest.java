@@ -0,0 +1,160 @@
+package cs555.system.node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import cs555.system.metadata.ServerMetadata;
+import cs555.system.store.ChunkStore;
+import cs555.system.store.SegmentChunkStore;
+import cs555.system.store.StoredChunk;
+import cs555.system.util.Constants;
+import cs555.system.util.FileUtilities;
+import cs555.system.wireformats.Heartbeat;
+
+public class ChunkScrubberTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ServerMetadata metadata;
+
+  private SegmentChunkStore store;
+
+  private List<String> corrupt;
+
+  @Before
+  public void initialize() throws IOException {
+    metadata = new ServerMetadata( "localhost:0" );
+    metadata.enableScrubProgress();
+    store = new SegmentChunkStore( folder.getRoot().toPath(), 1 << 20, 0.5,
+        false );
+    corrupt = Collections.synchronizedList( new ArrayList<>() );
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    store.close();
+  }
+
+  @Test
+  public void testCorruptChunk() throws Exception {
+    write( 1, 0, chunk( false ) );
+    write( 1, 1, chunk( true ) );
+    write( 2, 0, chunk( false ) );
+
+    Heartbeat heartbeat = scrubPass( store );
+    assertEquals( Arrays.asList( "1_chunk1" ), corrupt );
+    assertEquals( 3, heartbeat.getScrubbedChunks() );
+    assertEquals( 1, heartbeat.getCorruptChunks() );
+  }
+
+  @Test
+  public void testUnreadableChunk() throws Exception {
+    write( 1, 0, chunk( false ) );
+    metadata.update( 1, 1, 0, 0, 0 );
+
+    Heartbeat heartbeat = scrubPass( store );
+    assertTrue( corrupt.isEmpty() );
+    assertEquals( 1, heartbeat.getScrubbedChunks() );
+    assertEquals( 0, heartbeat.getCorruptChunks() );
+  }
+
+  @Test
+  public void testChunkWrittenWhileScrubbed() throws Exception {
+    write( 1, 0, chunk( true ) );
+    ChunkStore writing = new ChunkStore() {
+
+      @Override
+      public void write(long handle, int sequence, byte[] chunk)
+          throws IOException {
+        store.write( handle, sequence, chunk );
+      }
+
+      @Override
+      public StoredChunk open(long handle, int sequence)
+          throws IOException {
+        StoredChunk chunk = store.open( handle, sequence );
+        metadata.getChunkInformation( handle, sequence ).incrementVersion();
+        return chunk;
+      }
+
+      @Override
+      public void close() {}
+    };
+
+    Heartbeat heartbeat = scrubPass( writing );
+    assertTrue( corrupt.isEmpty() );
+    assertEquals( 0, heartbeat.getCorruptChunks() );
+  }
+
+  @Test
+  public void testProgressOnlyWhenEnabled() throws IOException {
+    Heartbeat enabled = heartbeat();
+    metadata = new ServerMetadata( "localhost:0" );
+    Heartbeat disabled = heartbeat();
+    assertTrue( enabled.isScrubbing() );
+    assertFalse( disabled.isScrubbing() );
+    assertEquals( 4 * Long.BYTES,
+        enabled.getLength() - disabled.getLength() );
+  }
+
+  /**
+   * Run the scrubber until it has completed a pass over every chunk.
+   */
+  private Heartbeat scrubPass(ChunkStore store) throws Exception {
+    ChunkScrubber scrubber = new ChunkScrubber( metadata, store,
+        ( handle, sequence ) -> corrupt.add( handle + "_chunk" + sequence ),
+        1L << 40, 60_000 );
+    Thread thread = new Thread( scrubber );
+    thread.start();
+    try
+    {
+      long deadline = System.currentTimeMillis() + 5_000;
+      Heartbeat heartbeat = heartbeat();
+      while ( heartbeat.getScrubPasses() == 0 )
+      {
+        assertTrue( System.currentTimeMillis() < deadline );
+        Thread.sleep( 10 );
+        heartbeat = heartbeat();
+      }
+      return heartbeat;
+    } finally
+    {
+      thread.interrupt();
+      thread.join();
+    }
+  }
+
+  private Heartbeat heartbeat() throws IOException {
+    return new Heartbeat(
+        ByteBuffer.wrap( metadata.getMajorHeartbeatBytes() ) );
+  }
+
+  private void write(long handle, int sequence, byte[] chunk)
+      throws IOException {
+    store.write( handle, sequence, chunk );
+    metadata.update( handle, sequence, 0, 0, 0 );
+  }
+
+  private static byte[] chunk(boolean corrupt) {
+    byte[] message = new byte[ Constants.CHUNK_SIZE ];
+    Arrays.fill( message, ( byte ) 7 );
+    byte[] chunk = FileUtilities.addSHA1Integrity( message );
+    if ( corrupt )
+    {
+      chunk[ chunk.length - 1 ] ^= 1;
+    }
+    return chunk;
+  }
+}
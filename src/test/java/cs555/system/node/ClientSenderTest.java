@@ -0,0 +1,75 @@
+package cs555.system.node;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import cs555.system.wireformats.WriteFileResponse;
+
+public class ClientSenderTest {
+
+  private ClientSender sender;
+
+  @Before
+  public void initialize() {
+    sender = new ClientSender( null, null );
+  }
+
+  @Test
+  public void testBatchedRoutes() throws Exception {
+    sender.expectRoutes( 5 );
+    CompletableFuture<Boolean> routed = awaitRoutes();
+
+    sender.setRoutes( new WriteFileResponse( 7,
+        new int[][] { { 3, 4, 5 }, { 4, 5, 6 } }, 3 ) );
+    Thread.sleep( 50 );
+    assertFalse( routed.isDone() );
+
+    sender.setRoutes( new WriteFileResponse( 7,
+        new int[][] { { 0, 1, 2 }, { 1, 2, 3 }, { 2, 3, 4 } }, 0 ) );
+    assertTrue( routed.get( 5, TimeUnit.SECONDS ) );
+    assertArrayEquals( new int[][] { { 0, 1, 2 }, { 1, 2, 3 }, { 2, 3, 4 },
+        { 3, 4, 5 }, { 4, 5, 6 } }, sender.getRoutes() );
+  }
+
+  @Test
+  public void testResponseWithoutRoutesFailsWrite() throws Exception {
+    sender.expectRoutes( 4 );
+    CompletableFuture<Boolean> routed = awaitRoutes();
+    sender.setRoutes(
+        new WriteFileResponse( 7, new int[][] { { 0, 1, 2 } }, 0 ) );
+    sender.setRoutes( new WriteFileResponse( 7, null, 1 ) );
+    assertFalse( routed.get( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testEmptyResponseFailsWrite() throws Exception {
+    sender.expectRoutes( 2 );
+    CompletableFuture<Boolean> routed = awaitRoutes();
+    sender.setRoutes( new WriteFileResponse( 7, new int[ 0 ][], 0 ) );
+    assertFalse( routed.get( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testRoutesBeforeWaiting() throws InterruptedException {
+    sender.expectRoutes( 1 );
+    sender.setRoutes(
+        new WriteFileResponse( 7, new int[][] { { 0, 1, 2 } }, 0 ) );
+    assertTrue( sender.awaitRoutes() );
+  }
+
+  private CompletableFuture<Boolean> awaitRoutes() {
+    return CompletableFuture.supplyAsync( () -> {
+      try
+      {
+        return sender.awaitRoutes();
+      } catch ( InterruptedException e )
+      {
+        throw new IllegalStateException( e );
+      }
+    } );
+  }
+}
@@ -0,0 +1,126 @@
+package cs555.system.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ChunkCacheTest {
+
+  @Test
+  public void testCachedCopy() {
+    for ( boolean direct : new boolean[] { false, true } )
+    {
+      ChunkCache cache = new ChunkCache( 64, direct );
+      assertNull( cache.get( 1, 0 ) );
+      ByteBuffer content = content( 'a', 16 );
+      cache.put( 1, 0, content, cache.getGeneration() );
+      assertEquals( 16, content.remaining() );
+      content.put( 0, ( byte ) 'b' );
+
+      ByteBuffer cached = cache.get( 1, 0 );
+      assertTrue( cached.isReadOnly() );
+      assertEquals( direct, cached.isDirect() );
+      assertEquals( content( 'a', 16 ), cached );
+      assertNull( cache.get( 1, 1 ) );
+    }
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyRead() {
+    ChunkCache cache = new ChunkCache( 48, false );
+    cache.put( 1, 0, content( 'a', 16 ), cache.getGeneration() );
+    cache.put( 1, 1, content( 'b', 16 ), cache.getGeneration() );
+    cache.put( 1, 2, content( 'c', 16 ), cache.getGeneration() );
+    assertNotNull( cache.get( 1, 0 ) );
+
+    cache.put( 2, 0, content( 'd', 16 ), cache.getGeneration() );
+    assertNull( cache.get( 1, 1 ) );
+    assertNotNull( cache.get( 1, 0 ) );
+    assertNotNull( cache.get( 1, 2 ) );
+    assertNotNull( cache.get( 2, 0 ) );
+  }
+
+  @Test
+  public void testReplacedContent() {
+    ChunkCache cache = new ChunkCache( 48, false );
+    cache.put( 1, 0, content( 'a', 16 ), cache.getGeneration() );
+    cache.put( 1, 0, content( 'b', 32 ), cache.getGeneration() );
+    cache.put( 1, 1, content( 'c', 16 ), cache.getGeneration() );
+    assertEquals( content( 'b', 32 ), cache.get( 1, 0 ) );
+    assertEquals( content( 'c', 16 ), cache.get( 1, 1 ) );
+  }
+
+  @Test
+  public void testContentLargerThanCache() {
+    ChunkCache cache = new ChunkCache( 32, false );
+    cache.put( 1, 0, content( 'a', 16 ), cache.getGeneration() );
+    cache.put( 1, 1, content( 'b', 33 ), cache.getGeneration() );
+    assertNull( cache.get( 1, 1 ) );
+    assertNotNull( cache.get( 1, 0 ) );
+  }
+
+  @Test
+  public void testInvalidate() {
+    ChunkCache cache = new ChunkCache( 64, false );
+    cache.put( 1, 0, content( 'a', 16 ), cache.getGeneration() );
+    cache.invalidate( 1, 0 );
+    assertNull( cache.get( 1, 0 ) );
+  }
+
+  @Test
+  public void testContentReadBeforeInvalidate() {
+    ChunkCache cache = new ChunkCache( 64, false );
+    long generation = cache.getGeneration();
+    cache.invalidate( 1, 0 );
+    cache.put( 1, 0, content( 'a', 16 ), generation );
+    assertNull( cache.get( 1, 0 ) );
+
+    cache.put( 1, 0, content( 'b', 16 ), cache.getGeneration() );
+    assertEquals( content( 'b', 16 ), cache.get( 1, 0 ) );
+  }
+
+  @Test
+  public void testEvictedBufferReusedOnceReleased() {
+    for ( boolean direct : new boolean[] { false, true } )
+    {
+      ChunkCache cache = new ChunkCache( 16, direct );
+      cache.put( 1, 0, content( 'a', 16 ), cache.getGeneration() );
+      ByteBuffer view = cache.get( 1, 0 );
+
+      // the only buffer is being read, so nothing more is allocated
+      cache.put( 1, 1, content( 'b', 16 ), cache.getGeneration() );
+      assertNull( cache.get( 1, 1 ) );
+      ByteBuffer other = cache.get( 1, 0 );
+      assertNotNull( other );
+      cache.release( other );
+
+      cache.invalidate( 1, 0 );
+      cache.put( 1, 1, content( 'b', 16 ), cache.getGeneration() );
+      assertNull( cache.get( 1, 1 ) );
+      assertEquals( content( 'a', 16 ), view );
+
+      cache.release( view );
+      cache.put( 1, 1, content( 'b', 16 ), cache.getGeneration() );
+      assertEquals( content( 'b', 16 ), cache.get( 1, 1 ) );
+    }
+  }
+
+  @Test
+  public void testShorterContentInReusedBuffer() {
+    ChunkCache cache = new ChunkCache( 16, true );
+    cache.put( 1, 0, content( 'a', 16 ), cache.getGeneration() );
+    cache.put( 1, 1, content( 'b', 10 ), cache.getGeneration() );
+    assertNull( cache.get( 1, 0 ) );
+    assertEquals( content( 'b', 10 ), cache.get( 1, 1 ) );
+  }
+
+  private static ByteBuffer content(char content, int length) {
+    byte[] bytes = new byte[ length ];
+    Arrays.fill( bytes, ( byte ) content );
+    return ByteBuffer.wrap( bytes );
+  }
+}
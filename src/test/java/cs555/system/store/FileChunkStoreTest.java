@@ -0,0 +1,95 @@
+package cs555.system.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import cs555.system.node.Node;
+import cs555.system.transport.TCPConnection;
+import cs555.system.util.FileUtilities;
+import cs555.system.wireformats.Event;
+
+public class FileChunkStoreTest {
+
+  private Node node;
+
+  private FileChunkStore store;
+
+  @Before
+  public void initialize() {
+    int port = ( int ) ( System.nanoTime() & 0xffff );
+    node = new Node() {
+
+      @Override
+      public void onEvent(Event event, TCPConnection connection) {}
+
+      @Override
+      public String getHost() {
+        return "FileChunkStoreTest";
+      }
+
+      @Override
+      public int getPort() {
+        return port;
+      }
+    };
+    store = new FileChunkStore( node );
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    Path directory = FileUtilities.getStoreLocation( node );
+    if ( Files.exists( directory ) )
+    {
+      try ( Stream<Path> paths = Files.walk( directory ) )
+      {
+        paths.sorted( Comparator.reverseOrder() )
+            .forEach( path -> path.toFile().delete() );
+      }
+    }
+  }
+
+  @Test
+  public void testWriteReplacesChunk() throws IOException {
+    store.write( 1, 0, chunk( 'a', 16 ) );
+    store.write( 1, 0, chunk( 'b', 8 ) );
+    try ( StoredChunk chunk = store.open( 1, 0 ) )
+    {
+      assertArrayEquals( chunk( 'b', 8 ), chunk.read( 0, 8 ) );
+    }
+    try ( Stream<Path> paths =
+        Files.list( FileUtilities.getStoreLocation( node ) ) )
+    {
+      assertEquals( 1, paths.count() );
+    }
+  }
+
+  @Test
+  public void testOpenedChunkUnchangedByWrite() throws IOException {
+    store.write( 1, 0, chunk( 'a', 16 ) );
+    try ( StoredChunk chunk = store.open( 1, 0 ) )
+    {
+      ByteBuffer mapping = chunk.map();
+      store.write( 1, 0, chunk( 'b', 8 ) );
+      assertEquals( 16, chunk.getLength() );
+      assertArrayEquals( chunk( 'a', 16 ), chunk.read( 0, 16 ) );
+      byte[] mapped = new byte[ 16 ];
+      mapping.get( mapped );
+      assertArrayEquals( chunk( 'a', 16 ), mapped );
+    }
+  }
+
+  private static byte[] chunk(char content, int length) {
+    byte[] chunk = new byte[ length ];
+    Arrays.fill( chunk, ( byte ) content );
+    return chunk;
+  }
+}
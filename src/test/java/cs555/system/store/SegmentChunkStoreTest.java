@@ -0,0 +1,157 @@
+package cs555.system.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith( Parameterized.class )
+public class SegmentChunkStoreTest {
+
+  /**
+   * Two records of 16 byte chunks fill a segment.
+   */
+  private final static long SEGMENT_SIZE = 64;
+
+  @Parameters( name = "mapped={0}" )
+  public static Collection<Object[]> parameters() {
+    return Arrays.asList( new Object[][] { { false }, { true } } );
+  }
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final boolean mapped;
+
+  private Path directory;
+
+  private SegmentChunkStore store;
+
+  public SegmentChunkStoreTest(boolean mapped) {
+    this.mapped = mapped;
+  }
+
+  @Before
+  public void initialize() throws IOException {
+    directory = folder.getRoot().toPath();
+    store = open();
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    store.close();
+  }
+
+  @Test
+  public void testRecover() throws IOException {
+    store.write( 1, 0, chunk( 'a' ) );
+    store.write( 1, 1, chunk( 'b' ) );
+    store.write( 2, 0, chunk( 'c' ) );
+    store.write( 1, 0, chunk( 'd' ) );
+    store.close();
+
+    store = open();
+    assertArrayEquals( chunk( 'd' ), read( 1, 0 ) );
+    assertArrayEquals( chunk( 'b' ), read( 1, 1 ) );
+    assertArrayEquals( chunk( 'c' ), read( 2, 0 ) );
+  }
+
+  @Test( expected = NoSuchFileException.class )
+  public void testOpenMissingChunk() throws IOException {
+    store.write( 1, 0, chunk( 'a' ) );
+    store.open( 1, 1 );
+  }
+
+  @Test
+  public void testRecoverPartialRecord() throws IOException {
+    store.write( 1, 0, chunk( 'a' ) );
+    store.close();
+
+    // a header claiming more bytes than were written after it
+    Path segment = directory.resolve( "segment_0.log" );
+    long end = SEGMENT_SIZE / 2;
+    ByteBuffer partial = ByteBuffer.allocate( 17 );
+    partial.putLong( 1 ).putInt( 1 ).putInt( 64 ).put( ( byte ) 'x' ).flip();
+    try ( FileChannel channel =
+        FileChannel.open( segment, StandardOpenOption.WRITE ) )
+    {
+      channel.write( partial, end );
+    }
+
+    store = open();
+    assertArrayEquals( chunk( 'a' ), read( 1, 0 ) );
+    store.write( 1, 1, chunk( 'b' ) );
+    store.close();
+
+    store = open();
+    assertArrayEquals( chunk( 'a' ), read( 1, 0 ) );
+    assertArrayEquals( chunk( 'b' ), read( 1, 1 ) );
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    store.write( 1, 0, chunk( 'a' ) );
+    store.write( 1, 1, chunk( 'b' ) );
+    store.write( 1, 0, chunk( 'c' ) );
+
+    assertFalse( Files.exists( directory.resolve( "segment_0.log" ) ) );
+    assertArrayEquals( chunk( 'c' ), read( 1, 0 ) );
+    assertArrayEquals( chunk( 'b' ), read( 1, 1 ) );
+    store.close();
+
+    store = open();
+    assertArrayEquals( chunk( 'c' ), read( 1, 0 ) );
+    assertArrayEquals( chunk( 'b' ), read( 1, 1 ) );
+  }
+
+  @Test
+  public void testCompactionKeepsOpenedChunk() throws IOException {
+    store.write( 1, 0, chunk( 'a' ) );
+    store.write( 1, 1, chunk( 'b' ) );
+    Path segment = directory.resolve( "segment_0.log" );
+
+    try ( StoredChunk opened = store.open( 1, 0 ) )
+    {
+      store.write( 1, 0, chunk( 'c' ) );
+      store.write( 1, 1, chunk( 'd' ) );
+      assertTrue( Files.exists( segment ) );
+      assertArrayEquals( chunk( 'a' ), opened.read( 0, 16 ) );
+    }
+    assertFalse( Files.exists( segment ) );
+    assertArrayEquals( chunk( 'c' ), read( 1, 0 ) );
+    assertArrayEquals( chunk( 'd' ), read( 1, 1 ) );
+  }
+
+  private SegmentChunkStore open() throws IOException {
+    return new SegmentChunkStore( directory, SEGMENT_SIZE, 0.5, mapped );
+  }
+
+  private byte[] read(long handle, int sequence) throws IOException {
+    try ( StoredChunk chunk = store.open( handle, sequence ) )
+    {
+      return chunk.read( 0, ( int ) chunk.getLength() );
+    }
+  }
+
+  private static byte[] chunk(char content) {
+    byte[] chunk = new byte[ 16 ];
+    Arrays.fill( chunk, ( byte ) content );
+    return chunk;
+  }
+}
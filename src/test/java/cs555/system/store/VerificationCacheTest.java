@@ -0,0 +1,69 @@
+package cs555.system.store;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VerificationCacheTest {
+
+  private final static long WINDOW = 60_000;
+
+  private VerificationCache cache;
+
+  private StoredChunk chunk;
+
+  @Before
+  public void initialize() {
+    cache = new VerificationCache( WINDOW );
+    chunk = chunk( Paths.get( "segment_0.log" ), 16, 32 );
+  }
+
+  @Test
+  public void testValidatedChunk() {
+    assertFalse( cache.isValid( 1, 0, chunk, 1000 ) );
+    cache.validated( 1, 0, chunk, 1000 );
+    assertTrue( cache.isValid( 1, 0, chunk, 1000 ) );
+    assertFalse( cache.isValid( 1, 1, chunk, 1000 ) );
+    assertFalse( cache.isValid( 2, 0, chunk, 1000 ) );
+  }
+
+  @Test
+  public void testModifiedChunk() {
+    cache.validated( 1, 0, chunk, 1000 );
+    assertFalse( cache.isValid( 1, 0, chunk, 1001 ) );
+  }
+
+  @Test
+  public void testMovedChunk() {
+    cache.validated( 1, 0, chunk, 1000 );
+    assertFalse( cache.isValid( 1, 0,
+        chunk( Paths.get( "segment_1.log" ), 16, 32 ), 1000 ) );
+    assertFalse( cache.isValid( 1, 0,
+        chunk( Paths.get( "segment_0.log" ), 64, 32 ), 1000 ) );
+    assertFalse( cache.isValid( 1, 0,
+        chunk( Paths.get( "segment_0.log" ), 16, 8 ), 1000 ) );
+  }
+
+  @Test
+  public void testInvalidate() {
+    cache.validated( 1, 0, chunk, 1000 );
+    cache.validated( 1, 1, chunk, 1000 );
+    cache.invalidate( 1, 0 );
+    assertFalse( cache.isValid( 1, 0, chunk, 1000 ) );
+    assertTrue( cache.isValid( 1, 1, chunk, 1000 ) );
+  }
+
+  @Test
+  public void testExpiredValidation() {
+    cache = new VerificationCache( 0 );
+    cache.validated( 1, 0, chunk, 1000 );
+    assertFalse( cache.isValid( 1, 0, chunk, 1000 ) );
+  }
+
+  private static StoredChunk chunk(Path path, long position, long length) {
+    return new StoredChunk( path, null, position, length, () -> {} );
+  }
+}
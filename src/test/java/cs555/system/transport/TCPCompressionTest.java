@@ -0,0 +1,121 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TCPCompressionTest {
+
+  private TCPCompression sender;
+
+  private TCPCompression receiver;
+
+  @Before
+  public void initialize() throws IOException {
+    sender = new TCPCompression( true );
+    receiver = new TCPCompression( true );
+    assertNull( sender.receive( TCPCompression.CONTROL_FLAG | Integer.BYTES,
+        capabilities( TCPCompression.CAPABILITY_DEFLATE ) ) );
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    assertTrue( sender.isNegotiated() );
+    for ( int length : new int[] { 300, 4096, 70000 } )
+    {
+      byte[] data = repetitive( length );
+      byte[] compressed = sender.compress( data );
+      assertNotNull( compressed );
+      assertTrue( compressed.length < data.length );
+      assertArrayEquals( data, inflate( receiver, data.length, compressed ) );
+    }
+  }
+
+  @Test
+  public void testUncompressedMessages() throws IOException {
+    assertNull( sender.compress( repetitive( 100 ) ) );
+
+    byte[] random = new byte[ 4096 ];
+    new Random( 42 ).nextBytes( random );
+    assertNull( sender.compress( random ) );
+
+    ByteBuffer frame = ByteBuffer.wrap( random );
+    assertTrue( frame == receiver.receive( random.length, frame ) );
+  }
+
+  @Test
+  public void testNotNegotiated() throws IOException {
+    TCPCompression disabled = new TCPCompression( false );
+    disabled.receive( TCPCompression.CONTROL_FLAG | Integer.BYTES,
+        capabilities( TCPCompression.CAPABILITY_DEFLATE ) );
+    assertFalse( disabled.isNegotiated() );
+    assertNull( disabled.compress( repetitive( 4096 ) ) );
+
+    TCPCompression peerDisabled = new TCPCompression( true );
+    peerDisabled.receive( TCPCompression.CONTROL_FLAG | Integer.BYTES,
+        capabilities( 0 ) );
+    assertFalse( peerDisabled.isNegotiated() );
+    assertNull( peerDisabled.compress( repetitive( 4096 ) ) );
+  }
+
+  @Test
+  public void testEnded() throws IOException {
+    byte[] data = repetitive( 4096 );
+    byte[] compressed = sender.compress( data );
+    sender.end();
+    receiver.end();
+    assertNull( sender.compress( data ) );
+    try
+    {
+      inflate( receiver, data.length, compressed );
+      fail( "Inflated a frame after the connection closed." );
+    } catch ( IOException e )
+    {
+      // expected
+    }
+  }
+
+  @Test( expected = IOException.class )
+  public void testTruncatedFrame() throws IOException {
+    byte[] data = repetitive( 4096 );
+    byte[] compressed = sender.compress( data );
+    byte[] truncated = new byte[ compressed.length / 2 ];
+    System.arraycopy( compressed, 0, truncated, 0, truncated.length );
+    inflate( receiver, data.length, truncated );
+  }
+
+  private static byte[] inflate(TCPCompression compression, int length,
+      byte[] compressed) throws IOException {
+    ByteBuffer frame = ByteBuffer.allocate( Integer.BYTES + compressed.length );
+    frame.putInt( length ).put( compressed ).flip();
+    ByteBuffer data = compression.receive(
+        frame.remaining() | TCPCompression.COMPRESSED_FLAG, frame );
+    byte[] bytes = new byte[ data.remaining() ];
+    data.get( bytes );
+    BufferPool.getInstance().release( data );
+    return bytes;
+  }
+
+  private static ByteBuffer capabilities(int capabilities) {
+    ByteBuffer buffer = ByteBuffer.allocate( Integer.BYTES );
+    buffer.putInt( capabilities ).flip();
+    return buffer;
+  }
+
+  private static byte[] repetitive(int length) {
+    byte[] data = new byte[ length ];
+    for ( int i = 0; i < length; ++i )
+    {
+      data[ i ] = ( byte ) ( i % 16 );
+    }
+    return data;
+  }
+}
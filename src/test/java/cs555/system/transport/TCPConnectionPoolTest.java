@@ -0,0 +1,156 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import cs555.system.node.Node;
+import cs555.system.wireformats.Event;
+
+public class TCPConnectionPoolTest {
+
+  private ServerSocketChannel server;
+
+  private int port;
+
+  private final BlockingQueue<SocketChannel> accepted =
+      new LinkedBlockingQueue<>();
+
+  private final List<SocketChannel> channels =
+      Collections.synchronizedList( new ArrayList<>() );
+
+  private final Node node = new Node() {
+
+    @Override
+    public void onEvent(Event event, TCPConnection connection) {}
+
+    @Override
+    public String getHost() {
+      return "localhost";
+    }
+
+    @Override
+    public int getPort() {
+      return 0;
+    }
+  };
+
+  @Before
+  public void initialize() throws IOException {
+    server = ServerSocketChannel.open();
+    server.bind( new InetSocketAddress( "localhost", 0 ) );
+    port = ( ( InetSocketAddress ) server.getLocalAddress() ).getPort();
+    Thread thread = new Thread( () ->
+    {
+      try
+      {
+        while ( true )
+        {
+          SocketChannel channel = server.accept();
+          channels.add( channel );
+          accepted.add( channel );
+        }
+      } catch ( IOException e )
+      {
+        // the server has closed
+      }
+    }, "Test Accept Thread" );
+    thread.setDaemon( true );
+    thread.start();
+  }
+
+  @After
+  public void close() throws IOException {
+    server.close();
+    synchronized ( channels )
+    {
+      for ( SocketChannel channel : channels )
+      {
+        channel.close();
+      }
+    }
+  }
+
+  @Test
+  public void testReleasedConnectionIsReused() throws Exception {
+    TCPConnectionPool pool = new TCPConnectionPool( 2, 60_000 );
+    TCPConnection first = pool.acquire( node, "localhost", port );
+    pool.release( first );
+    TCPConnection second = pool.acquire( node, "localhost", port );
+    assertSame( first, second );
+    assertOpened( 1 );
+  }
+
+  @Test
+  public void testOpensUpToMaxPerPeer() throws Exception {
+    TCPConnectionPool pool = new TCPConnectionPool( 2, 60_000 );
+    TCPConnection first = pool.acquire( node, "localhost", port );
+    TCPConnection second = pool.acquire( node, "localhost", port );
+    assertNotSame( first, second );
+
+    TCPConnection third = pool.acquire( node, "localhost", port );
+    assertTrue( third == first || third == second );
+    assertOpened( 2 );
+
+    // the least used connection is leased next
+    pool.release( first );
+    pool.release( third );
+    assertSame( first, pool.acquire( node, "localhost", port ) );
+  }
+
+  @Test
+  public void testEvictsIdleConnections() throws Exception {
+    TCPConnectionPool pool = new TCPConnectionPool( 2, 1 );
+    TCPConnection idle = pool.acquire( node, "localhost", port );
+    TCPConnection leased = pool.acquire( node, "localhost", port );
+    pool.release( idle );
+    Thread.sleep( 10 );
+
+    pool.evictIdleConnections();
+    assertFalse( idle.isOpen() );
+    assertTrue( leased.isOpen() );
+    pool.release( leased );
+    assertSame( leased, pool.acquire( node, "localhost", port ) );
+    assertOpened( 2 );
+  }
+
+  @Test
+  public void testClosedConnectionIsDiscarded() throws Exception {
+    TCPConnectionPool pool = new TCPConnectionPool( 1, 60_000 );
+    TCPConnection first = pool.acquire( node, "localhost", port );
+    pool.release( first );
+    first.close();
+
+    TCPConnection second = pool.acquire( node, "localhost", port );
+    assertNotSame( first, second );
+    assertTrue( second.isOpen() );
+    assertOpened( 2 );
+  }
+
+  /**
+   * Check the number of connections the pool has opened to the peer.
+   */
+  private void assertOpened(int connections) throws InterruptedException {
+    for ( int i = 0; i < connections; ++i )
+    {
+      assertNotNull( accepted.poll( 5, TimeUnit.SECONDS ) );
+    }
+    assertNull( accepted.poll( 100, TimeUnit.MILLISECONDS ) );
+  }
+}
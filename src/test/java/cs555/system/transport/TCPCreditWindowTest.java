@@ -0,0 +1,106 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TCPCreditWindowTest {
+
+  private final static long TIMEOUT = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+  @Test
+  public void testUnlimitedWindow() throws IOException {
+    TCPCreditWindow window = new TCPCreditWindow( 0, TIMEOUT );
+    for ( int i = 0; i < 1000; ++i )
+    {
+      window.acquire();
+    }
+  }
+
+  @Test
+  public void testTimeoutFailsWithoutTakingCredit() throws IOException {
+    TCPCreditWindow window = new TCPCreditWindow( 2, TIMEOUT );
+    window.acquire();
+    window.acquire();
+    assertTimesOut( window );
+    assertTimesOut( window );
+
+    window.grant( 1 );
+    window.acquire();
+    assertTimesOut( window );
+  }
+
+  @Test
+  public void testGrantWakesSender() throws Exception {
+    TCPCreditWindow window =
+        new TCPCreditWindow( 1, TimeUnit.SECONDS.toNanos( 10 ) );
+    window.acquire();
+    CompletableFuture<Void> sent = CompletableFuture.runAsync( () -> {
+      try
+      {
+        window.acquire();
+      } catch ( IOException e )
+      {
+        throw new IllegalStateException( e );
+      }
+    } );
+    Thread.sleep( 50 );
+    assertFalse( sent.isDone() );
+    window.grant( 1 );
+    sent.get( 5, TimeUnit.SECONDS );
+  }
+
+  @Test
+  public void testFailWakesSender() throws Exception {
+    TCPCreditWindow window =
+        new TCPCreditWindow( 1, TimeUnit.SECONDS.toNanos( 10 ) );
+    window.acquire();
+    EOFException cause = new EOFException();
+    CompletableFuture<IOException> failed =
+        CompletableFuture.supplyAsync( () -> {
+      try
+      {
+        window.acquire();
+        return null;
+      } catch ( IOException e )
+      {
+        return e;
+      }
+    } );
+    Thread.sleep( 50 );
+    window.fail( cause );
+    assertEquals( cause, failed.get( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testReceiverMayNotWait() {
+    TCPCreditWindow window = new TCPCreditWindow( 4, TIMEOUT );
+    window.setReceiver( Thread.currentThread() );
+    try
+    {
+      window.acquire();
+      fail( "Credits were taken on the thread that receives them." );
+    } catch ( IOException e )
+    {
+      // expected
+    }
+  }
+
+  private static void assertTimesOut(TCPCreditWindow window) {
+    long start = System.nanoTime();
+    try
+    {
+      window.acquire();
+      fail( "A chunk was sent without a credit." );
+    } catch ( IOException e )
+    {
+      assertTrue( System.nanoTime() - start >= TIMEOUT );
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import cs555.system.node.Node;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.HealthRequest;
+import cs555.system.wireformats.Protocol;
+import cs555.system.wireformats.ReadChunkRequest;
+
+public class TCPDispatcherTest {
+
+  private final BlockingQueue<Event> handled = new LinkedBlockingQueue<>();
+
+  private final List<Thread> threads =
+      Collections.synchronizedList( new ArrayList<>() );
+
+  private final CountDownLatch release = new CountDownLatch( 1 );
+
+  private volatile boolean blockReads;
+
+  private volatile boolean failReads;
+
+  private final Node node = new Node() {
+
+    @Override
+    public void onEvent(Event event, TCPConnection connection) {
+      threads.add( Thread.currentThread() );
+      if ( event.getType() == Protocol.READ_CHUNK_REQUEST )
+      {
+        if ( failReads )
+        {
+          failReads = false;
+          throw new IllegalStateException( "handler failed" );
+        }
+        if ( blockReads )
+        {
+          try
+          {
+            release.await();
+          } catch ( InterruptedException e )
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+      handled.add( event );
+    }
+
+    @Override
+    public String getHost() {
+      return "localhost";
+    }
+
+    @Override
+    public int getPort() {
+      return 0;
+    }
+  };
+
+  @After
+  public void close() {
+    release.countDown();
+  }
+
+  @Test
+  public void testInlineDispatch() throws Exception {
+    Event event = new HealthRequest();
+    TCPDispatcher.getInstance().dispatch( node, event, null );
+    assertSame( event, handled.poll() );
+    assertEquals( Collections.singletonList( Thread.currentThread() ),
+        threads );
+  }
+
+  @Test
+  public void testChunkEventsInOrder() throws Exception {
+    TCPDispatcher dispatcher = new TCPDispatcher( 1, 4, 1, 16 );
+    for ( int i = 0; i < 100; ++i )
+    {
+      dispatcher.dispatch( node, new ReadChunkRequest( i, 7, 3 ), null );
+    }
+    for ( int i = 0; i < 100; ++i )
+    {
+      Event event = handled.poll( 5, TimeUnit.SECONDS );
+      assertEquals( i, ( ( ReadChunkRequest ) event ).getRequestId() );
+    }
+    assertEquals( 1, threads.stream().distinct().count() );
+    assertFalse( threads.contains( Thread.currentThread() ) );
+  }
+
+  @Test
+  public void testSlowChunkDoesNotHoldControl() throws Exception {
+    TCPDispatcher dispatcher = new TCPDispatcher( 1, 1, 1, 16 );
+    blockReads = true;
+    dispatcher.dispatch( node, new ReadChunkRequest( 1, 7, 3 ), null );
+    Event control = new HealthRequest();
+    dispatcher.dispatch( node, control, null );
+    assertSame( control, handled.poll( 5, TimeUnit.SECONDS ) );
+
+    release.countDown();
+    assertEquals( Protocol.READ_CHUNK_REQUEST,
+        handled.poll( 5, TimeUnit.SECONDS ).getType() );
+  }
+
+  @Test
+  public void testFailedEventDoesNotStopWorker() throws Exception {
+    TCPDispatcher dispatcher = new TCPDispatcher( 1, 1, 1, 16 );
+    failReads = true;
+    dispatcher.dispatch( node, new ReadChunkRequest( 1, 7, 3 ), null );
+    dispatcher.dispatch( node, new ReadChunkRequest( 2, 7, 3 ), null );
+    Event event = handled.poll( 5, TimeUnit.SECONDS );
+    assertEquals( 2, ( ( ReadChunkRequest ) event ).getRequestId() );
+  }
+
+  @Test
+  public void testOfferToFullQueue() throws Exception {
+    TCPDispatcher dispatcher = new TCPDispatcher( 1, 1, 1, 1 );
+    blockReads = true;
+    assertTrue( dispatcher.offer( node, new ReadChunkRequest( 0, 7, 3 ),
+        null ) );
+    // wait for the worker to take the first event
+    while ( threads.isEmpty() )
+    {
+      Thread.sleep( 10 );
+    }
+    assertTrue( dispatcher.offer( node, new ReadChunkRequest( 1, 7, 3 ),
+        null ) );
+    assertFalse( dispatcher.offer( node, new ReadChunkRequest( 2, 7, 3 ),
+        null ) );
+    assertTrue( dispatcher.offer( node, new HealthRequest(), null ) );
+
+    release.countDown();
+    List<Integer> reads = new ArrayList<>();
+    for ( int i = 0; i < 3; ++i )
+    {
+      Event event = handled.poll( 5, TimeUnit.SECONDS );
+      if ( event.getType() == Protocol.READ_CHUNK_REQUEST )
+      {
+        reads.add( ( ( ReadChunkRequest ) event ).getRequestId() );
+      }
+    }
+    assertEquals( Arrays.asList( 0, 1 ), reads );
+  }
+
+  @Test
+  public void testInlineOfferRefused() {
+    assertFalse( TCPDispatcher.getInstance().offer( node,
+        new HealthRequest(), null ) );
+    assertTrue( handled.isEmpty() );
+  }
+
+  @Test
+  public void testFullQueueBlocksReceiver() throws Exception {
+    TCPDispatcher dispatcher = new TCPDispatcher( 1, 1, 1, 1 );
+    blockReads = true;
+    CompletableFuture<Void> dispatched = CompletableFuture.runAsync( () ->
+    {
+      try
+      {
+        for ( int i = 0; i < 3; ++i )
+        {
+          dispatcher.dispatch( node, new ReadChunkRequest( i, 7, 3 ), null );
+        }
+      } catch ( Exception e )
+      {
+        throw new IllegalStateException( e );
+      }
+    } );
+    Thread.sleep( 200 );
+    assertFalse( dispatched.isDone() );
+
+    release.countDown();
+    dispatched.get( 5, TimeUnit.SECONDS );
+    for ( int i = 0; i < 3; ++i )
+    {
+      Event event = handled.poll( 5, TimeUnit.SECONDS );
+      assertEquals( i, ( ( ReadChunkRequest ) event ).getRequestId() );
+    }
+    assertTrue( handled.isEmpty() );
+  }
+}
@@ -0,0 +1,88 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+import cs555.system.util.Constants;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.ReadChunkResponse;
+
+public class TCPRequestTableTest {
+
+  private final TCPRequestTable table = new TCPRequestTable();
+
+  @Test
+  public void testCompleteOutOfOrder() throws Exception {
+    int first = table.nextRequestId();
+    int second = table.nextRequestId();
+    assertNotEquals( first, second );
+    CompletableFuture<Event> firstFuture = table.register( first );
+    CompletableFuture<Event> secondFuture = table.register( second );
+
+    Event secondResponse =
+        new ReadChunkResponse( second, 1, Constants.SUCCESS );
+    assertTrue( table.complete( second, secondResponse ) );
+    assertFalse( firstFuture.isDone() );
+    assertSame( secondResponse, secondFuture.get() );
+
+    Event firstResponse =
+        new ReadChunkResponse( first, 1, Constants.SUCCESS );
+    assertTrue( table.complete( first, firstResponse ) );
+    assertSame( firstResponse, firstFuture.get() );
+  }
+
+  @Test
+  public void testCompleteUnknownRequest() {
+    int requestId = table.nextRequestId();
+    table.register( requestId );
+    Event response =
+        new ReadChunkResponse( requestId, 1, Constants.SUCCESS );
+    assertFalse( table.complete( requestId + 1, response ) );
+    assertTrue( table.complete( requestId, response ) );
+    assertFalse( table.complete( requestId, response ) );
+  }
+
+  @Test
+  public void testFailRequest() throws InterruptedException {
+    int requestId = table.nextRequestId();
+    CompletableFuture<Event> future = table.register( requestId );
+    IOException cause = new IOException( "unable to send" );
+    table.fail( requestId, cause );
+    assertFailed( cause, future );
+    assertFalse( table.isFailed() );
+  }
+
+  @Test
+  public void testFailAll() throws InterruptedException {
+    CompletableFuture<Event> first = table.register( table.nextRequestId() );
+    CompletableFuture<Event> second = table.register( table.nextRequestId() );
+    IOException cause = new IOException( "closed" );
+    table.failAll( cause );
+    assertTrue( table.isFailed() );
+    assertFailed( cause, first );
+    assertFailed( cause, second );
+
+    // no response will arrive for a request registered afterwards
+    assertFailed( cause, table.register( table.nextRequestId() ) );
+  }
+
+  private static void assertFailed(IOException cause,
+      CompletableFuture<Event> future) throws InterruptedException {
+    assertTrue( future.isCompletedExceptionally() );
+    try
+    {
+      future.get();
+      fail( "The request should have failed." );
+    } catch ( ExecutionException e )
+    {
+      assertSame( cause, e.getCause() );
+    }
+  }
+}
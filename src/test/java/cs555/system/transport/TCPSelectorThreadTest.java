@@ -0,0 +1,176 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import cs555.system.node.Node;
+import cs555.system.wireformats.Event;
+import cs555.system.wireformats.HealthRequest;
+import cs555.system.wireformats.Protocol;
+
+public class TCPSelectorThreadTest {
+
+  private ServerSocketChannel server;
+
+  private TCPSelectorThread selector;
+
+  private ExecutorService handlers;
+
+  private final Set<Thread> handlerThreads = ConcurrentHashMap.newKeySet();
+
+  private final BlockingQueue<TCPConnection> handled =
+      new LinkedBlockingQueue<>();
+
+  private volatile TCPConnection failing;
+
+  private volatile TCPConnection blocking;
+
+  private final CountDownLatch release = new CountDownLatch( 1 );
+
+  private final Node node = new Node() {
+
+    @Override
+    public void onEvent(Event event, TCPConnection connection) {
+      handlerThreads.add( Thread.currentThread() );
+      if ( connection == failing )
+      {
+        throw new IllegalStateException( "handler failed" );
+      }
+      if ( connection == blocking )
+      {
+        try
+        {
+          release.await();
+        } catch ( InterruptedException e )
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+      assertEquals( Protocol.HEALTH_REQUEST, event.getType() );
+      handled.add( connection );
+    }
+
+    @Override
+    public String getHost() {
+      return "localhost";
+    }
+
+    @Override
+    public int getPort() {
+      return 0;
+    }
+  };
+
+  @Before
+  public void initialize() throws IOException {
+    server = ServerSocketChannel.open();
+    server.bind( new InetSocketAddress( "localhost", 0 ) );
+    handlers = Executors.newFixedThreadPool( 2 );
+    selector = new TCPSelectorThread( handlers );
+    Thread thread = new Thread( selector, "Test Selector Thread" );
+    thread.setDaemon( true );
+    thread.start();
+  }
+
+  @After
+  public void close() throws IOException {
+    release.countDown();
+    server.close();
+    handlers.shutdownNow();
+  }
+
+  @Test
+  public void testFailedHandlerClosesOnlyItsConnection() throws Exception {
+    SocketChannel[] first = connect();
+    SocketChannel[] second = connect();
+    TCPConnection a = register( first[ 1 ] );
+    TCPConnection b = register( second[ 1 ] );
+    failing = a;
+
+    send( first[ 0 ] );
+    long deadline = System.currentTimeMillis() + 5000;
+    while ( !a.getRequestTable().isFailed()
+        && System.currentTimeMillis() < deadline )
+    {
+      Thread.sleep( 10 );
+    }
+    assertTrue( a.getRequestTable().isFailed() );
+    assertFalse( first[ 1 ].isOpen() );
+
+    send( second[ 0 ] );
+    assertEquals( b, handled.poll( 5, TimeUnit.SECONDS ) );
+    assertFalse( b.getRequestTable().isFailed() );
+  }
+
+  @Test
+  public void testBlockedHandlerDoesNotStallSelector() throws Exception {
+    SocketChannel[] first = connect();
+    SocketChannel[] second = connect();
+    TCPConnection a = register( first[ 1 ] );
+    TCPConnection b = register( second[ 1 ] );
+    blocking = a;
+
+    send( first[ 0 ] );
+    send( first[ 0 ] );
+    send( second[ 0 ] );
+    assertEquals( b, handled.poll( 5, TimeUnit.SECONDS ) );
+
+    release.countDown();
+    assertEquals( a, handled.poll( 5, TimeUnit.SECONDS ) );
+    assertEquals( a, handled.poll( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testConnectionsShareHandlerThreads() throws Exception {
+    for ( int i = 0; i < 20; ++i )
+    {
+      SocketChannel[] channels = connect();
+      TCPConnection connection = register( channels[ 1 ] );
+      for ( int j = 0; j < 3; ++j )
+      {
+        send( channels[ 0 ] );
+      }
+      for ( int j = 0; j < 3; ++j )
+      {
+        assertEquals( connection, handled.poll( 5, TimeUnit.SECONDS ) );
+      }
+    }
+    assertTrue( handlerThreads.size() <= 2 );
+  }
+
+  private SocketChannel[] connect() throws IOException {
+    SocketChannel client =
+        SocketChannel.open( server.getLocalAddress() );
+    SocketChannel accepted = server.accept();
+    assertNotNull( accepted );
+    return new SocketChannel[] { client, accepted };
+  }
+
+  private TCPConnection register(SocketChannel channel) throws IOException {
+    TCPConnection connection = new TCPConnection( node, channel.socket() );
+    selector.register(
+        new TCPChannelReceiver( node, channel, connection ) );
+    return connection;
+  }
+
+  private static void send(SocketChannel channel) throws IOException {
+    new TCPSender( channel.socket(), new TCPCompression() )
+        .sendEvent( new HealthRequest() );
+  }
+}
@@ -0,0 +1,231 @@
+package cs555.system.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TCPSenderTest {
+
+  private static final int SENDERS = 4;
+
+  private static final int MESSAGES = 500;
+
+  private ServerSocketChannel server;
+
+  private SocketChannel channel;
+
+  private SocketChannel peer;
+
+  private TCPSender sender;
+
+  private ExecutorService callers;
+
+  @Before
+  public void setUp() throws IOException {
+    server = ServerSocketChannel.open();
+    server.bind( new InetSocketAddress( "localhost", 0 ) );
+    channel = SocketChannel.open( server.getLocalAddress() );
+    peer = server.accept();
+    // a small queue, so callers block and the writer batches messages
+    sender = new TCPSender( channel.socket(), new TCPCompression(), 8 );
+    callers = Executors.newFixedThreadPool( SENDERS );
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    callers.shutdownNow();
+    sender.close();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void testConcurrentSendersInOrder() throws Exception {
+    List<Future<?>> sent = new ArrayList<>();
+    for ( int i = 0; i < SENDERS; ++i )
+    {
+      int caller = i;
+      sent.add( callers.submit( () -> {
+        for ( int sequence = 0; sequence < MESSAGES; ++sequence )
+        {
+          sender.sendData( message( caller, sequence ) );
+        }
+        return null;
+      } ) );
+    }
+
+    int[] next = new int[ SENDERS ];
+    for ( int i = 0; i < SENDERS * MESSAGES; ++i )
+    {
+      byte[] received = receive();
+      ByteBuffer buffer = ByteBuffer.wrap( received );
+      int caller = buffer.getInt();
+      int sequence = buffer.getInt();
+      assertEquals( next[ caller ]++, sequence );
+      assertArrayEquals( message( caller, sequence ), received );
+    }
+    for ( Future<?> future : sent )
+    {
+      future.get( 10, TimeUnit.SECONDS );
+    }
+  }
+
+  @Test
+  public void testCloseFlushesQueue() throws Exception {
+    // close as soon as the last message is queued, so the channel stays
+    // open only if close waits for the queue to be written
+    Future<?> closed = callers.submit( () -> {
+      for ( int sequence = 0; sequence < MESSAGES; ++sequence )
+      {
+        sender.sendData( message( 0, sequence ) );
+      }
+      sender.close();
+      return null;
+    } );
+    for ( int sequence = 0; sequence < MESSAGES; ++sequence )
+    {
+      assertArrayEquals( message( 0, sequence ), receive() );
+    }
+    closed.get( 10, TimeUnit.SECONDS );
+    try
+    {
+      receive();
+      fail( "The channel should be closed after the queue is written." );
+    } catch ( EOFException e )
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSendersFailWhenChannelBreaks() throws Exception {
+    // reset the connection, so the next write to it fails
+    peer.socket().setSoLinger( true, 0 );
+    peer.close();
+
+    List<Future<?>> sent = new ArrayList<>();
+    for ( int i = 0; i < SENDERS; ++i )
+    {
+      int caller = i;
+      sent.add( callers.submit( () -> {
+        for ( int sequence = 0;; ++sequence )
+        {
+          sender.sendData( message( caller, sequence ) );
+        }
+      } ) );
+    }
+    for ( Future<?> future : sent )
+    {
+      try
+      {
+        future.get( 10, TimeUnit.SECONDS );
+        fail( "Sending should fail once the channel is broken." );
+      } catch ( ExecutionException e )
+      {
+        assertTrue( e.getCause() instanceof IOException );
+      }
+    }
+    try
+    {
+      sender.flush();
+      fail( "Flushing should fail once the channel is broken." );
+    } catch ( IOException e )
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBlockedSendersFailWhenChannelBreaks() throws Exception {
+    // the peer does not read, so the writer blocks once the socket
+    // buffers are full, and then the callers block on the full queue
+    ExecutorService blocked = Executors.newCachedThreadPool();
+    List<Future<?>> sent = new ArrayList<>();
+    for ( int i = 0; i < 32; ++i )
+    {
+      sent.add( blocked.submit( () -> {
+        sender.sendData( new byte[ 1 << 20 ] );
+        return null;
+      } ) );
+    }
+    TimeUnit.MILLISECONDS.sleep( 500 );
+    List<Future<?>> waiting = new ArrayList<>();
+    for ( Future<?> future : sent )
+    {
+      if ( !future.isDone() )
+      {
+        waiting.add( future );
+      }
+    }
+    assertFalse( waiting.isEmpty() );
+
+    peer.socket().setSoLinger( true, 0 );
+    peer.close();
+    for ( Future<?> future : waiting )
+    {
+      try
+      {
+        future.get( 10, TimeUnit.SECONDS );
+        fail( "A message waiting for the queue should not be dropped." );
+      } catch ( ExecutionException e )
+      {
+        assertTrue( e.getCause() instanceof IOException );
+      }
+    }
+    blocked.shutdownNow();
+  }
+
+  /**
+   * Read the next frame written by the sender.
+   */
+  private byte[] receive() throws IOException {
+    ByteBuffer length = ByteBuffer.allocate( Integer.BYTES );
+    readFully( length );
+    ByteBuffer frame = ByteBuffer.allocate( length.flip().getInt() );
+    readFully( frame );
+    return frame.array();
+  }
+
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while ( buffer.hasRemaining() )
+    {
+      if ( peer.read( buffer ) < 0 )
+      {
+        throw new EOFException();
+      }
+    }
+  }
+
+  /**
+   * A message identifying its caller and sequence, with content derived
+   * from both, and a length that varies between messages.
+   */
+  private static byte[] message(int caller, int sequence) {
+    ByteBuffer buffer = ByteBuffer
+        .allocate( 2 * Integer.BYTES + 1 + ( caller * 131 + sequence ) % 997 );
+    buffer.putInt( caller ).putInt( sequence );
+    while ( buffer.hasRemaining() )
+    {
+      buffer.put( ( byte ) ( caller + sequence + buffer.position() ) );
+    }
+    return buffer.array();
+  }
+}
@@ -0,0 +1,133 @@
+package cs555.system.wireformats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.junit.Test;
+import cs555.system.metadata.ServerMetadata.ChunkInformation;
+
+public class HeartbeatTest {
+
+  @Test
+  public void testCompact() throws IOException {
+    Map<Long, List<ChunkInformation>> files = files();
+    assertFilesEquals( files, decode( heartbeat( files, true ) ).getFiles() );
+  }
+
+  @Test
+  public void testFixed() throws IOException {
+    Map<Long, List<ChunkInformation>> files = files();
+    assertFilesEquals( files, decode( heartbeat( files, false ) ).getFiles() );
+  }
+
+  @Test
+  public void testCompactEmpty() throws IOException {
+    Heartbeat decoded = decode( heartbeat( new HashMap<>(), true ) );
+    assertTrue( decoded.isEmpty() );
+    assertEquals( "localhost:0", decoded.getConnectionDetails() );
+  }
+
+  @Test
+  public void testCompactRunsAreSmaller() throws IOException {
+    Map<Long, List<ChunkInformation>> files = new HashMap<>();
+    List<ChunkInformation> chunks = new ArrayList<>();
+    for ( int sequence = 0; sequence < 1000; ++sequence )
+    {
+      chunks.add( new ChunkInformation( sequence, sequence % 3,
+          1_700_000_000_000L, 0 ) );
+    }
+    files.put( 1L, chunks );
+    byte[] compact = heartbeat( files, true ).getBytes();
+    byte[] fixed = heartbeat( files, false ).getBytes();
+    assertTrue( compact.length * 10 < fixed.length );
+    assertFilesEquals( files, decode( heartbeat( files, true ) ).getFiles() );
+  }
+
+  @Test
+  public void testCompactScrubProgress() throws IOException {
+    Heartbeat heartbeat = heartbeat( files(), true );
+    heartbeat.setScrubProgress( 2, 30, 4000, 1 );
+    Heartbeat decoded = decode( heartbeat );
+    assertTrue( decoded.isScrubbing() );
+    assertFalse( decoded.isEmpty() );
+    assertEquals( 2, decoded.getScrubPasses() );
+    assertEquals( 30, decoded.getScrubbedChunks() );
+    assertEquals( 4000, decoded.getScrubbedBytes() );
+    assertEquals( 1, decoded.getCorruptChunks() );
+  }
+
+  /**
+   * Files with runs broken by gaps in the sequence, and by changes of
+   * the last modified time and version, with and without a uniform
+   * replication, listed out of order.
+   */
+  private static Map<Long, List<ChunkInformation>> files() {
+    Map<Long, List<ChunkInformation>> files = new HashMap<>();
+    List<ChunkInformation> chunks = new ArrayList<>();
+    chunks.add( new ChunkInformation( 3, 1, 1000, 0 ) );
+    chunks.add( new ChunkInformation( 0, 0, 1000, 0 ) );
+    chunks.add( new ChunkInformation( 1, 0, 1000, 0 ) );
+    chunks.add( new ChunkInformation( 2, 0, 1000, 0 ) );
+    chunks.add( new ChunkInformation( 4, 2, 2000, 0 ) );
+    chunks.add( new ChunkInformation( 5, 2, 2000, 1 ) );
+    chunks.add( new ChunkInformation( 9, 0, 1000, 0 ) );
+    files.put( 7L, chunks );
+    chunks = new ArrayList<>();
+    chunks.add( new ChunkInformation( 0, 0, 5000, 3 ) );
+    files.put( 2L, chunks );
+    chunks = new ArrayList<>();
+    chunks.add( new ChunkInformation( 1, 2, 3000, 0 ) );
+    chunks.add( new ChunkInformation( 2, 0, 3000, 0 ) );
+    files.put( 1L << 40, chunks );
+    return files;
+  }
+
+  private static Heartbeat heartbeat(Map<Long, List<ChunkInformation>> files,
+      boolean compact) {
+    return new Heartbeat( Protocol.MAJOR_HEARTBEAT, "localhost:0", 10, 42,
+        files, compact );
+  }
+
+  private static Heartbeat decode(Heartbeat heartbeat) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap( heartbeat.getBytes() );
+    Heartbeat decoded = new Heartbeat( buffer );
+    assertFalse( buffer.hasRemaining() );
+    assertEquals( Protocol.MAJOR_HEARTBEAT, decoded.getType() );
+    assertEquals( 10, decoded.getTotalChunks() );
+    assertEquals( 42, decoded.getFreeSpace() );
+    return decoded;
+  }
+
+  private static void assertFilesEquals(
+      Map<Long, List<ChunkInformation>> expected,
+      Map<Long, List<ChunkInformation>> actual) {
+    assertEquals( expected.keySet(), actual.keySet() );
+    for ( Entry<Long, List<ChunkInformation>> entry : expected.entrySet() )
+    {
+      List<ChunkInformation> chunks = new ArrayList<>( entry.getValue() );
+      List<ChunkInformation> decoded =
+          new ArrayList<>( actual.get( entry.getKey() ) );
+      chunks.sort( Comparator.comparingInt( ChunkInformation::getSequence ) );
+      decoded.sort( Comparator.comparingInt( ChunkInformation::getSequence ) );
+      assertEquals( chunks.size(), decoded.size() );
+      for ( int i = 0; i < chunks.size(); ++i )
+      {
+        ChunkInformation info = chunks.get( i );
+        ChunkInformation other = decoded.get( i );
+        assertEquals( info.getSequence(), other.getSequence() );
+        assertEquals( info.getReplication(), other.getReplication() );
+        assertEquals( info.getLastModifiedTime(),
+            other.getLastModifiedTime() );
+        assertEquals( info.getVersion(), other.getVersion() );
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package cs555.system.wireformats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import cs555.system.transport.BufferPool;
+
+public class WriteChunkRequestTest {
+
+  private final EventDecoder decoder = new EventDecoder();
+
+  @Test
+  public void testLazyWriteChunkRequest() throws IOException {
+    WriteChunkRequest request = request();
+    ByteBuffer buffer = ByteBuffer.wrap( request.getBytes() );
+    WriteChunkRequest view = new WriteChunkRequest( buffer, true );
+    assertRequestEquals( request, view );
+    assertNotNull( view.getFrame() );
+
+    view.incrementReplicationPosition();
+    assertEquals( 2, view.getReplicationPosition() );
+    WriteChunkRequest forwarded = ( WriteChunkRequest ) EventFactory
+        .getInstance().createEvent( view.getFrame() );
+    assertEquals( 2, forwarded.getReplicationPosition() );
+    assertArrayEquals( request.getMessage( 1 ), forwarded.getMessage( 1 ) );
+
+    // changing any other field copies the shards out of the frame
+    view.setSequence( 8 );
+    assertNull( view.getFrame() );
+    assertArrayEquals( request.getMessage( 2 ), view.getMessage( 2 ) );
+    WriteChunkRequest encoded = ( WriteChunkRequest ) EventFactory
+        .getInstance().createEvent( view.getBytes() );
+    assertEquals( 8, encoded.getSequence() );
+    assertEquals( 2, encoded.getReplicationPosition() );
+  }
+
+  @Test
+  public void testRetainedFromPool() throws IOException {
+    WriteChunkRequest request = request();
+    byte[] bytes = request.getBytes();
+    ByteBuffer buffer = BufferPool.getInstance().acquire( bytes.length );
+    buffer.put( bytes ).flip();
+    Event event = EventFactory.getInstance().createRetainedEvent( buffer );
+    assertRequestEquals( request, ( WriteChunkRequest ) event );
+    if ( EventFactory.getInstance().isRetained( event ) )
+    {
+      ( ( WriteChunkRequest ) event ).release();
+      assertNull( ( ( WriteChunkRequest ) event ).getFrame() );
+    }
+  }
+
+  @Test
+  public void testSegmentsMatchBytes() throws IOException {
+    WriteChunkRequest request = request();
+    ByteBuffer[] segments = request.getSegments();
+    assertEquals( 2 * request.getNumberOfShards() + 1, segments.length );
+    assertArrayEquals( request.getBytes(), concatenate( segments ) );
+  }
+
+  @Test
+  public void testStreamedWriteChunkRequest() throws IOException {
+    WriteChunkRequest request = request();
+    byte[] frame = concatenate( request.getSegments() );
+    // read the same decoder twice, as a connection does
+    for ( int i = 0; i < 2; ++i )
+    {
+      WriteChunkRequest decoded = ( WriteChunkRequest ) decode( frame );
+      assertRequestEquals( request, decoded );
+
+      // the request is a view of the pooled buffer, forwarded as it is
+      decoded.incrementReplicationPosition();
+      ByteBuffer forwarded = decoded.getFrame();
+      assertNotNull( forwarded );
+      assertEquals( frame.length, forwarded.remaining() );
+      assertEquals( 2, ( ( WriteChunkRequest ) EventFactory.getInstance()
+          .createEvent( forwarded ) ).getReplicationPosition() );
+      decoded.release();
+      assertNull( decoded.getFrame() );
+    }
+  }
+
+  @Test
+  public void testStreamedOtherEvent() throws IOException {
+    ReadChunkRequest request = new ReadChunkRequest( 3, 42, 7 );
+    ReadChunkRequest decoded =
+        ( ReadChunkRequest ) decode( request.getBytes() );
+    assertEquals( 3, decoded.getRequestId() );
+    assertEquals( 42, decoded.getHandle() );
+    assertEquals( 7, decoded.getSequence() );
+  }
+
+  @Test( expected = IOException.class )
+  public void testStreamedTooManyShards() throws IOException {
+    byte[] frame = request().getBytes();
+    ByteBuffer.wrap( frame ).putInt( Integer.BYTES + Long.BYTES
+        + Integer.BYTES, frame.length );
+    decode( frame );
+  }
+
+  @Test( expected = IOException.class )
+  public void testStreamedShardBeyondFrame() throws IOException {
+    byte[] frame = request().getBytes();
+    ByteBuffer.wrap( frame ).putInt( WriteChunkRequest.HEADER_LENGTH,
+        frame.length );
+    decode( frame );
+  }
+
+  private Event decode(byte[] frame) throws IOException {
+    ByteBuffer source = ByteBuffer.wrap( frame );
+    decoder.reset( frame.length );
+    for ( ByteBuffer segment = decoder.next(); segment != null;
+        segment = decoder.next() )
+    {
+      // fill each segment in small reads, as a connection may
+      while ( segment.hasRemaining() )
+      {
+        int length = Math.min( 7,
+            Math.min( segment.remaining(), source.remaining() ) );
+        ByteBuffer read = source.slice();
+        read.limit( length );
+        segment.put( read );
+        source.position( source.position() + length );
+      }
+    }
+    assertEquals( 0, source.remaining() );
+    return decoder.getEvent();
+  }
+
+  private static void assertRequestEquals(WriteChunkRequest expected,
+      WriteChunkRequest actual) {
+    assertEquals( expected.getHandle(), actual.getHandle() );
+    assertEquals( expected.getSequence(), actual.getSequence() );
+    assertEquals( expected.getNumberOfShards(), actual.getNumberOfShards() );
+    for ( int i = 0; i < expected.getNumberOfShards(); ++i )
+    {
+      assertArrayEquals( expected.getMessage( i ), actual.getMessage( i ) );
+    }
+    assertEquals( expected.getLastModifiedDate(),
+        actual.getLastModifiedDate() );
+    assertEquals( expected.getVersion(), actual.getVersion() );
+    assertArrayEquals( expected.getRoutingPath(), actual.getRoutingPath() );
+    assertEquals( expected.getReplicationPosition(),
+        actual.getReplicationPosition() );
+  }
+
+  private static WriteChunkRequest request() {
+    byte[][] shards = new byte[ 3 ][];
+    for ( int i = 0; i < shards.length; ++i )
+    {
+      shards[ i ] = new byte[ 100 * ( i + 1 ) ];
+      for ( int j = 0; j < shards[ i ].length; ++j )
+      {
+        shards[ i ][ j ] = ( byte ) ( i + j );
+      }
+    }
+    WriteChunkRequest request = new WriteChunkRequest( 42, 7, shards,
+        1570000000000L, 3, new int[] { 5, 9, 2 } );
+    request.setReplicationPosition( 1 );
+    return request;
+  }
+
+  private static byte[] concatenate(ByteBuffer[] segments) {
+    int length = 0;
+    for ( ByteBuffer segment : segments )
+    {
+      length += segment.remaining();
+    }
+    ByteBuffer frame = ByteBuffer.allocate( length );
+    for ( ByteBuffer segment : segments )
+    {
+      frame.put( segment.duplicate() );
+    }
+    return frame.array();
+  }
+}